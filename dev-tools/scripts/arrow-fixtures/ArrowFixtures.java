@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BaseFixedWidthVector;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.impl.UnionListWriter;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.ValueVectorUtility;
+import org.apache.solr.common.IteratorWriter;
+
+/**
+ * Writes the Arrow IPC streams that TestArrowStreamCodec checks the Arrow codec of solrj against,
+ * then validates and prints both with Arrow Java. Run by generate.sh, which sets up the classpath.
+ *
+ * <ul>
+ *   <li>arrow_reference.arrows is written by Arrow Java, from the values that
+ *       testReadReferenceStream asserts.
+ *   <li>arrow_validated.arrows is written by the ArrowStreamWriter of solrj, with the same rows as
+ *       writeValidatedStream in the test, which asserts the writer still produces these bytes.
+ * </ul>
+ */
+public class ArrowFixtures {
+
+  public static void main(String[] args) throws Exception {
+    Path dir = Path.of(args[0]);
+    Path reference = dir.resolve("arrow_reference.arrows");
+    Path validated = dir.resolve("arrow_validated.arrows");
+    writeReference(reference);
+    writeValidated(validated);
+    for (Path path : List.of(reference, validated)) {
+      System.out.println("== " + path);
+      validate(path);
+    }
+  }
+
+  private static Field field(String name, ArrowType type) {
+    return new Field(name, FieldType.nullable(type), null);
+  }
+
+  private static void writeReference(Path path) throws IOException {
+    List<Field> fields =
+        List.of(
+            new Field("id", FieldType.notNullable(ArrowType.Utf8.INSTANCE), null),
+            field("i8", new ArrowType.Int(8, true)),
+            field("i16", new ArrowType.Int(16, true)),
+            field("i32", new ArrowType.Int(32, true)),
+            field("i64", new ArrowType.Int(64, true)),
+            field("f32", new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE)),
+            field("f64", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+            field("b", ArrowType.Bool.INSTANCE),
+            field("ts_ms", new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC")),
+            field("ts_us", new ArrowType.Timestamp(TimeUnit.MICROSECOND, null)),
+            new Field(
+                "ml",
+                FieldType.nullable(ArrowType.List.INSTANCE),
+                List.of(field("item", new ArrowType.Int(64, true)))),
+            new Field(
+                "ms",
+                FieldType.nullable(ArrowType.List.INSTANCE),
+                List.of(field("item", ArrowType.Utf8.INSTANCE))));
+    Schema schema = new Schema(fields, Map.of("numFound", "5"));
+    try (BufferAllocator allocator = new RootAllocator();
+        VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator);
+        OutputStream out = new FileOutputStream(path.toFile());
+        org.apache.arrow.vector.ipc.ArrowStreamWriter writer =
+            new org.apache.arrow.vector.ipc.ArrowStreamWriter(root, null, out)) {
+      writer.start();
+      int n = 0;
+      for (int batchSize : new int[] {3, 2}) {
+        root.allocateNew();
+        for (int row = 0; row < batchSize; row++, n++) {
+          ((VarCharVector) root.getVector("id"))
+              .setSafe(row, ("doc" + n).getBytes(StandardCharsets.UTF_8));
+          if (n != 1) {
+            ((TinyIntVector) root.getVector("i8")).setSafe(row, (byte) (n - 2));
+            ((SmallIntVector) root.getVector("i16")).setSafe(row, (short) (n * -1000));
+            ((IntVector) root.getVector("i32")).setSafe(row, n * 100000);
+            ((BigIntVector) root.getVector("i64")).setSafe(row, n * 1000000000000L);
+            ((Float4Vector) root.getVector("f32")).setSafe(row, n + 0.5f);
+            ((Float8Vector) root.getVector("f64")).setSafe(row, n - 0.25d);
+            ((BitVector) root.getVector("b")).setSafe(row, n % 2);
+            ((TimeStampMilliTZVector) root.getVector("ts_ms")).setSafe(row, 1700000000000L + n);
+            ((TimeStampMicroVector) root.getVector("ts_us"))
+                .setSafe(row, 1700000000000000L + n * 1001L);
+          } else {
+            for (String name : List.of("i8", "i16", "i32", "i64", "f32", "f64", "b", "ts_ms")) {
+              ((BaseFixedWidthVector) root.getVector(name)).setNull(row);
+            }
+            ((BaseFixedWidthVector) root.getVector("ts_us")).setNull(row);
+          }
+
+          UnionListWriter longs = ((ListVector) root.getVector("ml")).getWriter();
+          longs.setPosition(row);
+          if (n != 3) {
+            longs.startList();
+            for (int j = 0; j < n % 3; j++) {
+              longs.writeBigInt(j * 7L);
+            }
+            longs.endList();
+          }
+
+          UnionListWriter strings = ((ListVector) root.getVector("ms")).getWriter();
+          strings.setPosition(row);
+          strings.startList();
+          for (String s : List.of("\u00e9" + n, "", "x")) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            try (ArrowBuf buf = allocator.buffer(Math.max(1, bytes.length))) {
+              buf.setBytes(0, bytes);
+              strings.varChar().writeVarChar(0, bytes.length, buf);
+            }
+          }
+          strings.endList();
+        }
+        ((ListVector) root.getVector("ml")).setValueCount(batchSize);
+        root.setRowCount(batchSize);
+        writer.writeBatch();
+      }
+      writer.end();
+    }
+  }
+
+  /** Keep in sync with writeValidatedStream in TestArrowStreamCodec. */
+  private static void writeValidated(Path path) throws IOException {
+    try (OutputStream out = new FileOutputStream(path.toFile())) {
+      org.apache.solr.common.util.ArrowStreamWriter writer =
+          new org.apache.solr.common.util.ArrowStreamWriter(out, 3);
+      writer.putMetadata("numFound", "5");
+      writer.addColumn("i", org.apache.solr.common.util.ArrowStreamWriter.Type.INT, false);
+      writer.addColumn("ml", org.apache.solr.common.util.ArrowStreamWriter.Type.LONG, true);
+      for (int i = 0; i < 5; i++) {
+        final int n = i;
+        writer.writeRow(
+            ew -> {
+              ew.put("id", "doc" + n);
+              if (n != 1) {
+                ew.put("i", n * 100000);
+                ew.put("l", n * 1000000000000L);
+                ew.put("f", n + 0.5f);
+                ew.put("d", n - 0.25d);
+                ew.put("b", n % 2 == 1);
+                ew.put("dt", new Date(1700000000000L + n));
+              }
+              if (n != 3) {
+                ew.put(
+                    "ml",
+                    (IteratorWriter)
+                        iw -> {
+                          for (int j = 0; j < n % 3; j++) {
+                            iw.add(j * 7L);
+                          }
+                        });
+              }
+              ew.put("ms", List.of("\u00e9" + n, "", "x"));
+            });
+      }
+      writer.finish();
+    }
+  }
+
+  /** Reads a stream with Arrow Java, fully validating each batch, and prints it. */
+  private static void validate(Path path) throws IOException {
+    try (BufferAllocator allocator = new RootAllocator();
+        ArrowStreamReader reader =
+            new ArrowStreamReader(new FileInputStream(path.toFile()), allocator)) {
+      VectorSchemaRoot root = reader.getVectorSchemaRoot();
+      System.out.println(root.getSchema());
+      while (reader.loadNextBatch()) {
+        ValueVectorUtility.validateFull(root);
+        System.out.print(root.contentToTSVString());
+      }
+    }
+  }
+}
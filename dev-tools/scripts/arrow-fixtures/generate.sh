@@ -0,0 +1,65 @@
+#!/bin/bash
+# Licensed to the Apache Software Foundation (ASF) under one or more
+# contributor license agreements.  See the NOTICE file distributed with
+# this work for additional information regarding copyright ownership.
+# The ASF licenses this file to You under the Apache License, Version 2.0
+# (the "License"); you may not use this file except in compliance with
+# the License.  You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Regenerates the Arrow IPC streams in solr/solrj/src/test-files/solrj that
+# TestArrowStreamCodec checks the Arrow codec of solrj against, see
+# ArrowFixtures.java. Arrow Java is downloaded from Maven Central rather than
+# being a test dependency of solrj.
+#
+# Usage: dev-tools/scripts/arrow-fixtures/generate.sh
+#
+# Any change of the bytes of arrow_validated.arrows must be reviewed, as the
+# writer is expected to be stable: compare the printed contents of both streams.
+
+set -euo pipefail
+
+ARROW_VERSION=15.0.2
+MAVEN_CENTRAL=https://repo1.maven.org/maven2
+ARTIFACTS=(
+  "org.apache.arrow:arrow-vector:${ARROW_VERSION}"
+  "org.apache.arrow:arrow-format:${ARROW_VERSION}"
+  "org.apache.arrow:arrow-memory-core:${ARROW_VERSION}"
+  "org.apache.arrow:arrow-memory-unsafe:${ARROW_VERSION}"
+  "com.google.flatbuffers:flatbuffers-java:23.5.26"
+  "com.fasterxml.jackson.core:jackson-annotations:2.16.0"
+  "com.fasterxml.jackson.core:jackson-core:2.16.0"
+  "com.fasterxml.jackson.core:jackson-databind:2.16.0"
+  "com.fasterxml.jackson.datatype:jackson-datatype-jsr310:2.16.0"
+  "commons-codec:commons-codec:1.16.0"
+  "org.slf4j:slf4j-api:2.0.9"
+  "org.slf4j:slf4j-nop:2.0.9"
+)
+
+SCRIPT_DIR=$(cd "$(dirname "$0")" && pwd)
+ROOT_DIR=$(cd "${SCRIPT_DIR}/../../.." && pwd)
+OUT_DIR="${ROOT_DIR}/solr/solrj/src/test-files/solrj"
+LIB_DIR=$(mktemp -d)
+trap 'rm -rf "${LIB_DIR}"' EXIT
+
+for artifact in "${ARTIFACTS[@]}"; do
+  IFS=: read -r group name version <<< "${artifact}"
+  jar="${name}-${version}.jar"
+  curl -sSfL -o "${LIB_DIR}/${jar}" \
+    "${MAVEN_CENTRAL}/${group//.//}/${name}/${version}/${jar}"
+done
+
+(cd "${ROOT_DIR}" && ./gradlew -q :solr:solrj:jar)
+SOLRJ_JAR=$(ls "${ROOT_DIR}"/solr/solrj/build/libs/solr-solrj-*.jar \
+  | grep -v -e sources -e javadoc | head -n 1)
+
+java --add-opens=java.base/java.nio=ALL-UNNAMED \
+  -cp "${SOLRJ_JAR}:${LIB_DIR}/*" \
+  "${SCRIPT_DIR}/ArrowFixtures.java" "${OUT_DIR}"
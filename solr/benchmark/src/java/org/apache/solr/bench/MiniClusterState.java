@@ -306,6 +306,15 @@ public class MiniClusterState {
       return random;
     }
 
+    /**
+     * Gets the cluster, for benchmarks working with its cores in-process.
+     *
+     * @return the cluster
+     */
+    public MiniSolrCloudCluster getCluster() {
+      return cluster;
+    }
+
     /**
      * Create collection.
      *
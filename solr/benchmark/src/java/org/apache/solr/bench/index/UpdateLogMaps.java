@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.bench.index;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.bench.MiniClusterState.MiniClusterBenchState;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.CommitUpdateCommand;
+import org.apache.solr.update.UpdateLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the UpdateLog map from unique keys to their latest update, which
+ * every add and every realtime get goes through. The updates are only logged, not indexed, so
+ * that the cost of the map and of the transaction log dominates. Run with different thread counts
+ * to see how adds and lookups scale, e.g.:
+ *
+ * <pre>
+ * ./jmh.sh UpdateLogMaps -t 1
+ * ./jmh.sh UpdateLogMaps -t 32
+ * </pre>
+ *
+ * The <code>addAndLookup</code> group runs realtime gets concurrently with adds, in the
+ * proportions of {@link GroupThreads}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+@Warmup(time = 5, iterations = 3)
+@Measurement(time = 10, iterations = 5)
+@Fork(value = 1)
+public class UpdateLogMaps {
+
+  static final String COLLECTION = "c1";
+
+  @State(Scope.Benchmark)
+  public static class BenchState {
+
+    @Param("100000")
+    int numIds;
+
+    private final AtomicLong versions = new AtomicLong();
+    private SolrCore core;
+    private SolrQueryRequest req;
+    private UpdateLog ulog;
+    private BytesRef[] ids;
+    private SolrInputDocument[] docs;
+
+    @Setup(Level.Trial)
+    public void setupTrial(MiniClusterBenchState miniClusterState) throws Exception {
+      miniClusterState.startMiniCluster(1);
+      miniClusterState.createCollection(COLLECTION, 1, 1);
+      CoreContainer cores = miniClusterState.getCluster().getJettySolrRunner(0).getCoreContainer();
+      core = cores.getCore(cores.getLoadedCoreNames().get(0));
+      req = new LocalSolrQueryRequest(core, new ModifiableSolrParams());
+      ulog = core.getUpdateHandler().getUpdateLog();
+
+      ids = new BytesRef[numIds];
+      docs = new SolrInputDocument[numIds];
+      for (int i = 0; i < numIds; i++) {
+        String id = Integer.toString(i);
+        ids[i] = new BytesRef(id);
+        docs[i] = new SolrInputDocument("id", id);
+      }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+      // all the ids are in the current map, so that lookups don't fall back to the index
+      for (int i = 0; i < numIds; i++) {
+        add(i);
+      }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() throws Exception {
+      // rolls the transaction log and clears the maps
+      core.getUpdateHandler().commit(new CommitUpdateCommand(req, false));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+      req.close();
+      core.close();
+    }
+
+    void add(int i) {
+      AddUpdateCommand cmd = new AddUpdateCommand(req);
+      cmd.solrDoc = docs[i];
+      cmd.setIndexedId(ids[i]);
+      cmd.setVersion(versions.incrementAndGet());
+      ulog.add(cmd);
+    }
+  }
+
+  @Benchmark
+  public void add(BenchState state) {
+    state.add(ThreadLocalRandom.current().nextInt(state.numIds));
+  }
+
+  @Benchmark
+  public Long lookupVersion(BenchState state) {
+    return state.ulog.lookupVersion(
+        state.ids[ThreadLocalRandom.current().nextInt(state.numIds)]);
+  }
+
+  @Benchmark
+  @Group("addAndLookup")
+  @GroupThreads(1)
+  public void groupAdd(BenchState state) {
+    add(state);
+  }
+
+  @Benchmark
+  @Group("addAndLookup")
+  @GroupThreads(3)
+  public Long groupLookupVersion(BenchState state) {
+    return lookupVersion(state);
+  }
+}
@@ -20,14 +20,21 @@ import static org.apache.solr.bench.Docs.docs;
 import static org.apache.solr.bench.generators.SourceDSL.integers;
 import static org.apache.solr.bench.generators.SourceDSL.strings;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.SplittableRandom;
 import java.util.concurrent.TimeUnit;
+import org.apache.lucene.tests.util.RamUsageTester;
 import org.apache.solr.bench.BaseBenchState;
 import org.apache.solr.bench.Docs;
 import org.apache.solr.bench.MiniClusterState;
 import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.search.facet.PercentileAgg;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -92,8 +99,21 @@ public class JsonFaceting {
     @Param({"3000"})
     int facetCard2;
 
+    // the digest of the percentiles, "avl" or "merging"
+    @Param({"avl", "merging"})
+    String digest;
+
+    // the percentiles of the percentile facet, and the number of its buckets checked against the
+    // exact percentiles
+    private static final double[] PERCENTILES = {50, 90, 99};
+    private static final int PERCENTILE_SAMPLE = 100;
+
     private ModifiableSolrParams params;
 
+    private ModifiableSolrParams statsParams;
+
+    private ModifiableSolrParams percentileParams;
+
     @Setup(Level.Trial)
     public void setup(
         BenchmarkParams benchmarkParams, MiniClusterState.MiniClusterBenchState miniClusterState)
@@ -158,9 +178,146 @@ public class JsonFaceting {
               + " , f8:{type:terms, field:'facet_s', limit:2, sort:'x desc', facet:{x:'countvals(int4_i_dv)'}  } "
               + '}');
 
+      // stats over all the documents, and over the buckets of query facets
+      statsParams = new ModifiableSolrParams();
+
+      MiniClusterState.params(
+          statsParams,
+          "q",
+          "*:*",
+          "rows",
+          "0",
+          "json.facet",
+          "{sum:'sum(int1_i_dv)', avg:'avg(int1_i_dv)', min:'min(int3_i_dv)'"
+              + " , max:'max(int3_i_dv)', sumsq:'sumsq(int1_i_dv)', stddev:'stddev(int3_i_dv)'"
+              + " , q1:{type:query, q:'facet_s:[a TO m]', facet:{x:'sum(int1_i_dv)',"
+              + " y:'avg(int3_i_dv)', z:'variance(int1_i_dv)'}  } "
+              + " , q2:{type:query, q:'facet_s:[m TO *]', facet:{x:'min(int1_i_dv)',"
+              + " y:'max(int3_i_dv)', z:'stddev(int1_i_dv)'}  } "
+              + '}');
+
+      // percentiles over many buckets, most of them with few values
+      percentileParams = new ModifiableSolrParams();
+
+      MiniClusterState.params(
+          percentileParams,
+          "q",
+          "*:*",
+          "rows",
+          "0",
+          "json.facet",
+          "{f1:{type:terms, field:'facet_s', limit:100, sort:'x desc', facet:{x:{type:func,"
+              + " func:'percentile(int1_i_dv,50,90,99)', digest:'"
+              + digest
+              + "'}}  } "
+              + '}');
+
+      checkPercentiles(miniClusterState);
+
       // MiniClusterState.log("params: " + params + "\n");
     }
 
+    /**
+     * Logs how far the percentiles of a sample of the buckets are from the exact ones, as the
+     * difference of their ranks among the values of the bucket, and the heap the digests of a slot
+     * take.
+     */
+    @SuppressWarnings("unchecked")
+    private void checkPercentiles(MiniClusterState.MiniClusterBenchState miniClusterState)
+        throws Exception {
+      String url = miniClusterState.nodes.get(0);
+      // buckets in index order, so that their sizes are typical
+      ModifiableSolrParams sampleParams =
+          MiniClusterState.params(
+              "q",
+              "*:*",
+              "rows",
+              "0",
+              "json.facet",
+              "{f1:{type:terms, field:'facet_s', limit:"
+                  + PERCENTILE_SAMPLE
+                  + ", sort:'index asc', refine:true, facet:{x:{type:func,"
+                  + " func:'percentile(int1_i_dv,50,90,99)', digest:'"
+                  + digest
+                  + "'}}  } "
+                  + '}');
+      NamedList<Object> facets =
+          (NamedList<Object>)
+              miniClusterState
+                  .client
+                  .requestWithBaseUrl(url, collection, new QueryRequest(sampleParams))
+                  .getResponse()
+                  .get("facets");
+      List<NamedList<Object>> buckets =
+          (List<NamedList<Object>>) ((NamedList<Object>) facets.get("f1")).get("buckets");
+
+      PercentileAgg.SlotDigests slotDigests =
+          new PercentileAgg.SlotDigests(
+              PercentileAgg.DigestType.fromString(digest),
+              PercentileAgg.DEFAULT_COMPRESSION,
+              buckets.size());
+      double maxRankError = 0;
+      double sumRankError = 0;
+      int numEstimates = 0;
+      long numValues = 0;
+      for (int slot = 0; slot < buckets.size(); slot++) {
+        NamedList<Object> bucket = buckets.get(slot);
+        int count = ((Number) bucket.get("count")).intValue();
+        ModifiableSolrParams valuesParams =
+            MiniClusterState.params(
+                "q",
+                "{!term f=facet_s v=$term}",
+                "term",
+                bucket.get("val").toString(),
+                "fl",
+                "int1_i_dv",
+                "rows",
+                Integer.toString(count));
+        SolrDocumentList docs =
+            miniClusterState
+                .client
+                .requestWithBaseUrl(url, collection, new QueryRequest(valuesParams))
+                .getResults();
+        double[] values =
+            docs.stream()
+                .map(doc -> doc.getFirstValue("int1_i_dv"))
+                .filter(Objects::nonNull)
+                .mapToDouble(value -> ((Number) value).doubleValue())
+                .sorted()
+                .toArray();
+        if (values.length == 0) {
+          continue;
+        }
+        for (double value : values) {
+          slotDigests.add(slot, value);
+        }
+        numValues += values.length;
+
+        List<?> estimates = (List<?>) bucket.get("x");
+        for (int i = 0; i < PERCENTILES.length; i++) {
+          double estimate = ((Number) estimates.get(i)).doubleValue();
+          int rank = Arrays.binarySearch(values, estimate);
+          rank = rank < 0 ? -rank - 1 : rank;
+          double rankError = Math.abs(rank / (double) values.length - PERCENTILES[i] / 100);
+          maxRankError = Math.max(maxRankError, rankError);
+          sumRankError += rankError;
+          numEstimates++;
+        }
+      }
+
+      MiniClusterState.log(
+          String.format(
+              Locale.ROOT,
+              "%s percentiles of %d buckets with %d values: mean rank error %.4f, max %.4f,"
+                  + " %d bytes of heap per slot",
+              digest,
+              buckets.size(),
+              numValues,
+              numEstimates == 0 ? 0 : sumRankError / numEstimates,
+              maxRankError,
+              RamUsageTester.ramUsed(slotDigests) / Math.max(1, buckets.size())));
+    }
+
     @State(Scope.Thread)
     public static class ThreadState {
 
@@ -192,4 +349,34 @@ public class JsonFaceting {
 
     return result;
   }
+
+  @Benchmark
+  @Timeout(time = 500, timeUnit = TimeUnit.SECONDS)
+  public Object jsonStats(
+      MiniClusterState.MiniClusterBenchState miniClusterState,
+      BenchState state,
+      BenchState.ThreadState threadState)
+      throws Exception {
+    final var url = miniClusterState.nodes.get(threadState.random.nextInt(state.nodeCount));
+    QueryRequest queryRequest = new QueryRequest(state.statsParams);
+    return miniClusterState
+        .client
+        .requestWithBaseUrl(url, state.collection, queryRequest)
+        .getResponse();
+  }
+
+  @Benchmark
+  @Timeout(time = 500, timeUnit = TimeUnit.SECONDS)
+  public Object jsonPercentiles(
+      MiniClusterState.MiniClusterBenchState miniClusterState,
+      BenchState state,
+      BenchState.ThreadState threadState)
+      throws Exception {
+    final var url = miniClusterState.nodes.get(threadState.random.nextInt(state.nodeCount));
+    QueryRequest queryRequest = new QueryRequest(state.percentileParams);
+    return miniClusterState
+        .client
+        .requestWithBaseUrl(url, state.collection, queryRequest)
+        .getResponse();
+  }
 }
@@ -18,10 +18,14 @@ package org.apache.solr.bench.search;
 
 import static org.apache.solr.bench.Docs.docs;
 import static org.apache.solr.bench.generators.SourceDSL.booleans;
+import static org.apache.solr.bench.generators.SourceDSL.dates;
 import static org.apache.solr.bench.generators.SourceDSL.integers;
+import static org.apache.solr.bench.generators.SourceDSL.longs;
 import static org.apache.solr.bench.generators.SourceDSL.strings;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
 import org.apache.solr.bench.Docs;
 import org.apache.solr.bench.MiniClusterState;
 import org.apache.solr.bench.MiniClusterState.MiniClusterBenchState;
@@ -30,17 +34,26 @@ import org.apache.solr.client.solrj.impl.NoOpResponseParser;
 import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.JavaBinResponseWriter;
+import org.apache.solr.response.SolrQueryResponse;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 
@@ -91,6 +104,79 @@ public class QueryResponseWriters {
     }
   }
 
+  /**
+   * Writes a javabin response in-process, leaving out the network and the query. Each operation is
+   * a document, so that the <code>gc.alloc.rate.norm</code> of <code>-prof gc</code> is the bytes
+   * allocated per written document.
+   */
+  @State(Scope.Benchmark)
+  public static class JavabinWriteState {
+    static final int ROWS = 1000;
+
+    @Param({"true", "false"})
+    boolean directWrite;
+
+    /** All stored fields, or the id and docValues fields. */
+    @Param({"*", "id,long1_l_dv,int1_i_dv,date1_dt_dv"})
+    String fl;
+
+    private SolrCore core;
+    private SolrQueryRequest req;
+    private SolrQueryResponse rsp;
+    private JavaBinResponseWriter writer;
+
+    @Setup(Level.Trial)
+    public void setup(MiniClusterBenchState miniClusterState) throws Exception {
+      miniClusterState.startMiniCluster(1);
+      miniClusterState.createCollection(collection, 1, 1);
+
+      Docs docGen =
+          docs()
+              .field("id", integers().incrementing())
+              .field("text2_ts", strings().basicLatinAlphabet().multi(5).ofLengthBetween(30, 64))
+              .field("bools_b", booleans().all())
+              .field("int1_is", integers().all())
+              .field("int1_i_dv", integers().all())
+              .field("long1_l_dv", longs().all())
+              .field("date1_dt_dv", dates().all());
+      miniClusterState.index(collection, docGen, ROWS);
+      miniClusterState.forceMerge(collection, 1);
+
+      CoreContainer cores = miniClusterState.getCluster().getJettySolrRunner(0).getCoreContainer();
+      core = cores.getCore(cores.getLoadedCoreNames().get(0));
+
+      ModifiableSolrParams params = new ModifiableSolrParams();
+      params.set(CommonParams.Q, "*:*");
+      params.set(CommonParams.FL, fl);
+      params.set(CommonParams.ROWS, ROWS);
+      req = new LocalSolrQueryRequest(core, params);
+      rsp = new SolrQueryResponse();
+      SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
+      try {
+        core.execute(core.getRequestHandler("/select"), req, rsp);
+      } finally {
+        SolrRequestInfo.clearRequestInfo();
+      }
+
+      writer = new JavaBinResponseWriter();
+      writer.init(
+          new NamedList<>(
+              Map.of(JavaBinResponseWriter.DIRECT_WRITE, String.valueOf(directWrite))));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+      req.close();
+      core.close();
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(JavabinWriteState.ROWS)
+  public void writeJavabin(JavabinWriteState state) throws IOException {
+    state.writer.write(OutputStream.nullOutputStream(), state.req, state.rsp);
+  }
+
   @Benchmark
   public Object query(
       BenchState benchState, MiniClusterState.MiniClusterBenchState miniClusterState)
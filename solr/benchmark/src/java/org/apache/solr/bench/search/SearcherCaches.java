@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.bench.search;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.distribution.ZipfDistribution;
+import org.apache.commons.math3.random.Well19937c;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.bench.BaseBenchState;
+import org.apache.solr.search.CaffeineCache;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.NoOpRegenerator;
+import org.apache.solr.search.OffHeapFilterCache;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SortedIntDocSet;
+import org.apache.solr.util.ConcurrentLRUCache;
+import org.apache.solr.util.IOFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cache implementations usable by a SolrIndexSearcher for lookups, inserts and
+ * autowarming, with filterCache-like keys and values drawn from a Zipfian distribution and many
+ * threads contending for the same cache. No index is involved, so only the cost of the caches is
+ * measured. Run with <code>-prof gc</code> to compare allocation rates, e.g. of the futures held
+ * by async caches:
+ *
+ * <pre>
+ * ./jmh.sh SearcherCaches -prof gc -p impl=caffeine,caffeineAsync -p workload=missHeavy
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@Warmup(time = 5, iterations = 3)
+@Measurement(time = 5, iterations = 5)
+@Threads(64)
+public class SearcherCaches {
+
+  /** The operations benchmarked, common to all the implementations. */
+  interface BenchCache {
+    DocSet get(Query key);
+
+    DocSet computeIfAbsent(Query key, IOFunction<Query, DocSet> mappingFunction)
+        throws IOException;
+
+    void put(Query key, DocSet value);
+
+    /** Creates an empty cache of the same kind, and warms it from this one. */
+    BenchCache warmed();
+
+    void close() throws IOException;
+  }
+
+  @State(Scope.Benchmark)
+  public static class BenchState {
+
+    @Param({"caffeine", "caffeineAsync", "concurrentLRU", "offHeap"})
+    String impl;
+
+    /**
+     * hitHeavy: the hot keys fit in the cache, so nearly all lookups are hits. missHeavy: the key
+     * space is much larger than the cache and flatter, so lookups often miss and evict.
+     */
+    @Param({"hitHeavy", "missHeavy"})
+    String workload;
+
+    @Param("1024")
+    int cacheSize;
+
+    /** Whether the caches are bounded by their number of entries or by their RAM usage. */
+    @Param({"size", "maxRamMB"})
+    String limit;
+
+    @Param("128")
+    int autowarmCount;
+
+    Query[] keys;
+    DocSet[] values;
+    BenchCache cache;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+      final int numKeys = "hitHeavy".equals(workload) ? cacheSize / 2 : cacheSize * 64;
+      final SplittableRandom random = new SplittableRandom(BaseBenchState.getRandomSeed());
+      keys = new Query[numKeys];
+      values = new DocSet[numKeys];
+      for (int i = 0; i < numKeys; i++) {
+        keys[i] = new TermQuery(new Term("field_s", "value" + i));
+        // small sets, so the values weigh about as much as the keys
+        int[] docs = new int[1 + random.nextInt(64)];
+        int doc = 0;
+        for (int j = 0; j < docs.length; j++) {
+          doc += 1 + random.nextInt(1000);
+          docs[j] = doc;
+        }
+        values[i] = new SortedIntDocSet(docs);
+      }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+      cache = newCache();
+      // fill the cache with the hottest keys
+      for (int i = 0; i < Math.min(cacheSize, keys.length); i++) {
+        cache.put(keys[i], values[i]);
+      }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() throws IOException {
+      cache.close();
+    }
+
+    BenchCache newCache() {
+      // entries weigh up to about 1KB, so the RAM limit allows at least as many entries
+      final long maxRamMB = Math.max(1, cacheSize / 1024);
+      switch (impl) {
+        case "caffeine":
+          return new SolrBenchCache(new CaffeineCache<>(), solrCacheArgs(false, maxRamMB));
+        case "caffeineAsync":
+          return new SolrBenchCache(new CaffeineCache<>(), solrCacheArgs(true, maxRamMB));
+        case "offHeap":
+          // only supports a RAM limit
+          Map<String, String> args = solrCacheArgs(false, maxRamMB);
+          args.remove("size");
+          args.put("maxRamMB", Long.toString(maxRamMB));
+          return new SolrBenchCache(new OffHeapFilterCache(), args);
+        case "concurrentLRU":
+          return new LRUBenchCache(this, maxRamMB);
+        default:
+          throw new IllegalArgumentException("Unknown cache implementation: " + impl);
+      }
+    }
+
+    private Map<String, String> solrCacheArgs(boolean async, long maxRamMB) {
+      Map<String, String> args = new HashMap<>();
+      if ("maxRamMB".equals(limit)) {
+        args.put("maxRamMB", Long.toString(maxRamMB));
+      } else {
+        args.put("size", Integer.toString(cacheSize));
+      }
+      args.put("async", Boolean.toString(async));
+      args.put("autowarmCount", Integer.toString(autowarmCount));
+      return args;
+    }
+  }
+
+  /** The sequence of keys looked up by a thread. */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    private static final int NUM_SAMPLES = 1 << 16;
+
+    int[] samples;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setupTrial(BenchState benchState) {
+      // less skewed when missing, so that the tail of the key space is actually reached
+      final double exponent = "hitHeavy".equals(benchState.workload) ? 1.1 : 0.8;
+      final ZipfDistribution zipf =
+          new ZipfDistribution(
+              new Well19937c(BaseBenchState.getRandomSeed() + Thread.currentThread().threadId()),
+              benchState.keys.length,
+              exponent);
+      samples = new int[NUM_SAMPLES];
+      for (int i = 0; i < NUM_SAMPLES; i++) {
+        samples[i] = zipf.sample() - 1;
+      }
+    }
+
+    int nextKey() {
+      final int key = samples[next];
+      next = (next + 1) & (NUM_SAMPLES - 1);
+      return key;
+    }
+  }
+
+  @Benchmark
+  public Object get(BenchState benchState, ThreadState threadState) {
+    return benchState.cache.get(benchState.keys[threadState.nextKey()]);
+  }
+
+  /** The filterCache access pattern: a lookup, inserting the value on a miss. */
+  @Benchmark
+  public Object computeIfAbsent(BenchState benchState, ThreadState threadState)
+      throws IOException {
+    final int key = threadState.nextKey();
+    return benchState.cache.computeIfAbsent(benchState.keys[key], k -> benchState.values[key]);
+  }
+
+  @Benchmark
+  public Object put(BenchState benchState, ThreadState threadState) {
+    final int key = threadState.nextKey();
+    benchState.cache.put(benchState.keys[key], benchState.values[key]);
+    return benchState.cache;
+  }
+
+  /** Autowarming a new cache from a full one, as done when opening a new searcher. */
+  @Benchmark
+  @Threads(1)
+  public Object warm(BenchState benchState) throws IOException {
+    final BenchCache warmed = benchState.cache.warmed();
+    warmed.close();
+    return warmed;
+  }
+
+  /** Adapts a {@link SolrCache}. */
+  static final class SolrBenchCache implements BenchCache {
+    private final SolrCache<Query, DocSet> cache;
+    private final Map<String, String> args;
+    private final Object persistence;
+
+    SolrBenchCache(SolrCache<Query, DocSet> cache, Map<String, String> args) {
+      this(cache, args, null);
+    }
+
+    SolrBenchCache(SolrCache<Query, DocSet> cache, Map<String, String> args, Object persistence) {
+      this.cache = cache;
+      this.args = args;
+      // like Solr, share the persistence object across the generations of a cache
+      this.persistence = cache.init(args, persistence, new NoOpRegenerator());
+      cache.setState(SolrCache.State.LIVE);
+    }
+
+    @Override
+    public DocSet get(Query key) {
+      return cache.get(key);
+    }
+
+    @Override
+    public DocSet computeIfAbsent(Query key, IOFunction<Query, DocSet> mappingFunction)
+        throws IOException {
+      return cache.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public void put(Query key, DocSet value) {
+      cache.put(key, value);
+    }
+
+    @Override
+    public BenchCache warmed() {
+      final SolrBenchCache warmed =
+          cache instanceof OffHeapFilterCache
+              ? new SolrBenchCache(new OffHeapFilterCache(), args, persistence)
+              : new SolrBenchCache(new CaffeineCache<>(), args, persistence);
+      warmed.cache.warm(null, cache);
+      return warmed;
+    }
+
+    @Override
+    public void close() throws IOException {
+      cache.close();
+    }
+  }
+
+  /** Adapts a {@link ConcurrentLRUCache}, warmed with its most recently accessed entries. */
+  static final class LRUBenchCache implements BenchCache {
+    private final BenchState benchState;
+    private final long maxRamMB;
+    private final ConcurrentLRUCache<Query, DocSet> cache;
+
+    LRUBenchCache(BenchState benchState, long maxRamMB) {
+      this.benchState = benchState;
+      this.maxRamMB = maxRamMB;
+      if ("maxRamMB".equals(benchState.limit)) {
+        final long maxRamBytes = maxRamMB * 1024L * 1024L;
+        cache = new ConcurrentLRUCache<>(maxRamBytes * 9 / 10, maxRamBytes, false, null);
+      } else {
+        cache =
+            new ConcurrentLRUCache<>(
+                benchState.cacheSize,
+                (int) (benchState.cacheSize * 0.9),
+                (int) (benchState.cacheSize * 0.95),
+                benchState.cacheSize,
+                false,
+                false,
+                null);
+      }
+      cache.setAlive(true);
+    }
+
+    @Override
+    public DocSet get(Query key) {
+      return cache.get(key);
+    }
+
+    @Override
+    public DocSet computeIfAbsent(Query key, IOFunction<Query, DocSet> mappingFunction) {
+      return cache.computeIfAbsent(
+          key,
+          k -> {
+            try {
+              return mappingFunction.apply(k);
+            } catch (IOException e) {
+              throw new RuntimeException(e);
+            }
+          });
+    }
+
+    @Override
+    public void put(Query key, DocSet value) {
+      cache.put(key, value);
+    }
+
+    @Override
+    public BenchCache warmed() {
+      final LRUBenchCache warmed = new LRUBenchCache(benchState, maxRamMB);
+      for (Map.Entry<Query, DocSet> entry :
+          cache.getLatestAccessedItems(benchState.autowarmCount).entrySet()) {
+        warmed.put(entry.getKey(), entry.getValue());
+      }
+      return warmed;
+    }
+
+    @Override
+    public void close() {
+      cache.destroy();
+    }
+  }
+}
@@ -121,6 +121,7 @@ import org.apache.solr.pkg.SolrPackageLoader;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestHandler;
 import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.ArrowResponseWriter;
 import org.apache.solr.response.CSVResponseWriter;
 import org.apache.solr.response.CborResponseWriter;
 import org.apache.solr.response.GeoJSONResponseWriter;
@@ -143,6 +144,7 @@ import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.ManagedIndexSchema;
 import org.apache.solr.schema.SimilarityFactory;
 import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.search.SegmentFilterCache;
 import org.apache.solr.search.SolrFieldCacheBean;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.ValueSourceParser;
@@ -259,6 +261,7 @@ public class SolrCore implements SolrInfoBean, Closeable {
 
   private final String metricTag = SolrMetricProducer.getUniqueMetricTag(this, null);
   private final SolrMetricsContext solrMetricsContext;
+  private final SegmentFilterCache segmentFilterCache;
 
   public volatile boolean searchEnabled = true;
   public volatile boolean indexEnabled = true;
@@ -1115,6 +1118,12 @@ public class SolrCore implements SolrInfoBean, Closeable {
       solrFieldCacheBean.initializeMetrics(solrMetricsContext, "core");
       infoRegistry.put("fieldCache", solrFieldCacheBean);
 
+      segmentFilterCache = SegmentFilterCache.create(solrConfig.filterCacheConfig);
+      if (segmentFilterCache != null) {
+        segmentFilterCache.initializeMetrics(solrMetricsContext, "core");
+        infoRegistry.put("segmentFilterCache", segmentFilterCache);
+      }
+
       this.maxWarmingSearchers = solrConfig.maxWarmingSearchers;
       this.slowQueryThresholdMillis = solrConfig.slowQueryThresholdMillis;
 
@@ -1391,6 +1400,14 @@ public class SolrCore implements SolrInfoBean, Closeable {
     return metricTag;
   }
 
+  /**
+   * @return the core-lifetime per-segment filter cache, or null if it is not enabled
+   * @see SegmentFilterCache
+   */
+  public SegmentFilterCache getSegmentFilterCache() {
+    return segmentFilterCache;
+  }
+
   @Override
   public SolrMetricsContext getSolrMetricsContext() {
     return solrMetricsContext;
@@ -3032,6 +3049,7 @@ public class SolrCore implements SolrInfoBean, Closeable {
     m.put("raw", new RawResponseWriter());
     m.put(CommonParams.JAVABIN, new JavaBinResponseWriter());
     m.put("cbor", new CborResponseWriter());
+    m.put(CommonParams.ARROW, new ArrowResponseWriter());
     m.put("csv", new CSVResponseWriter());
     m.put("schema.xml", new SchemaXmlResponseWriter());
     m.put("smile", new SmileResponseWriter());
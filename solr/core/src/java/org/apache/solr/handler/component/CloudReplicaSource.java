@@ -48,6 +48,7 @@ class CloudReplicaSource implements ReplicaSource {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private String[] slices;
+  private String[] collections;
   private List<String>[] replicas;
 
   private CloudReplicaSource(Builder builder) {
@@ -90,9 +91,11 @@ class CloudReplicaSource implements ReplicaSource {
     }
 
     this.slices = sliceMap.keySet().toArray(new String[0]);
+    this.collections = new String[slices.length];
     this.replicas = newReplicasArray(slices.length);
     for (int i = 0; i < slices.length; i++) {
       String sliceName = slices[i];
+      collections[i] = sliceMap.get(sliceName).getCollection();
       replicas[i] = findReplicas(builder, null, clusterState, sliceMap.get(sliceName));
     }
   }
@@ -100,6 +103,7 @@ class CloudReplicaSource implements ReplicaSource {
   private void withShardsParam(Builder builder, String shardsParam) {
     List<String> sliceOrUrls = StrUtils.splitSmart(shardsParam, ",", true);
     this.slices = new String[sliceOrUrls.size()];
+    this.collections = new String[sliceOrUrls.size()];
     this.replicas = newReplicasArray(sliceOrUrls.size());
 
     ClusterState clusterState = builder.zkStateReader.getClusterState();
@@ -109,6 +113,7 @@ class CloudReplicaSource implements ReplicaSource {
       if (sliceOrUrl.indexOf('/') < 0) {
         // this is a logical shard
         this.slices[i] = sliceOrUrl;
+        this.collections[i] = builder.collection;
         replicas[i] =
             findReplicas(
                 builder,
@@ -207,6 +212,12 @@ class CloudReplicaSource implements ReplicaSource {
     return replicas[sliceNumber];
   }
 
+  /** Get the collection of a 0-indexed slice number, or null if the slice was given as urls. */
+  public String getCollectionBySlice(int sliceNumber) {
+    assert sliceNumber >= 0 && sliceNumber < collections.length;
+    return collections[sliceNumber];
+  }
+
   @Override
   public int getSliceCount() {
     return slices.length;
@@ -116,6 +116,11 @@ public class HttpShardHandler extends ShardHandler {
   private final Map<String, List<String>> shardToURLs;
   protected LBHttp2SolrClient<Http2SolrClient> lbClient;
 
+  // maps the urls of the replicas to their collection, set by prepDistributed in SolrCloud. Shard
+  // requests are hedged by the latencies of their own collection, even through an alias or with
+  // several collections.
+  private final Map<String, String> replicaCollections;
+
   public HttpShardHandler(HttpShardHandlerFactory httpShardHandlerFactory) {
     this.httpShardHandlerFactory = httpShardHandlerFactory;
     this.lbClient = httpShardHandlerFactory.loadbalancer;
@@ -128,6 +133,7 @@ public class HttpShardHandler extends ShardHandler {
     // This is primarily to keep track of what order we should use to query the replicas of a shard
     // so that we use the same replica for all phases of a distributed request.
     shardToURLs = new HashMap<>();
+    replicaCollections = new HashMap<>();
   }
 
   /**
@@ -280,7 +286,7 @@ public class HttpShardHandler extends ShardHandler {
       SimpleSolrResponse ssr,
       ShardResponse srsp,
       long startTimeNS) {
-    CompletableFuture<LBSolrClient.Rsp> future = this.lbClient.requestAsync(lbReq);
+    CompletableFuture<LBSolrClient.Rsp> future = requestAsync(shard, lbReq);
     future.whenComplete(new ShardRequestCallback(ssr, srsp, startTimeNS, sreq, shard, params));
     synchronized (FUTURE_MAP_LOCK) {
       // we want to ensure that there is a future in flight before incrementing
@@ -292,6 +298,27 @@ public class HttpShardHandler extends ShardHandler {
     }
   }
 
+  /**
+   * Sends the request to the replicas of a shard. If the shard takes longer to respond than the
+   * recent shard requests to its collection usually do, the request is hedged: it is sent to
+   * another replica too, and the first response is used. See {@link
+   * LBHttp2SolrClient#requestAsync(LBSolrClient.Req, long, TimeUnit)}.
+   */
+  protected CompletableFuture<LBSolrClient.Rsp> requestAsync(
+      String shard, LBSolrClient.Req lbReq) {
+    long hedgeDelay = httpShardHandlerFactory.getHedgeDelayMillis(getCollection(shard));
+    return lbClient.requestAsync(lbReq, hedgeDelay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the collection of the replicas of a shard, or null if it isn't known, such as for the
+   * urls of the shards param.
+   */
+  private String getCollection(String shard) {
+    int end = shard.indexOf('|');
+    return replicaCollections.get(end < 0 ? shard : shard.substring(0, end));
+  }
+
   /** Subclasses could modify the request based on the shard */
   @SuppressWarnings("unused")
   protected QueryRequest createQueryRequest(
@@ -397,7 +424,7 @@ public class HttpShardHandler extends ShardHandler {
     if (zkController != null) {
       boolean onlyNrt = Boolean.TRUE == req.getContext().get(ONLY_NRT_REPLICAS);
 
-      replicaSource =
+      CloudReplicaSource cloudReplicaSource =
           new CloudReplicaSource.Builder()
               .params(params)
               .zkStateReader(zkController.getZkStateReader())
@@ -406,6 +433,15 @@ public class HttpShardHandler extends ShardHandler {
               .collection(cloudDescriptor.getCollectionName())
               .onlyNrt(onlyNrt)
               .build();
+      replicaSource = cloudReplicaSource;
+      for (int i = 0; i < cloudReplicaSource.getSliceCount(); i++) {
+        String sliceCollection = cloudReplicaSource.getCollectionBySlice(i);
+        if (sliceCollection != null) {
+          for (String url : cloudReplicaSource.getReplicasBySlice(i)) {
+            replicaCollections.put(url, sliceCollection);
+          }
+        }
+      }
       rb.slices = replicaSource.getSliceNames().toArray(new String[replicaSource.getSliceCount()]);
 
       if (canShortCircuit(rb.slices, onlyNrt, params, cloudDescriptor)) {
@@ -531,6 +567,7 @@ public class HttpShardHandler extends ShardHandler {
         srsp.setShardAddress(rsp.getServer());
         ssr.elapsedTime =
             TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTimeNS, TimeUnit.NANOSECONDS);
+        httpShardHandlerFactory.recordShardLatency(getCollection(shard), ssr.elapsedTime);
         responses.add(HttpShardHandler.this.transformResponse(sreq, srsp, shard));
       } else if (throwable != null) {
         ssr.elapsedTime =
@@ -18,23 +18,30 @@ package org.apache.solr.handler.component;
 
 import static org.apache.solr.util.stats.InstrumentedHttpListenerFactory.KNOWN_METRIC_NAME_STRATEGIES;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.SlidingWindowReservoir;
 import java.lang.invoke.MethodHandles;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.impl.EndpointLatencyTracker;
 import org.apache.solr.client.solrj.impl.Http2SolrClient;
 import org.apache.solr.client.solrj.impl.HttpClientUtil;
 import org.apache.solr.client.solrj.impl.LBHttp2SolrClient;
 import org.apache.solr.client.solrj.impl.LBSolrClient;
 import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.routing.AdaptiveReplicaListTransformer;
 import org.apache.solr.client.solrj.routing.AffinityReplicaListTransformerFactory;
 import org.apache.solr.client.solrj.routing.ReplicaListTransformer;
 import org.apache.solr.client.solrj.routing.ReplicaListTransformerFactory;
@@ -54,6 +61,7 @@ import org.apache.solr.common.util.URLUtil;
 import org.apache.solr.core.PluginInfo;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.metrics.MetricsMap;
 import org.apache.solr.metrics.SolrMetricManager;
 import org.apache.solr.metrics.SolrMetricProducer;
 import org.apache.solr.metrics.SolrMetricsContext;
@@ -93,8 +101,13 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
   int permittedLoadBalancerRequestsMinimumAbsolute = 0;
   float permittedLoadBalancerRequestsMaximumFraction = 1.0f;
   boolean accessPolicy = false;
+  float hedgePercentile = 0f;
+  int hedgeMinDelay = 10;
   private SolrMetricsContext solrMetricsContext;
 
+  // the recent latencies of the shard requests, by collection
+  private final Map<String, ShardLatencies> shardLatencies = new ConcurrentHashMap<>();
+
   private String scheme = null;
 
   private InstrumentedHttpListenerFactory.NameStrategy metricNameStrategy;
@@ -104,6 +117,9 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
   private RequestReplicaListTransformerGenerator requestReplicaListTransformerGenerator =
       new RequestReplicaListTransformerGenerator();
 
+  // tracks the latencies of the replicas for the "adaptive" replica routing, null if not configured
+  private EndpointLatencyTracker latencyTracker;
+
   // URL scheme to be used in distributed search.
   static final String INIT_URL_SCHEME = "urlScheme";
 
@@ -128,6 +144,12 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
   // Configure if the threadpool favours fairness over throughput
   static final String INIT_FAIRNESS_POLICY = "fairnessPolicy";
 
+  // The percentile of the recent shard latencies of a collection after which a request is hedged
+  static final String HEDGE_PERCENTILE = "hedgePercentile";
+
+  // The minimum time in milliseconds to wait for a shard before hedging the request
+  static final String HEDGE_MIN_DELAY = "hedgeMinDelay";
+
   /** Get {@link ShardHandler} that uses the default http client. */
   @Override
   public ShardHandler getShardHandler() {
@@ -179,6 +201,19 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
             defaultRouting = checkDefaultReplicaListTransformer(c, key, defaultRouting);
             stableRltFactory = new AffinityReplicaListTransformerFactory(c);
             break;
+          case ShardParams.REPLICA_ADAPTIVE:
+            NamedList<?> a = getNamedList(e.getValue());
+            defaultRouting = checkDefaultReplicaListTransformer(a, key, defaultRouting);
+            Number alpha = (Number) a.get("alpha");
+            Number decayHalfLife = (Number) a.get("decayHalfLife");
+            latencyTracker =
+                new EndpointLatencyTracker(
+                    alpha == null ? EndpointLatencyTracker.DEFAULT_ALPHA : alpha.doubleValue(),
+                    decayHalfLife == null
+                        ? EndpointLatencyTracker.DEFAULT_DECAY_HALF_LIFE_MS
+                        : decayHalfLife.longValue(),
+                    TimeUnit.MILLISECONDS);
+            break;
           default:
             throw new IllegalArgumentException("invalid replica routing spec name: " + key);
         }
@@ -189,6 +224,10 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
     }
     if (ShardParams.REPLICA_STABLE.equals(defaultRouting)) {
       defaultRltFactory = stableRltFactory;
+    } else if (ShardParams.REPLICA_ADAPTIVE.equals(defaultRouting)) {
+      final ReplicaListTransformer adaptiveRlt =
+          new AdaptiveReplicaListTransformer(latencyTracker, r);
+      defaultRltFactory = (configSpec, requestParams, fallback) -> adaptiveRlt;
     } else {
       defaultRltFactory = RequestReplicaListTransformerGenerator.RANDOM_RLTF;
     }
@@ -215,7 +254,12 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
    *   <li>fairnessPolicy - true if the thread pool should prioritize fairness over throughput,
    *       false otherwise
    *   <li>replicaRouting - a NamedList of preferences used to select the order in which replicas
-   *       for a shard will be used by created ShardHandlers
+   *       for a shard will be used by created ShardHandlers: "random", "stable", or "adaptive" to
+   *       prefer the replicas with the lowest expected latency
+   *   <li>hedgePercentile - the percentile (0-100) of the recent latencies of the shard requests to
+   *       a collection after which a request is also sent to another replica of the shard. Hedging
+   *       is disabled by default.
+   *   <li>hedgeMinDelay - the minimum time in milliseconds to wait before hedging a request
    * </ul>
    *
    * @param info configuration for the created factory, typically reflecting the contents of a
@@ -260,6 +304,12 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
             permittedLoadBalancerRequestsMaximumFraction,
             sb);
     this.accessPolicy = getParameter(args, INIT_FAIRNESS_POLICY, accessPolicy, sb);
+    this.hedgePercentile = getParameter(args, HEDGE_PERCENTILE, hedgePercentile, sb);
+    this.hedgeMinDelay = getParameter(args, HEDGE_MIN_DELAY, hedgeMinDelay, sb);
+    if (hedgePercentile < 0 || hedgePercentile > 100) {
+      throw new SolrException(
+          ErrorCode.SERVER_ERROR, HEDGE_PERCENTILE + " must be between 0 and 100");
+    }
 
     if (args != null && args.get("shardsWhitelist") != null) {
       log.warn(
@@ -314,9 +364,12 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
             .withMaxConnectionsPerHost(maxConnectionsPerHost)
             .build();
     this.defaultClient.addListenerFactory(this.httpListenerFactory);
-    this.loadbalancer = new LBHttp2SolrClient.Builder<Http2SolrClient>(defaultClient).build();
 
     initReplicaListTransformers(getParameter(args, "replicaRouting", null, sb));
+    this.loadbalancer =
+        new LBHttp2SolrClient.Builder<Http2SolrClient>(defaultClient)
+            .withLatencyTracker(latencyTracker)
+            .build();
 
     log.debug("created with {}", sb);
   }
@@ -380,6 +433,51 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
     return new LBSolrClient.Req(req, endpoints, numServersToTry);
   }
 
+  /**
+   * Returns how long a shard handler should wait for the response of a shard of the collection
+   * before hedging the request, or -1 if it shouldn't: hedging is disabled or there aren't enough
+   * recent latencies yet.
+   */
+  long getHedgeDelayMillis(String collection) {
+    if (hedgePercentile <= 0 || collection == null) {
+      return -1;
+    }
+    ShardLatencies latencies = shardLatencies.get(collection);
+    return latencies == null ? -1 : latencies.hedgeDelay;
+  }
+
+  /** Records the latency of a successful shard request to the collection, for hedging. */
+  void recordShardLatency(String collection, long elapsedMillis) {
+    if (hedgePercentile <= 0 || collection == null) {
+      return;
+    }
+    shardLatencies
+        .computeIfAbsent(collection, c -> new ShardLatencies())
+        .update(elapsedMillis, hedgePercentile / 100d, hedgeMinDelay);
+  }
+
+  /**
+   * The latencies of the last shard requests to a collection. The hedging delay derived from them
+   * is only refreshed every so many requests, as it sorts them.
+   */
+  private static class ShardLatencies {
+    private static final int WINDOW_SIZE = 1024;
+    private static final int MIN_SAMPLES = 128;
+    private static final int REFRESH_INTERVAL = 64;
+
+    private final Histogram histogram = new Histogram(new SlidingWindowReservoir(WINDOW_SIZE));
+    private final AtomicLong count = new AtomicLong();
+    private volatile long hedgeDelay = -1;
+
+    void update(long elapsedMillis, double quantile, long minDelay) {
+      histogram.update(elapsedMillis);
+      long count = this.count.incrementAndGet();
+      if (count >= MIN_SAMPLES && count % REFRESH_INTERVAL == 0) {
+        hedgeDelay = Math.max(minDelay, (long) histogram.getSnapshot().getValue(quantile));
+      }
+    }
+  }
+
   /**
    * Creates a list of urls for the given shard.
    *
@@ -441,6 +539,11 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory
     solrMetricsContext = parentContext.getChildContext(this);
     String expandedScope = SolrMetricManager.mkName(scope, SolrInfoBean.Category.QUERY.name());
     httpListenerFactory.initializeMetrics(solrMetricsContext, expandedScope);
+    if (latencyTracker != null) {
+      MetricsMap replicaScores =
+          new MetricsMap(ew -> latencyTracker.getScores().forEach(ew::putNoEx));
+      solrMetricsContext.gauge(replicaScores, true, "replicaScores", expandedScope);
+    }
     commExecutor =
         MetricUtils.instrumentedExecutorService(
             commExecutor,
@@ -26,8 +26,10 @@ import com.carrotsearch.hppc.LongSet;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -44,13 +46,16 @@ import org.apache.lucene.index.DocValuesType;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.solr.client.solrj.SolrResponse;
@@ -818,6 +823,67 @@ public class RealTimeGetComponent extends SearchComponent {
     return sid;
   }
 
+  /**
+   * Obtains the documents with the given ids from the given searcher, as {@link
+   * #getInputDocument} with {@link Resolution#DOC} would for ids not in the tlog, but in a single
+   * pass: the ids are sorted and looked up with one {@link TermsEnum} per segment, then the
+   * documents are fetched in index order, so that their stored fields are decompressed once per
+   * block rather than once per document.
+   *
+   * @param onlyTheseFields If not-null, this limits the fields that are returned.
+   * @return the documents found, by id
+   */
+  public static Map<BytesRef, SolrInputDocument> getInputDocumentsFromIndex(
+      SolrCore core,
+      SolrIndexSearcher searcher,
+      Collection<BytesRef> ids,
+      Set<String> onlyTheseFields)
+      throws IOException {
+    final IndexSchema schema = core.getLatestSchema();
+    final String idField = schema.getUniqueKeyField().getName();
+    final BytesRef[] sortedIds = ids.toArray(new BytesRef[0]);
+    Arrays.sort(sortedIds);
+    final int[] docIds = new int[sortedIds.length];
+    Arrays.fill(docIds, -1);
+
+    int remaining = sortedIds.length;
+    PostingsEnum postings = null;
+    for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+      if (remaining == 0) break;
+      final Terms terms = leaf.reader().terms(idField);
+      if (terms == null) continue;
+      final TermsEnum te = terms.iterator();
+      final Bits liveDocs = leaf.reader().getLiveDocs();
+      for (int i = 0; i < sortedIds.length; i++) {
+        if (docIds[i] != -1 || !te.seekExact(sortedIds[i])) continue;
+        postings = te.postings(postings, PostingsEnum.NONE);
+        for (int doc = postings.nextDoc();
+            doc != DocIdSetIterator.NO_MORE_DOCS;
+            doc = postings.nextDoc()) {
+          if (liveDocs == null || liveDocs.get(doc)) {
+            docIds[i] = leaf.docBase + doc;
+            remaining--;
+            break;
+          }
+        }
+      }
+    }
+
+    // fetch in index order, with a single fetcher to reuse the decompressed blocks
+    final Integer[] order = new Integer[sortedIds.length];
+    for (int i = 0; i < order.length; i++) order[i] = i;
+    Arrays.sort(order, Comparator.comparingInt(i -> docIds[i]));
+    final SolrDocumentFetcher docFetcher = searcher.getDocFetcher();
+    final SolrReturnFields returnFields = makeReturnFields(core, onlyTheseFields, Resolution.DOC);
+    final Map<BytesRef, SolrInputDocument> docs = CollectionUtil.newHashMap(sortedIds.length);
+    for (int i : order) {
+      if (docIds[i] == -1) continue;
+      SolrDocument solrDoc = docFetcher.solrDoc(docIds[i], returnFields);
+      docs.put(sortedIds[i], toSolrInputDocument(solrDoc, schema)); // filters copy-field targets
+    }
+    return docs;
+  }
+
   private static boolean hasRootTerm(SolrIndexSearcher searcher, BytesRef rootIdBytes)
       throws IOException {
     final String fieldName = IndexSchema.ROOT_FIELD_NAME;
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import org.apache.solr.common.IteratorWriter;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.common.PushWriter;
+import org.apache.solr.common.util.ArrowStreamWriter;
+import org.apache.solr.response.ArrowResponseWriter;
+import org.apache.solr.schema.SchemaField;
+
+/**
+ * Writes the response of {@link ExportWriter} as an Arrow stream: the exported docs are the rows of
+ * the stream, the {@link FieldWriter}s putting their values straight into its columns, and the
+ * number of matches goes to the custom metadata of the schema.
+ */
+class ArrowPushWriter implements PushWriter {
+  private final ArrowStreamWriter out;
+
+  private final IteratorWriter.ItemWriter docsWriter =
+      new IteratorWriter.ItemWriter() {
+        @Override
+        public IteratorWriter.ItemWriter add(Object o) throws IOException {
+          // nothing can be written after a failure
+          if (out.isFinished()) {
+            return this;
+          }
+          if (o instanceof MapWriter) {
+            out.writeRow((MapWriter) o);
+          } else if (o instanceof Map) {
+            out.writeRow(
+                ew -> {
+                  for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
+                    ew.put(entry.getKey().toString(), entry.getValue());
+                  }
+                });
+          }
+          return this;
+        }
+      };
+
+  private final MapWriter.EntryWriter resultWriter =
+      new MapWriter.EntryWriter() {
+        @Override
+        public MapWriter.EntryWriter put(CharSequence k, Object v) throws IOException {
+          if ("numFound".contentEquals(k)) {
+            if (!out.isFinished()) {
+              out.putMetadata(ArrowResponseWriter.NUM_FOUND_METADATA_KEY, String.valueOf(v));
+            }
+          } else if ("docs".contentEquals(k)) {
+            if (v instanceof IteratorWriter) {
+              ((IteratorWriter) v).writeIter(docsWriter);
+            } else if (v instanceof Iterable) {
+              for (Object doc : (Iterable<?>) v) {
+                docsWriter.add(doc);
+              }
+            }
+          }
+          return this;
+        }
+      };
+
+  private final MapWriter.EntryWriter responseWriter =
+      new MapWriter.EntryWriter() {
+        @Override
+        public MapWriter.EntryWriter put(CharSequence k, Object v) throws IOException {
+          // the response header is left out
+          if ("response".contentEquals(k) && v instanceof MapWriter) {
+            ((MapWriter) v).writeMap(resultWriter);
+          }
+          return this;
+        }
+      };
+
+  ArrowPushWriter(OutputStream os, int batchSize) {
+    this.out = new ArrowStreamWriter(os, batchSize);
+  }
+
+  /** Declares the column of an exported field, rather than inferring it from the first batch. */
+  void addColumn(SchemaField field) {
+    out.addColumn(
+        field.getName(),
+        ArrowResponseWriter.columnType(field.getType()),
+        field.multiValued());
+  }
+
+  @Override
+  public void writeMap(MapWriter mw) throws IOException {
+    mw.writeMap(responseWriter);
+  }
+
+  @Override
+  public void writeIterator(IteratorWriter iw) throws IOException {
+    iw.writeIter(docsWriter);
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.finish();
+  }
+}
@@ -56,6 +56,7 @@ class ExportBuffers {
   final IteratorWriter.ItemWriter writer;
   final CyclicBarrier barrier;
   final int totalHits;
+  final MergeIterator mergeIterator;
   Buffer fillBuffer;
   Buffer outputBuffer;
   Runnable filler;
@@ -96,11 +97,12 @@ class ExportBuffers {
     outputBuffer = bufferTwo;
     SortDoc writerSortDoc = exportWriter.getSortDoc(searcher, sort.getSort());
 
-    MergeIterator mergeIterator = exportWriter.getMergeIterator(leaves, sets, writerSortDoc);
-
     bufferOne.initialize(writerSortDoc);
     bufferTwo.initialize(writerSortDoc);
     barrier = new CyclicBarrier(2, () -> swapBuffers());
+
+    // last, since its sorting threads are only stopped by shutdownNow()
+    mergeIterator = exportWriter.getMergeIterator(leaves, sets, writerSortDoc);
     filler =
         () -> {
           try {
@@ -200,6 +202,7 @@ class ExportBuffers {
       service.shutdownNow();
       service = null;
     }
+    mergeIterator.close();
     shutDown = true;
   }
 
@@ -31,6 +31,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedDocValues;
@@ -54,11 +59,15 @@ import org.apache.solr.common.PushWriter;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.params.StreamParams;
+import org.apache.solr.common.util.ArrowStreamWriter;
+import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.ArrowResponseWriter;
 import org.apache.solr.response.JSONResponseWriter;
 import org.apache.solr.response.JacksonJsonWriter;
 import org.apache.solr.response.JavaBinResponseWriter;
@@ -93,12 +102,20 @@ import org.slf4j.LoggerFactory;
  * that haven't been sent yet and stores them in a Priority Queue. They are then exported (written
  * across the wire) and marked as sent (unset in the bitmap). This process repeats until all
  * matching documents have been sent.
+ *
+ * <p>With {@link #THREADS_PARAM} greater than 1, the passes over the segments run on worker
+ * threads: while the smallest docs of each segment are merged and written, the next batch of each
+ * segment is selected and sorted in parallel.
+ *
+ * <p>With <code>wt=arrow</code> the documents are written as the rows of an Arrow stream, see
+ * {@link ArrowPushWriter}.
  */
 public class ExportWriter implements SolrCore.RawWriter, Closeable {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   public static final String BATCH_SIZE_PARAM = "batchSize";
   public static final String QUEUE_SIZE_PARAM = "queueSize";
+  public static final String THREADS_PARAM = "exportThreads";
 
   public static final int DEFAULT_BATCH_SIZE = 30000;
   public static final int DEFAULT_QUEUE_SIZE = 150000;
@@ -121,6 +138,12 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
   final int batchSize;
   // The max combined size of the segment level priority queues.
   private int priorityQueueSize;
+  // The number of threads sorting the segments, 1 to sort them on the fill thread.
+  final int numThreads;
+  // Time spent in each phase of the export, across all threads
+  final LongAdder sortNanos = new LongAdder();
+  final LongAdder mergeNanos = new LongAdder();
+  final LongAdder writeNanos = new LongAdder();
   StreamExpression streamExpression;
   StreamContext streamContext;
   List<FieldWriter> fieldWriters;
@@ -144,12 +167,18 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     this.metricsPath = metricsPath;
     this.priorityQueueSize = req.getParams().getInt(QUEUE_SIZE_PARAM, DEFAULT_QUEUE_SIZE);
     this.batchSize = DEFAULT_BATCH_SIZE;
+    this.numThreads =
+        Math.min(
+            Math.max(1, req.getParams().getInt(THREADS_PARAM, 1)),
+            Runtime.getRuntime().availableProcessors());
   }
 
   @Override
   public String getContentType() {
     if ("javabin".equals(wt)) {
       return JavaBinResponseParser.JAVABIN_CONTENT_TYPE;
+    } else if (CommonParams.ARROW.equals(wt)) {
+      return ArrowStreamWriter.CONTENT_TYPE;
     } else return "json";
   }
 
@@ -202,6 +231,8 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     } else if (rw instanceof JavaBinResponseWriter) {
       // todo add support for other writers after testing
       writer = new JavaBinCodec(os, null);
+    } else if (rw instanceof ArrowResponseWriter) {
+      writer = new ArrowPushWriter(os, batchSize);
     } else {
       respWriter = new OutputStreamWriter(os, StandardCharsets.UTF_8);
       writer = JSONResponseWriter.getPushWriter(respWriter, req, res);
@@ -401,6 +432,8 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
         tupleStream = createTupleStream();
         tupleStream.open();
       } catch (Exception e) {
+        // run() won't shut the buffers down
+        buffers.shutdownNow();
         buffers.getWriter().add((MapWriter) ew -> Tuple.EXCEPTION(e, true).writeMap(ew));
         return;
       }
@@ -433,6 +466,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
             return true;
           });
       tupleStream.close();
+      recordTimings();
     } else {
       buffers.run(
           () -> {
@@ -446,6 +480,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
                 log.debug("--- writer interrupted");
                 break;
               }
+              long startWrite = System.nanoTime();
               for (int i = 0; i <= buffer.outDocsIndex; ++i) {
                 // we're using the raw writer here because there's no potential
                 // reduction in the number of output items, unlike when using
@@ -453,6 +488,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
                 final SortDoc currentDoc = buffer.outDocs[i];
                 writer.add((MapWriter) ew -> writeDoc(currentDoc, leaves, ew, fieldWriters));
               }
+              writeNanos.add(System.nanoTime() - startWrite);
               // log.debug("--- writer exchanging from {}", buffer);
               long startExchangeBuffers = System.nanoTime();
               buffers.exchangeBuffers();
@@ -467,6 +503,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
             }
             return true;
           });
+      recordTimings();
       if (null != buffers.getError()) {
         throw new IOException(buffers.getError().getMessage(), buffers.getError());
       }
@@ -474,7 +511,34 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
   }
 
   void fillOutDocs(MergeIterator mergeIterator, ExportBuffers.Buffer buffer) throws IOException {
+    long start = System.nanoTime();
     transferBatchToBufferForOutput(mergeIterator, buffer);
+    mergeNanos.add(System.nanoTime() - start);
+  }
+
+  /**
+   * Records the time spent selecting and sorting the docs of the segments, merging them into the
+   * output buffers (including waiting for the sorting threads), and writing them.
+   */
+  private void recordTimings() {
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "Export phases (ms): sort={}, merge={}, write={}",
+          TimeUnit.NANOSECONDS.toMillis(sortNanos.sum()),
+          TimeUnit.NANOSECONDS.toMillis(mergeNanos.sum()),
+          TimeUnit.NANOSECONDS.toMillis(writeNanos.sum()));
+    }
+    if (solrMetricsContext != null) {
+      solrMetricsContext
+          .timer("sortTime", metricsPath)
+          .update(sortNanos.sum(), TimeUnit.NANOSECONDS);
+      solrMetricsContext
+          .timer("mergeTime", metricsPath)
+          .update(mergeNanos.sum(), TimeUnit.NANOSECONDS);
+      solrMetricsContext
+          .timer("writeTime", metricsPath)
+          .update(writeNanos.sum(), TimeUnit.NANOSECONDS);
+    }
   }
 
   void writeDoc(
@@ -495,6 +559,9 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     DocValuesIteratorCache dvIterCache = new DocValuesIteratorCache(req.getSearcher(), false);
 
     SolrReturnFields solrReturnFields = new SolrReturnFields(fields, req);
+    // the tuples of a streaming expression have columns of their own
+    boolean declareArrowColumns =
+        this.writer instanceof ArrowPushWriter && req.getParams().get(StreamParams.EXPR) == null;
 
     List<FieldWriter> writers = new ArrayList<>();
     for (String field : req.getSearcher().getFieldNames()) {
@@ -572,6 +639,9 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
         throw new IOException(
             "Export fields must be one of the following types: int,float,long,double,string,date,boolean,SortableText");
       }
+      if (declareArrowColumns) {
+        ((ArrowPushWriter) this.writer).addColumn(schemaField);
+      }
       writers.add(writer);
     }
     return writers;
@@ -665,14 +735,28 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     return new SortDoc(sortValues);
   }
 
-  static class MergeIterator {
+  /** Iterates over the docs of a segment in sort order. */
+  interface SortDocIterator {
+    /** Returns the next doc, or null when all docs have been iterated. */
+    SortDoc next() throws IOException;
+  }
+
+  static class MergeIterator implements Closeable {
     private TreeSet<SortDoc> set = new TreeSet<>();
-    private SegmentIterator[] segmentIterators;
+    private SortDocIterator[] segmentIterators;
     private SortDoc outDoc;
+    // runs the segment iterators in parallel mode, null otherwise
+    private final ExecutorService executor;
+
+    public MergeIterator(SortDocIterator[] segmentIterators, SortDoc proto) throws IOException {
+      this(segmentIterators, proto, null);
+    }
 
-    public MergeIterator(SegmentIterator[] segmentIterators, SortDoc proto) throws IOException {
+    MergeIterator(SortDocIterator[] segmentIterators, SortDoc proto, ExecutorService executor)
+        throws IOException {
       outDoc = proto.copy();
       this.segmentIterators = segmentIterators;
+      this.executor = executor;
       for (int i = 0; i < segmentIterators.length; i++) {
         try {
           SortDoc sortDoc = segmentIterators[i].next();
@@ -707,6 +791,13 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
       }
       return outDoc;
     }
+
+    @Override
+    public void close() {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
   }
 
   public MergeIterator getMergeIterator(
@@ -724,14 +815,18 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
         log.debug("Total priority queue size {}:", this.priorityQueueSize);
       }
 
+      // In parallel mode each segment holds a batch being merged and a prefetched batch in
+      // addition to its priority queue, so the queue size budget is split three ways.
+      final boolean parallel = numThreads > 1 && leaves.size() > 1;
+      final int queueSizeBudget = parallel ? this.priorityQueueSize / 3 : this.priorityQueueSize;
+
       int[] sizes = new int[leaves.size()];
 
       int combineQueueSize = 0;
       for (int i = 0; i < leaves.size(); i++) {
         long maxDoc = leaves.get(i).reader().maxDoc();
         int sortQueueSize =
-            Math.min(
-                (int) (((double) maxDoc / (double) totalDocs) * this.priorityQueueSize), batchSize);
+            Math.min((int) (((double) maxDoc / (double) totalDocs) * queueSizeBudget), batchSize);
 
         // Protect against too small a queue size as well
         if (sortQueueSize < 10) {
@@ -750,33 +845,55 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
         log.debug("Combined priority queue size {}:", combineQueueSize);
       }
 
-      SegmentIterator[] segmentIterators = new SegmentIterator[leaves.size()];
+      SortDocIterator[] segmentIterators = new SortDocIterator[leaves.size()];
       for (int i = 0; i < segmentIterators.length; i++) {
         SortQueue sortQueue = new SortQueue(sizes[i], sortDoc.copy());
         segmentIterators[i] =
-            new SegmentIterator(bits[i], leaves.get(i), sortQueue, sortDoc.copy());
+            new SegmentIterator(bits[i], leaves.get(i), sortQueue, sortDoc.copy(), sortNanos);
+      }
+      if (!parallel) {
+        return new MergeIterator(segmentIterators, sortDoc);
       }
 
-      return new MergeIterator(segmentIterators, sortDoc);
+      ExecutorService executor =
+          ExecutorUtil.newMDCAwareFixedThreadPool(
+              Math.min(numThreads, leaves.size()), new SolrNamedThreadFactory("ExportSegments"));
+      try {
+        for (int i = 0; i < segmentIterators.length; i++) {
+          segmentIterators[i] =
+              new PrefetchingSegmentIterator(
+                  (SegmentIterator) segmentIterators[i], executor, sortDoc, sizes[i]);
+        }
+        return new MergeIterator(segmentIterators, sortDoc, executor);
+      } catch (Throwable t) {
+        executor.shutdownNow();
+        throw t;
+      }
     } finally {
     }
   }
 
-  private static class SegmentIterator {
+  private static class SegmentIterator implements SortDocIterator {
 
     private final FixedBitSet bits;
     private final SortQueue queue;
     private final SortDoc sortDoc;
     private final LeafReaderContext context;
     private final SortDoc[] outDocs;
+    private final LongAdder sortNanos;
 
     private SortDoc nextDoc;
     private int index;
 
     public SegmentIterator(
-        FixedBitSet bits, LeafReaderContext context, SortQueue sortQueue, SortDoc sortDoc)
+        FixedBitSet bits,
+        LeafReaderContext context,
+        SortQueue sortQueue,
+        SortDoc sortDoc,
+        LongAdder sortNanos)
         throws IOException {
       this.bits = bits;
+      this.sortNanos = sortNanos;
       this.queue = sortQueue;
       this.sortDoc = sortDoc;
       this.nextDoc = sortDoc.copy();
@@ -785,6 +902,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
       topDocs();
     }
 
+    @Override
     public SortDoc next() throws IOException {
       SortDoc _sortDoc = null;
       if (index > -1) {
@@ -813,6 +931,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     }
 
     private void topDocs() throws IOException {
+      long start = System.nanoTime();
       try {
         queue.reset();
         SortDoc top = queue.top();
@@ -841,10 +960,90 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
       } catch (Exception e) {
         log.error("Segment Iterator Error:", e);
         throw new IOException(e);
+      } finally {
+        sortNanos.add(System.nanoTime() - start);
       }
     }
   }
 
+  /**
+   * Fills the next batch of docs of a segment on a worker thread while the current batch is being
+   * merged. At most one fill is pending per segment, so the iterated {@link SegmentIterator} is
+   * only used by one thread at a time.
+   */
+  private static class PrefetchingSegmentIterator implements SortDocIterator {
+
+    private final SegmentIterator segmentIterator;
+    private final ExecutorService executor;
+    private SortDoc[] current;
+    private SortDoc[] spare;
+    private int size;
+    private int index;
+    // the fill of the spare batch, null once the segment is exhausted
+    private Future<Integer> pending;
+
+    PrefetchingSegmentIterator(
+        SegmentIterator segmentIterator, ExecutorService executor, SortDoc proto, int batchSize) {
+      this.segmentIterator = segmentIterator;
+      this.executor = executor;
+      this.current = newBatch(proto, batchSize);
+      this.spare = newBatch(proto, batchSize);
+      this.pending = prefetch(spare);
+    }
+
+    private static SortDoc[] newBatch(SortDoc proto, int batchSize) {
+      SortDoc[] batch = new SortDoc[batchSize];
+      for (int i = 0; i < batchSize; i++) {
+        batch[i] = proto.copy();
+      }
+      return batch;
+    }
+
+    private Future<Integer> prefetch(SortDoc[] batch) {
+      return executor.submit(
+          () -> {
+            int count = 0;
+            SortDoc sortDoc;
+            while (count < batch.length && (sortDoc = segmentIterator.next()) != null) {
+              batch[count++].setValues(sortDoc);
+            }
+            return count;
+          });
+    }
+
+    @Override
+    public SortDoc next() throws IOException {
+      if (index < size) {
+        return current[index++];
+      }
+      if (pending == null) {
+        return null;
+      }
+
+      final int count;
+      try {
+        count = pending.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof IOException
+            ? (IOException) e.getCause()
+            : new IOException(e.getCause());
+      }
+
+      // the merge is done with the docs of the current batch once it asks for the next one, so
+      // the current batch can be refilled
+      SortDoc[] filled = spare;
+      spare = current;
+      current = filled;
+      size = count;
+      index = 0;
+      pending = count < current.length ? null : prefetch(spare);
+      return size == 0 ? null : current[index++];
+    }
+  }
+
   public static class IgnoreException extends IOException {
     @Override
     public void printStackTrace(PrintWriter pw) {
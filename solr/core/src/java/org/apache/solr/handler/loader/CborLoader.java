@@ -150,6 +150,7 @@ public class CborLoader {
                   add.commitWithin = commitWithin;
                   add.solrDoc = doc;
                   add.overwrite = overwrite;
+                  checkDocSize(add);
                   try {
                     processor.processAdd(add);
                   } catch (IOException e) {
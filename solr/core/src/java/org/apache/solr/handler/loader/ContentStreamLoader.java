@@ -16,10 +16,15 @@
  */
 package org.apache.solr.handler.loader;
 
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.ContentStream;
+import org.apache.solr.common.util.EnvUtils;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.IgnoreLargeDocumentProcessorFactory.ObjectSizeEstimator;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 
 /**
@@ -29,11 +34,61 @@ import org.apache.solr.update.processor.UpdateRequestProcessor;
  */
 public abstract class ContentStreamLoader {
 
+  /**
+   * The handler init param setting {@link #maxDocBytes}. It can't be set per request, so that
+   * clients can't raise it.
+   */
+  public static final String MAX_DOC_BYTES = "maxDocBytes";
+
+  /**
+   * The default of {@link #maxDocBytes}, set with the {@code solr.update.maxDocBytes} system
+   * property. Not limited by default.
+   */
+  public static final long DEFAULT_MAX_DOC_BYTES =
+      EnvUtils.getPropertyAsLong("solr.update.maxDocBytes", -1L);
+
+  /**
+   * The maximum estimated size in bytes of the documents a loader holds at once for a request, see
+   * {@link ObjectSizeEstimator}, or -1 if not limited. A request with a larger document fails, see
+   * {@link #checkDocSize}, while the loaders buffering several documents process them before they
+   * take more.
+   */
+  protected long maxDocBytes = DEFAULT_MAX_DOC_BYTES;
+
   /** This should be called once for each RequestHandler */
   public ContentStreamLoader init(SolrParams args) {
+    if (args != null) {
+      maxDocBytes = args.getLong(MAX_DOC_BYTES, maxDocBytes);
+    }
     return this;
   }
 
+  /**
+   * Fails the request if the document parsed takes more than {@link #maxDocBytes}.
+   *
+   * @return the estimated size of the document in bytes, or -1 if the size is not limited
+   */
+  protected final long checkDocSize(AddUpdateCommand cmd) {
+    if (maxDocBytes < 0) {
+      return -1;
+    }
+    long size = ObjectSizeEstimator.estimate(cmd.solrDoc);
+    if (size > maxDocBytes) {
+      SchemaField uniqueKey = cmd.getReq().getSchema().getUniqueKeyField();
+      throw new SolrException(
+          SolrException.ErrorCode.BAD_REQUEST,
+          "Document "
+              + (uniqueKey == null ? "" : cmd.solrDoc.getFieldValue(uniqueKey.getName()) + " ")
+              + "takes about "
+              + size
+              + " bytes, more than the "
+              + maxDocBytes
+              + " bytes allowed per update request, see "
+              + MAX_DOC_BYTES);
+    }
+    return size;
+  }
+
   public String getDefaultWT() {
     return null;
   }
@@ -16,9 +16,11 @@
  */
 package org.apache.solr.handler.loader;
 
+import com.google.common.annotations.VisibleForTesting;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +36,7 @@ import org.apache.solr.common.params.UpdateParams;
 import org.apache.solr.common.util.ContentStream;
 import org.apache.solr.common.util.ContentStreamBase;
 import org.apache.solr.common.util.DataInputInputStream;
+import org.apache.solr.common.util.EnvUtils;
 import org.apache.solr.common.util.FastInputStream;
 import org.apache.solr.common.util.JavaBinCodec;
 import org.apache.solr.common.util.NamedList;
@@ -41,6 +44,9 @@ import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.update.AddUpdateCommand;
 import org.apache.solr.update.DeleteUpdateCommand;
+import org.apache.solr.update.processor.AtomicUpdateDocumentMerger;
+import org.apache.solr.update.processor.AtomicUpdatePrefetcher;
+import org.apache.solr.update.processor.IgnoreLargeDocumentProcessorFactory.ObjectSizeEstimator;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 
 /**
@@ -50,15 +56,39 @@ import org.apache.solr.update.processor.UpdateRequestProcessor;
  * @see org.apache.solr.common.util.JavaBinCodec
  */
 public class JavabinLoader extends ContentStreamLoader {
+  /**
+   * The maximum number of documents passed on at once to the processors that {@link
+   * UpdateRequestProcessor#acceptsAddBatches() accept batches}.
+   */
+  public static final int ADD_BATCH_SIZE =
+      EnvUtils.getPropertyAsInteger("solr.update.addBatchSize", 100);
+
+  /**
+   * The maximum estimated size in bytes of the documents buffered at once per request, see {@link
+   * ObjectSizeEstimator}. The buffered documents are processed as soon as they reach it, whatever
+   * their number. Requests with more documents are not rejected, unlike the documents larger than
+   * {@link #maxDocBytes}, which also bounds the buffering when set.
+   */
+  public static final long MAX_BUFFERED_BYTES =
+      EnvUtils.getPropertyAsLong("solr.update.maxBufferedDocBytes", 32L * 1024 * 1024);
+
   final ContentStreamLoader contentStreamLoader;
+  private final long maxBufferedBytes;
 
   public JavabinLoader() {
-    this.contentStreamLoader = this;
+    this(MAX_BUFFERED_BYTES);
   }
 
   public JavabinLoader(ContentStreamLoader contentStreamLoader) {
     super();
     this.contentStreamLoader = contentStreamLoader;
+    this.maxBufferedBytes = MAX_BUFFERED_BYTES;
+  }
+
+  @VisibleForTesting
+  JavabinLoader(long maxBufferedBytes) {
+    this.contentStreamLoader = this;
+    this.maxBufferedBytes = maxBufferedBytes;
   }
 
   @Override
@@ -90,44 +120,7 @@ public class JavabinLoader extends ContentStreamLoader {
       return;
     }
     UpdateRequest update = null;
-    JavaBinUpdateRequestCodec.StreamingUpdateHandler handler =
-        new JavaBinUpdateRequestCodec.StreamingUpdateHandler() {
-          private AddUpdateCommand addCmd = null;
-
-          @Override
-          public void update(
-              SolrInputDocument document,
-              UpdateRequest updateRequest,
-              Integer commitWithin,
-              Boolean overwrite) {
-            if (document == null) {
-              return;
-            }
-            if (addCmd == null) {
-              addCmd = getAddCommand(req, updateRequest.getParams());
-            }
-            addCmd.solrDoc = document;
-            if (commitWithin != null) {
-              addCmd.commitWithin = commitWithin;
-            }
-            if (overwrite != null) {
-              addCmd.overwrite = overwrite;
-            }
-
-            if (updateRequest.isLastDocInBatch()) {
-              // this is a hint to downstream code that indicates we've sent the last doc in a batch
-              addCmd.isLastDocInBatch = true;
-            }
-
-            try {
-              processor.processAdd(addCmd);
-              addCmd.clear();
-            } catch (IOException e) {
-              throw new SolrException(
-                  SolrException.ErrorCode.SERVER_ERROR, "ERROR adding document " + document, e);
-            }
-          }
-        };
+    AddHandler handler = new AddHandler(req, processor);
     FastInputStream in = FastInputStream.wrap(stream);
     for (; ; ) {
       if (in.peek() == -1) return;
@@ -135,6 +128,8 @@ public class JavabinLoader extends ContentStreamLoader {
         update = new JavaBinUpdateRequestCodec().unmarshal(in, handler);
       } catch (EOFException e) {
         break; // this is expected
+      } finally {
+        handler.flush();
       }
       if (update.getDeleteByIdMap() != null || update.getDeleteQuery() != null) {
         delete(req, update, processor);
@@ -142,6 +137,120 @@ public class JavabinLoader extends ContentStreamLoader {
     }
   }
 
+  /**
+   * Processes the documents as they are read, except for consecutive atomic updates, which are
+   * buffered up to {@link AtomicUpdatePrefetcher#BATCH_SIZE} so that the documents they update are
+   * looked up in bulk. If the processors {@link UpdateRequestProcessor#acceptsAddBatches() accept
+   * batches}, all the documents are buffered and passed on in batches of up to {@link
+   * #ADD_BATCH_SIZE}. Either way, the documents buffered take up to about {@link
+   * #MAX_BUFFERED_BYTES}, so that large documents don't pile up on the heap, and no more than
+   * {@link #maxDocBytes}.
+   */
+  private class AddHandler implements JavaBinUpdateRequestCodec.StreamingUpdateHandler {
+    private final SolrQueryRequest req;
+    private final UpdateRequestProcessor processor;
+    private final boolean batchAdds;
+    private final List<AddUpdateCommand> buffered = new ArrayList<>();
+    private long bufferedBytes;
+    private AddUpdateCommand addCmd = null;
+
+    AddHandler(SolrQueryRequest req, UpdateRequestProcessor processor) {
+      this.req = req;
+      this.processor = processor;
+      this.batchAdds = ADD_BATCH_SIZE > 1 && processor.acceptsAddBatches();
+    }
+
+    @Override
+    public void update(
+        SolrInputDocument document,
+        UpdateRequest updateRequest,
+        Integer commitWithin,
+        Boolean overwrite) {
+      if (document == null) {
+        return;
+      }
+      if (addCmd == null) {
+        addCmd = getAddCommand(req, updateRequest.getParams());
+      }
+      addCmd.solrDoc = document;
+      if (commitWithin != null) {
+        addCmd.commitWithin = commitWithin;
+      }
+      if (overwrite != null) {
+        addCmd.overwrite = overwrite;
+      }
+
+      if (updateRequest.isLastDocInBatch()) {
+        // this is a hint to downstream code that indicates we've sent the last doc in a batch
+        addCmd.isLastDocInBatch = true;
+      }
+      long docBytes = checkDocSize(addCmd);
+
+      if (batchAdds
+          || (AtomicUpdatePrefetcher.BATCH_SIZE > 1
+              && AtomicUpdateDocumentMerger.isAtomicUpdate(addCmd))) {
+        AddUpdateCommand cmd = new AddUpdateCommand(req);
+        cmd.solrDoc = addCmd.solrDoc;
+        cmd.commitWithin = addCmd.commitWithin;
+        cmd.overwrite = addCmd.overwrite;
+        cmd.isLastDocInBatch = addCmd.isLastDocInBatch;
+        addCmd.clear();
+        if (docBytes < 0) {
+          docBytes = ObjectSizeEstimator.estimate(cmd.solrDoc);
+        } else if (bufferedBytes + docBytes > maxDocBytes) {
+          flush();
+        }
+        buffered.add(cmd);
+        bufferedBytes += docBytes;
+        int batchSize = batchAdds ? ADD_BATCH_SIZE : AtomicUpdatePrefetcher.BATCH_SIZE;
+        if (buffered.size() >= batchSize
+            || bufferedBytes >= maxBufferedBytes
+            || cmd.isLastDocInBatch) {
+          flush();
+        }
+        return;
+      }
+
+      flush();
+      process(addCmd);
+      addCmd.clear();
+    }
+
+    /** Processes the documents buffered. */
+    void flush() {
+      if (buffered.isEmpty()) {
+        return;
+      }
+      AtomicUpdatePrefetcher.announce(req, buffered);
+      try {
+        if (batchAdds) {
+          processor.processAddBatch(buffered);
+        } else {
+          for (AddUpdateCommand cmd : buffered) {
+            process(cmd);
+          }
+        }
+      } catch (IOException e) {
+        throw new SolrException(
+            SolrException.ErrorCode.SERVER_ERROR,
+            "ERROR adding " + buffered.size() + " documents",
+            e);
+      } finally {
+        buffered.clear();
+        bufferedBytes = 0;
+      }
+    }
+
+    private void process(AddUpdateCommand cmd) {
+      try {
+        processor.processAdd(cmd);
+      } catch (IOException e) {
+        throw new SolrException(
+            SolrException.ErrorCode.SERVER_ERROR, "ERROR adding document " + cmd.solrDoc, e);
+      }
+    }
+  }
+
   private void handleMultiStream(
       SolrQueryRequest req,
       SolrQueryResponse rsp,
@@ -84,7 +84,9 @@ public class JsonLoader extends ContentStreamLoader {
       ContentStream stream,
       UpdateRequestProcessor processor)
       throws Exception {
-    new SingleThreadedJsonLoader(req, rsp, processor).load(req, rsp, stream, processor);
+    SingleThreadedJsonLoader loader = new SingleThreadedJsonLoader(req, rsp, processor);
+    loader.maxDocBytes = maxDocBytes;
+    loader.load(req, rsp, stream, processor);
   }
 
   @SuppressWarnings("unchecked")
@@ -188,7 +190,9 @@ public class JsonLoader extends ContentStreamLoader {
               if (v.equals(UpdateRequestHandler.ADD)) {
                 int ev2 = parser.nextEvent();
                 if (ev2 == JSONParser.OBJECT_START) {
-                  processor.processAdd(parseAdd());
+                  AddUpdateCommand cmd = parseAdd();
+                  checkDocSize(cmd);
+                  processor.processAdd(cmd);
                 } else if (ev2 == JSONParser.ARRAY_START) {
                   handleAdds();
                 } else {
@@ -281,6 +285,7 @@ public class JsonLoader extends ContentStreamLoader {
                 cmd.commitWithin = commitWithin;
                 cmd.overwrite = overwrite;
                 cmd.solrDoc = buildDoc(copy);
+                checkDocSize(cmd);
                 try {
                   processor.processAdd(cmd);
                 } catch (IOException e) {
@@ -548,6 +553,7 @@ public class JsonLoader extends ContentStreamLoader {
 
         assertEvent(ev, JSONParser.OBJECT_START);
         cmd.solrDoc = parseDoc(ev);
+        checkDocSize(cmd);
         processor.processAdd(cmd);
       }
     }
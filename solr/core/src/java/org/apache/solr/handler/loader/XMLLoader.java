@@ -69,6 +69,7 @@ public class XMLLoader extends ContentStreamLoader {
 
   @Override
   public XMLLoader init(SolrParams args) {
+    super.init(args);
     // Init StAX parser:
     inputFactory = XMLInputFactory.newInstance();
     EmptyEntityResolver.configureXMLInputFactory(inputFactory);
@@ -186,6 +187,7 @@ public class XMLLoader extends ContentStreamLoader {
               log.trace("adding doc...");
               addCmd.clear();
               addCmd.solrDoc = readDoc(parser);
+              checkDocSize(addCmd);
               processor.processAdd(addCmd);
             } else {
               throw new SolrException(
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.util.ArrowStreamWriter;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.BoolField;
+import org.apache.solr.schema.DateValueFieldType;
+import org.apache.solr.schema.DoubleValueFieldType;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.FloatValueFieldType;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.IntValueFieldType;
+import org.apache.solr.schema.LongValueFieldType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocList;
+import org.apache.solr.search.ReturnFields;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SolrReturnFields;
+
+/**
+ * Writes the documents of a response in the Apache Arrow IPC streaming format when <code>wt=arrow
+ * </code>, with a column per returned field, in record batches of <code>arrow.batchSize</code>
+ * documents. The number of matches, the start offset and the max score are in the custom metadata
+ * of the schema. The other sections of the response, such as facets, are not written.
+ *
+ * <p>The columns of the fields that may be returned are declared up front, with the types of their
+ * schema fields, so that a field first returned after the first batch still has a column. Only
+ * pseudo-fields, such as functions and aliases, get the type of their first value in the first
+ * batch. A value that doesn't fit its column ends the stream with an error, see {@link
+ * ArrowStreamWriter}.
+ *
+ * <p>The /export handler uses {@link ArrowStreamWriter} directly, its field writers appending the
+ * docValues of the exported documents to the columns.
+ *
+ * @see ArrowStreamWriter
+ */
+public class ArrowResponseWriter implements QueryResponseWriter {
+
+  public static final String BATCH_SIZE_PARAM = "arrow.batchSize";
+
+  public static final String NUM_FOUND_METADATA_KEY = "numFound";
+  public static final String START_METADATA_KEY = "start";
+  public static final String MAX_SCORE_METADATA_KEY = "maxScore";
+
+  @Override
+  public void write(
+      OutputStream out, SolrQueryRequest req, SolrQueryResponse response, String contentType)
+      throws IOException {
+    ArrowStreamWriter writer =
+        new ArrowStreamWriter(
+            out,
+            req.getParams().getInt(BATCH_SIZE_PARAM, ArrowStreamWriter.DEFAULT_BATCH_SIZE));
+    if (response.getException() != null) {
+      writer.finishWithError(response.getException().getMessage());
+      return;
+    }
+
+    Object responseObj = response.getResponse();
+    if (responseObj instanceof ResultContext) {
+      ResultContext ctx = (ResultContext) responseObj;
+      DocList docs = ctx.getDocList();
+      writer.putMetadata(NUM_FOUND_METADATA_KEY, Long.toString(docs.matches()));
+      writer.putMetadata(START_METADATA_KEY, Integer.toString(docs.offset()));
+      if (ctx.wantsScores() && docs.hasScores()) {
+        writer.putMetadata(MAX_SCORE_METADATA_KEY, Float.toString(docs.maxScore()));
+      }
+      ReturnFields returnFields = ctx.getReturnFields();
+      addColumns(
+          writer,
+          ctx.getSearcher(),
+          returnFields == null ? new SolrReturnFields() : returnFields);
+      Iterator<SolrDocument> it = ctx.getProcessedDocuments();
+      while (it.hasNext() && !writer.isFinished()) {
+        writeDocument(writer, it.next());
+      }
+    } else if (responseObj instanceof SolrDocumentList) {
+      SolrDocumentList docs = (SolrDocumentList) responseObj;
+      writer.putMetadata(NUM_FOUND_METADATA_KEY, Long.toString(docs.getNumFound()));
+      writer.putMetadata(START_METADATA_KEY, Long.toString(docs.getStart()));
+      if (docs.getMaxScore() != null) {
+        writer.putMetadata(MAX_SCORE_METADATA_KEY, Float.toString(docs.getMaxScore()));
+      }
+      addColumns(writer, req.getSchema(), docs);
+      for (Iterator<SolrDocument> it = docs.iterator(); it.hasNext() && !writer.isFinished(); ) {
+        writeDocument(writer, it.next());
+      }
+    } else {
+      writer.finishWithError(
+          "wt=" + CommonParams.ARROW + " only supports responses consisting of documents");
+      return;
+    }
+    writer.finish();
+  }
+
+  /**
+   * Declares the columns of the fields of the index that the return fields want, as {@link
+   * org.apache.solr.search.SolrDocumentFetcher} returns them: stored fields, and docValues fields
+   * either used as stored or requested explicitly. The index rather than the schema is listed, so
+   * that the dynamic fields matching a wildcard have a column too.
+   */
+  private static void addColumns(
+      ArrowStreamWriter writer, SolrIndexSearcher searcher, ReturnFields returnFields) {
+    IndexSchema schema = searcher.getSchema();
+    Set<String> explicit = returnFields.getExplicitlyRequestedFieldNames();
+    for (FieldInfo fieldInfo : searcher.getFieldInfos()) {
+      SchemaField field = schema.getFieldOrNull(fieldInfo.name);
+      if (field == null
+          || !returnFields.wantsField(field.getName())
+          || returnFields.getFieldRenames().containsKey(field.getName())) {
+        // renamed fields are returned under their alias, typed by their first value
+        continue;
+      }
+      if (field.stored()
+          || (field.hasDocValues()
+              && (field.useDocValuesAsStored()
+                  || (explicit != null && explicit.contains(field.getName()))))) {
+        writer.addColumn(field.getName(), columnType(field.getType()), field.multiValued());
+      }
+    }
+    if (returnFields.wantsScore()) {
+      writer.addColumn(SolrReturnFields.SCORE, ArrowStreamWriter.Type.FLOAT, false);
+    }
+  }
+
+  /**
+   * Declares the columns of the fields of documents already fetched, such as the merged results of
+   * a distributed request, with the types of their schema fields.
+   */
+  private static void addColumns(
+      ArrowStreamWriter writer, IndexSchema schema, SolrDocumentList docs) {
+    for (SolrDocument doc : docs) {
+      for (String name : doc.getFieldNames()) {
+        SchemaField field = schema.getFieldOrNull(name);
+        if (field != null) {
+          writer.addColumn(name, columnType(field.getType()), field.multiValued());
+        } else if (SolrReturnFields.SCORE.equals(name)) {
+          writer.addColumn(name, ArrowStreamWriter.Type.FLOAT, false);
+        }
+      }
+    }
+  }
+
+  /** The type of the column of the values of a field type. */
+  public static ArrowStreamWriter.Type columnType(FieldType fieldType) {
+    if (fieldType instanceof IntValueFieldType) {
+      return ArrowStreamWriter.Type.INT;
+    } else if (fieldType instanceof LongValueFieldType) {
+      return ArrowStreamWriter.Type.LONG;
+    } else if (fieldType instanceof FloatValueFieldType) {
+      return ArrowStreamWriter.Type.FLOAT;
+    } else if (fieldType instanceof DoubleValueFieldType) {
+      return ArrowStreamWriter.Type.DOUBLE;
+    } else if (fieldType instanceof DateValueFieldType) {
+      return ArrowStreamWriter.Type.TIMESTAMP;
+    } else if (fieldType instanceof BoolField) {
+      return ArrowStreamWriter.Type.BOOLEAN;
+    } else {
+      return ArrowStreamWriter.Type.UTF8;
+    }
+  }
+
+  private static void writeDocument(ArrowStreamWriter writer, SolrDocument doc)
+      throws IOException {
+    MapWriter.EntryWriter row = writer.startRow();
+    for (Map.Entry<String, Object> field : doc) {
+      row.put(field.getKey(), field.getValue());
+    }
+    writer.endRow();
+  }
+
+  @Override
+  public String getContentType(SolrQueryRequest request, SolrQueryResponse response) {
+    return ArrowStreamWriter.CONTENT_TYPE;
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.response;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.SolrDocumentFetcher;
+import org.apache.solr.search.SolrReturnFields;
+
+/**
+ * Writes the documents of a {@link ResultContext} in the javabin format straight from their stored
+ * fields and docValues, without creating a {@link org.apache.solr.common.SolrDocument} per
+ * document. The values of a document are buffered in arrays reused across documents, primitive
+ * values without boxing, since the number of fields precedes them. The output is the same as that
+ * of {@link JavaBinCodec#writeSolrDocument}.
+ *
+ * <p>Documents with fields {@link SolrDocumentFetcher#visitSolrDoc} doesn't support are written
+ * from their SolrDocument.
+ */
+final class JavaBinDocumentWriter implements SolrDocumentFetcher.FieldValueConsumer {
+  private static final byte INT = 0;
+  private static final byte LONG = 1;
+  private static final byte FLOAT = 2;
+  private static final byte DOUBLE = 3;
+  private static final byte DATE = 4;
+  private static final byte BOOLEAN = 5;
+  private static final byte STRING = 6;
+  private static final byte UTF8 = 7;
+  private static final byte BYTES = 8;
+
+  /** A field of the current document, its values being a linked list over the value arrays. */
+  private static final class Slot {
+    final String name;
+    final boolean multiValued;
+    final boolean writable;
+    // number of the last document having this field
+    int doc = -1;
+    int count;
+    int head;
+    int tail;
+
+    Slot(SchemaField field, boolean writable) {
+      this.name = field.getName();
+      this.multiValued = field.multiValued();
+      this.writable = writable;
+    }
+  }
+
+  private final JavaBinCodec.WritableDocFields writableDocFields;
+  private final Map<String, Slot> slots = new HashMap<>();
+  private Slot[] fields = new Slot[16];
+  private int numFields;
+  private int doc;
+
+  // the values of the current document: their types, their bits or the offset and length of their
+  // bytes, strings, and the next value of the same field
+  private byte[] types = new byte[64];
+  private long[] bits = new long[64];
+  private String[] strings = new String[64];
+  private int[] next = new int[64];
+  private int numValues;
+
+  private byte[] bytes = new byte[1024];
+  private int numBytes;
+
+  JavaBinDocumentWriter(JavaBinCodec.WritableDocFields writableDocFields) {
+    this.writableDocFields = writableDocFields;
+  }
+
+  /** Whether the documents of this result can be written without creating SolrDocuments. */
+  static boolean supports(ResultContext ctx) {
+    // transformers, including the one adding the score, work on SolrDocuments, as do the result
+    // contexts overriding getProcessedDocuments()
+    return ctx.getClass() == BasicResultContext.class
+        && ctx.getReturnFields() instanceof SolrReturnFields
+        && ctx.getReturnFields().getTransformer() == null
+        && ctx.getDocFetcher() != null;
+  }
+
+  void writeDocuments(ResultContext ctx, JavaBinCodec codec) throws IOException {
+    SolrDocumentFetcher docFetcher = ctx.getDocFetcher();
+    SolrReturnFields returnFields = (SolrReturnFields) ctx.getReturnFields();
+    DocIterator iterator = ctx.getDocList().iterator();
+    while (iterator.hasNext()) {
+      int id = iterator.nextDoc();
+      startDocument();
+      if (docFetcher.visitSolrDoc(id, returnFields, this)) {
+        writeDocument(codec);
+      } else {
+        codec.writeSolrDocument(docFetcher.solrDoc(id, returnFields));
+      }
+    }
+  }
+
+  private void startDocument() {
+    doc++;
+    numFields = 0;
+    // don't retain the strings of the previous document
+    Arrays.fill(strings, 0, numValues, null);
+    numValues = 0;
+    numBytes = 0;
+  }
+
+  private void writeDocument(JavaBinCodec codec) throws IOException {
+    int size = 0;
+    for (int i = 0; i < numFields; i++) {
+      if (fields[i].writable) {
+        size++;
+      }
+    }
+    codec.writeTag(JavaBinCodec.SOLRDOC);
+    codec.writeTag(JavaBinCodec.ORDERED_MAP, size);
+    for (int i = 0; i < numFields; i++) {
+      Slot slot = fields[i];
+      if (!slot.writable) {
+        continue;
+      }
+      codec.writeExternString(slot.name);
+      if (slot.multiValued || slot.count > 1) {
+        codec.writeTag(JavaBinCodec.ARR, slot.count);
+        for (int v = slot.head; v != -1; v = next[v]) {
+          writeValue(codec, v);
+        }
+      } else {
+        writeValue(codec, slot.head);
+      }
+    }
+  }
+
+  private void writeValue(JavaBinCodec codec, int v) throws IOException {
+    switch (types[v]) {
+      case INT:
+        codec.writeInt((int) bits[v]);
+        break;
+      case LONG:
+        codec.writeLong(bits[v]);
+        break;
+      case FLOAT:
+        codec.writeFloat(Float.intBitsToFloat((int) bits[v]));
+        break;
+      case DOUBLE:
+        codec.writeDouble(Double.longBitsToDouble(bits[v]));
+        break;
+      case DATE:
+        codec.writeDate(bits[v]);
+        break;
+      case BOOLEAN:
+        codec.writeBoolean(bits[v] != 0);
+        break;
+      case STRING:
+        codec.writeStr(strings[v]);
+        break;
+      case UTF8:
+        codec.writeUTF8Str(bytes, (int) (bits[v] >>> 32), (int) bits[v]);
+        break;
+      case BYTES:
+        codec.writeByteArray(bytes, (int) (bits[v] >>> 32), (int) bits[v]);
+        break;
+      default:
+        throw new AssertionError(types[v]);
+    }
+  }
+
+  /** Appends a value to the field, returning its index in the value arrays. */
+  private int addValue(SchemaField field, byte type) {
+    Slot slot = slots.get(field.getName());
+    if (slot == null) {
+      slot = new Slot(field, writableDocFields.isWritable(field.getName()));
+      slots.put(slot.name, slot);
+    }
+    if (numValues == types.length) {
+      int newLength = ArrayUtil.oversize(numValues + 1, Long.BYTES);
+      types = ArrayUtil.growExact(types, newLength);
+      bits = ArrayUtil.growExact(bits, newLength);
+      strings = ArrayUtil.growExact(strings, newLength);
+      next = ArrayUtil.growExact(next, newLength);
+    }
+    int v = numValues++;
+    types[v] = type;
+    next[v] = -1;
+    if (slot.doc != doc) {
+      slot.doc = doc;
+      slot.count = 0;
+      slot.head = v;
+      if (numFields == fields.length) {
+        fields = ArrayUtil.grow(fields, numFields + 1);
+      }
+      fields[numFields++] = slot;
+    } else {
+      next[slot.tail] = v;
+    }
+    slot.tail = v;
+    slot.count++;
+    return v;
+  }
+
+  private void addBytes(SchemaField field, byte type, BytesRef value) {
+    int v = addValue(field, type);
+    bytes = ArrayUtil.grow(bytes, numBytes + value.length);
+    System.arraycopy(value.bytes, value.offset, bytes, numBytes, value.length);
+    bits[v] = ((long) numBytes << 32) | value.length;
+    numBytes += value.length;
+  }
+
+  @Override
+  public void intValue(SchemaField field, int value) {
+    bits[addValue(field, INT)] = value;
+  }
+
+  @Override
+  public void longValue(SchemaField field, long value) {
+    bits[addValue(field, LONG)] = value;
+  }
+
+  @Override
+  public void floatValue(SchemaField field, float value) {
+    bits[addValue(field, FLOAT)] = Float.floatToRawIntBits(value);
+  }
+
+  @Override
+  public void doubleValue(SchemaField field, double value) {
+    bits[addValue(field, DOUBLE)] = Double.doubleToRawLongBits(value);
+  }
+
+  @Override
+  public void dateValue(SchemaField field, long epochMillis) {
+    bits[addValue(field, DATE)] = epochMillis;
+  }
+
+  @Override
+  public void booleanValue(SchemaField field, boolean value) {
+    bits[addValue(field, BOOLEAN)] = value ? 1 : 0;
+  }
+
+  @Override
+  public void stringValue(SchemaField field, String value) {
+    strings[addValue(field, STRING)] = value;
+  }
+
+  @Override
+  public void utf8Value(SchemaField field, BytesRef value) {
+    addBytes(field, UTF8, value);
+  }
+
+  @Override
+  public void bytesValue(SchemaField field, BytesRef value) {
+    addBytes(field, BYTES, value);
+  }
+}
@@ -43,16 +43,34 @@ import org.apache.solr.search.ReturnFields;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Solr's "javabin" format. */
+/**
+ * Solr's "javabin" format.
+ *
+ * <p>Unless the <code>directWrite</code> init arg is false, documents are written straight from
+ * their stored fields and docValues when no transformer applies to them, without creating a {@link
+ * SolrDocument} per document.
+ */
 public class JavaBinResponseWriter implements QueryResponseWriter {
   //  public static boolean useUtf8CharSeq = true;
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  public static final String DIRECT_WRITE = "directWrite";
+
+  private boolean directWrite = true;
+
+  @Override
+  public void init(NamedList<?> args) {
+    Object directWrite = args.get(DIRECT_WRITE);
+    if (directWrite != null) {
+      this.directWrite = Boolean.parseBoolean(directWrite.toString());
+    }
+  }
+
   @Override
   public void write(
       OutputStream out, SolrQueryRequest req, SolrQueryResponse response, String contentType)
       throws IOException {
-    Resolver resolver = new Resolver(req, response.getReturnFields());
+    Resolver resolver = new Resolver(req, response.getReturnFields(), directWrite);
     if (req.getParams().getBool(CommonParams.OMIT_HEADER, false)) response.removeResponseHeader();
     try (JavaBinCodec jbc = new JavaBinCodec(resolver)) {
       jbc.setWritableDocFields(resolver).marshal(response.getValues(), out);
@@ -69,10 +87,20 @@ public class JavaBinResponseWriter implements QueryResponseWriter {
     protected final SolrQueryRequest solrQueryRequest;
     protected IndexSchema schema;
     protected ReturnFields returnFields;
+    private final boolean directWrite;
 
     public Resolver(SolrQueryRequest req, ReturnFields returnFields) {
+      this(req, returnFields, false);
+    }
+
+    /**
+     * @param directWrite whether documents may be written without creating SolrDocuments, hence
+     *     without calling {@link JavaBinCodec#writeSolrDocument}
+     */
+    public Resolver(SolrQueryRequest req, ReturnFields returnFields, boolean directWrite) {
       solrQueryRequest = req;
       this.returnFields = returnFields;
+      this.directWrite = directWrite;
     }
 
     @Override
@@ -129,6 +157,10 @@ public class JavaBinResponseWriter implements QueryResponseWriter {
 
     protected void writeResultsBody(ResultContext res, JavaBinCodec codec) throws IOException {
       codec.writeTag(JavaBinCodec.ARR, res.getDocList().size());
+      if (directWrite && JavaBinDocumentWriter.supports(res)) {
+        new JavaBinDocumentWriter(this).writeDocuments(res, codec);
+        return;
+      }
       Iterator<SolrDocument> docStreamer = res.getProcessedDocuments();
       while (docStreamer.hasNext()) {
         SolrDocument doc = docStreamer.next();
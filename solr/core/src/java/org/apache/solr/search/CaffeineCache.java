@@ -503,11 +503,15 @@ public class CaffeineCache<K, V> extends SolrCacheBase
                 map.put("cumulative_hitratio", hitRate(cumHits, cumLookups));
                 map.put("cumulative_inserts", priorInserts + insertCount);
                 map.put("cumulative_evictions", cumulativeStats.evictionCount());
+                addMetrics(map);
               }
             });
     solrMetricsContext.gauge(cacheMap, true, scope, getCategory().toString());
   }
 
+  /** Hook for subclasses to report metrics in addition to the common cache ones. */
+  protected void addMetrics(Map<String, Object> map) {}
+
   private static double hitRate(long hitCount, long lookupCount) {
     return lookupCount == 0 ? 1.0 : (double) hitCount / lookupCount;
   }
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * An immutable, roaring-style compressed copy of a {@link DocSet}, held in pages of an {@link
+ * OffHeapPagePool}.
+ *
+ * <p>The doc id space is split into blocks of 65536 docs. Each non-empty block is stored as a
+ * container: a sorted array of 16-bit offsets when it holds at most 4096 docs, a 8KB bitmap when it
+ * holds more, or nothing at all when every doc of the block is set.
+ *
+ * <p>Layout: a header of <code>numBits, cardinality, numContainers</code>, then <code>
+ * key, cardinality, offset</code> per container, then the container payloads, each aligned to 8
+ * bytes. All reads use absolute positions so a single instance may be decoded by many threads at
+ * once.
+ *
+ * <p>The pages are reference counted: an instance starts with one reference, owned by whoever
+ * encoded it, and readers must {@link #tryAcquire()} it before decoding and {@link #release()} it
+ * afterwards. The pages go back to the pool when the last reference is released.
+ */
+final class CompressedDocSet implements Accountable {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(CompressedDocSet.class)
+          + RamUsageEstimator.shallowSizeOfInstance(AtomicInteger.class);
+
+  static final int BLOCK_BITS = 16;
+  static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+  static final int BLOCK_MASK = BLOCK_SIZE - 1;
+  /** Blocks with more docs than this are stored as bitmaps. */
+  static final int MAX_ARRAY_CARDINALITY = 4096;
+
+  private static final int BITMAP_LONGS = BLOCK_SIZE / Long.SIZE;
+  private static final int HEADER_BYTES = 3 * Integer.BYTES;
+  private static final int CONTAINER_HEADER_BYTES = 3 * Integer.BYTES;
+
+  private final OffHeapPagePool pool;
+  private final int[] pages;
+  private final AtomicInteger refCount = new AtomicInteger(1);
+
+  private CompressedDocSet(OffHeapPagePool pool, int[] pages) {
+    this.pool = pool;
+    this.pages = pages;
+  }
+
+  /**
+   * Encodes the given set into pages of the given pool. Sets that hold few docs compared to their
+   * length are decoded to a {@link SortedIntDocSet}, and so is any set that is not a {@link
+   * BitDocSet}. Other sets are decoded back to a {@link BitDocSet} of the same length.
+   */
+  static CompressedDocSet encode(DocSet docs, OffHeapPagePool pool) {
+    final int numBits = docs instanceof BitDocSet ? ((BitDocSet) docs).getBits().length() : -1;
+
+    // first pass: cardinality of each non-empty block
+    int[] keys = new int[8];
+    int[] cards = new int[8];
+    int numContainers = 0;
+    int cardinality = 0;
+    for (DocIterator it = docs.iterator(); it.hasNext(); ) {
+      final int key = it.nextDoc() >>> BLOCK_BITS;
+      if (numContainers == 0 || keys[numContainers - 1] != key) {
+        if (numContainers == keys.length) {
+          keys = Arrays.copyOf(keys, numContainers * 2);
+          cards = Arrays.copyOf(cards, numContainers * 2);
+        }
+        keys[numContainers++] = key;
+      }
+      cards[numContainers - 1]++;
+      cardinality++;
+    }
+
+    int size = align(HEADER_BYTES + numContainers * CONTAINER_HEADER_BYTES);
+    for (int i = 0; i < numContainers; i++) {
+      size += payloadBytes(cards[i]);
+    }
+
+    final int[] pages =
+        pool.allocate((size + OffHeapPagePool.PAGE_SIZE - 1) >>> OffHeapPagePool.PAGE_BITS);
+    pool.putInt(pages, 0, numBits);
+    pool.putInt(pages, Integer.BYTES, cardinality);
+    pool.putInt(pages, 2 * Integer.BYTES, numContainers);
+    int offset = align(HEADER_BYTES + numContainers * CONTAINER_HEADER_BYTES);
+    final int[] offsets = new int[numContainers];
+    for (int i = 0; i < numContainers; i++) {
+      final int pos = HEADER_BYTES + i * CONTAINER_HEADER_BYTES;
+      pool.putInt(pages, pos, keys[i]);
+      pool.putInt(pages, pos + Integer.BYTES, cards[i]);
+      pool.putInt(pages, pos + 2 * Integer.BYTES, offset);
+      offsets[i] = offset;
+      offset += payloadBytes(cards[i]);
+    }
+
+    // second pass: write the payloads (pages are zeroed on allocation)
+    int container = -1;
+    int arrayPos = 0;
+    for (DocIterator it = docs.iterator(); it.hasNext(); ) {
+      final int doc = it.nextDoc();
+      final int key = doc >>> BLOCK_BITS;
+      if (container < 0 || keys[container] != key) {
+        container++;
+        arrayPos = offsets[container];
+      }
+      final int card = cards[container];
+      if (card == BLOCK_SIZE) {
+        continue; // full block, no payload
+      } else if (card <= MAX_ARRAY_CARDINALITY) {
+        pool.putShort(pages, arrayPos, (short) (doc & BLOCK_MASK));
+        arrayPos += Short.BYTES;
+      } else {
+        final int wordPos = offsets[container] + ((doc & BLOCK_MASK) >>> 6) * Long.BYTES;
+        pool.putLong(pages, wordPos, pool.getLong(pages, wordPos) | (1L << doc));
+      }
+    }
+
+    return new CompressedDocSet(pool, pages);
+  }
+
+  private static int payloadBytes(int cardinality) {
+    if (cardinality == BLOCK_SIZE) {
+      return 0;
+    } else if (cardinality <= MAX_ARRAY_CARDINALITY) {
+      return align(cardinality * Short.BYTES);
+    } else {
+      return BITMAP_LONGS * Long.BYTES;
+    }
+  }
+
+  /** Rounds up to a multiple of 8, so that no value of a payload straddles two pages. */
+  private static int align(int bytes) {
+    return (bytes + Long.BYTES - 1) & -Long.BYTES;
+  }
+
+  /**
+   * Takes a reference on the pages of this set, which must be given back with {@link #release()}.
+   * Returns false if the pages were already given back to the pool, in which case the set must not
+   * be decoded.
+   */
+  boolean tryAcquire() {
+    for (int refs = refCount.get(); refs > 0; refs = refCount.get()) {
+      if (refCount.compareAndSet(refs, refs + 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Gives back a reference, and the pages to the pool if it was the last one. */
+  void release() {
+    final int refs = refCount.decrementAndGet();
+    if (refs == 0) {
+      pool.free(pages);
+    } else if (refs < 0) {
+      throw new IllegalStateException("Released more often than acquired");
+    }
+  }
+
+  /** Number of docs in the set. */
+  int size() {
+    return pool.getInt(pages, Integer.BYTES);
+  }
+
+  /** Bytes of the pool held by this set. */
+  long offHeapBytesUsed() {
+    return (long) pages.length * OffHeapPagePool.PAGE_SIZE;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(pages);
+  }
+
+  /**
+   * Materializes an on-heap {@link DocSet} equivalent to the encoded one. The caller must hold a
+   * reference on this set.
+   */
+  DocSet decode() {
+    final int numBits = pool.getInt(pages, 0);
+    final int cardinality = pool.getInt(pages, Integer.BYTES);
+    final int numContainers = pool.getInt(pages, 2 * Integer.BYTES);
+
+    // like DocSetUtil, don't allocate a bitset of maxDoc bits for a handful of docs
+    if (numBits < 0 || cardinality < DocSetUtil.smallSetSize(numBits)) {
+      final int[] docs = new int[cardinality];
+      int upto = 0;
+      for (int i = 0; i < numContainers; i++) {
+        final int pos = HEADER_BYTES + i * CONTAINER_HEADER_BYTES;
+        final int base = pool.getInt(pages, pos) << BLOCK_BITS;
+        final int card = pool.getInt(pages, pos + Integer.BYTES);
+        final int offset = pool.getInt(pages, pos + 2 * Integer.BYTES);
+        if (card == BLOCK_SIZE) {
+          for (int j = 0; j < BLOCK_SIZE; j++) {
+            docs[upto++] = base + j;
+          }
+        } else if (card <= MAX_ARRAY_CARDINALITY) {
+          for (int j = 0; j < card; j++) {
+            docs[upto++] =
+                base + Short.toUnsignedInt(pool.getShort(pages, offset + j * Short.BYTES));
+          }
+        } else {
+          for (int w = 0; w < BITMAP_LONGS; w++) {
+            long word = pool.getLong(pages, offset + w * Long.BYTES);
+            while (word != 0) {
+              docs[upto++] = base + (w << 6) + Long.numberOfTrailingZeros(word);
+              word &= word - 1;
+            }
+          }
+        }
+      }
+      return new SortedIntDocSet(docs);
+    }
+
+    final FixedBitSet bits = new FixedBitSet(numBits);
+    final long[] words = bits.getBits();
+    for (int i = 0; i < numContainers; i++) {
+      final int pos = HEADER_BYTES + i * CONTAINER_HEADER_BYTES;
+      final int key = pool.getInt(pages, pos);
+      final int card = pool.getInt(pages, pos + Integer.BYTES);
+      final int offset = pool.getInt(pages, pos + 2 * Integer.BYTES);
+      final int base = key << BLOCK_BITS;
+      if (card == BLOCK_SIZE) {
+        bits.set(base, base + BLOCK_SIZE);
+      } else if (card <= MAX_ARRAY_CARDINALITY) {
+        for (int j = 0; j < card; j++) {
+          bits.set(base + Short.toUnsignedInt(pool.getShort(pages, offset + j * Short.BYTES)));
+        }
+      } else {
+        final int firstWord = key * BITMAP_LONGS;
+        final int numWords = Math.min(BITMAP_LONGS, words.length - firstWord);
+        for (int w = 0; w < numWords; w++) {
+          words[firstWord + w] = pool.getLong(pages, offset + w * Long.BYTES);
+        }
+      }
+    }
+    return new BitDocSet(bits, cardinality);
+  }
+}
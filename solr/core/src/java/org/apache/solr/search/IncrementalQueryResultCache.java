@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.search.SortedSetSortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * A queryResultCache whose entries can be revalidated incrementally when autowarming a new
+ * searcher, instead of re-executing their queries against the whole index.
+ *
+ * <p>This applies to queries sorted by fields (not by score) whose query and filters only depend
+ * on the contents of each segment, when every segment of the old searcher is still part of the new
+ * one, as is typical for append-mostly indexes between merges. The cached docs that were deleted
+ * since are dropped, and the remaining ones are merged with the top docs of the new segments; the
+ * query is only executed against the old segments to count the matches that were deleted. All
+ * other entries are regenerated by the configured regenerator.
+ *
+ * <p>Reports <code>incrementalHits</code> (entries reused without executing the query), <code>
+ * incrementalMerges</code> (entries merged with the new segments) and <code>incrementalMisses
+ * </code> (entries regenerated from scratch) in addition to the usual cache metrics.
+ *
+ * @lucene.experimental
+ */
+public class IncrementalQueryResultCache extends CaffeineCache<QueryResultKey, DocList> {
+
+  public static final String INCREMENTAL_HITS_PARAM = "incrementalHits";
+  public static final String INCREMENTAL_MERGES_PARAM = "incrementalMerges";
+  public static final String INCREMENTAL_MISSES_PARAM = "incrementalMisses";
+
+  private final LongAdder incrementalHits = new LongAdder();
+  private final LongAdder incrementalMerges = new LongAdder();
+  private final LongAdder incrementalMisses = new LongAdder();
+
+  // the segments of the searcher owning this cache
+  private volatile List<LeafReaderContext> leaves;
+  // only set while warming from the cache of an older searcher
+  private volatile SegmentMapping warmingSegments;
+
+  @Override
+  public Object init(Map<String, String> args, Object persistence, CacheRegenerator regenerator) {
+    return super.init(
+        args, persistence, regenerator == null ? null : new IncrementalRegenerator(regenerator));
+  }
+
+  @Override
+  public void initialSearcher(SolrIndexSearcher initialSearcher) {
+    leaves = initialSearcher.getTopReaderContext().leaves();
+  }
+
+  @Override
+  public void warm(SolrIndexSearcher searcher, SolrCache<QueryResultKey, DocList> old) {
+    leaves = searcher.getTopReaderContext().leaves();
+    if (old instanceof IncrementalQueryResultCache other && other.leaves != null) {
+      warmingSegments = SegmentMapping.create(other.leaves, leaves);
+    }
+    try {
+      super.warm(searcher, old);
+    } finally {
+      warmingSegments = null;
+    }
+  }
+
+  /**
+   * Whether the entry may be revalidated incrementally: its docs must be ordered by the values of
+   * fields, and matching a doc must only depend on the segment it belongs to.
+   */
+  static boolean isIncremental(QueryResultKey key, DocList docs) {
+    if (key.sort == null
+        || key.sort.needsScores()
+        || (key.nc_flags & SolrIndexSearcher.GET_SCORES) != 0
+        || docs.hasScores()
+        || docs.offset() != 0
+        || docs.hitCountRelation() != TotalHits.Relation.EQUAL_TO) {
+      return false;
+    }
+    for (SortField sf : key.sfields) {
+      if (!isIncremental(sf)) {
+        return false;
+      }
+    }
+    if (!isIncremental(key.query)) {
+      return false;
+    }
+    if (key.filters != null) {
+      for (Query filter : key.filters) {
+        if (!isIncremental(filter)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean isIncremental(SortField sf) {
+    switch (sf.getType()) {
+      case DOC:
+      case STRING:
+      case STRING_VAL:
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+        return true;
+      case CUSTOM:
+        return sf instanceof SortedSetSortField || sf instanceof SortedNumericSortField;
+      default:
+        // scores, and function sorts that may depend on the whole index
+        return false;
+    }
+  }
+
+  private static boolean isIncremental(Query query) {
+    return !(query instanceof PostFilter)
+        && !(query instanceof RankQuery)
+        && SegmentFilterCache.isPerSegmentQuery(query);
+  }
+
+  private static Query combine(QueryResultKey key) {
+    if (key.filters == null || key.filters.isEmpty()) {
+      return QueryUtils.makeQueryable(key.query);
+    }
+    BooleanQuery.Builder builder = new BooleanQuery.Builder();
+    builder.add(QueryUtils.makeQueryable(key.query), Occur.MUST);
+    for (Query filter : key.filters) {
+      builder.add(QueryUtils.makeQueryable(filter), Occur.FILTER);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Computes the entry for the searcher being warmed from the one of the old searcher, if
+   * possible.
+   *
+   * @return false if the entry must be regenerated from scratch
+   */
+  private boolean regenerateIncrementally(
+      SolrIndexSearcher searcher, QueryResultKey key, DocList oldList) throws IOException {
+    final SegmentMapping segments = warmingSegments;
+    if (segments == null || !isIncremental(key, oldList)) {
+      incrementalMisses.increment();
+      return false;
+    }
+
+    // the cached docs that are still alive, in their new doc id space
+    final int[] survivors = new int[oldList.size()];
+    int numSurvivors = 0;
+    for (DocIterator it = oldList.iterator(); it.hasNext(); ) {
+      final int doc = segments.remap(it.nextDoc());
+      if (doc >= 0) {
+        survivors[numSurvivors++] = doc;
+      }
+    }
+    // whether the old entry held all the matches, or only the top ones
+    final boolean complete = oldList.matches() == oldList.size();
+    if (!complete && numSurvivors == 0) {
+      incrementalMisses.increment();
+      return false;
+    }
+
+    final Query query = combine(key);
+    long matches = oldList.matches();
+    if (segments.deletesChanged) {
+      matches -=
+          complete
+              ? oldList.size() - numSurvivors
+              : segments.countNewlyDeleted(searcher, query);
+    }
+
+    if (!segments.hasNewDocs()) {
+      // the surviving docs keep their order; if some of the old top docs were deleted, this
+      // entry is shorter than before since the docs ranked after them are unknown
+      put(key, newDocList(survivors, numSurvivors, matches));
+      incrementalHits.increment();
+      return true;
+    }
+
+    // merge the surviving docs with the top docs of the new segments
+    final FixedBitSet restriction = segments.newSegmentDocs(searcher.maxDoc());
+    for (int i = 0; i < numSurvivors; i++) {
+      restriction.set(survivors[i]);
+    }
+    final BooleanQuery merged =
+        new BooleanQuery.Builder()
+            .add(query, Occur.MUST)
+            .add(new BitDocSet(restriction).makeQuery(), Occur.FILTER)
+            .build();
+    final int numHits =
+        Math.max(oldList.size(), searcher.getCore().getSolrConfig().queryResultWindowSize);
+    final TopFieldCollector collector =
+        TopFieldCollector.create(
+            searcher.weightSort(key.sort), Math.max(1, numHits), null, Integer.MAX_VALUE);
+    searcher.search(merged, collector);
+    final TopDocs topDocs = collector.topDocs();
+
+    final ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+    final int lastSurvivor = numSurvivors == 0 ? -1 : survivors[numSurvivors - 1];
+    final int[] docs = new int[scoreDocs.length];
+    int len = 0;
+    while (len < scoreDocs.length) {
+      docs[len] = scoreDocs[len].doc;
+      // old docs that were not cached may rank right after the last cached one
+      if (docs[len++] == lastSurvivor && !complete) {
+        break;
+      }
+    }
+    matches += collector.getTotalHits() - numSurvivors;
+    put(key, newDocList(docs, len, matches));
+    incrementalMerges.increment();
+    return true;
+  }
+
+  private static DocList newDocList(int[] docs, int len, long matches) {
+    // trimmed to len, since DocSlice.subset serves requests for more docs up to the array length
+    return new DocSlice(
+        0,
+        len,
+        Arrays.copyOf(docs, len),
+        null,
+        matches,
+        matches > 0 ? Float.NaN : 0.0f,
+        TotalHits.Relation.EQUAL_TO);
+  }
+
+  @Override
+  protected void addMetrics(Map<String, Object> map) {
+    map.put(INCREMENTAL_HITS_PARAM, incrementalHits.sum());
+    map.put(INCREMENTAL_MERGES_PARAM, incrementalMerges.sum());
+    map.put(INCREMENTAL_MISSES_PARAM, incrementalMisses.sum());
+  }
+
+  @Override
+  public String getName() {
+    return IncrementalQueryResultCache.class.getName();
+  }
+
+  /** Tries to revalidate entries incrementally before falling back to another regenerator. */
+  private static final class IncrementalRegenerator implements CacheRegenerator {
+    private final CacheRegenerator fallback;
+
+    IncrementalRegenerator(CacheRegenerator fallback) {
+      this.fallback = fallback;
+    }
+
+    @Override
+    public <K, V> boolean regenerateItem(
+        SolrIndexSearcher newSearcher,
+        SolrCache<K, V> newCache,
+        SolrCache<K, V> oldCache,
+        K oldKey,
+        V oldVal)
+        throws IOException {
+      if (newCache instanceof IncrementalQueryResultCache cache
+          && cache.regenerateIncrementally(
+              newSearcher, (QueryResultKey) oldKey, (DocList) oldVal)) {
+        return true;
+      }
+      return fallback.regenerateItem(newSearcher, newCache, oldCache, oldKey, oldVal);
+    }
+
+    @Override
+    public String toString() {
+      return "IncrementalRegenerator(" + fallback + ")";
+    }
+  }
+
+  /** Maps the segments of an old searcher to the same segments in a new searcher. */
+  private static final class SegmentMapping {
+    final List<LeafReaderContext> oldLeaves;
+    // the new leaf of each old leaf, by ord
+    final LeafReaderContext[] newLeaves;
+    // new leaves that were not part of the old searcher
+    final List<LeafReaderContext> addedLeaves;
+    final boolean deletesChanged;
+
+    private SegmentMapping(
+        List<LeafReaderContext> oldLeaves,
+        LeafReaderContext[] newLeaves,
+        List<LeafReaderContext> addedLeaves) {
+      this.oldLeaves = oldLeaves;
+      this.newLeaves = newLeaves;
+      this.addedLeaves = addedLeaves;
+      boolean changed = false;
+      for (int i = 0; i < newLeaves.length; i++) {
+        changed |=
+            oldLeaves.get(i).reader().numDeletedDocs() != newLeaves[i].reader().numDeletedDocs();
+      }
+      this.deletesChanged = changed;
+    }
+
+    /**
+     * @return the mapping, or null if a segment of the old searcher is not part of the new one
+     */
+    static SegmentMapping create(
+        List<LeafReaderContext> oldLeaves, List<LeafReaderContext> newLeaves) {
+      final Map<IndexReader.CacheKey, LeafReaderContext> byCore = new HashMap<>();
+      for (LeafReaderContext leaf : newLeaves) {
+        final IndexReader.CacheHelper cacheHelper = leaf.reader().getCoreCacheHelper();
+        if (cacheHelper == null) {
+          return null;
+        }
+        byCore.put(cacheHelper.getKey(), leaf);
+      }
+
+      final LeafReaderContext[] mapped = new LeafReaderContext[oldLeaves.size()];
+      for (LeafReaderContext leaf : oldLeaves) {
+        final IndexReader.CacheHelper cacheHelper = leaf.reader().getCoreCacheHelper();
+        if (cacheHelper == null) {
+          return null;
+        }
+        mapped[leaf.ord] = byCore.remove(cacheHelper.getKey());
+        if (mapped[leaf.ord] == null) {
+          return null; // merged away
+        }
+      }
+      return new SegmentMapping(oldLeaves, mapped, new ArrayList<>(byCore.values()));
+    }
+
+    boolean hasNewDocs() {
+      for (LeafReaderContext leaf : addedLeaves) {
+        if (leaf.reader().numDocs() > 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return the id of the doc in the new searcher, or -1 if it has been deleted
+     */
+    int remap(int oldDoc) {
+      final int ord = ReaderUtil.subIndex(oldDoc, oldLeaves);
+      final int doc = oldDoc - oldLeaves.get(ord).docBase;
+      final LeafReaderContext leaf = newLeaves[ord];
+      final Bits liveDocs = leaf.reader().getLiveDocs();
+      return liveDocs == null || liveDocs.get(doc) ? leaf.docBase + doc : -1;
+    }
+
+    /** All the docs of the added segments, in the new doc id space. */
+    FixedBitSet newSegmentDocs(int maxDoc) {
+      final FixedBitSet bits = new FixedBitSet(maxDoc);
+      for (LeafReaderContext leaf : addedLeaves) {
+        bits.set(leaf.docBase, leaf.docBase + leaf.reader().maxDoc());
+      }
+      return bits;
+    }
+
+    /** Counts the docs of the old segments matching the query that have been deleted since. */
+    long countNewlyDeleted(SolrIndexSearcher newSearcher, Query query) throws IOException {
+      final Weight weight =
+          newSearcher.createWeight(newSearcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+      long count = 0;
+      for (int ord = 0; ord < newLeaves.length; ord++) {
+        final Bits oldLive = oldLeaves.get(ord).reader().getLiveDocs();
+        final Bits newLive = newLeaves[ord].reader().getLiveDocs();
+        if (newLive == null
+            || oldLeaves.get(ord).reader().numDeletedDocs()
+                == newLeaves[ord].reader().numDeletedDocs()) {
+          continue;
+        }
+        final Scorer scorer = weight.scorer(newLeaves[ord]);
+        if (scorer == null) {
+          continue;
+        }
+        final DocIdSetIterator it = scorer.iterator();
+        for (int doc = 0; doc < newLive.length(); doc++) {
+          if (newLive.get(doc) || (oldLive != null && !oldLive.get(doc))) {
+            continue;
+          }
+          if (it.docID() < doc) {
+            it.advance(doc);
+          }
+          if (it.docID() == doc) {
+            count++;
+          } else if (it.docID() == DocIdSetIterator.NO_MORE_DOCS) {
+            break;
+          }
+        }
+      }
+      return count;
+    }
+  }
+}
@@ -0,0 +1,396 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricsContext;
+import org.apache.solr.util.IOFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A filterCache implementation that keeps its {@link DocSet}s outside of the Java heap, as
+ * roaring-style compressed containers (see {@link CompressedDocSet}). Eviction follows Caffeine's
+ * W-TinyLFU policy, bounded by the compressed size of the entries.
+ *
+ * <p>The <code>maxRamMB</code> setting bounds the off-heap bytes used by cached sets (default
+ * 256MB); the <code>size</code> setting is not supported. The sets live in pages of an {@link
+ * OffHeapPagePool} that is shared by all the generations of the cache, and that reuses the pages
+ * of evicted entries, so the native memory held is bounded by the peak usage: about twice <code>
+ * maxRamMB</code> while a new searcher warms its cache from the previous one.
+ *
+ * <p>Each lookup hit decodes a fresh, short lived DocSet, a sorted int array for sparse sets and a
+ * bitset otherwise, so this cache trades some CPU and young generation garbage for keeping many
+ * more filters warm without growing the old generation. Since Solr ignores them, {@link #put} and
+ * {@link #remove} don't decode the previous value and return null.
+ *
+ * <p>Configure with <code>&lt;filterCache class="solr.OffHeapFilterCache" maxRamMB="1024"
+ * autowarmCount="128"/&gt;</code>
+ */
+public class OffHeapFilterCache extends SolrCacheBase
+    implements SolrCache<Query, DocSet>, Accountable {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(OffHeapFilterCache.class)
+          + RamUsageEstimator.shallowSizeOfInstance(CacheStats.class)
+          + 4 * RamUsageEstimator.shallowSizeOfInstance(LongAdder.class);
+
+  public static final String OFF_HEAP_BYTES_USED_PARAM = "offHeapBytesUsed";
+  public static final String OFF_HEAP_BYTES_ALLOCATED_PARAM = "offHeapBytesAllocated";
+
+  static final int DEFAULT_MAX_RAM_MB = 256;
+
+  private CacheStats priorStats;
+  private long priorInserts;
+
+  private String description = "Off-Heap Filter Cache";
+  private LongAdder inserts;
+  private Cache<Query, CompressedDocSet> cache;
+  private OffHeapPagePool pagePool;
+  private long warmupTime;
+  private long maxRamBytes;
+  private int initialSize;
+
+  private MetricsMap cacheMap;
+  private SolrMetricsContext solrMetricsContext;
+
+  private final LongAdder ramBytes = new LongAdder();
+  private final LongAdder offHeapBytes = new LongAdder();
+  private final RemovalListener<Query, CompressedDocSet> removalListener = this::onRemoval;
+
+  public OffHeapFilterCache() {
+    this.priorStats = CacheStats.empty();
+  }
+
+  @Override
+  public Object init(Map<String, String> args, Object persistence, CacheRegenerator regenerator) {
+    super.init(args, regenerator);
+    String str = args.get(INITIAL_SIZE_PARAM);
+    initialSize = (str == null) ? 1024 : Integer.parseInt(str);
+    str = args.get(MAX_RAM_MB_PARAM);
+    int maxRamMB = str == null ? DEFAULT_MAX_RAM_MB : Double.valueOf(str).intValue();
+    maxRamBytes = maxRamMB < 0 ? Long.MAX_VALUE : maxRamMB * 1024L * 1024L;
+    if (args.containsKey(SIZE_PARAM)) {
+      log.warn("{} is bounded by {} only, ignoring {}", name(), MAX_RAM_MB_PARAM, SIZE_PARAM);
+    }
+
+    description = generateDescription();
+    if (persistence == null) {
+      // shared by all the generations of this cache, so that pages are reused across searchers
+      persistence = new OffHeapPagePool();
+    }
+    pagePool = (OffHeapPagePool) persistence;
+    cache = buildCache();
+    inserts = new LongAdder();
+    return persistence;
+  }
+
+  private Cache<Query, CompressedDocSet> buildCache() {
+    Caffeine<Query, CompressedDocSet> builder =
+        Caffeine.newBuilder()
+            .initialCapacity(initialSize)
+            .executor(Runnable::run)
+            .removalListener(removalListener)
+            .recordStats();
+    builder.maximumWeight(maxRamBytes);
+    builder.weigher((k, v) -> (int) v.offHeapBytesUsed());
+    return builder.build();
+  }
+
+  private void onRemoval(Query key, CompressedDocSet value, RemovalCause cause) {
+    if (value == null) {
+      return;
+    }
+    ramBytes.add(-entryRamBytes(key, value));
+    offHeapBytes.add(-value.offHeapBytesUsed());
+    // pages go back to the pool once concurrent readers are done decoding them
+    value.release();
+  }
+
+  private static long entryRamBytes(Query key, CompressedDocSet value) {
+    return RamUsageEstimator.sizeOfObject(key, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED)
+        + value.ramBytesUsed()
+        + RamUsageEstimator.LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED + ramBytes.sum();
+  }
+
+  /** Bytes held outside of the Java heap by the cached sets. */
+  public long offHeapBytesUsed() {
+    return offHeapBytes.sum();
+  }
+
+  /**
+   * Bytes held outside of the Java heap by the page pool, shared with the other generations of
+   * this cache. Pages of evicted entries are not given back to the OS but reused.
+   */
+  public long offHeapBytesAllocated() {
+    return pagePool.bytesAllocated();
+  }
+
+  @Override
+  public DocSet get(Query key) {
+    CompressedDocSet compressed = cache.getIfPresent(key);
+    return compressed == null ? null : decode(compressed);
+  }
+
+  /** Decodes the given set, or returns null if it was evicted and freed meanwhile. */
+  private static DocSet decode(CompressedDocSet compressed) {
+    if (!compressed.tryAcquire()) {
+      return null;
+    }
+    try {
+      return compressed.decode();
+    } finally {
+      compressed.release();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The computation runs outside of the map, so concurrent misses on the same key may both
+   * compute the set, but recursive computations are supported.
+   */
+  @Override
+  public DocSet computeIfAbsent(
+      Query key, IOFunction<? super Query, ? extends DocSet> mappingFunction) throws IOException {
+    DocSet existing = get(key);
+    if (existing != null) {
+      return existing;
+    }
+    DocSet value = mappingFunction.apply(key);
+    if (value != null) {
+      put(key, value);
+    }
+    return value;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Always returns null, decoding the replaced value would be wasted on callers.
+   */
+  @Override
+  public DocSet put(Query key, DocSet value) {
+    CompressedDocSet compressed = CompressedDocSet.encode(value, pagePool);
+    inserts.increment();
+    ramBytes.add(entryRamBytes(key, compressed));
+    offHeapBytes.add(compressed.offHeapBytesUsed());
+    // accounting for a replaced value happens via #onRemoval
+    cache.asMap().put(key, compressed);
+    return null;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Always returns null, decoding the removed value would be wasted on callers.
+   */
+  @Override
+  public DocSet remove(Query key) {
+    // accounting happens via #onRemoval
+    cache.asMap().remove(key);
+    return null;
+  }
+
+  @Override
+  public void clear() {
+    cache.invalidateAll();
+    cache.cleanUp();
+  }
+
+  @Override
+  public int size() {
+    return cache.asMap().size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    SolrCache.super.close();
+    cache.invalidateAll();
+    cache.cleanUp();
+  }
+
+  @Override
+  public int getMaxSize() {
+    return -1;
+  }
+
+  @Override
+  public void setMaxSize(int maxSize) {
+    // not supported, bounded by maxRamMB only
+  }
+
+  @Override
+  public int getMaxRamMB() {
+    return maxRamBytes != Long.MAX_VALUE ? (int) (maxRamBytes / 1024L / 1024L) : -1;
+  }
+
+  @Override
+  public void setMaxRamMB(int maxRamMB) {
+    long newMaxRamBytes = maxRamMB < 0 ? Long.MAX_VALUE : maxRamMB * 1024L * 1024L;
+    if (newMaxRamBytes != maxRamBytes) {
+      maxRamBytes = newMaxRamBytes;
+      cache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(newMaxRamBytes));
+      description = generateDescription();
+      cache.cleanUp();
+    }
+  }
+
+  @Override
+  public void warm(SolrIndexSearcher searcher, SolrCache<Query, DocSet> old) {
+    if (regenerator == null) {
+      return;
+    }
+
+    long warmingStartTime = System.nanoTime();
+    Map<Query, CompressedDocSet> hottest = Collections.emptyMap();
+    OffHeapFilterCache other = (OffHeapFilterCache) old;
+
+    // warm entries
+    if (isAutowarmingOn()) {
+      int size = autowarm.getWarmCount(other.cache.asMap().size());
+      hottest =
+          other.cache.policy().eviction().map(p -> p.hottest(size)).orElse(Collections.emptyMap());
+    }
+
+    for (Entry<Query, CompressedDocSet> entry : hottest.entrySet()) {
+      DocSet oldVal = decode(entry.getValue());
+      if (oldVal == null) {
+        continue; // evicted meanwhile
+      }
+      try {
+        boolean continueRegen =
+            regenerator.regenerateItem(searcher, this, old, entry.getKey(), oldVal);
+        if (!continueRegen) {
+          break;
+        }
+      } catch (Exception e) {
+        log.error("Error during auto-warming of key: {}", entry.getKey(), e);
+      }
+    }
+
+    inserts.reset();
+    priorStats = other.cache.stats().plus(other.priorStats);
+    priorInserts = other.inserts.sum() + other.priorInserts;
+    warmupTime =
+        TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
+  }
+
+  private String generateDescription() {
+    return String.format(
+        Locale.ROOT,
+        "Off-Heap Filter Cache(maxRamMB=%d, initialSize=%d%s)",
+        getMaxRamMB(),
+        initialSize,
+        isAutowarmingOn() ? (", " + getAutowarmDescription()) : "");
+  }
+
+  @Override
+  public boolean isRecursionSupported() {
+    return true;
+  }
+
+  //////////////////////// SolrInfoBean methods //////////////////////
+
+  @Override
+  public String getName() {
+    return OffHeapFilterCache.class.getName();
+  }
+
+  @Override
+  public String getDescription() {
+    return description;
+  }
+
+  // for unit tests only
+  @VisibleForTesting
+  MetricsMap getMetricsMap() {
+    return cacheMap;
+  }
+
+  @Override
+  public SolrMetricsContext getSolrMetricsContext() {
+    return solrMetricsContext;
+  }
+
+  @Override
+  public String toString() {
+    return name() + (cacheMap != null ? cacheMap.getValue().toString() : "");
+  }
+
+  @Override
+  public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+    solrMetricsContext = parentContext.getChildContext(this);
+    cacheMap =
+        new MetricsMap(
+            map -> {
+              if (cache != null) {
+                CacheStats stats = cache.stats();
+                long insertCount = inserts.sum();
+
+                map.put(LOOKUPS_PARAM, stats.requestCount());
+                map.put(HITS_PARAM, stats.hitCount());
+                map.put(HIT_RATIO_PARAM, hitRate(stats.hitCount(), stats.requestCount()));
+                map.put(INSERTS_PARAM, insertCount);
+                map.put(EVICTIONS_PARAM, stats.evictionCount());
+                map.put(SIZE_PARAM, cache.asMap().size());
+                map.put("warmupTime", warmupTime);
+                map.put(RAM_BYTES_USED_PARAM, ramBytesUsed());
+                map.put(OFF_HEAP_BYTES_USED_PARAM, offHeapBytesUsed());
+                map.put(OFF_HEAP_BYTES_ALLOCATED_PARAM, offHeapBytesAllocated());
+                map.put(MAX_RAM_MB_PARAM, getMaxRamMB());
+
+                CacheStats cumulativeStats = priorStats.plus(stats);
+                map.put("cumulative_lookups", cumulativeStats.requestCount());
+                map.put("cumulative_hits", cumulativeStats.hitCount());
+                map.put(
+                    "cumulative_hitratio",
+                    hitRate(cumulativeStats.hitCount(), cumulativeStats.requestCount()));
+                map.put("cumulative_inserts", priorInserts + insertCount);
+                map.put("cumulative_evictions", cumulativeStats.evictionCount());
+              }
+            });
+    solrMetricsContext.gauge(cacheMap, true, scope, getCategory().toString());
+  }
+
+  private static double hitRate(long hitCount, long lookupCount) {
+    return lookupCount == 0 ? 1.0 : (double) hitCount / lookupCount;
+  }
+}
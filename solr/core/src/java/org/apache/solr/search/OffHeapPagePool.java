@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A pool of fixed size off-heap pages, carved out of direct slabs of 1MB that are allocated on
+ * demand and never released. Pages that are freed go back to the pool and are handed out again by
+ * later allocations, so the native memory held by the pool is bounded by the peak number of pages
+ * in use rather than by when the garbage collector gets around to cleaning up direct buffers.
+ *
+ * <p>A page is identified by an int, and a sequence of pages is addressed as one contiguous range
+ * of bytes via its page table. Values must not straddle a page boundary, which holds for any value
+ * at a position that is a multiple of its own size.
+ */
+final class OffHeapPagePool {
+  static final int PAGE_BITS = 8;
+  static final int PAGE_SIZE = 1 << PAGE_BITS;
+  static final int PAGE_MASK = PAGE_SIZE - 1;
+
+  private static final int SLAB_BITS = 20;
+  static final int SLAB_SIZE = 1 << SLAB_BITS;
+  private static final int PAGES_PER_SLAB_BITS = SLAB_BITS - PAGE_BITS;
+  private static final int PAGES_PER_SLAB_MASK = (1 << PAGES_PER_SLAB_BITS) - 1;
+
+  private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+  // number of pages carved out of the slabs so far, free or not
+  private int numCarvedPages;
+  private int[] freePages = new int[0];
+  private int numFreePages;
+
+  /** Allocates the given number of zeroed pages, and returns their ids. */
+  int[] allocate(int count) {
+    final int[] pages = new int[count];
+    synchronized (this) {
+      int upto = 0;
+      for (; upto < count && numFreePages > 0; upto++) {
+        pages[upto] = freePages[--numFreePages];
+      }
+      for (; upto < count; upto++) {
+        if (numCarvedPages == slabs.length << PAGES_PER_SLAB_BITS) {
+          ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_SIZE).order(ByteOrder.nativeOrder());
+          ByteBuffer[] newSlabs = Arrays.copyOf(slabs, slabs.length + 1);
+          newSlabs[slabs.length] = slab;
+          slabs = newSlabs;
+        }
+        pages[upto] = numCarvedPages++;
+      }
+    }
+    // the pages are owned by the caller from now on, no need to hold the lock
+    for (int page : pages) {
+      final ByteBuffer slab = slab(page);
+      final int start = (page & PAGES_PER_SLAB_MASK) << PAGE_BITS;
+      for (int i = 0; i < PAGE_SIZE; i += Long.BYTES) {
+        slab.putLong(start + i, 0L);
+      }
+    }
+    return pages;
+  }
+
+  /** Gives the given pages back to the pool. They must not be accessed anymore. */
+  synchronized void free(int[] pages) {
+    if (numFreePages + pages.length > freePages.length) {
+      freePages = Arrays.copyOf(freePages, Math.max(numFreePages + pages.length, numCarvedPages));
+    }
+    System.arraycopy(pages, 0, freePages, numFreePages, pages.length);
+    numFreePages += pages.length;
+  }
+
+  /** Bytes of native memory held by the pool, whether the pages are in use or not. */
+  long bytesAllocated() {
+    return (long) slabs.length * SLAB_SIZE;
+  }
+
+  /** Bytes of the pages allocated and not freed yet. */
+  synchronized long bytesInUse() {
+    return (long) (numCarvedPages - numFreePages) * PAGE_SIZE;
+  }
+
+  int getInt(int[] pages, int pos) {
+    return slab(pages[pos >>> PAGE_BITS]).getInt(offset(pages, pos));
+  }
+
+  void putInt(int[] pages, int pos, int value) {
+    slab(pages[pos >>> PAGE_BITS]).putInt(offset(pages, pos), value);
+  }
+
+  short getShort(int[] pages, int pos) {
+    return slab(pages[pos >>> PAGE_BITS]).getShort(offset(pages, pos));
+  }
+
+  void putShort(int[] pages, int pos, short value) {
+    slab(pages[pos >>> PAGE_BITS]).putShort(offset(pages, pos), value);
+  }
+
+  long getLong(int[] pages, int pos) {
+    return slab(pages[pos >>> PAGE_BITS]).getLong(offset(pages, pos));
+  }
+
+  void putLong(int[] pages, int pos, long value) {
+    slab(pages[pos >>> PAGE_BITS]).putLong(offset(pages, pos), value);
+  }
+
+  private ByteBuffer slab(int page) {
+    return slabs[page >>> PAGES_PER_SLAB_BITS];
+  }
+
+  private static int offset(int[] pages, int pos) {
+    return ((pages[pos >>> PAGE_BITS] & PAGES_PER_SLAB_MASK) << PAGE_BITS) | (pos & PAGE_MASK);
+  }
+}
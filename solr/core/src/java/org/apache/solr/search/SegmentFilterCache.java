@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.RoaringDocIdSet;
+import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricsContext;
+
+/**
+ * Caches the docs matching a filter within a single segment, keyed by the filter and the segment's
+ * core cache key. It lives as long as the {@link org.apache.solr.core.SolrCore}, so unlike the
+ * per-searcher filterCache its entries survive commits: building a filter for a new searcher (in
+ * particular when autowarming the filterCache) only executes the filter against segments it has
+ * not seen yet.
+ *
+ * <p>Cached entries ignore deleted docs; live docs are applied when the per-segment entries are
+ * assembled into a top-level {@link DocSet}. The entries of a segment are dropped once its core
+ * is closed.
+ *
+ * <p>Enabled with <code>perSegment="true"</code> on the <code>filterCache</code> definition, with
+ * <code>perSegmentMaxRamMB</code> bounding its size.
+ *
+ * @lucene.experimental
+ */
+public class SegmentFilterCache implements SolrInfoBean {
+
+  public static final String PER_SEGMENT_PARAM = "perSegment";
+  public static final String PER_SEGMENT_MAX_RAM_MB_PARAM = "perSegmentMaxRamMB";
+  static final int DEFAULT_MAX_RAM_MB = 100;
+
+  private static final class Key {
+    final IndexReader.CacheKey coreKey;
+    final Query query;
+
+    Key(IndexReader.CacheKey coreKey, Query query) {
+      this.coreKey = coreKey;
+      this.query = query;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return coreKey == other.coreKey && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(coreKey) + query.hashCode();
+    }
+  }
+
+  private final Cache<Key, DocIdSet> cache;
+  private final Set<IndexReader.CacheKey> trackedCores = ConcurrentHashMap.newKeySet();
+  private final LongAdder uncacheable = new LongAdder();
+  private final long maxRamBytes;
+
+  private MetricsMap metricsMap;
+  private SolrMetricsContext solrMetricsContext;
+
+  public SegmentFilterCache(long maxRamBytes) {
+    this.maxRamBytes = maxRamBytes;
+    this.cache =
+        Caffeine.newBuilder()
+            .executor(Runnable::run)
+            .maximumWeight(maxRamBytes)
+            .weigher((Key k, DocIdSet v) -> (int) Math.min(Integer.MAX_VALUE, weigh(k, v)))
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * @return a cache for the given filterCache config, or null if per-segment caching is not
+   *     enabled
+   */
+  public static SegmentFilterCache create(CacheConfig filterCacheConfig) {
+    if (filterCacheConfig == null) {
+      return null;
+    }
+    Map<String, Object> args = filterCacheConfig.toMap(null);
+    if (!Boolean.parseBoolean(String.valueOf(args.get(PER_SEGMENT_PARAM)))) {
+      return null;
+    }
+    Object maxRamMB = args.get(PER_SEGMENT_MAX_RAM_MB_PARAM);
+    long mb = maxRamMB == null ? DEFAULT_MAX_RAM_MB : Long.parseLong(maxRamMB.toString());
+    return new SegmentFilterCache(mb * 1024L * 1024L);
+  }
+
+  private static long weigh(Key key, DocIdSet docs) {
+    return RamUsageEstimator.sizeOfObject(key.query, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED)
+        + docs.ramBytesUsed()
+        + RamUsageEstimator.LINKED_HASHTABLE_RAM_BYTES_PER_ENTRY;
+  }
+
+  /**
+   * Whether the results of the query only depend on the contents of each segment. Queries
+   * producing top-level {@link DocSet}s, or requiring a {@link SolrIndexSearcher}, are computed
+   * against the whole index instead.
+   */
+  public static boolean isPerSegmentQuery(Query query) {
+    return !(query instanceof DocSetProducer) && !(query instanceof SolrSearcherRequirer);
+  }
+
+  /**
+   * Computes the docs of the searcher matching the query, reusing the cached results of segments
+   * seen before. The query must satisfy {@link #isPerSegmentQuery(Query)}.
+   */
+  public DocSet getDocSet(SolrIndexSearcher searcher, Query query) throws IOException {
+    final Weight weight =
+        searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+    final int maxDoc = searcher.maxDoc();
+    final FixedBitSet bits = new FixedBitSet(maxDoc);
+    for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+      final DocIdSetIterator it = getSegmentDocs(weight, leaf, query);
+      if (it == null) {
+        continue;
+      }
+      final Bits liveDocs = leaf.reader().getLiveDocs();
+      final int base = leaf.docBase;
+      for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+        if (liveDocs == null || liveDocs.get(doc)) {
+          bits.set(base + doc);
+        }
+      }
+    }
+
+    final BitDocSet answer = new BitDocSet(bits);
+    if (answer.size() <= DocSetUtil.smallSetSize(maxDoc)) {
+      return DocSetUtil.toSmallSet(answer);
+    }
+    return DocSetUtil.getDocSet(answer, searcher);
+  }
+
+  private DocIdSetIterator getSegmentDocs(Weight weight, LeafReaderContext leaf, Query query)
+      throws IOException {
+    final IndexReader.CacheHelper cacheHelper = leaf.reader().getCoreCacheHelper();
+    if (cacheHelper == null || !weight.isCacheable(leaf)) {
+      uncacheable.increment();
+      final Scorer scorer = weight.scorer(leaf);
+      return scorer == null ? null : scorer.iterator();
+    }
+
+    final Key key = new Key(cacheHelper.getKey(), query);
+    DocIdSet docs = cache.getIfPresent(key);
+    if (docs == null) {
+      docs = computeSegmentDocs(weight, leaf);
+      trackCore(cacheHelper);
+      cache.put(key, docs);
+    }
+    return docs.iterator();
+  }
+
+  private static DocIdSet computeSegmentDocs(Weight weight, LeafReaderContext leaf)
+      throws IOException {
+    final Scorer scorer = weight.scorer(leaf);
+    if (scorer == null) {
+      return DocIdSet.EMPTY;
+    }
+    final RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(leaf.reader().maxDoc());
+    final DocIdSetIterator it = scorer.iterator();
+    for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+      builder.add(doc);
+    }
+    return builder.build();
+  }
+
+  private void trackCore(IndexReader.CacheHelper cacheHelper) {
+    final IndexReader.CacheKey coreKey = cacheHelper.getKey();
+    if (trackedCores.add(coreKey)) {
+      cacheHelper.addClosedListener(this::onCoreClosed);
+    }
+  }
+
+  private void onCoreClosed(IndexReader.CacheKey coreKey) {
+    trackedCores.remove(coreKey);
+    cache.asMap().keySet().removeIf(key -> key.coreKey == coreKey);
+  }
+
+  /** Number of cached (filter, segment) entries. */
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+    cache.cleanUp();
+  }
+
+  @Override
+  public String getName() {
+    return SegmentFilterCache.class.getName();
+  }
+
+  @Override
+  public String getDescription() {
+    return "Per-segment filter cache(maxRamMB=" + (maxRamBytes / 1024L / 1024L) + ")";
+  }
+
+  @Override
+  public Category getCategory() {
+    return Category.CACHE;
+  }
+
+  // for unit tests only
+  @VisibleForTesting
+  MetricsMap getMetricsMap() {
+    return metricsMap;
+  }
+
+  @Override
+  public SolrMetricsContext getSolrMetricsContext() {
+    return solrMetricsContext;
+  }
+
+  @Override
+  public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+    this.solrMetricsContext = parentContext;
+    metricsMap =
+        new MetricsMap(
+            map -> {
+              CacheStats stats = cache.stats();
+              map.put(SolrCache.LOOKUPS_PARAM, stats.requestCount());
+              map.put(SolrCache.HITS_PARAM, stats.hitCount());
+              map.put(SolrCache.HIT_RATIO_PARAM, stats.hitRate());
+              map.put(SolrCache.EVICTIONS_PARAM, stats.evictionCount());
+              map.put(SolrCache.SIZE_PARAM, cache.estimatedSize());
+              map.put("segments", trackedCores.size());
+              map.put("uncacheableLookups", uncacheable.sum());
+              map.put(
+                  SolrCache.RAM_BYTES_USED_PARAM,
+                  cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L));
+              map.put(SolrCache.MAX_RAM_MB_PARAM, maxRamBytes / 1024L / 1024L);
+            });
+    solrMetricsContext.gauge(
+        metricsMap, true, "segmentFilterCache", Category.CACHE.toString(), scope);
+  }
+}
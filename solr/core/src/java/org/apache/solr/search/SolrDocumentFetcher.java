@@ -27,8 +27,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Predicate;
@@ -68,10 +70,22 @@ import org.apache.solr.core.SolrConfig;
 import org.apache.solr.response.DocsStreamer;
 import org.apache.solr.response.ResultContext;
 import org.apache.solr.schema.AbstractEnumField;
+import org.apache.solr.schema.BinaryField;
 import org.apache.solr.schema.BoolField;
+import org.apache.solr.schema.DatePointField;
+import org.apache.solr.schema.DoublePointField;
+import org.apache.solr.schema.FloatPointField;
+import org.apache.solr.schema.IntPointField;
 import org.apache.solr.schema.LatLonPointSpatialField;
+import org.apache.solr.schema.LongPointField;
 import org.apache.solr.schema.NumberType;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.apache.solr.schema.TrieDateField;
+import org.apache.solr.schema.TrieDoubleField;
+import org.apache.solr.schema.TrieFloatField;
+import org.apache.solr.schema.TrieIntField;
+import org.apache.solr.schema.TrieLongField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -110,6 +124,25 @@ public class SolrDocumentFetcher {
    */
   private final Set<String> nonStoredDVsWithoutCopyTargets;
 
+  /** Types of the stored fields {@link #visitSolrDoc} supports, as their values are stored. */
+  private static final Set<Class<? extends org.apache.solr.schema.FieldType>>
+      CONSUMABLE_STORED_TYPES =
+          Set.of(
+              StrField.class,
+              org.apache.solr.schema.TextField.class,
+              BoolField.class,
+              BinaryField.class,
+              IntPointField.class,
+              LongPointField.class,
+              FloatPointField.class,
+              DoublePointField.class,
+              DatePointField.class,
+              TrieIntField.class,
+              TrieLongField.class,
+              TrieFloatField.class,
+              TrieDoubleField.class,
+              TrieDateField.class);
+
   private static int largeValueLengthCacheThreshold =
       Integer.getInteger("solr.largeField.cacheThreshold", 512 * 1024); // internal setting
 
@@ -345,6 +378,50 @@ public class SolrDocumentFetcher {
     return solrReturnFields.getFetchOptimizer(rfoSupplier).getSolrDoc(luceneDocId);
   }
 
+  /**
+   * Receives the values of the fields of a document from {@link #visitSolrDoc(int,
+   * SolrReturnFields, FieldValueConsumer)}, primitive values without boxing them. The values of a
+   * multi-valued field are not necessarily consecutive.
+   */
+  public interface FieldValueConsumer {
+    void intValue(SchemaField field, int value) throws IOException;
+
+    void longValue(SchemaField field, long value) throws IOException;
+
+    void floatValue(SchemaField field, float value) throws IOException;
+
+    void doubleValue(SchemaField field, double value) throws IOException;
+
+    void dateValue(SchemaField field, long epochMillis) throws IOException;
+
+    void booleanValue(SchemaField field, boolean value) throws IOException;
+
+    void stringValue(SchemaField field, String value) throws IOException;
+
+    /** A string as UTF-8 bytes, which are only valid during the call. */
+    void utf8Value(SchemaField field, BytesRef value) throws IOException;
+
+    /** A binary value, whose bytes are only valid during the call. */
+    void bytesValue(SchemaField field, BytesRef value) throws IOException;
+  }
+
+  /**
+   * Feeds the values of a document to a consumer, as {@link #solrDoc(int, SolrReturnFields)} would
+   * put them in a SolrDocument, without building the document. Only stored fields of the basic
+   * string, text, boolean, numeric, date and binary types are supported, and docValues of the
+   * types {@link #decorateDocValueFields} decodes into those.
+   *
+   * @return false if the document has a field that isn't supported; the consumer should then
+   *     discard the values it received for that document and use {@link #solrDoc(int,
+   *     SolrReturnFields)} instead
+   */
+  public boolean visitSolrDoc(
+      int luceneDocId, SolrReturnFields solrReturnFields, FieldValueConsumer consumer) {
+    Supplier<RetrieveFieldsOptimizer> rfoSupplier =
+        () -> new RetrieveFieldsOptimizer(solrReturnFields);
+    return solrReturnFields.getFetchOptimizer(rfoSupplier).visitSolrDoc(luceneDocId, consumer);
+  }
+
   /**
    * {@link StoredFieldVisitor} which loads the specified fields eagerly (or all if null). If {@link
    * #enableLazyFieldLoading} then the rest get special lazy field entries. Designated "large"
@@ -402,6 +479,87 @@ public class SolrDocumentFetcher {
     }
   }
 
+  /**
+   * {@link StoredFieldVisitor} which feeds the values of the needed fields to a {@link
+   * FieldValueConsumer}, stopping at the first field that isn't supported. It is reused across the
+   * documents of a request.
+   */
+  private class ConsumingStoredFieldVisitor extends StoredFieldVisitor {
+    private final Set<String> storedFieldsToLoad; // null means all
+    private final Set<String> fieldNamesNeeded; // null means all
+    // dynamic fields are created on each lookup
+    private final Map<String, SchemaField> schemaFields = new HashMap<>();
+    private FieldValueConsumer consumer;
+    private SchemaField field;
+    private boolean unsupported;
+
+    ConsumingStoredFieldVisitor(Set<String> storedFieldsToLoad, Set<String> fieldNamesNeeded) {
+      this.storedFieldsToLoad = storedFieldsToLoad;
+      this.fieldNamesNeeded = fieldNamesNeeded;
+    }
+
+    void reset(FieldValueConsumer consumer) {
+      this.consumer = consumer;
+      this.unsupported = false;
+    }
+
+    @Override
+    public Status needsField(FieldInfo fieldInfo) {
+      if ((storedFieldsToLoad != null && !storedFieldsToLoad.contains(fieldInfo.name))
+          || (fieldNamesNeeded != null && !fieldNamesNeeded.contains(fieldInfo.name))) {
+        return Status.NO;
+      }
+      field = schemaFields.get(fieldInfo.name);
+      if (field == null) {
+        field = searcher.getSchema().getFieldOrNull(fieldInfo.name);
+        if (field == null || !CONSUMABLE_STORED_TYPES.contains(field.getType().getClass())) {
+          unsupported = true;
+          return Status.STOP;
+        }
+        schemaFields.put(fieldInfo.name, field);
+      }
+      return Status.YES;
+    }
+
+    @Override
+    public void binaryField(FieldInfo fieldInfo, byte[] value) throws IOException {
+      consumer.bytesValue(field, new BytesRef(value));
+    }
+
+    @Override
+    public void stringField(FieldInfo fieldInfo, String value) throws IOException {
+      if (field.getType() instanceof BoolField) {
+        consumer.booleanValue(field, value.charAt(0) == 'T');
+      } else {
+        consumer.stringValue(field, value);
+      }
+    }
+
+    @Override
+    public void intField(FieldInfo fieldInfo, int value) throws IOException {
+      consumer.intValue(field, value);
+    }
+
+    @Override
+    public void longField(FieldInfo fieldInfo, long value) throws IOException {
+      if (field.getType().getNumberType() == NumberType.DATE) {
+        consumer.dateValue(field, value);
+      } else {
+        consumer.longValue(field, value);
+      }
+    }
+
+    @Override
+    public void floatField(FieldInfo fieldInfo, float value) throws IOException {
+      consumer.floatValue(field, value);
+    }
+
+    @Override
+    public void doubleField(FieldInfo fieldInfo, double value) throws IOException {
+      consumer.doubleValue(field, value);
+    }
+  }
+
   /** Visit a document's fields using a {@link StoredFieldVisitor}. */
   public void doc(int docId, StoredFieldVisitor visitor) throws IOException {
     if (documentCache != null) {
@@ -745,6 +903,120 @@ public class SolrDocumentFetcher {
     }
   }
 
+  /**
+   * Feeds the value of a docValues field of a document to a consumer, as {@link #decodeDVField}
+   * decodes it.
+   *
+   * @return false if the value can't be fed without decoding it to an object
+   */
+  private boolean consumeDVField(
+      int localId,
+      LeafReader leafReader,
+      int readerOrd,
+      DocValuesIteratorCache.FieldDocValuesSupplier e,
+      FieldValueConsumer consumer)
+      throws IOException {
+    final SchemaField schemaField = e.schemaField;
+    final org.apache.solr.schema.FieldType fieldType = schemaField.getType();
+    switch (e.type) {
+      case NUMERIC:
+        final NumericDocValues ndv = e.getNumericDocValues(localId, leafReader, readerOrd);
+        return ndv == null || consumeNumberFromDV(schemaField, ndv.longValue(), false, consumer);
+      case BINARY:
+        BinaryDocValues bdv = e.getBinaryDocValues(localId, leafReader, readerOrd);
+        if (bdv != null) {
+          consumer.bytesValue(schemaField, bdv.binaryValue());
+        }
+        return true;
+      case SORTED:
+        SortedDocValues sdv = e.getSortedDocValues(localId, leafReader, readerOrd);
+        if (sdv != null) {
+          final BytesRef bRef = sdv.lookupOrd(sdv.ordValue());
+          if (fieldType instanceof BoolField) {
+            consumer.booleanValue(schemaField, bRef.bytes[bRef.offset] == 'T');
+          } else {
+            consumer.utf8Value(schemaField, bRef);
+          }
+        }
+        return true;
+      case SORTED_NUMERIC:
+        if (fieldType.getNumberType() == null) {
+          return false;
+        }
+        final SortedNumericDocValues numericDv =
+            e.getSortedNumericDocValues(localId, leafReader, readerOrd);
+        if (numericDv != null) {
+          // like decodeDVField, only the first value of single valued fields
+          final int docValueCount = schemaField.multiValued() ? numericDv.docValueCount() : 1;
+          for (int i = 0; i < docValueCount; i++) {
+            if (!consumeNumberFromDV(schemaField, numericDv.nextValue(), true, consumer)) {
+              return false;
+            }
+          }
+        }
+        return true;
+      case SORTED_SET:
+        if (fieldType.getClass() != StrField.class && !(fieldType instanceof BoolField)) {
+          return false;
+        }
+        final SortedSetDocValues values = e.getSortedSetDocValues(localId, leafReader, readerOrd);
+        if (values != null) {
+          for (long ord = values.nextOrd();
+              ord != SortedSetDocValues.NO_MORE_ORDS;
+              ord = values.nextOrd()) {
+            BytesRef value = values.lookupOrd(ord);
+            if (fieldType instanceof BoolField) {
+              consumer.booleanValue(schemaField, value.bytes[value.offset] == 'T');
+            } else {
+              consumer.utf8Value(schemaField, value);
+            }
+          }
+        }
+        return true;
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  private boolean consumeNumberFromDV(
+      SchemaField schemaField, long value, boolean sortableNumeric, FieldValueConsumer consumer)
+      throws IOException {
+    final org.apache.solr.schema.FieldType fieldType = schemaField.getType();
+    if (fieldType instanceof LatLonPointSpatialField
+        || fieldType instanceof AbstractEnumField
+        || fieldType.getNumberType() == null) {
+      return false;
+    }
+    switch (fieldType.getNumberType()) {
+      case INTEGER:
+        consumer.intValue(schemaField, (int) value);
+        break;
+      case LONG:
+        consumer.longValue(schemaField, value);
+        break;
+      case FLOAT:
+        consumer.floatValue(
+            schemaField,
+            sortableNumeric
+                ? NumericUtils.sortableIntToFloat((int) value)
+                : Float.intBitsToFloat((int) value));
+        break;
+      case DOUBLE:
+        consumer.doubleValue(
+            schemaField,
+            sortableNumeric
+                ? NumericUtils.sortableLongToDouble(value)
+                : Double.longBitsToDouble(value));
+        break;
+      case DATE:
+        consumer.dateValue(schemaField, value);
+        break;
+      default:
+        throw new AssertionError();
+    }
+    return true;
+  }
+
   public Set<String> getDvsCanSubstituteStored() {
     return dvsCanSubstituteStored;
   }
@@ -790,6 +1062,9 @@ public class SolrDocumentFetcher {
 
     private final DocValuesIteratorCache reuseDvIters;
 
+    // lazily created by visitSolrDoc
+    private ConsumingStoredFieldVisitor storedFieldVisitor;
+
     RetrieveFieldsOptimizer(SolrReturnFields solrReturnFields) {
       this.storedFields = calcStoredFieldsForReturn(solrReturnFields);
       this.dvFields = calcDocValueFieldsForReturn(solrReturnFields);
@@ -898,6 +1173,54 @@ public class SolrDocumentFetcher {
       return result;
     }
 
+    private boolean visitSolrDoc(int luceneDocId, FieldValueConsumer consumer) {
+      try {
+        if (returnStoredFields()) {
+          final Set<String> fieldNamesNeeded = getReturnFields().getLuceneFieldNames();
+          if (storedFieldVisitor == null) {
+            // the cached documents may have more fields than those to load
+            storedFieldVisitor =
+                new ConsumingStoredFieldVisitor(
+                    documentCache != null ? null : getStoredFields(), fieldNamesNeeded);
+          }
+          storedFieldVisitor.reset(consumer);
+          if (documentCache != null) {
+            visitFromCached(doc(luceneDocId, getStoredFields()), storedFieldVisitor);
+          } else {
+            storedFields.document(luceneDocId, storedFieldVisitor);
+          }
+          if (storedFieldVisitor.unsupported) {
+            return false;
+          }
+          solrReturnFields.setFieldSources(
+              returnDVFields()
+                  ? SolrReturnFields.FIELD_SOURCES.MIXED_SOURCES
+                  : SolrReturnFields.FIELD_SOURCES.ALL_FROM_STORED);
+        } else {
+          solrReturnFields.setFieldSources(SolrReturnFields.FIELD_SOURCES.ALL_FROM_DV);
+        }
+
+        if (returnDVFields()) {
+          final List<LeafReaderContext> leafContexts = searcher.getLeafContexts();
+          final int subIndex = ReaderUtil.subIndex(luceneDocId, leafContexts);
+          final int localId = luceneDocId - leafContexts.get(subIndex).docBase;
+          final LeafReader leafReader = leafContexts.get(subIndex).reader();
+          for (String fieldName : getDvFields()) {
+            DocValuesIteratorCache.FieldDocValuesSupplier e = reuseDvIters.getSupplier(fieldName);
+            if (e != null && !consumeDVField(localId, leafReader, subIndex, e, consumer)) {
+              return false;
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw new SolrException(
+            SolrException.ErrorCode.SERVER_ERROR,
+            "Error reading document with docId " + luceneDocId,
+            e);
+      }
+      return true;
+    }
+
     private SolrDocument getSolrDoc(int luceneDocId) {
 
       SolrDocument sdoc = null;
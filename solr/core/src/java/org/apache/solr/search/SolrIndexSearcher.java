@@ -167,6 +167,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
   private final boolean cachingEnabled;
   private final SolrCache<Query, DocSet> filterCache;
+  private final SegmentFilterCache segmentFilterCache;
   private final SolrCache<QueryResultKey, DocList> queryResultCache;
   private final SolrCache<String, UnInvertedField> fieldValueCache;
   private final LongAdder fullSortCount = new LongAdder();
@@ -455,8 +456,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       }
 
       cacheList = clist.toArray(new SolrCache[0]);
+      segmentFilterCache = filterCache == null ? null : core.getSegmentFilterCache();
     } else {
       this.filterCache = null;
+      this.segmentFilterCache = null;
       this.queryResultCache = null;
       this.fieldValueCache = null;
       this.cacheMap = NO_GENERIC_CACHES;
@@ -1034,17 +1037,28 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
       // Not found in the cache so compute and put in the cache
       if (answer == null) {
-        answer = getDocSetNC(query, null);
+        answer = getDocSetForFilterCache(query);
         filterCache.put(query, answer);
       }
     } else {
-      answer = filterCache.computeIfAbsent(query, q -> getDocSetNC(q, null));
+      answer = filterCache.computeIfAbsent(query, this::getDocSetForFilterCache);
     }
 
     assert !(answer instanceof MutableBitDocSet) : "should not be mutable";
     return answer;
   }
 
+  /**
+   * Computes the DocSet of a filterCache miss, reusing per-segment results from the core's {@link
+   * SegmentFilterCache} when it is enabled.
+   */
+  private DocSet getDocSetForFilterCache(Query query) throws IOException {
+    if (segmentFilterCache != null && SegmentFilterCache.isPerSegmentQuery(query)) {
+      return segmentFilterCache.getDocSet(this, query);
+    }
+    return getDocSetNC(query, null);
+  }
+
   private static final MatchAllDocsQuery MATCH_ALL_DOCS_QUERY = new MatchAllDocsQuery();
 
   /** Used as a synchronization point to handle the lazy-init of {@link #liveDocs}. */
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import org.apache.solr.common.util.Hash;
+
+/**
+ * A Count-Min sketch of the counts of bucket values: the estimate of the count of a value is never
+ * less than its count, and is 0 for most values not added when the sketch isn't full. Sketches are
+ * sent by the shards for the buckets they didn't return, so that the merger can bound their counts.
+ *
+ * @see FacetRequest.RefineMethod#SKETCH
+ */
+final class CountMinSketch {
+  static final int DEPTH = 4;
+  static final int MAX_WIDTH = 1 << 12;
+
+  private final int width;
+  private final long[] counts;
+
+  CountMinSketch(int width) {
+    assert width > 0 && Integer.bitCount(width) == 1;
+    this.width = width;
+    this.counts = new long[DEPTH * width];
+  }
+
+  /** Returns a sketch wide enough for most values not added to have an estimate of 0. */
+  static CountMinSketch forCardinality(long numValues) {
+    long width = Long.highestOneBit(Math.max(1, numValues)) << 3;
+    return new CountMinSketch((int) Math.min(MAX_WIDTH, width));
+  }
+
+  void add(Object val, long count) {
+    long hash = hash(val);
+    int h1 = (int) hash, h2 = (int) (hash >>> 32) | 1;
+    for (int row = 0; row < DEPTH; row++) {
+      counts[row * width + ((h1 + row * h2) & (width - 1))] += count;
+    }
+  }
+
+  long estimate(Object val) {
+    long hash = hash(val);
+    int h1 = (int) hash, h2 = (int) (hash >>> 32) | 1;
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < DEPTH; row++) {
+      estimate = Math.min(estimate, counts[row * width + ((h1 + row * h2) & (width - 1))]);
+    }
+    return estimate;
+  }
+
+  /**
+   * Hashes the value the same on the shards and the merger, whatever numeric type it was read back
+   * as from the shard responses.
+   */
+  private static long hash(Object val) {
+    final byte[] bytes;
+    if (val instanceof Double || val instanceof Float) {
+      bytes = longBytes(Double.doubleToLongBits(((Number) val).doubleValue()));
+    } else if (val instanceof Number) {
+      bytes = longBytes(((Number) val).longValue());
+    } else if (val instanceof Date) {
+      bytes = longBytes(((Date) val).getTime());
+    } else {
+      bytes = val.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    Hash.LongPair hash = new Hash.LongPair();
+    Hash.murmurhash3_x64_128(bytes, 0, bytes.length, 0, hash);
+    return hash.val1;
+  }
+
+  private static byte[] longBytes(long v) {
+    byte[] bytes = new byte[Long.BYTES];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (v >>> (i * 8));
+    }
+    return bytes;
+  }
+
+  /** Returns the width and the counts as variable-length longs, most counts being small. */
+  byte[] toBytes() {
+    byte[] bytes = new byte[(counts.length + 1) * 10];
+    int pos = writeVLong(bytes, 0, width);
+    for (long count : counts) {
+      pos = writeVLong(bytes, pos, count);
+    }
+    return Arrays.copyOf(bytes, pos);
+  }
+
+  static CountMinSketch fromBytes(byte[] bytes) {
+    int[] pos = new int[1];
+    CountMinSketch sketch = new CountMinSketch((int) readVLong(bytes, pos));
+    for (int i = 0; i < sketch.counts.length; i++) {
+      sketch.counts[i] = readVLong(bytes, pos);
+    }
+    return sketch;
+  }
+
+  private static int writeVLong(byte[] bytes, int pos, long v) {
+    while ((v & ~0x7FL) != 0) {
+      bytes[pos++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    bytes[pos++] = (byte) v;
+    return pos;
+  }
+
+  private static long readVLong(byte[] bytes, int[] pos) {
+    long v = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = bytes[pos[0]++];
+      v |= (b & 0x7FL) << shift;
+      if (b >= 0) {
+        return v;
+      }
+    }
+  }
+}
@@ -51,6 +51,16 @@ public abstract class DocValuesAcc extends SlotAcc {
     }
   }
 
+  @Override
+  public void collect(int[] docs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+      throws IOException {
+    for (int i = 0; i < numDocs; i++) {
+      if (advanceExact(docs[i])) {
+        collectValues(docs[i], slot);
+      }
+    }
+  }
+
   protected abstract void collectValues(int doc, int slot) throws IOException;
 
   /**
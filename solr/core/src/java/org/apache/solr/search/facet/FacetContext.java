@@ -40,6 +40,8 @@ public class FacetContext {
   DocSet base;
   FacetContext parent;
   boolean cache = true;
+  boolean multiThreaded = false;
+  FacetRollups rollups; // may be null
   int flags;
   FacetDebugInfo debugInfo;
 
@@ -91,6 +93,14 @@ public class FacetContext {
     return flags;
   }
 
+  /**
+   * @return true if processors may spread collection of this facet over the searcher's executor
+   * @see org.apache.solr.common.params.CommonParams#MULTI_THREADED
+   */
+  public boolean isMultiThreaded() {
+    return multiThreaded;
+  }
+
   /**
    * @param filter The filter for the bucket that resulted in this context/domain. Can be null if
    *     this is the root context.
@@ -104,6 +114,8 @@ public class FacetContext {
 
     // carry over from parent
     ctx.cache = cache;
+    ctx.multiThreaded = multiThreaded;
+    ctx.rollups = rollups;
     ctx.flags = flags;
     ctx.qcontext = qcontext;
     ctx.req = req;
@@ -111,6 +111,16 @@ public class FacetField extends FacetRequestSorted {
       }
     }
 
+    // an explicitly requested method other than dv is honored
+    if (fcontext.rollups != null
+        && !isNumber
+        && (method == FacetMethod.SMART || method == FacetMethod.DV)) {
+      FacetRollups.Rollup rollup = fcontext.rollups.find(fcontext, this, sf);
+      if (rollup != null) {
+        return new FacetFieldProcessorByRollup(fcontext, this, sf, rollup);
+      }
+    }
+
     // TODO auto-pick ENUM/STREAM SOLR-9351 when index asc and DocSet cardinality is *not* much
     // smaller than term cardinality
     if (method == FacetMethod.ENUM) { // at the moment these two are the same
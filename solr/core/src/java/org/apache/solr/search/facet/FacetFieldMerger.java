@@ -18,6 +18,7 @@
 package org.apache.solr.search.facet;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -37,6 +38,14 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
   // the number of buckets in the bucket lists returned from all of the shards
   int numReturnedBuckets;
 
+  // with the "sketch" refinement method, the shards merged, and for the shards with more buckets,
+  // the bound of the counts of the buckets they didn't return and a sketch of these counts
+  BitSet mergedShards;
+  long[] sketchBounds;
+  CountMinSketch[] sketches;
+  // whether the counts of the top buckets are known to be exact without refining them
+  Boolean exactFromSketches;
+
   public FacetFieldMerger(FacetField freq) {
     super(freq);
   }
@@ -71,6 +80,10 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
       }
     }
 
+    if (freq.refine == FacetRequest.RefineMethod.SKETCH) {
+      mergeSketch(facetResult, mcontext);
+    }
+
     @SuppressWarnings("unchecked")
     List<SimpleOrderedMap<?>> bucketList = (List<SimpleOrderedMap<?>>) facetResult.get("buckets");
     numReturnedPerShard[mcontext.shardNum] = bucketList.size();
@@ -88,6 +101,107 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
     }
   }
 
+  private void mergeSketch(SimpleOrderedMap<?> facetResult, Context mcontext) {
+    if (mergedShards == null) {
+      mergedShards = new BitSet(mcontext.numShards);
+      sketchBounds = new long[mcontext.numShards];
+      sketches = new CountMinSketch[mcontext.numShards];
+    }
+    mergedShards.set(mcontext.shardNum);
+    SimpleOrderedMap<?> sketch = (SimpleOrderedMap<?>) facetResult.get("sketch");
+    if (sketch != null) {
+      sketchBounds[mcontext.shardNum] = ((Number) sketch.get("bound")).longValue();
+      sketches[mcontext.shardNum] = CountMinSketch.fromBytes((byte[]) sketch.get("counts"));
+    }
+  }
+
+  /**
+   * Returns whether the top buckets, and their counts, are known to be exact from the bounds of the
+   * counts of the buckets not returned by the shards with the "sketch" refinement method, in which
+   * case they don't need refining. This is the case when each top bucket was either returned by a
+   * shard, or has a count of 0 in its sketch, and no other bucket can have a count reaching the
+   * count of the last top bucket.
+   */
+  boolean isExactFromSketches(Context mcontext) {
+    if (exactFromSketches == null) {
+      exactFromSketches = computeExactFromSketches(mcontext);
+    }
+    return exactFromSketches;
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean computeExactFromSketches(Context mcontext) {
+    if (freq.refine != FacetRequest.RefineMethod.SKETCH
+        || !freq.getSubFacets().isEmpty()
+        || freq.processEmpty
+        || freq.prelim_sort != null
+        || !"count".equals(freq.sort.sortVariable)
+        || freq.sort.sortDirection != FacetRequest.SortDirection.desc
+        || freq.limit < 0
+        || freq.offset + freq.limit == 0
+        || mergedShards == null
+        || mergedShards.cardinality() < mcontext.numShards) {
+      return false;
+    }
+    if (shardHasMoreBuckets == null) {
+      return true;
+    }
+    // the bound of the count of a bucket not returned by any shard
+    long unseenBound = 0;
+    for (int shard = shardHasMoreBuckets.nextSetBit(0);
+        shard >= 0;
+        shard = shardHasMoreBuckets.nextSetBit(shard + 1)) {
+      if (sketches[shard] == null) {
+        return false;
+      }
+      unseenBound += sketchBounds[shard];
+    }
+
+    sortBuckets(freq.sort);
+    long numTop = freq.offset + freq.limit;
+    long numFound = 0;
+    FacetBucket last = null;
+    for (FacetBucket bucket : sortedBuckets) {
+      long maxCount = bucket.count + unreturnedCountBound(bucket, mcontext);
+      if (numFound < numTop && bucket.count >= freq.mincount) {
+        if (maxCount != bucket.count) {
+          return false; // a top bucket whose count isn't exact
+        }
+        last = bucket;
+        numFound++;
+      } else if (numFound < numTop) {
+        if (maxCount >= freq.mincount) {
+          return false; // a bucket that may reach the mincount
+        }
+      } else if (maxCount > last.count
+          || (maxCount == last.count && bucket.bucketValue.compareTo(last.bucketValue) < 0)) {
+        return false; // a bucket that may be among the top buckets
+      }
+    }
+    return unseenBound < (numFound < numTop ? freq.mincount : last.count);
+  }
+
+  /** Returns the bound of the count of the bucket on the shards that didn't return it. */
+  private long unreturnedCountBound(FacetBucket bucket, Context mcontext) {
+    long bound = 0;
+    for (int shard = shardHasMoreBuckets.nextSetBit(0);
+        shard >= 0;
+        shard = shardHasMoreBuckets.nextSetBit(shard + 1)) {
+      if (!mcontext.getShardFlag(bucket.bucketNumber, shard)) {
+        bound += Math.min(sketchBounds[shard], sketches[shard].estimate(bucket.bucketValue));
+      }
+    }
+    return bound;
+  }
+
+  @Override
+  public Map<String, Object> getRefinement(Context mcontext) {
+    if (isExactFromSketches(mcontext)) {
+      return null;
+    }
+    return super.getRefinement(mcontext);
+  }
+
   @Override
   public Object getMergedResult() {
     SimpleOrderedMap<Object> result = new SimpleOrderedMap<>();
@@ -111,7 +225,10 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
 
     // TODO: change effective offsets + limits at shards...
 
-    boolean refine = freq.refine != null && freq.refine != FacetRequest.RefineMethod.NONE;
+    boolean refine =
+        freq.refine != null
+            && freq.refine != FacetRequest.RefineMethod.NONE
+            && !Boolean.TRUE.equals(exactFromSketches);
 
     int off = (int) freq.offset;
     int lim = freq.limit >= 0 ? (int) freq.limit : Integer.MAX_VALUE;
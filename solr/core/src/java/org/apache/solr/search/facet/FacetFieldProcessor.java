@@ -35,6 +35,7 @@ import java.util.function.IntFunction;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.PriorityQueue;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.SimpleOrderedMap;
@@ -82,11 +83,21 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
   SpecialSlotAcc allBucketsAcc;
 
   FacetFieldProcessor(FacetContext fcontext, FacetField freq, SchemaField sf) {
+    this(fcontext, freq, sf, freq.limit == -1 && freq.subFacets.size() == 0);
+  }
+
+  /**
+   * @param singlePassSlotAccCollection whether all the stats of all the buckets are collected in a
+   *     single pass, rather than only those needed to sort the buckets; this requires no sub-facets
+   */
+  FacetFieldProcessor(
+      FacetContext fcontext, FacetField freq, SchemaField sf, boolean singlePassSlotAccCollection) {
     super(fcontext, freq);
+    assert !singlePassSlotAccCollection || freq.subFacets.isEmpty();
     this.sf = sf;
     this.effectiveMincount =
         (int) (fcontext.isShard() ? Math.min(1, freq.mincount) : freq.mincount);
-    this.singlePassSlotAccCollection = (freq.limit == -1 && freq.subFacets.size() == 0);
+    this.singlePassSlotAccCollection = singlePassSlotAccCollection;
 
     if (null == freq.prelim_sort) {
       // If the user has not specified any preliminary sort, then things are very simple.
@@ -525,6 +536,9 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
       // Currently, "more" is an internal implementation detail and only returned for distributed
       // sub-requests
       res.add("more", true);
+      if (freq.refine == FacetRequest.RefineMethod.SKETCH) {
+        addSketch(res, numSlots, sortedSlots, bucketValFromSlotNumFunc);
+      }
     }
 
     if (freq.missing) {
@@ -536,6 +550,47 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
     return res;
   }
 
+  /**
+   * Adds the largest count of the buckets not returned by this shard, and a sketch of their counts,
+   * for the merger to tell whether the top buckets need refining. Only done when the buckets are
+   * sorted by count, otherwise the merger refines them as usual.
+   */
+  private void addSketch(
+      SimpleOrderedMap<Object> res,
+      int numSlots,
+      Slot[] sortedSlots,
+      @SuppressWarnings("rawtypes") IntFunction<Comparable> bucketValFromSlotNumFunc)
+      throws IOException {
+    if (null != resort
+        || !"count".equals(sort.sortVariable)
+        || sort.sortDirection != FacetRequest.SortDirection.desc) {
+      return;
+    }
+    FixedBitSet returned = new FixedBitSet(numSlots);
+    for (Slot slot : sortedSlots) {
+      returned.set(slot.slot);
+    }
+    long numOthers = 0, maxCount = 0;
+    for (int slotNum = 0; slotNum < numSlots; slotNum++) {
+      long count = countAcc.getCount(slotNum);
+      if (!returned.get(slotNum) && count > 0) {
+        numOthers++;
+        maxCount = Math.max(maxCount, count);
+      }
+    }
+    CountMinSketch sketch = CountMinSketch.forCardinality(numOthers);
+    for (int slotNum = 0; slotNum < numSlots; slotNum++) {
+      long count = countAcc.getCount(slotNum);
+      if (!returned.get(slotNum) && count > 0) {
+        sketch.add(bucketValFromSlotNumFunc.apply(slotNum), count);
+      }
+    }
+    SimpleOrderedMap<Object> sketchRes = new SimpleOrderedMap<>();
+    sketchRes.add("bound", maxCount);
+    sketchRes.add("counts", sketch.toBytes());
+    res.add("sketch", sketchRes);
+  }
+
   /** Trivial helper method for building up a bucket query given the (Stringified) bucket value */
   protected Query makeBucketQuery(final String bucketValue) {
     return sf.getType().getFieldTermQuery(null, sf, bucketValue);
@@ -815,6 +870,14 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
       }
     }
 
+    @Override
+    public void collect(int[] docs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+        throws IOException {
+      for (SlotAcc acc : subAccs) {
+        acc.collect(docs, numDocs, slot, slotContext);
+      }
+    }
+
     @Override
     public int compare(int slotA, int slotB) {
       throw new UnsupportedOperationException();
@@ -53,6 +53,11 @@ abstract class FacetFieldProcessorByArray extends FacetFieldProcessor {
     super(fcontext, freq, sf);
   }
 
+  FacetFieldProcessorByArray(
+      FacetContext fcontext, FacetField freq, SchemaField sf, boolean singlePassSlotAccCollection) {
+    super(fcontext, freq, sf, singlePassSlotAccCollection);
+  }
+
   protected abstract void findStartAndEndOrds() throws IOException;
 
   protected abstract void collectDocs() throws IOException;
@@ -17,8 +17,10 @@
 package org.apache.solr.search.facet;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiDocValues;
@@ -26,11 +28,14 @@ import org.apache.lucene.index.OrdinalMap;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LongValues;
 import org.apache.lucene.util.UnicodeUtil;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.EnvUtils;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocSet;
 import org.apache.solr.search.facet.SlotAcc.CountSlotAcc;
 import org.apache.solr.search.facet.SlotAcc.SweepCountAccStruct;
 import org.apache.solr.search.facet.SlotAcc.SweepingCountSlotAcc;
@@ -42,6 +47,13 @@ import org.apache.solr.uninverting.FieldCacheImpl;
 class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
   static boolean unwrap_singleValued_multiDv = true; // only set to false for test coverage
 
+  /**
+   * Upper bound on the per-slice count arrays allocated for multi-threaded counting, set with the
+   * {@code solr.search.multiThreaded.maxFacetCountBytes} system property.
+   */
+  static final long MAX_MULTI_THREADED_COUNT_BYTES =
+      EnvUtils.getPropertyAsLong("solr.search.multiThreaded.maxFacetCountBytes", 64L * 1024 * 1024);
+
   boolean multiValuedField;
   SortedSetDocValues si; // only used for term lookups (for both single and multi-valued)
   OrdinalMap ordinalMap = null; // maps per-segment ords to global ords
@@ -51,6 +63,12 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
     multiValuedField = sf.multiValued() || sf.getType().multiValuedFieldCache();
   }
 
+  FacetFieldProcessorByArrayDV(
+      FacetContext fcontext, FacetField freq, SchemaField sf, boolean singlePassSlotAccCollection) {
+    super(fcontext, freq, sf, singlePassSlotAccCollection);
+    multiValuedField = sf.multiValued() || sf.getType().multiValuedFieldCache();
+  }
+
   @Override
   protected void findStartAndEndOrds() throws IOException {
     if (multiValuedField) {
@@ -130,6 +148,11 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
     if (freq.perSeg != null)
       accumSeg = canDoPerSeg && freq.perSeg; // internal - override perSeg heuristic
 
+    if (canDoPerSeg && others.isEmpty() && useMultiThreadedCounts()) {
+      collectCountsMultiThreaded(base, accumSeg);
+      return;
+    }
+
     final int maxSize = others.size() + 1; // others + base
     final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
     final DocIdSetIterator[] subIterators = new DocIdSetIterator[maxSize];
@@ -205,6 +228,132 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
     Arrays.fill(reuse, null); // better GC
   }
 
+  /**
+   * Multi-threaded counting needs one count array per index slice, so it is only used when
+   * requested and when those arrays fit within {@link #MAX_MULTI_THREADED_COUNT_BYTES}.
+   */
+  private boolean useMultiThreadedCounts() {
+    if (!fcontext.isMultiThreaded()) {
+      return false;
+    }
+    final int numSlices = fcontext.searcher.getSlices().length;
+    return numSlices > 1
+        && (long) nTerms * numSlices * Integer.BYTES <= MAX_MULTI_THREADED_COUNT_BYTES;
+  }
+
+  /**
+   * Counts the base domain slice by slice on the searcher's task executor. Each slice accumulates
+   * into its own array of global ord counts; those are then summed into the base count acc.
+   */
+  private void collectCountsMultiThreaded(SweepCountAccStruct base, boolean accumSeg)
+      throws IOException {
+    final IndexSearcher.LeafSlice[] slices = fcontext.searcher.getSlices();
+    final List<Callable<int[]>> tasks = new ArrayList<>(slices.length);
+    for (IndexSearcher.LeafSlice slice : slices) {
+      tasks.add(() -> countSlice(base.docSet, slice.leaves, accumSeg));
+    }
+    final List<int[]> sliceCounts = fcontext.searcher.getTaskExecutor().invokeAll(tasks);
+
+    final CountSlotAcc countAcc = base.countAcc;
+    for (int[] counts : sliceCounts) {
+      if (counts == null) {
+        continue;
+      }
+      for (int slot = 0; slot < counts.length; slot++) {
+        if (counts[slot] != 0) {
+          countAcc.incrementCount(slot, counts[slot]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts the docs of {@code docs} in the given leaves by global ord. Only valid for the full ord
+   * range, so the global ord is the slot.
+   *
+   * @return the counts, or null if none of the leaves had any values
+   */
+  private int[] countSlice(DocSet docs, LeafReaderContext[] leaves, boolean accumSeg)
+      throws IOException {
+    int[] counts = null;
+    int[] segCounts = null;
+    for (LeafReaderContext leaf : leaves) {
+      final DocIdSetIterator disi = docs.iterator(leaf);
+      if (disi == null) {
+        continue;
+      }
+
+      SortedDocValues singleDv = null;
+      SortedSetDocValues multiDv = null;
+      final int segMax;
+      if (multiValuedField) {
+        multiDv = leaf.reader().getSortedSetDocValues(sf.getName());
+        if (multiDv == null || multiDv.getValueCount() < 1) {
+          continue;
+        }
+        if (unwrap_singleValued_multiDv) {
+          singleDv = DocValues.unwrapSingleton(multiDv);
+        }
+        segMax = (int) multiDv.getValueCount();
+      } else {
+        singleDv = leaf.reader().getSortedDocValues(sf.getName());
+        if (singleDv == null || singleDv.getValueCount() < 1) {
+          continue;
+        }
+        segMax = singleDv.getValueCount();
+      }
+
+      if (counts == null) {
+        counts = new int[nTerms];
+      }
+      final LongValues toGlobal = ordinalMap == null ? null : ordinalMap.getGlobalOrds(leaf.ord);
+
+      // count segment-local ords first when we expect many hits per bucket, saving redundant
+      // seg->global ord mappings; without an ordinal map the segment ords are already global
+      final int[] target;
+      if (accumSeg && toGlobal != null) {
+        if (segCounts == null || segCounts.length < segMax) {
+          segCounts = new int[segMax];
+        } else {
+          Arrays.fill(segCounts, 0, segMax, 0);
+        }
+        target = segCounts;
+      } else {
+        target = counts;
+      }
+      final LongValues ordMap = target == counts ? toGlobal : null;
+
+      int doc;
+      if (singleDv != null) {
+        while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          if (singleDv.advanceExact(doc)) {
+            final int segOrd = singleDv.ordValue();
+            target[ordMap == null ? segOrd : (int) ordMap.get(segOrd)]++;
+          }
+        }
+      } else {
+        while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          if (multiDv.advanceExact(doc)) {
+            for (; ; ) {
+              final int segOrd = (int) multiDv.nextOrd();
+              if (segOrd < 0) break;
+              target[ordMap == null ? segOrd : (int) ordMap.get(segOrd)]++;
+            }
+          }
+        }
+      }
+
+      if (target == segCounts) {
+        for (int segOrd = 0; segOrd < segMax; segOrd++) {
+          if (segCounts[segOrd] != 0) {
+            counts[(int) toGlobal.get(segOrd)] += segCounts[segOrd];
+          }
+        }
+      }
+    }
+    return counts;
+  }
+
   @Override
   protected BytesRef lookupOrd(int ord) throws IOException {
     return si.lookupOrd(ord);
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.List;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.LongValues;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.facet.FacetRollups.Rollup;
+import org.apache.solr.search.facet.FacetRollups.SegmentRollup;
+import org.apache.solr.search.facet.SlotAcc.SumSlotAcc;
+
+/**
+ * Counts the buckets, and sums their stats, from the rollups of the segments rather than by
+ * collecting the documents, see {@link FacetRollups}. All the stats of all the buckets are
+ * accumulated in a single pass, since it only takes a pass over the ordinals of each segment.
+ */
+class FacetFieldProcessorByRollup extends FacetFieldProcessorByArrayDV {
+  private final Rollup rollup;
+
+  FacetFieldProcessorByRollup(
+      FacetContext fcontext, FacetField freq, SchemaField sf, Rollup rollup) {
+    super(fcontext, freq, sf, true);
+    this.rollup = rollup;
+  }
+
+  @Override
+  protected void collectDocs() throws IOException {
+    if (nTerms <= 0 || fcontext.base.size() < effectiveMincount) {
+      return;
+    }
+    assert startTermIndex == 0 && endTermIndex == si.getValueCount();
+
+    // the sum accumulators, and the index of the sum of the rollup they accumulate
+    final SumSlotAcc[] sumAccs = new SumSlotAcc[accs == null ? 0 : accs.length];
+    final int[] sumIndexes = new int[sumAccs.length];
+    for (int i = 0; i < sumAccs.length; i++) {
+      sumAccs[i] = (SumSlotAcc) accs[i];
+      sumIndexes[i] = rollup.sumIndex(freq.getFacetStats().get(accs[i].key));
+    }
+
+    final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+    for (int subIdx = 0; subIdx < leaves.size(); subIdx++) {
+      // all the segments were rolled up when the rollup was picked
+      SegmentRollup segment = rollup.get(fcontext.searcher, leaves.get(subIdx));
+      LongValues toGlobal = ordinalMap == null ? null : ordinalMap.getGlobalOrds(subIdx);
+      for (int segOrd = 0; segOrd < segment.counts.length; segOrd++) {
+        int count = segment.counts[segOrd];
+        if (count == 0) {
+          continue;
+        }
+        int slot = toGlobal == null ? segOrd : (int) toGlobal.get(segOrd);
+        countAcc.incrementCount(slot, count);
+        for (int i = 0; i < sumAccs.length; i++) {
+          sumAccs[i].result[slot] += segment.sums[sumIndexes[i]][segOrd];
+        }
+      }
+    }
+  }
+}
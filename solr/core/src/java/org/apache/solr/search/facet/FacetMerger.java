@@ -16,8 +16,6 @@
  */
 package org.apache.solr.search.facet;
 
-import static org.apache.solr.search.facet.FacetRequest.RefineMethod.SIMPLE;
-
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
@@ -106,7 +104,7 @@ public abstract class FacetMerger {
 
       for (Map.Entry<String, FacetRequest> entry : freq.subFacets.entrySet()) {
         Collection<String> childSubs = getSubsWithRefinement(entry.getValue());
-        if (childSubs.size() > 0 || entry.getValue().getRefineMethod() == SIMPLE) {
+        if (childSubs.size() > 0 || entry.getValue().doRefine()) {
           if (subs == null) {
             subs = new ArrayList<>(freq.getSubFacets().size());
           }
@@ -34,15 +34,18 @@ import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.CollectionUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrEventListener;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.handler.component.SearchComponent;
 import org.apache.solr.handler.component.ShardRequest;
 import org.apache.solr.handler.component.ShardResponse;
 import org.apache.solr.search.QueryContext;
+import org.apache.solr.util.plugin.SolrCoreAware;
 import org.noggit.CharArr;
 import org.noggit.JSONWriter;
 
-public class FacetModule extends SearchComponent {
+public class FacetModule extends SearchComponent implements SolrCoreAware {
 
   public static final String COMPONENT_NAME = "facet_module";
 
@@ -57,6 +60,26 @@ public class FacetModule extends SearchComponent {
   private static final String FACET_INFO = "_facet_";
   private static final String FACET_REFINE = "refine";
 
+  private FacetRollups rollups;
+
+  @Override
+  public void init(NamedList<?> args) {
+    super.init(args);
+    Object rollupArgs = args == null ? null : args.get("rollups");
+    if (rollupArgs instanceof NamedList) {
+      rollups = FacetRollups.parse((NamedList<?>) rollupArgs);
+    }
+  }
+
+  @Override
+  public void inform(SolrCore core) {
+    if (rollups != null) {
+      SolrEventListener listener = rollups.newSearcherListener();
+      core.registerFirstSearcherListener(listener);
+      core.registerNewSearcherListener(listener);
+    }
+  }
+
   public FacetComponentState getFacetComponentState(ResponseBuilder rb) {
     // TODO: put a map on ResponseBuilder?
     // rb.componentInfo.get(FacetComponentState.class);
@@ -134,6 +157,8 @@ public class FacetModule extends SearchComponent {
     fcontext.searcher = rb.req.getSearcher();
     fcontext.qcontext = QueryContext.newContext(fcontext.searcher);
     fcontext.cache = cache;
+    fcontext.multiThreaded = rb.req.getParams().getBool(CommonParams.MULTI_THREADED, false);
+    fcontext.rollups = rollups;
     if (isShard) {
       fcontext.flags |= FacetContext.IS_SHARD;
       fcontext.facetInfo =
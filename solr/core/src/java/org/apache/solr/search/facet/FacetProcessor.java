@@ -360,9 +360,15 @@ public abstract class FacetProcessor<T extends FacetRequest> {
     int segBase = 0;
     int segMax;
     int adjustedMax = 0;
+    final int[] block = new int[SlotAcc.COLLECT_BLOCK_SIZE];
+    int blockSize = 0;
     for (DocIterator docsIt = docs.iterator(); docsIt.hasNext(); ) {
       final int doc = docsIt.nextDoc();
       if (doc >= adjustedMax) {
+        if (blockSize > 0) {
+          collect(block, blockSize, slot, slotContext);
+          blockSize = 0;
+        }
         do {
           ctx = ctxIt.next();
           if (ctx == null) {
@@ -377,7 +383,14 @@ public abstract class FacetProcessor<T extends FacetRequest> {
         setNextReader(ctx);
       }
       count++;
-      collect(doc - segBase, slot, slotContext); // per-seg collectors
+      block[blockSize++] = doc - segBase; // per-seg collectors
+      if (blockSize == block.length) {
+        collect(block, blockSize, slot, slotContext);
+        blockSize = 0;
+      }
+    }
+    if (blockSize > 0) {
+      collect(block, blockSize, slot, slotContext);
     }
     return count;
   }
@@ -390,6 +403,16 @@ public abstract class FacetProcessor<T extends FacetRequest> {
     }
   }
 
+  /** Collects a block of documents of the current segment, one accumulator at a time. */
+  void collect(int[] segDocs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+      throws IOException {
+    if (accs != null) {
+      for (SlotAcc acc : accs) {
+        acc.collect(segDocs, numDocs, slot, slotContext);
+      }
+    }
+  }
+
   void setNextReader(LeafReaderContext ctx) throws IOException {
     // countAcc.setNextReader is a no-op
     for (SlotAcc acc : accs) {
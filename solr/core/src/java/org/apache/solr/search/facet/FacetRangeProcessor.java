@@ -25,11 +25,13 @@ import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.solr.common.EnumFieldValue;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.util.EnvUtils;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.schema.AbstractEnumField;
 import org.apache.solr.schema.AbstractEnumField.EnumMapping;
@@ -52,6 +54,14 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
   // TODO: ...it might make sense to have seperate classes w/a common base?
   // TODO: let FacetRange.createFacetProcessor decide which one to instantiate?
 
+  /**
+   * The maximum number of ranges intersected with the domain at once when the request is
+   * multi-threaded, set with the {@code solr.search.multiThreaded.rangeFacetChunk} system property.
+   * Without sub-facets, only the intersections of one chunk are held at once.
+   */
+  static final int MULTI_THREADED_CHUNK_SIZE =
+      EnvUtils.getPropertyAsInteger("solr.search.multiThreaded.rangeFacetChunk", 8);
+
   final SchemaField sf;
   final Calc calc;
   final EnumSet<FacetParams.FacetRangeInclude> include;
@@ -526,12 +536,28 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
 
     createAccs(fcontext.base.size(), slotCount);
 
+    final Query[] rangeQueries = new Query[slotCount];
     for (int idx = 0; idx < rangeList.size(); idx++) {
-      rangeStats(rangeList.get(idx), idx, hasSubFacets);
+      rangeQueries[idx] = rangeQuery(rangeList.get(idx));
     }
-
     for (int idx = 0; idx < otherList.size(); idx++) {
-      rangeStats(otherList.get(idx), rangeList.size() + idx, hasSubFacets);
+      rangeQueries[rangeList.size() + idx] = rangeQuery(otherList.get(idx));
+    }
+
+    if (fcontext.isMultiThreaded() && slotCount > 1) {
+      for (int chunk = 0; chunk < slotCount; chunk += MULTI_THREADED_CHUNK_SIZE) {
+        final int chunkEnd = Math.min(slotCount, chunk + MULTI_THREADED_CHUNK_SIZE);
+        final List<DocSet> rangeDocSets = getRangeDocSets(rangeQueries, chunk, chunkEnd);
+        for (int slot = chunk; slot < chunkEnd; slot++) {
+          rangeStats(rangeQueries[slot], rangeDocSets.get(slot - chunk), slot, hasSubFacets);
+        }
+      }
+    } else {
+      for (int slot = 0; slot < slotCount; slot++) {
+        // TODO: specialize count only
+        final DocSet intersection = fcontext.searcher.getDocSet(rangeQueries[slot], fcontext.base);
+        rangeStats(rangeQueries[slot], intersection, slot, hasSubFacets);
+      }
     }
 
     final SimpleOrderedMap res = new SimpleOrderedMap<>();
@@ -567,31 +593,43 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
   private Query[] filters;
   private DocSet[] intersections;
 
-  private void rangeStats(Range range, int slot, boolean hasSubFacets) throws IOException {
-    final Query rangeQ;
-    {
-      final Query rangeQuery =
-          sf.getType()
-              .getRangeQuery(
-                  null,
-                  sf,
-                  range.low == null ? null : calc.formatValue(range.low),
-                  range.high == null ? null : calc.formatValue(range.high),
-                  range.includeLower,
-                  range.includeUpper);
-      if (fcontext.cache) {
-        rangeQ = rangeQuery;
-      } else if (rangeQuery instanceof ExtendedQuery) {
-        ((ExtendedQuery) rangeQuery).setCache(false);
-        rangeQ = rangeQuery;
-      } else {
-        final WrappedQuery wrappedQuery = new WrappedQuery(rangeQuery);
-        wrappedQuery.setCache(false);
-        rangeQ = wrappedQuery;
-      }
+  private Query rangeQuery(Range range) {
+    final Query rangeQuery =
+        sf.getType()
+            .getRangeQuery(
+                null,
+                sf,
+                range.low == null ? null : calc.formatValue(range.low),
+                range.high == null ? null : calc.formatValue(range.high),
+                range.includeLower,
+                range.includeUpper);
+    if (fcontext.cache) {
+      return rangeQuery;
+    } else if (rangeQuery instanceof ExtendedQuery) {
+      ((ExtendedQuery) rangeQuery).setCache(false);
+      return rangeQuery;
+    } else {
+      final WrappedQuery wrappedQuery = new WrappedQuery(rangeQuery);
+      wrappedQuery.setCache(false);
+      return wrappedQuery;
     }
-    // TODO: specialize count only
-    DocSet intersection = fcontext.searcher.getDocSet(rangeQ, fcontext.base);
+  }
+
+  /**
+   * Intersects the range queries from {@code from} to {@code to} with the base domain concurrently
+   * on the searcher's task executor, since they are independent of each other.
+   */
+  private List<DocSet> getRangeDocSets(Query[] rangeQueries, int from, int to) throws IOException {
+    final List<Callable<DocSet>> tasks = new ArrayList<>(to - from);
+    for (int slot = from; slot < to; slot++) {
+      final Query rangeQ = rangeQueries[slot];
+      tasks.add(() -> fcontext.searcher.getDocSet(rangeQ, fcontext.base));
+    }
+    return fcontext.searcher.getTaskExecutor().invokeAll(tasks);
+  }
+
+  private void rangeStats(Query rangeQ, DocSet intersection, int slot, boolean hasSubFacets)
+      throws IOException {
     if (hasSubFacets) {
       filters[slot] = rangeQ;
       // save for later
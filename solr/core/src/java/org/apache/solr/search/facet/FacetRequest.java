@@ -27,6 +27,7 @@ import java.util.Objects;
 import java.util.Set;
 import org.apache.lucene.search.Query;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.DocSet;
@@ -120,7 +121,13 @@ public abstract class FacetRequest {
 
   public static enum RefineMethod {
     NONE,
-    SIMPLE;
+    SIMPLE,
+    /**
+     * Like {@link #SIMPLE}, but the shards also return bounds of the counts of the buckets they
+     * didn't return, so that refinement is skipped when these bounds show that the top buckets and
+     * their counts are exact already.
+     */
+    SKETCH;
 
     // NONE is distinct from null since we may want to know if refinement was explicitly turned off.
     public static FacetRequest.RefineMethod fromObj(Object method) {
@@ -130,6 +137,8 @@ public abstract class FacetRequest {
       }
       if ("simple".equals(method)) {
         return SIMPLE;
+      } else if ("sketch".equals(method)) {
+        return SKETCH;
       } else if ("none".equals(method)) {
         return NONE;
       } else {
@@ -453,6 +462,7 @@ public abstract class FacetRequest {
     fcontext.req = req;
     fcontext.searcher = req.getSearcher();
     fcontext.qcontext = QueryContext.newContext(fcontext.searcher);
+    fcontext.multiThreaded = req.getParams().getBool(CommonParams.MULTI_THREADED, false);
 
     return process(fcontext);
   }
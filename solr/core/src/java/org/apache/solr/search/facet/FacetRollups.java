@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.queries.function.FunctionValues;
+import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrEventListener;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.QueryContext;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.function.FieldNameValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rollups of all the documents of each segment by the values of a string field, counting them and
+ * summing some numeric fields, so that terms facets over all the documents of the index on that
+ * field, with only <code>sum</code> stats of these fields, are answered from the rollups rather
+ * than by collecting the documents. This only speeds up facets on all the documents: facets on the
+ * documents matching a query or filters, or with nested facets such as date ranges, are collected
+ * from the documents. The rollups are declared in the configuration of the {@link FacetModule}:
+ *
+ * <pre class="prettyprint">
+ * &lt;searchComponent name="facet_module" class="org.apache.solr.search.facet.FacetModule"&gt;
+ *   &lt;lst name="rollups"&gt;
+ *     &lt;lst name="salesByCategory"&gt;
+ *       &lt;str name="field"&gt;category_s&lt;/str&gt;
+ *       &lt;arr name="sum"&gt;&lt;str&gt;price_d&lt;/str&gt;&lt;str&gt;quantity_i&lt;/str&gt;&lt;/arr&gt;
+ *       &lt;long name="maxBytes"&gt;16777216&lt;/long&gt;
+ *     &lt;/lst&gt;
+ *   &lt;/lst&gt;
+ * &lt;/searchComponent&gt;</pre>
+ *
+ * <p>The field must have doc values, and the summed fields must be single-valued numeric fields
+ * with doc values. A rollup is built once per segment and set of deleted documents, when a new
+ * searcher is warmed, so that only new or changed segments are rolled up after a commit. A facet is
+ * answered from a rollup if its domain is all the documents of the index, it has no sub-facets, no
+ * prefix and no <code>allBuckets</code>, and all its stats are sums of fields of the rollup.
+ *
+ * <p>The rollups of the segments of a rollup take up to <code>maxBytes</code>, {@link
+ * Rollup#DEFAULT_MAX_BYTES} by default, which bounds the number of distinct values of the field the
+ * rollup is worth it for. Facets are collected from the documents when the rollup of a segment
+ * would take more. The sums of non-integral values are added per segment, so they may differ in the
+ * last bits from the sums collected by document.
+ *
+ * @lucene.experimental
+ */
+public class FacetRollups {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final List<Rollup> rollups;
+
+  FacetRollups(List<Rollup> rollups) {
+    this.rollups = rollups;
+  }
+
+  /** Parses the rollups declared in the configuration of the {@link FacetModule}. */
+  static FacetRollups parse(NamedList<?> args) {
+    List<Rollup> rollups = new ArrayList<>();
+    for (Map.Entry<String, ?> entry : args) {
+      if (!(entry.getValue() instanceof NamedList)) {
+        throw new SolrException(
+            ErrorCode.SERVER_ERROR, "Rollup " + entry.getKey() + " must be a <lst>");
+      }
+      NamedList<?> rollupArgs = (NamedList<?>) entry.getValue();
+      Object field = rollupArgs.get("field");
+      if (!(field instanceof String)) {
+        throw new SolrException(
+            ErrorCode.SERVER_ERROR, "Rollup " + entry.getKey() + " must have a field");
+      }
+      List<String> sums = new ArrayList<>();
+      for (Object sum : rollupArgs.getAll("sum")) {
+        if (sum instanceof List) {
+          for (Object s : (List<?>) sum) {
+            sums.add(s.toString());
+          }
+        } else {
+          sums.add(sum.toString());
+        }
+      }
+      Object maxBytes = rollupArgs.get("maxBytes");
+      rollups.add(
+          new Rollup(
+              entry.getKey(),
+              (String) field,
+              sums,
+              maxBytes instanceof Number
+                  ? ((Number) maxBytes).longValue()
+                  : Rollup.DEFAULT_MAX_BYTES));
+    }
+    return new FacetRollups(Collections.unmodifiableList(rollups));
+  }
+
+  List<Rollup> getRollups() {
+    return rollups;
+  }
+
+  /**
+   * Returns the rollup answering the facet on the field in the context, or null if there is none.
+   */
+  Rollup find(FacetContext fcontext, FacetField freq, SchemaField sf) {
+    if (fcontext.facetInfo != null
+        || freq.domain != null
+        || !freq.getSubFacets().isEmpty()
+        || freq.allBuckets
+        || (freq.prefix != null && !freq.prefix.isEmpty())) {
+      return null;
+    }
+    for (Rollup rollup : rollups) {
+      if (rollup.field.equals(sf.getName())
+          && rollup.answers(freq.getFacetStats())
+          && rollup.isUsable(fcontext.searcher.getSchema())) {
+        // the domain must be all the documents
+        if (fcontext.base.size() != fcontext.searcher.numDocs()) {
+          return null;
+        }
+        try {
+          for (LeafReaderContext leaf : fcontext.searcher.getIndexReader().leaves()) {
+            if (leaf.reader().getReaderCacheHelper() == null
+                || rollup.get(fcontext.searcher, leaf) == null) {
+              return null;
+            }
+          }
+        } catch (IOException e) {
+          throw new SolrException(
+              ErrorCode.SERVER_ERROR, "Failed to roll up the segments of rollup " + rollup.name, e);
+        }
+        return rollup;
+      }
+    }
+    return null;
+  }
+
+  /** Rolls up the segments of the searcher not rolled up yet. */
+  void warm(SolrIndexSearcher searcher) {
+    for (Rollup rollup : rollups) {
+      if (!rollup.isUsable(searcher.getSchema())) {
+        log.warn("Rollup {} can't be used with the schema, skipping it", rollup.name);
+        continue;
+      }
+      try {
+        for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+          if (leaf.reader().getReaderCacheHelper() != null && rollup.get(searcher, leaf) == null) {
+            log.warn(
+                "Rollup {} would take more than {} bytes, not answering facets on {}",
+                rollup.name,
+                rollup.maxBytes,
+                rollup.field);
+            break;
+          }
+        }
+      } catch (IOException e) {
+        log.warn("Failed to roll up the segments of rollup {}", rollup.name, e);
+      }
+    }
+  }
+
+  /** Returns a listener warming the rollups of new searchers. */
+  SolrEventListener newSearcherListener() {
+    return new SolrEventListener() {
+      @Override
+      public void postCommit() {}
+
+      @Override
+      public void postSoftCommit() {}
+
+      @Override
+      public void newSearcher(SolrIndexSearcher newSearcher, SolrIndexSearcher currentSearcher) {
+        warm(newSearcher);
+      }
+    };
+  }
+
+  /** A rollup declared in the configuration, and the rollups of the segments for it. */
+  static class Rollup {
+    /** The default of the maximum size in bytes of the rollups of the segments. */
+    static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    final String name;
+    final String field;
+    final List<String> sums;
+    final long maxBytes;
+
+    private final Map<IndexReader.CacheKey, SegmentRollup> segments = new ConcurrentHashMap<>();
+    // the size of the rollups of the segments, and of those being rolled up
+    private final AtomicLong ramBytes = new AtomicLong();
+
+    Rollup(String name, String field, List<String> sums, long maxBytes) {
+      this.name = name;
+      this.field = field;
+      this.sums = List.copyOf(sums);
+      this.maxBytes = maxBytes;
+    }
+
+    /** Returns whether all the stats are sums of fields of this rollup. */
+    boolean answers(Map<String, AggValueSource> stats) {
+      for (AggValueSource stat : stats.values()) {
+        if (!(stat instanceof SumAgg)) {
+          return false;
+        }
+        ValueSource arg = ((SumAgg) stat).getArg();
+        if (!(arg instanceof FieldNameValueSource)
+            || !sums.contains(((FieldNameValueSource) arg).getFieldName())) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** Returns the index in {@link #sums} of the field summed by the stat. */
+    int sumIndex(AggValueSource stat) {
+      return sums.indexOf(((FieldNameValueSource) ((SumAgg) stat).getArg()).getFieldName());
+    }
+
+    /** Returns whether the fields of this rollup have the types it requires in the schema. */
+    boolean isUsable(IndexSchema schema) {
+      SchemaField sf = schema.getFieldOrNull(field);
+      if (sf == null || !sf.hasDocValues() || sf.getType().getNumberType() != null) {
+        return false;
+      }
+      for (String sum : sums) {
+        SchemaField sumField = schema.getFieldOrNull(sum);
+        if (sumField == null
+            || !sumField.hasDocValues()
+            || sumField.multiValued()
+            || sumField.getType().multiValuedFieldCache()
+            || sumField.getType().getNumberType() == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Returns the rollup of the segment of the searcher, rolling it up if needed, or null if it
+     * would take the rollups of the segments over {@link #maxBytes}.
+     */
+    SegmentRollup get(SolrIndexSearcher searcher, LeafReaderContext leaf) throws IOException {
+      IndexReader.CacheHelper cacheHelper = leaf.reader().getReaderCacheHelper();
+      SegmentRollup segment = segments.get(cacheHelper.getKey());
+      if (segment != null) {
+        return segment;
+      }
+      SortedSetDocValues ords = DocValues.getSortedSet(leaf.reader(), field);
+      long bytes = ords.getValueCount() * (Integer.BYTES + (long) sums.size() * Double.BYTES);
+      if (ramBytes.addAndGet(bytes) > maxBytes) {
+        ramBytes.addAndGet(-bytes);
+        return null;
+      }
+      try {
+        segment = rollUp(searcher, leaf, ords);
+      } catch (IOException | RuntimeException e) {
+        ramBytes.addAndGet(-bytes);
+        throw e;
+      }
+      SegmentRollup existing = segments.putIfAbsent(cacheHelper.getKey(), segment);
+      if (existing != null) {
+        ramBytes.addAndGet(-bytes);
+        return existing;
+      }
+      cacheHelper.addClosedListener(
+          key -> {
+            if (segments.remove(key) != null) {
+              ramBytes.addAndGet(-bytes);
+            }
+          });
+      return segment;
+    }
+
+    /** Returns the size in bytes of the rollups of the segments. */
+    long ramBytesUsed() {
+      return ramBytes.get();
+    }
+
+    private SegmentRollup rollUp(
+        SolrIndexSearcher searcher, LeafReaderContext leaf, SortedSetDocValues ords)
+        throws IOException {
+      LeafReader reader = leaf.reader();
+      int numOrds = Math.toIntExact(ords.getValueCount());
+      QueryContext context = QueryContext.newContext(searcher);
+      FunctionValues[] values = new FunctionValues[sums.size()];
+      for (int i = 0; i < values.length; i++) {
+        SchemaField sf = searcher.getSchema().getField(sums.get(i));
+        values[i] = sf.getType().getValueSource(sf, null).getValues(context, leaf);
+      }
+
+      int[] counts = new int[numOrds];
+      double[][] sumsByOrd = new double[values.length][numOrds];
+      double[] docValues = new double[values.length];
+      Bits liveDocs = reader.getLiveDocs();
+      for (int doc = ords.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = ords.nextDoc()) {
+        if (liveDocs != null && !liveDocs.get(doc)) {
+          continue;
+        }
+        for (int i = 0; i < values.length; i++) {
+          docValues[i] = values[i].doubleVal(doc);
+        }
+        for (int o = 0, count = ords.docValueCount(); o < count; o++) {
+          int ord = (int) ords.nextOrd();
+          counts[ord]++;
+          for (int i = 0; i < values.length; i++) {
+            sumsByOrd[i][ord] += docValues[i];
+          }
+        }
+      }
+      return new SegmentRollup(counts, sumsByOrd);
+    }
+  }
+
+  /** The number of documents, and the sums of the fields, by ordinal of a segment. */
+  static class SegmentRollup {
+    final int[] counts;
+    final double[][] sums;
+
+    SegmentRollup(int[] counts, double[][] sums) {
+      this.counts = counts;
+      this.sums = sums;
+    }
+  }
+}
@@ -263,6 +263,22 @@ public class MinMaxAgg extends SimpleAggValueSource {
       }
     }
 
+    @Override
+    public void collect(int[] docs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+        throws IOException {
+      double currVal = result[slot];
+      for (int i = 0; i < numDocs; i++) {
+        double val = values.doubleVal(docs[i]);
+        if (val == 0 && !values.exists(docs[i])) {
+          continue;
+        }
+        if (Double.compare(val, currVal) * minmax < 0 || Double.isNaN(currVal)) {
+          currVal = val;
+        }
+      }
+      result[slot] = currVal;
+    }
+
     @Override
     public Object getValue(int slot) {
       double val = result[slot];
@@ -298,6 +314,29 @@ public class MinMaxAgg extends SimpleAggValueSource {
       }
     }
 
+    @Override
+    public void collect(int[] docs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+        throws IOException {
+      boolean found = exists.get(slot);
+      long currVal = result[slot];
+      for (int i = 0; i < numDocs; i++) {
+        long val = values.longVal(docs[i]);
+        if (val == 0 && !values.exists(docs[i])) {
+          continue;
+        }
+        if (!found) {
+          found = true;
+          currVal = val;
+        } else if (Long.compare(val, currVal) * minmax < 0) {
+          currVal = val;
+        }
+      }
+      if (found) {
+        exists.set(slot);
+        result[slot] = currVal;
+      }
+    }
+
     @Override
     public Object getValue(int slot) {
       long val = result[slot];
@@ -17,6 +17,8 @@
 package org.apache.solr.search.facet;
 
 import com.tdunning.math.stats.AVLTreeDigest;
+import com.tdunning.math.stats.MergingDigest;
+import com.tdunning.math.stats.TDigest;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
@@ -24,29 +26,59 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.function.IntFunction;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.FunctionQParser;
+import org.apache.solr.search.QParser;
 import org.apache.solr.search.SyntaxError;
 import org.apache.solr.search.ValueSourceParser;
 import org.apache.solr.search.function.FieldNameValueSource;
 
 public class PercentileAgg extends SimpleAggValueSource {
+  /** The local param choosing the {@link DigestType} of the digests, <code>avl</code> by default */
+  public static final String DIGEST_PARAM = "digest";
+
+  /** The local param choosing the compression of the digests, 100 by default */
+  public static final String COMPRESSION_PARAM = "compression";
+
+  public static final double DEFAULT_COMPRESSION = 100;
+
   List<Double> percentiles;
+  DigestType digestType = DigestType.AVL;
+  double compression = DEFAULT_COMPRESSION;
 
   public PercentileAgg(ValueSource vs, List<Double> percentiles) {
     super("percentile", vs);
     this.percentiles = percentiles;
   }
 
+  public void setOpts(QParser parser) {
+    SolrParams opts = parser.getLocalParams();
+    if (opts != null) {
+      String digest = opts.get(DIGEST_PARAM);
+      if (digest != null) {
+        digestType = DigestType.fromString(digest);
+      }
+      compression = opts.getDouble(COMPRESSION_PARAM, DEFAULT_COMPRESSION);
+      if (!(compression >= 1)) {
+        throw new SolrException(
+            SolrException.ErrorCode.BAD_REQUEST,
+            name() + " compression must be at least 1.  got " + compression);
+      }
+    }
+  }
+
   @Override
   public SlotAcc createSlotAcc(FacetContext fcontext, long numDocs, int numSlots)
       throws IOException {
@@ -87,12 +119,15 @@ public class PercentileAgg extends SimpleAggValueSource {
   @Override
   public boolean equals(Object o) {
     if (!(o instanceof PercentileAgg other)) return false;
-    return this.arg.equals(other.arg) && this.percentiles.equals(other.percentiles);
+    return this.arg.equals(other.arg)
+        && this.percentiles.equals(other.percentiles)
+        && this.digestType == other.digestType
+        && this.compression == other.compression;
   }
 
   @Override
   public int hashCode() {
-    return super.hashCode() * 31 + percentiles.hashCode();
+    return (super.hashCode() * 31 + percentiles.hashCode()) * 31 + digestType.hashCode();
   }
 
   public static class Parser extends ValueSourceParser {
@@ -113,11 +148,192 @@ public class PercentileAgg extends SimpleAggValueSource {
             "expected percentile(valsource,percent1[,percent2]*)  EXAMPLE:percentile(myfield,50)");
       }
 
-      return new PercentileAgg(vs, percentiles);
+      PercentileAgg agg = new PercentileAgg(vs, percentiles);
+      agg.setOpts(fp);
+      return agg;
+    }
+  }
+
+  /** The implementations of the digests estimating the percentiles. */
+  public enum DigestType {
+    /** {@link AVLTreeDigest}, the default */
+    AVL {
+      @Override
+      TDigest create(double compression) {
+        return new AVLTreeDigest(compression);
+      }
+
+      @Override
+      TDigest fromBytes(ByteBuffer buf) {
+        return AVLTreeDigest.fromBytes(buf);
+      }
+    },
+    /** {@link MergingDigest}, which is faster to add values to */
+    MERGING {
+      @Override
+      TDigest create(double compression) {
+        return new MergingDigest(compression);
+      }
+
+      @Override
+      TDigest fromBytes(ByteBuffer buf) {
+        return MergingDigest.fromBytes(buf);
+      }
+    };
+
+    abstract TDigest create(double compression);
+
+    /** Reads a digest written with {@link TDigest#asSmallBytes}. */
+    abstract TDigest fromBytes(ByteBuffer buf);
+
+    public static DigestType fromString(String type) {
+      try {
+        return valueOf(type.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new SolrException(
+            SolrException.ErrorCode.BAD_REQUEST, "Unknown percentile digest " + type);
+      }
+    }
+  }
+
+  /**
+   * The digests of the values of the slots. As a digest takes a lot more heap than a few values,
+   * which adds up for facets with many buckets, the values of a slot are buffered in a block of a
+   * pool shared by all the slots, and only added to a digest of the slot when the block is full,
+   * the block then being reused for another slot.
+   *
+   * <p>Public for the benchmarks of the heap it takes.
+   *
+   * @lucene.internal
+   */
+  public static class SlotDigests {
+    static final int BLOCK_SIZE = 32;
+
+    private final DigestType digestType;
+    private final double compression;
+    private TDigest[] digests;
+    private int[] blocks; // 1 + the block of the values buffered for each slot, or 0 if none
+    private int[] sizes; // the number of values buffered for each slot
+    private double[] pool = new double[0];
+    private int numBlocks;
+    private int[] freeBlocks = new int[0];
+    private int numFreeBlocks;
+    private ByteBuffer buf;
+
+    public SlotDigests(DigestType digestType, double compression, int numSlots) {
+      this.digestType = digestType;
+      this.compression = compression;
+      this.digests = new TDigest[numSlots];
+      this.blocks = new int[numSlots];
+      this.sizes = new int[numSlots];
+    }
+
+    public void add(int slot, double val) {
+      TDigest digest = digests[slot];
+      if (digest != null) {
+        digest.add(val);
+        return;
+      }
+      int block = blocks[slot] - 1;
+      if (block < 0) {
+        block = newBlock();
+        blocks[slot] = block + 1;
+      }
+      int size = sizes[slot];
+      pool[block * BLOCK_SIZE + size++] = val;
+      if (size < BLOCK_SIZE) {
+        sizes[slot] = size;
+      } else {
+        digests[slot] = toDigest(block, size);
+        blocks[slot] = 0;
+        sizes[slot] = 0;
+        freeBlock(block);
+      }
+    }
+
+    private void freeBlock(int block) {
+      freeBlocks = ArrayUtil.grow(freeBlocks, numFreeBlocks + 1);
+      freeBlocks[numFreeBlocks++] = block;
+    }
+
+    private int newBlock() {
+      if (numFreeBlocks > 0) {
+        return freeBlocks[--numFreeBlocks];
+      }
+      pool = ArrayUtil.grow(pool, (numBlocks + 1) * BLOCK_SIZE);
+      return numBlocks++;
+    }
+
+    private TDigest toDigest(int block, int size) {
+      TDigest digest = digestType.create(compression);
+      for (int i = block * BLOCK_SIZE, end = i + size; i < end; i++) {
+        digest.add(pool[i]);
+      }
+      return digest;
+    }
+
+    int numSlots() {
+      return digests.length;
+    }
+
+    /** The number of blocks of the pool, whether they are free or not. */
+    int numBlocks() {
+      return numBlocks;
+    }
+
+    boolean exists(int slot) {
+      return digests[slot] != null || sizes[slot] > 0;
+    }
+
+    /**
+     * Returns the digest of the values of the slot, or null if it has no values. The digest of a
+     * slot whose values are buffered is built anew.
+     */
+    TDigest get(int slot) {
+      if (digests[slot] != null) {
+        return digests[slot];
+      }
+      return sizes[slot] == 0 ? null : toDigest(blocks[slot] - 1, sizes[slot]);
+    }
+
+    /** Returns the digest of the values of the slot as bytes, or null if it has no values. */
+    byte[] toBytes(int slot) {
+      TDigest digest = get(slot);
+      if (digest == null) return null;
+
+      digest.compress();
+      int sz = digest.byteSize();
+      if (buf == null || buf.capacity() < sz) {
+        buf = ByteBuffer.allocate(sz + (sz >> 1)); // oversize by 50%
+      } else {
+        buf.clear();
+      }
+      digest.asSmallBytes(buf);
+      return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    void reset() {
+      digests = new TDigest[digests.length];
+      Arrays.fill(blocks, 0);
+      Arrays.fill(sizes, 0);
+      numBlocks = 0;
+      numFreeBlocks = 0;
+    }
+
+    void resize(SlotAcc.Resizer resizer) {
+      // the blocks of the slots dropped are reused
+      for (int slot = 0; slot < blocks.length; slot++) {
+        if (blocks[slot] != 0 && resizer.getNewSlot(slot) < 0) {
+          freeBlock(blocks[slot] - 1);
+        }
+      }
+      digests = resizer.resize(digests, null);
+      blocks = resizer.resize(blocks, 0);
+      sizes = resizer.resize(sizes, 0);
     }
   }
 
-  protected Object getValueFromDigest(AVLTreeDigest digest) {
+  protected Object getValueFromDigest(TDigest digest) {
     if (digest == null) {
       return null;
     }
@@ -135,13 +351,12 @@ public class PercentileAgg extends SimpleAggValueSource {
   }
 
   class Acc extends SlotAcc.FuncSlotAcc {
-    protected AVLTreeDigest[] digests;
-    protected ByteBuffer buf;
+    protected SlotDigests digests;
     protected double[] sortvals;
 
     public Acc(ValueSource values, FacetContext fcontext, int numSlots) {
       super(values, fcontext, numSlots);
-      digests = new AVLTreeDigest[numSlots];
+      digests = new SlotDigests(digestType, compression, numSlots);
     }
 
     @Override
@@ -150,12 +365,7 @@ public class PercentileAgg extends SimpleAggValueSource {
       if (!values.exists(doc)) return;
       double val = values.doubleVal(doc);
 
-      AVLTreeDigest digest = digests[slotNum];
-      if (digest == null) {
-        digests[slotNum] = digest = new AVLTreeDigest(100); // TODO: make compression configurable
-      }
-
-      digest.add(val);
+      digests.add(slotNum, val);
     }
 
     @Override
@@ -167,10 +377,10 @@ public class PercentileAgg extends SimpleAggValueSource {
     }
 
     private void fillSortVals() {
-      sortvals = new double[digests.length];
+      sortvals = new double[digests.numSlots()];
       double sortp = percentiles.get(0) * 0.01;
-      for (int i = 0; i < digests.length; i++) {
-        AVLTreeDigest digest = digests[i];
+      for (int i = 0; i < sortvals.length; i++) {
+        TDigest digest = digests.get(i);
         if (digest == null) {
           sortvals[i] = Double.NEGATIVE_INFINITY;
         } else {
@@ -186,48 +396,35 @@ public class PercentileAgg extends SimpleAggValueSource {
       }
       if (sortvals != null && percentiles.size() == 1) {
         // we've already calculated everything we need
-        return digests[slotNum] != null ? sortvals[slotNum] : null;
+        return digests.exists(slotNum) ? sortvals[slotNum] : null;
       }
-      return getValueFromDigest(digests[slotNum]);
+      return getValueFromDigest(digests.get(slotNum));
     }
 
     public Object getShardValue(int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
-      if (digest == null) return null; // no values for this slot
-
-      digest.compress();
-      int sz = digest.byteSize();
-      if (buf == null || buf.capacity() < sz) {
-        buf = ByteBuffer.allocate(sz + (sz >> 1)); // oversize by 50%
-      } else {
-        buf.clear();
-      }
-      digest.asSmallBytes(buf);
-      byte[] arr = Arrays.copyOf(buf.array(), buf.position());
-      return arr;
+      return digests.toBytes(slot);
     }
 
     @Override
     public void reset() {
-      digests = new AVLTreeDigest[digests.length];
+      digests.reset();
       sortvals = null;
     }
 
     @Override
     public void resize(Resizer resizer) {
-      digests = resizer.resize(digests, null);
+      digests.resize(resizer);
     }
   }
 
   abstract class BasePercentileDVAcc extends DocValuesAcc {
-    AVLTreeDigest[] digests;
-    protected ByteBuffer buf;
+    SlotDigests digests;
     double[] sortvals;
 
     public BasePercentileDVAcc(FacetContext fcontext, SchemaField sf, int numSlots)
         throws IOException {
       super(fcontext, sf);
-      digests = new AVLTreeDigest[numSlots];
+      digests = new SlotDigests(digestType, compression, numSlots);
     }
 
     @Override
@@ -239,10 +436,10 @@ public class PercentileAgg extends SimpleAggValueSource {
     }
 
     private void fillSortVals() {
-      sortvals = new double[digests.length];
+      sortvals = new double[digests.numSlots()];
       double sortp = percentiles.get(0) * 0.01;
-      for (int i = 0; i < digests.length; i++) {
-        AVLTreeDigest digest = digests[i];
+      for (int i = 0; i < sortvals.length; i++) {
+        TDigest digest = digests.get(i);
         if (digest == null) {
           sortvals[i] = Double.NEGATIVE_INFINITY;
         } else {
@@ -258,36 +455,24 @@ public class PercentileAgg extends SimpleAggValueSource {
       }
       if (sortvals != null && percentiles.size() == 1) {
         // we've already calculated everything we need
-        return digests[slotNum] != null ? sortvals[slotNum] : null;
+        return digests.exists(slotNum) ? sortvals[slotNum] : null;
       }
-      return getValueFromDigest(digests[slotNum]);
+      return getValueFromDigest(digests.get(slotNum));
     }
 
     public Object getShardValue(int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
-      if (digest == null) return null; // no values for this slot
-
-      digest.compress();
-      int sz = digest.byteSize();
-      if (buf == null || buf.capacity() < sz) {
-        buf = ByteBuffer.allocate(sz + (sz >> 1)); // oversize by 50%
-      } else {
-        buf.clear();
-      }
-      digest.asSmallBytes(buf);
-      byte[] arr = Arrays.copyOf(buf.array(), buf.position());
-      return arr;
+      return digests.toBytes(slot);
     }
 
     @Override
     public void reset() {
-      digests = new AVLTreeDigest[digests.length];
+      digests.reset();
       sortvals = null;
     }
 
     @Override
     public void resize(Resizer resizer) {
-      digests = resizer.resize(digests, null);
+      digests.resize(resizer);
     }
   }
 
@@ -301,13 +486,9 @@ public class PercentileAgg extends SimpleAggValueSource {
 
     @Override
     protected void collectValues(int doc, int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
-      if (digest == null) {
-        digests[slot] = digest = new AVLTreeDigest(100);
-      }
       for (int i = 0, count = values.docValueCount(); i < count; i++) {
         double val = getDouble(values.nextValue());
-        digest.add(val);
+        digests.add(slot, val);
       }
     }
 
@@ -350,16 +531,12 @@ public class PercentileAgg extends SimpleAggValueSource {
 
     @Override
     protected void collectValues(int doc, int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
-      if (digest == null) {
-        digests[slot] = digest = new AVLTreeDigest(100);
-      }
       long ord;
       while ((ord = values.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
         BytesRef term = values.lookupOrd(ord);
         Object obj = sf.getType().toObject(sf, term);
         double val = obj instanceof Date ? ((Date) obj).getTime() : ((Number) obj).doubleValue();
-        digest.add(val);
+        digests.add(slot, val);
       }
     }
 
@@ -376,15 +553,14 @@ public class PercentileAgg extends SimpleAggValueSource {
   }
 
   class PercentileUnInvertedFieldAcc extends UnInvertedFieldAcc {
-    protected AVLTreeDigest[] digests;
-    protected ByteBuffer buf;
+    protected SlotDigests digests;
     protected double[] sortvals;
     private int currentSlot;
 
     public PercentileUnInvertedFieldAcc(FacetContext fcontext, SchemaField sf, int numSlots)
         throws IOException {
       super(fcontext, sf, numSlots);
-      digests = new AVLTreeDigest[numSlots];
+      digests = new SlotDigests(digestType, compression, numSlots);
     }
 
     @Override
@@ -404,10 +580,10 @@ public class PercentileAgg extends SimpleAggValueSource {
     }
 
     private void fillSortVals() {
-      sortvals = new double[digests.length];
+      sortvals = new double[digests.numSlots()];
       double sortp = percentiles.get(0) * 0.01;
-      for (int i = 0; i < digests.length; i++) {
-        AVLTreeDigest digest = digests[i];
+      for (int i = 0; i < sortvals.length; i++) {
+        TDigest digest = digests.get(i);
         if (digest == null) {
           sortvals[i] = Double.NEGATIVE_INFINITY;
         } else {
@@ -423,49 +599,33 @@ public class PercentileAgg extends SimpleAggValueSource {
       }
       if (sortvals != null && percentiles.size() == 1) {
         // we've already calculated everything we need
-        return digests[slotNum] != null ? sortvals[slotNum] : null;
+        return digests.exists(slotNum) ? sortvals[slotNum] : null;
       }
-      return getValueFromDigest(digests[slotNum]);
+      return getValueFromDigest(digests.get(slotNum));
     }
 
     public Object getShardValue(int slot) throws IOException {
-      AVLTreeDigest digest = digests[slot];
-      if (digest == null) return null;
-
-      digest.compress();
-      int sz = digest.byteSize();
-      if (buf == null || buf.capacity() < sz) {
-        buf = ByteBuffer.allocate(sz + (sz >> 1)); // oversize by 50%
-      } else {
-        buf.clear();
-      }
-      digest.asSmallBytes(buf);
-      byte[] arr = Arrays.copyOf(buf.array(), buf.position());
-      return arr;
+      return digests.toBytes(slot);
     }
 
     @Override
     public void reset() {
-      digests = new AVLTreeDigest[digests.length];
+      digests.reset();
       sortvals = null;
     }
 
     @Override
     public void resize(Resizer resizer) {
-      digests = resizer.resize(digests, null);
+      digests.resize(resizer);
     }
 
     @Override
     public void call(int ord) {
-      AVLTreeDigest digest = digests[currentSlot];
-      if (digest == null) {
-        digests[currentSlot] = digest = new AVLTreeDigest(100);
-      }
       try {
         BytesRef term = docToTerm.lookupOrd(ord);
         Object obj = sf.getType().toObject(sf, term);
         double val = obj instanceof Date ? ((Date) obj).getTime() : ((Number) obj).doubleValue();
-        digest.add(val);
+        digests.add(currentSlot, val);
       } catch (IOException e) {
         throw new UncheckedIOException(e);
       }
@@ -473,14 +633,14 @@ public class PercentileAgg extends SimpleAggValueSource {
   }
 
   class Merger extends FacetModule.FacetSortableMerger {
-    protected AVLTreeDigest digest;
+    protected TDigest digest;
     protected Double sortVal;
 
     @Override
     public void merge(Object facetResult, Context mcontext) {
       byte[] arr = (byte[]) facetResult;
       if (arr == null) return; // an explicit null can mean no values in the field
-      AVLTreeDigest subDigest = AVLTreeDigest.fromBytes(ByteBuffer.wrap(arr));
+      TDigest subDigest = digestType.fromBytes(ByteBuffer.wrap(arr));
       if (digest == null) {
         digest = subDigest;
       } else {
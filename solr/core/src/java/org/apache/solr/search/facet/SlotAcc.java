@@ -43,6 +43,12 @@ import org.apache.solr.search.SolrIndexSearcher;
  * nominal slot.
  */
 public abstract class SlotAcc implements Closeable {
+  /**
+   * The maximum number of documents collected at once by {@link #collect(DocSet, int,
+   * IntFunction)}.
+   */
+  public static final int COLLECT_BLOCK_SIZE = 128;
+
   String key; // todo...
   protected final FacetContext fcontext;
   protected LeafReaderContext currentReaderContext;
@@ -88,9 +94,30 @@ public abstract class SlotAcc implements Closeable {
   public abstract void collect(int doc, int slot, IntFunction<SlotContext> slotContext)
       throws IOException;
 
+  /**
+   * Bulk collection of a block of documents of the current segment in a slot. The default
+   * implementation calls {@link #collect(int, int, IntFunction)} for each document; accumulators
+   * may override it with a tighter loop, e.g. one keeping the statistic of the slot in a local
+   * variable.
+   *
+   * @param docs Single Segment docIds (relative to the current {@link LeafReaderContext}), in
+   *     increasing order
+   * @param numDocs The number of documents of <code>docs</code> to collect
+   * @param slot The slot number to collect these documents in
+   * @param slotContext A callback that can be used for Accumulators that would like additional info
+   *     about the current slot -- see {@link #collect(int, int, IntFunction)}
+   */
+  public void collect(int[] docs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+      throws IOException {
+    for (int i = 0; i < numDocs; i++) {
+      collect(docs[i], slot, slotContext);
+    }
+  }
+
   /**
    * Bulk collection of all documents in a slot. The default implementation calls {@link
-   * #collect(int, int, IntFunction)}
+   * #collect(int[], int, int, IntFunction)} with blocks of up to {@link #COLLECT_BLOCK_SIZE}
+   * documents.
    *
    * @param docs (global) Documents to collect
    * @param slot The slot number to collect these documents in
@@ -110,9 +137,15 @@ public abstract class SlotAcc implements Closeable {
     int segBase = 0;
     int segMax;
     int adjustedMax = 0;
+    final int[] block = new int[COLLECT_BLOCK_SIZE];
+    int blockSize = 0;
     for (DocIterator docsIt = docs.iterator(); docsIt.hasNext(); ) {
       final int doc = docsIt.nextDoc();
       if (doc >= adjustedMax) {
+        if (blockSize > 0) {
+          collect(block, blockSize, slot, slotContext);
+          blockSize = 0;
+        }
         do {
           ctx = ctxIt.next();
           if (ctx == null) {
@@ -127,7 +160,14 @@ public abstract class SlotAcc implements Closeable {
         setNextReader(ctx);
       }
       count++;
-      collect(doc - segBase, slot, slotContext); // per-seg collectors
+      block[blockSize++] = doc - segBase; // per-seg collectors
+      if (blockSize == block.length) {
+        collect(block, blockSize, slot, slotContext);
+        blockSize = 0;
+      }
+    }
+    if (blockSize > 0) {
+      collect(block, blockSize, slot, slotContext);
     }
     return count;
   }
@@ -416,6 +456,16 @@ public abstract class SlotAcc implements Closeable {
       double val = values.doubleVal(doc);
       result[slotNum] += val;
     }
+
+    @Override
+    public void collect(int[] docs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+        throws IOException {
+      double sum = result[slot];
+      for (int i = 0; i < numDocs; i++) {
+        sum += values.doubleVal(docs[i]);
+      }
+      result[slot] = sum;
+    }
   }
 
   static class SumsqSlotAcc extends DoubleFuncSlotAcc {
@@ -430,6 +480,17 @@ public abstract class SlotAcc implements Closeable {
       val = val * val;
       result[slotNum] += val;
     }
+
+    @Override
+    public void collect(int[] docs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+        throws IOException {
+      double sumsq = result[slot];
+      for (int i = 0; i < numDocs; i++) {
+        double val = values.doubleVal(docs[i]);
+        sumsq += val * val;
+      }
+      result[slot] = sumsq;
+    }
   }
 
   static class AvgSlotAcc extends DoubleFuncSlotAcc {
@@ -458,6 +519,22 @@ public abstract class SlotAcc implements Closeable {
       }
     }
 
+    @Override
+    public void collect(int[] docs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+        throws IOException {
+      double sum = result[slot];
+      int count = counts[slot];
+      for (int i = 0; i < numDocs; i++) {
+        double val = values.doubleVal(docs[i]);
+        if (val != 0 || values.exists(docs[i])) {
+          sum += val;
+          count++;
+        }
+      }
+      result[slot] = sum;
+      counts[slot] = count;
+    }
+
     private double avg(int slot) {
       return AggUtil.avg(result[slot], counts[slot]); // calc once and cache in result?
     }
@@ -543,6 +620,12 @@ public abstract class SlotAcc implements Closeable {
         sum[slot] += val;
       }
     }
+
+    @Override
+    public void collect(int[] docs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+        throws IOException {
+      collectMoments(values, docs, numDocs, slot, counts, result, sum);
+    }
   }
 
   static class StddevSlotAcc extends DoubleFuncSlotAcc {
@@ -602,6 +685,41 @@ public abstract class SlotAcc implements Closeable {
         sum[slot] += val;
       }
     }
+
+    @Override
+    public void collect(int[] docs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+        throws IOException {
+      collectMoments(values, docs, numDocs, slot, counts, result, sum);
+    }
+  }
+
+  /**
+   * Collects the count, sum of squares, and sum of the values of a block of documents in a slot, as
+   * needed by the variance and standard deviation.
+   */
+  private static void collectMoments(
+      FunctionValues values,
+      int[] docs,
+      int numDocs,
+      int slot,
+      int[] counts,
+      double[] sumsqs,
+      double[] sums)
+      throws IOException {
+    int count = counts[slot];
+    double sumsq = sumsqs[slot];
+    double sum = sums[slot];
+    for (int i = 0; i < numDocs; i++) {
+      double val = values.doubleVal(docs[i]);
+      if (values.exists(docs[i])) {
+        count++;
+        sumsq += val * val;
+        sum += val;
+      }
+    }
+    counts[slot] = count;
+    sumsqs[slot] = sumsq;
+    sums[slot] = sum;
   }
 
   /**
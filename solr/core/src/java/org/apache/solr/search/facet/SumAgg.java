@@ -19,6 +19,7 @@ package org.apache.solr.search.facet;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.Date;
+import java.util.function.IntFunction;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.queries.function.ValueSource;
 import org.apache.lucene.util.BytesRef;
@@ -96,6 +97,20 @@ public class SumAgg extends SimpleAggValueSource {
         result[slot] += getDouble(values.nextValue());
       }
     }
+
+    @Override
+    public void collect(int[] docs, int numDocs, int slot, IntFunction<SlotContext> slotContext)
+        throws IOException {
+      double sum = result[slot];
+      for (int d = 0; d < numDocs; d++) {
+        if (values.advanceExact(docs[d])) {
+          for (int i = 0, count = values.docValueCount(); i < count; i++) {
+            sum += getDouble(values.nextValue());
+          }
+        }
+      }
+      result[slot] = sum;
+    }
   }
 
   static class SumSortedSetAcc extends DocValuesAcc.DoubleSortedSetDVAcc {
@@ -30,6 +30,8 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CharsRefBuilder;
 import org.apache.lucene.util.FixedBitSet;
@@ -118,6 +120,12 @@ public class UnInvertedField extends DocTermOrds {
     searcher = null;
   }
 
+  // for reading an uninverted field written before, see read()
+  private UnInvertedField(String field, SolrIndexSearcher searcher, int maxTermDocFreq) {
+    super(field, maxTermDocFreq, DEFAULT_INDEX_INTERVAL_BITS);
+    this.searcher = searcher;
+  }
+
   /**
    * Called for each term in the field being uninverted. Collects {@link #maxTermCounts} for all
    * bigTerms as well as storing them in {@link #bigTerms}.
@@ -619,6 +627,110 @@ public class UnInvertedField extends DocTermOrds {
         + "}";
   }
 
+  //////////////////////////////////////////////////////////////////
+  ////////////////////////// persistence ///////////////////////////
+  //////////////////////////////////////////////////////////////////
+
+  /** Writes this uninverted field, to read it back with {@link #read}. */
+  void write(DataOutput out) throws IOException {
+    out.writeVInt(maxTermDocFreq);
+    out.writeVInt(numTermsInField);
+    out.writeVLong(termInstances);
+    out.writeVInt(total_time);
+    out.writeVInt(phase1_time);
+    out.writeVLong(sizeOfIndexedStrings);
+    writeBytes(out, prefix);
+
+    out.writeVInt(index == null ? 0 : index.length + 1);
+    if (index != null) {
+      for (int value : index) {
+        out.writeInt(value);
+      }
+    }
+    out.writeVInt(tnums.length);
+    for (byte[] arr : tnums) {
+      out.writeVInt(arr == null ? 0 : arr.length + 1);
+      if (arr != null) {
+        out.writeBytes(arr, arr.length);
+      }
+    }
+    out.writeVInt(indexedTermsArray.length);
+    for (BytesRef term : indexedTermsArray) {
+      writeBytes(out, term);
+    }
+
+    out.writeVInt(maxTermCounts.length);
+    for (int count : maxTermCounts) {
+      out.writeVInt(count);
+    }
+    out.writeVInt(bigTerms.size());
+    for (TopTerm tt : bigTerms.values()) {
+      out.writeVInt(tt.termNum);
+      writeBytes(out, tt.term);
+    }
+  }
+
+  /** Reads an uninverted field written by {@link #write}, for a searcher of the same index. */
+  static UnInvertedField read(String field, SolrIndexSearcher searcher, DataInput in)
+      throws IOException {
+    UnInvertedField uif = new UnInvertedField(field, searcher, in.readVInt());
+    uif.numTermsInField = in.readVInt();
+    uif.termInstances = in.readVLong();
+    uif.total_time = in.readVInt();
+    uif.phase1_time = in.readVInt();
+    uif.sizeOfIndexedStrings = in.readVLong();
+    uif.prefix = readBytes(in);
+
+    int indexLength = in.readVInt() - 1;
+    if (indexLength >= 0) {
+      uif.index = new int[indexLength];
+      in.readInts(uif.index, 0, indexLength);
+    }
+    uif.tnums = new byte[in.readVInt()][];
+    for (int i = 0; i < uif.tnums.length; i++) {
+      int length = in.readVInt() - 1;
+      if (length >= 0) {
+        uif.tnums[i] = new byte[length];
+        in.readBytes(uif.tnums[i], 0, length);
+      }
+    }
+    uif.indexedTermsArray = new BytesRef[in.readVInt()];
+    for (int i = 0; i < uif.indexedTermsArray.length; i++) {
+      uif.indexedTermsArray[i] = readBytes(in);
+    }
+
+    uif.maxTermCounts = new int[in.readVInt()];
+    for (int i = 0; i < uif.maxTermCounts.length; i++) {
+      uif.maxTermCounts[i] = in.readVInt();
+    }
+    int numBigTerms = in.readVInt();
+    for (int i = 0; i < numBigTerms; i++) {
+      TopTerm topTerm = new TopTerm();
+      topTerm.termNum = in.readVInt();
+      topTerm.term = readBytes(in);
+      topTerm.termQuery = new TermQuery(new Term(field, topTerm.term));
+      uif.bigTerms.put(topTerm.termNum, topTerm);
+    }
+    return uif;
+  }
+
+  private static void writeBytes(DataOutput out, BytesRef bytes) throws IOException {
+    out.writeVInt(bytes == null ? 0 : bytes.length + 1);
+    if (bytes != null) {
+      out.writeBytes(bytes.bytes, bytes.offset, bytes.length);
+    }
+  }
+
+  private static BytesRef readBytes(DataInput in) throws IOException {
+    int length = in.readVInt() - 1;
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readBytes(bytes, 0, length);
+    return new BytesRef(bytes);
+  }
+
   //////////////////////////////////////////////////////////////////
   //////////////////////////// caching /////////////////////////////
   //////////////////////////////////////////////////////////////////
@@ -627,9 +739,10 @@ public class UnInvertedField extends DocTermOrds {
       throws IOException {
     SolrCache<String, UnInvertedField> cache = searcher.getFieldValueCache();
     if (cache == null) {
-      return new UnInvertedField(field, searcher);
+      return UnInvertedFieldFiles.getUnInvertedField(field, searcher);
     }
-    return cache.computeIfAbsent(field, f -> new UnInvertedField(f, searcher));
+    return cache.computeIfAbsent(
+        field, f -> UnInvertedFieldFiles.getUnInvertedField(f, searcher));
   }
 
   // Returns null if not already populated
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.StringHelper;
+import org.apache.solr.common.util.EnvUtils;
+import org.apache.solr.common.util.Hash;
+import org.apache.solr.core.DirectoryFactory;
+import org.apache.solr.core.DirectoryFactory.DirContext;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.schema.TrieField;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the {@link UnInvertedField}s of a core in its data directory, so that a field is not
+ * uninverted again for a searcher of the same segments, e.g. after the core is reloaded or the node
+ * restarted. This is enabled per core by the core property {@value #PERSIST_PROP}, e.g. in its
+ * <code>core.properties</code>, or for all cores by the system property of the same name.
+ *
+ * <p>An uninverted field is written to a file named after its field and the segments it was
+ * uninverted from, their deletions included, which thus only matches a searcher of these exact
+ * segments; the files of the field for other segments are deleted when a new one is written.
+ * Failures to read or write the files are logged, and the field is then uninverted as usual.
+ */
+class UnInvertedFieldFiles {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  static final String PERSIST_PROP = "solr.uif.persist";
+
+  static final String DIR_NAME = "uninverted";
+  static final String EXTENSION = "uif";
+  static final String CODEC_NAME = "solr_uninverted_field";
+  static final int VERSION_START = 0;
+  static final int VERSION_CURRENT = VERSION_START;
+
+  private UnInvertedFieldFiles() {}
+
+  /** Whether the uninverted fields of the core are persisted, checked on each uninversion. */
+  static boolean isEnabled(SolrCore core) {
+    String value = core.getCoreDescriptor().getCoreProperty(PERSIST_PROP, null);
+    return value != null
+        ? Boolean.parseBoolean(value)
+        : EnvUtils.getPropertyAsBool(PERSIST_PROP, false);
+  }
+
+  /**
+   * Reads the uninverted field persisted for the segments of the searcher, if any, and otherwise
+   * uninverts it, and persists it if enabled.
+   */
+  static UnInvertedField getUnInvertedField(String field, SolrIndexSearcher searcher)
+      throws IOException {
+    SolrCore core = searcher.getCore();
+    String key = core != null && isEnabled(core) ? segmentsKey(field, searcher) : null;
+    if (key == null || !core.getDirectoryFactory().isPersistent()) {
+      return new UnInvertedField(field, searcher);
+    }
+
+    String fileName = fileName(field, key);
+    DirectoryFactory directoryFactory = core.getDirectoryFactory();
+    Directory dir =
+        directoryFactory.get(
+            core.getDataDir() + DIR_NAME + "/",
+            DirContext.DEFAULT,
+            core.getSolrConfig().indexConfig.lockType);
+    try {
+      UnInvertedField uif = read(dir, fileName, field, key, searcher);
+      if (uif == null) {
+        uif = new UnInvertedField(field, searcher);
+        write(dir, fileName, field, key, uif);
+      }
+      return uif;
+    } finally {
+      directoryFactory.release(dir);
+    }
+  }
+
+  /**
+   * Returns the key of the segments of the searcher the field is uninverted from, or null if it
+   * can't be known, e.g. for a searcher of readers other than segment readers.
+   */
+  static String segmentsKey(String field, SolrIndexSearcher searcher) {
+    StringBuilder key = new StringBuilder(field);
+    key.append('|').append(TrieField.getMainValuePrefix(searcher.getSchema().getFieldType(field)));
+    key.append('|').append(searcher.maxDoc() / 20 + 2); // maxTermDocFreq
+    for (LeafReaderContext leaf : searcher.getRawReader().leaves()) {
+      LeafReader reader = FilterLeafReader.unwrap(leaf.reader());
+      if (!(reader instanceof SegmentReader)) {
+        return null;
+      }
+      SegmentCommitInfo info = ((SegmentReader) reader).getSegmentInfo();
+      key.append('|').append(info.info.name);
+      key.append(':').append(StringHelper.idToString(info.info.getId()));
+      key.append(':').append(info.getDelGen());
+      key.append(':').append(reader.numDocs());
+    }
+    return key.toString();
+  }
+
+  static String fileName(String field, String key) {
+    return IndexFileNames.segmentFileName(fieldPrefix(field), hash(key), EXTENSION);
+  }
+
+  private static String fieldPrefix(String field) {
+    return "uif_" + hash(field);
+  }
+
+  private static String hash(String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    Hash.LongPair hash = new Hash.LongPair();
+    Hash.murmurhash3_x64_128(bytes, 0, bytes.length, 0, hash);
+    return String.format(Locale.ROOT, "%016x%016x", hash.val1, hash.val2);
+  }
+
+  private static UnInvertedField read(
+      Directory dir, String fileName, String field, String key, SolrIndexSearcher searcher) {
+    try {
+      if (!fileExists(dir, fileName)) {
+        return null;
+      }
+      try (ChecksumIndexInput in = dir.openChecksumInput(fileName, IOContext.READONCE)) {
+        CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+        if (!key.equals(in.readString())) {
+          return null; // a hash collision
+        }
+        UnInvertedField uif = UnInvertedField.read(field, searcher, in);
+        CodecUtil.checkFooter(in);
+        log.debug("Read uninverted field {} from {}", field, fileName);
+        return uif;
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to read uninverted field {} from {}, uninverting it", field, fileName, e);
+      return null;
+    }
+  }
+
+  private static void write(
+      Directory dir, String fileName, String field, String key, UnInvertedField uif) {
+    String tempFileName = null;
+    try {
+      try (IndexOutput out = dir.createTempOutput(fileName, "tmp", IOContext.DEFAULT)) {
+        tempFileName = out.getName();
+        CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+        out.writeString(key);
+        uif.write(out);
+        CodecUtil.writeFooter(out);
+      }
+      dir.sync(Collections.singletonList(tempFileName));
+      if (fileExists(dir, fileName)) {
+        dir.deleteFile(tempFileName); // written concurrently for another searcher
+      } else {
+        dir.rename(tempFileName, fileName);
+        dir.syncMetaData();
+        log.debug("Wrote uninverted field {} to {}", field, fileName);
+      }
+      tempFileName = null;
+      deleteOthers(dir, fileName, field);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to write uninverted field {} to {}", field, fileName, e);
+      if (tempFileName != null) {
+        try {
+          dir.deleteFile(tempFileName);
+        } catch (IOException | RuntimeException e2) {
+          e.addSuppressed(e2);
+        }
+      }
+    }
+  }
+
+  /**
+   * Deletes the files of the field for other segments, which can't be read again. Temporary files
+   * are left alone, they may be being written concurrently for another searcher.
+   */
+  private static void deleteOthers(Directory dir, String fileName, String field)
+      throws IOException {
+    String prefix = fieldPrefix(field) + "_";
+    String suffix = "." + EXTENSION;
+    for (String file : dir.listAll()) {
+      if (file.startsWith(prefix) && file.endsWith(suffix) && !file.equals(fileName)) {
+        try {
+          dir.deleteFile(file);
+        } catch (IOException e) {
+          log.debug("Failed to delete the obsolete uninverted field file {}", file, e);
+        }
+      }
+    }
+  }
+
+  private static boolean fileExists(Directory dir, String fileName) throws IOException {
+    for (String file : dir.listAll()) {
+      if (file.equals(fileName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
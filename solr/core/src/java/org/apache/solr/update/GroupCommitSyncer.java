@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group commit for {@link UpdateLog.SyncLevel#FSYNC}: rather than each update request forcing the
+ * transaction log to storage, the requests hand their already flushed log to a dedicated thread,
+ * which forces it once for all the requests pending, and then releases them together. The number of
+ * fsyncs thus depends on how long an fsync takes rather than on the request rate.
+ *
+ * <p>A request only returns once an fsync started after its records were flushed completed, so
+ * durability is unchanged. Once a request is pending, the thread waits up to <code>maxWait</code>
+ * for more, unless <code>maxBatch</code> requests are pending already.
+ */
+class GroupCommitSyncer implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static class SyncRequest {
+    final TransactionLog tlog;
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    SyncRequest(TransactionLog tlog) {
+      this.tlog = tlog;
+    }
+  }
+
+  private final long maxWaitNanos;
+  private final int maxBatch;
+  private final LinkedBlockingQueue<SyncRequest> queue = new LinkedBlockingQueue<>();
+  private final AtomicLong fsyncs = new AtomicLong();
+  private final Thread thread;
+  // guarded by this, no request is queued once closed
+  private boolean closed;
+
+  GroupCommitSyncer(long maxWait, TimeUnit unit, int maxBatch) {
+    if (maxWait < 0 || maxBatch < 1) {
+      throw new IllegalArgumentException(
+          "Invalid group commit settings: maxWait=" + maxWait + " maxBatch=" + maxBatch);
+    }
+    this.maxWaitNanos = unit.toNanos(maxWait);
+    this.maxBatch = maxBatch;
+    this.thread = new SolrNamedThreadFactory("tlogGroupCommit").newThread(this::run);
+    this.thread.start();
+  }
+
+  /**
+   * Forces the records of the log flushed so far to storage, waiting for the fsync shared with the
+   * other pending requests.
+   */
+  void sync(TransactionLog tlog) {
+    SyncRequest request = new SyncRequest(tlog);
+    boolean queued;
+    synchronized (this) {
+      queued = !closed;
+      if (queued) {
+        queue.add(request);
+      }
+    }
+    try {
+      if (!queued) {
+        tlog.force();
+      } else {
+        request.done.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    } catch (ExecutionException e) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e.getCause());
+    } catch (IOException e) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    }
+  }
+
+  private synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /** The number of fsyncs done so far. */
+  long getFsyncCount() {
+    return fsyncs.get();
+  }
+
+  private void run() {
+    List<SyncRequest> batch = new ArrayList<>();
+    Map<TransactionLog, Exception> tlogs = new IdentityHashMap<>();
+    while (true) {
+      try {
+        SyncRequest first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          if (isClosed() && queue.isEmpty()) {
+            return;
+          }
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < maxBatch) {
+          long remaining = deadline - System.nanoTime();
+          SyncRequest next =
+              remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+      } catch (InterruptedException e) {
+        // nobody should interrupt us, as requests would wait forever if we stopped
+        log.warn("Ignoring interruption of the group commit thread");
+      }
+
+      // all the requests of a batch use the same log, unless it was just rolled over
+      for (SyncRequest request : batch) {
+        if (!tlogs.containsKey(request.tlog)) {
+          Exception failure = null;
+          try {
+            request.tlog.force();
+            fsyncs.incrementAndGet();
+          } catch (IOException | RuntimeException e) {
+            log.error("Error syncing {}", request.tlog, e);
+            failure = e;
+          }
+          tlogs.put(request.tlog, failure);
+        }
+        Exception failure = tlogs.get(request.tlog);
+        if (failure == null) {
+          request.done.complete(null);
+        } else {
+          request.done.completeExceptionally(failure);
+        }
+      }
+      batch.clear();
+      tlogs.clear();
+    }
+  }
+
+  /** Stops the thread once the pending requests are synced. */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
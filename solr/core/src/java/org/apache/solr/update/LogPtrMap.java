@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BitUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.update.UpdateLog.LogPtr;
+
+/**
+ * A map from the indexed ids of the updates to their {@link LogPtr}, for {@link UpdateLog}. Rather
+ * than a key and a value object per update, which would be promoted to the old generation between
+ * commits, the entries are appended to pages of bytes, and indexed by an open addressing hash table
+ * of longs. An update of a key appends a new entry; the entries replaced are only freed with the
+ * map, which is replaced at the next commit.
+ *
+ * <p>The map is updated by a single thread at a time, and read concurrently without locking: an
+ * entry is written before the slot pointing to it is published, and never changes afterwards.
+ * Entries can't be removed, except by {@link #clear()}: {@link #remove(Object)} and removals
+ * through the views of the map throw an {@link UnsupportedOperationException}.
+ */
+final class LogPtrMap extends AbstractMap<BytesRef, LogPtr> {
+  private static final int MIN_PAGE_SIZE = 1 << 10;
+  private static final int MAX_PAGE_SIZE = 1 << 16;
+  private static final int INITIAL_CAPACITY = 16;
+  // hash and key length, then pointer, version and previous pointer
+  private static final int ENTRY_OVERHEAD = 2 * Integer.BYTES + 3 * Long.BYTES;
+
+  /** The pages entries are appended to, shared by the successive tables of a map. */
+  private static final class Pages {
+    volatile byte[][] pages = new byte[0][];
+    // only accessed by the writer
+    int count;
+    int used;
+  }
+
+  /**
+   * A slot is 0 if empty, or else holds the index of the page of its entry plus one in the high
+   * int, and the offset of the entry in the page in the low int.
+   */
+  private static final class Table {
+    final AtomicLongArray slots;
+    final Pages pages;
+
+    Table(int capacity, Pages pages) {
+      this.slots = new AtomicLongArray(capacity);
+      this.pages = pages;
+    }
+  }
+
+  private volatile Table table = new Table(INITIAL_CAPACITY, new Pages());
+  private volatile int size;
+
+  @Override
+  public LogPtr get(Object key) {
+    if (!(key instanceof BytesRef)) {
+      return null;
+    }
+    final BytesRef id = (BytesRef) key;
+    final int hash = id.hashCode();
+    final Table t = table;
+    final AtomicLongArray slots = t.slots;
+    final int mask = slots.length() - 1;
+    byte[][] pages = null;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      long slot = slots.get(i);
+      if (slot == 0) {
+        return null;
+      }
+      if (pages == null || pageIndex(slot) >= pages.length) {
+        // read after the slot, so that its page is visible
+        pages = t.pages.pages;
+      }
+      if (matches(pages, slot, id, hash)) {
+        return readLogPtr(pages, slot);
+      }
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public synchronized LogPtr put(BytesRef id, LogPtr value) {
+    final int hash = id.hashCode();
+    Table t = table;
+    int i = find(t, id, hash);
+    long previous = t.slots.get(i);
+    if (previous == 0 && (size + 1) * 2L > t.slots.length()) {
+      t = resize(t);
+      i = find(t, id, hash);
+    }
+    t.slots.set(i, append(t.pages, id, hash, value));
+    if (previous == 0) {
+      size++;
+      return null;
+    }
+    return readLogPtr(t.pages.pages, previous);
+  }
+
+  @Override
+  public synchronized void clear() {
+    table = new Table(INITIAL_CAPACITY, new Pages());
+    size = 0;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** Returns the slot of the key, or the empty slot where it would be added. Writer only. */
+  private static int find(Table t, BytesRef id, int hash) {
+    final AtomicLongArray slots = t.slots;
+    final int mask = slots.length() - 1;
+    final byte[][] pages = t.pages.pages;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      long slot = slots.get(i);
+      if (slot == 0 || matches(pages, slot, id, hash)) {
+        return i;
+      }
+    }
+  }
+
+  private static boolean matches(byte[][] pages, long slot, BytesRef id, int hash) {
+    byte[] page = pages[pageIndex(slot)];
+    int offset = (int) slot;
+    if ((int) BitUtil.VH_LE_INT.get(page, offset) != hash) {
+      return false;
+    }
+    int from = offset + ENTRY_OVERHEAD;
+    int length = (int) BitUtil.VH_LE_INT.get(page, offset + Integer.BYTES);
+    return Arrays.equals(page, from, from + length, id.bytes, id.offset, id.offset + id.length);
+  }
+
+  private static int pageIndex(long slot) {
+    return (int) (slot >>> 32) - 1;
+  }
+
+  private static LogPtr readLogPtr(byte[][] pages, long slot) {
+    byte[] page = pages[pageIndex(slot)];
+    int offset = (int) slot + 2 * Integer.BYTES;
+    return new LogPtr(
+        (long) BitUtil.VH_LE_LONG.get(page, offset),
+        (long) BitUtil.VH_LE_LONG.get(page, offset + Long.BYTES),
+        (long) BitUtil.VH_LE_LONG.get(page, offset + 2 * Long.BYTES));
+  }
+
+  /** Appends an entry to the pages, and returns the slot pointing to it. */
+  private static long append(Pages p, BytesRef id, int hash, LogPtr value) {
+    final int entrySize = ENTRY_OVERHEAD + id.length;
+    byte[][] pages = p.pages;
+    if (p.count == 0 || p.used + entrySize > pages[p.count - 1].length) {
+      int pageSize =
+          p.count == 0 ? MIN_PAGE_SIZE : Math.min(MAX_PAGE_SIZE, pages[p.count - 1].length * 2);
+      byte[] page = new byte[Math.max(pageSize, entrySize)];
+      if (p.count == pages.length) {
+        pages = ArrayUtil.grow(pages, p.count + 1);
+      }
+      pages[p.count++] = page;
+      p.used = 0;
+      // publishes the new page before any slot pointing to it
+      p.pages = pages;
+    }
+    byte[] page = pages[p.count - 1];
+    final int offset = p.used;
+    BitUtil.VH_LE_INT.set(page, offset, hash);
+    BitUtil.VH_LE_INT.set(page, offset + Integer.BYTES, id.length);
+    int pos = offset + 2 * Integer.BYTES;
+    BitUtil.VH_LE_LONG.set(page, pos, value.pointer);
+    BitUtil.VH_LE_LONG.set(page, pos + Long.BYTES, value.version);
+    BitUtil.VH_LE_LONG.set(page, pos + 2 * Long.BYTES, value.previousPointer);
+    System.arraycopy(id.bytes, id.offset, page, offset + ENTRY_OVERHEAD, id.length);
+    p.used += entrySize;
+    return ((long) p.count << 32) | offset;
+  }
+
+  private Table resize(Table t) {
+    final AtomicLongArray slots = t.slots;
+    Table resized = new Table(slots.length() * 2, t.pages);
+    final int mask = resized.slots.length() - 1;
+    final byte[][] pages = t.pages.pages;
+    for (int i = 0; i < slots.length(); i++) {
+      long slot = slots.get(i);
+      if (slot != 0) {
+        int hash = (int) BitUtil.VH_LE_INT.get(pages[pageIndex(slot)], (int) slot);
+        int j = hash & mask;
+        while (resized.slots.get(j) != 0) {
+          j = (j + 1) & mask;
+        }
+        resized.slots.set(j, slot);
+      }
+    }
+    table = resized;
+    return resized;
+  }
+
+  /** Not supported, entries are only removed by {@link #clear()}. */
+  @Override
+  public LogPtr remove(Object key) {
+    throw new UnsupportedOperationException("Entries can't be removed from a LogPtrMap");
+  }
+
+  /**
+   * An unmodifiable snapshot of the entries, for debugging. Its changes wouldn't be seen by the
+   * map, so they throw an {@link UnsupportedOperationException}.
+   */
+  @Override
+  public Set<Entry<BytesRef, LogPtr>> entrySet() {
+    Table t = table;
+    byte[][] pages = t.pages.pages;
+    List<Entry<BytesRef, LogPtr>> entries = new ArrayList<>();
+    for (int i = 0; i < t.slots.length(); i++) {
+      long slot = t.slots.get(i);
+      if (slot != 0) {
+        if (pageIndex(slot) >= pages.length) {
+          pages = t.pages.pages;
+        }
+        byte[] page = pages[pageIndex(slot)];
+        int offset = (int) slot;
+        int length = (int) BitUtil.VH_LE_INT.get(page, offset + Integer.BYTES);
+        BytesRef id =
+            new BytesRef(
+                Arrays.copyOfRange(
+                    page, offset + ENTRY_OVERHEAD, offset + ENTRY_OVERHEAD + length));
+        entries.add(new SimpleImmutableEntry<>(id, readLogPtr(pages, slot)));
+      }
+    }
+    final List<Entry<BytesRef, LogPtr>> snapshot = Collections.unmodifiableList(entries);
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<Entry<BytesRef, LogPtr>> iterator() {
+        return snapshot.iterator();
+      }
+
+      @Override
+      public int size() {
+        return snapshot.size();
+      }
+    };
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.util.EnvUtils;
+import org.apache.solr.common.util.IOUtils;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.util.OrderedExecutor;
+
+/**
+ * Applies updates read from a transaction log or fetched from another replica, in parallel on the
+ * {@link OrderedExecutor} of the node: the updates of a document are applied in the order they were
+ * submitted, and the updates of different documents concurrently, up to a number of threads. A
+ * delete by query is a barrier: it is applied by the calling thread, once the updates submitted
+ * before it were applied.
+ *
+ * <p>Update processors aren't thread safe, so each thread applies updates through its own
+ * processor, which it gets from the supplier the first time. Without an executor, or with a single
+ * thread, the updates are applied by the calling thread.
+ */
+class ParallelUpdateApplier implements Closeable {
+
+  /**
+   * The minimum number of updates worth applying on an additional thread, see {@link
+   * #threadsFor(long, int)}.
+   */
+  static final int MIN_UPDATES_PER_THREAD =
+      EnvUtils.getPropertyAsInteger("solr.update.minUpdatesPerApplyThread", 1000);
+
+  interface ErrorHandler {
+    /**
+     * Handles the failure of an update, and returns whether to stop applying updates. If so, the
+     * updates not applied yet are skipped, and the failure is thrown to the submitting thread.
+     */
+    boolean onError(UpdateCommand cmd, Exception e);
+  }
+
+  // only accessed by the submitting thread
+  private OrderedExecutor<BytesRef> executor;
+  private final int numThreads;
+  // a permit per update being applied by the executor
+  private final Semaphore permits;
+  private final Supplier<UpdateRequestProcessor> processorSupplier;
+  private final Collection<UpdateRequestProcessor> processors =
+      Collections.synchronizedList(new ArrayList<>());
+  private final ThreadLocal<UpdateRequestProcessor> threadProcessor;
+  private final ErrorHandler errorHandler;
+  private final AtomicReference<Exception> failure = new AtomicReference<>();
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+
+  /**
+   * @param executor the executor to apply updates on, or null to apply them in the calling thread
+   * @param numThreads the maximum number of updates applied concurrently
+   */
+  ParallelUpdateApplier(
+      OrderedExecutor<BytesRef> executor,
+      int numThreads,
+      Supplier<UpdateRequestProcessor> processorSupplier,
+      ErrorHandler errorHandler) {
+    this.executor = numThreads > 1 ? executor : null;
+    this.numThreads = Math.max(1, numThreads);
+    this.permits = new Semaphore(this.numThreads);
+    this.processorSupplier = processorSupplier;
+    this.threadProcessor =
+        ThreadLocal.withInitial(
+            () -> {
+              UpdateRequestProcessor proc = this.processorSupplier.get();
+              processors.add(proc);
+              return proc;
+            });
+    this.errorHandler = errorHandler;
+  }
+
+  /**
+   * Returns the number of threads worth applying the updates on: one per {@link
+   * #MIN_UPDATES_PER_THREAD} updates, up to the given maximum.
+   */
+  static int threadsFor(long numUpdates, int maxThreads) {
+    long threads = (numUpdates + MIN_UPDATES_PER_THREAD - 1) / MIN_UPDATES_PER_THREAD;
+    return (int) Math.max(1, Math.min(threads, maxThreads));
+  }
+
+  /**
+   * Waits for the pending updates, and applies the next ones in the calling thread, e.g. because it
+   * holds a lock the other threads would wait for.
+   */
+  void applyInCallingThread() {
+    awaitPending();
+    executor = null;
+  }
+
+  /**
+   * Submits an add, a delete by id or a delete by query, to be applied after the updates of the
+   * same document submitted before.
+   *
+   * @throws SolrException if applying updates stopped on a failure
+   */
+  void submit(UpdateCommand cmd) {
+    assert cmd instanceof AddUpdateCommand || cmd instanceof DeleteUpdateCommand;
+    throwIfFailed();
+    submitted.incrementAndGet();
+    BytesRef id = getIndexedId(cmd);
+    if (executor == null || id == null) {
+      awaitPending();
+      apply(cmd);
+      throwIfFailed();
+      return;
+    }
+
+    acquire(1);
+    try {
+      executor.execute(
+          id,
+          () -> {
+            try {
+              apply(cmd);
+            } finally {
+              permits.release();
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      permits.release();
+      throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE, "Can't apply update " + cmd, e);
+    }
+  }
+
+  private static BytesRef getIndexedId(UpdateCommand cmd) {
+    if (cmd instanceof AddUpdateCommand) {
+      return ((AddUpdateCommand) cmd).getIndexedId();
+    }
+    DeleteUpdateCommand delete = (DeleteUpdateCommand) cmd;
+    return delete.isDeleteById() ? delete.getIndexedId() : null;
+  }
+
+  private void apply(UpdateCommand cmd) {
+    try {
+      // fail fast
+      if (failure.get() != null) return;
+      UpdateRequestProcessor proc = threadProcessor.get();
+      if (cmd instanceof AddUpdateCommand) {
+        proc.processAdd((AddUpdateCommand) cmd);
+      } else {
+        proc.processDelete((DeleteUpdateCommand) cmd);
+      }
+    } catch (Exception e) {
+      if (errorHandler.onError(cmd, e)) {
+        failure.compareAndSet(null, e);
+      }
+    } finally {
+      completed.incrementAndGet();
+    }
+  }
+
+  /** Waits for the updates submitted so far to be applied. */
+  void awaitPending() {
+    if (executor != null) {
+      acquire(numThreads);
+      permits.release(numThreads);
+    }
+  }
+
+  private void acquire(int n) {
+    try {
+      permits.acquire(n);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(ErrorCode.SERVER_ERROR, e);
+    }
+  }
+
+  /** Returns the failure applying updates stopped on, if any. */
+  Exception getFailure() {
+    return failure.get();
+  }
+
+  /** Throws the failure applying updates stopped on, if any. */
+  void throwIfFailed() {
+    Exception e = failure.get();
+    if (e instanceof SolrException) {
+      throw (SolrException) e;
+    } else if (e != null) {
+      throw new SolrException(ErrorCode.SERVER_ERROR, e);
+    }
+  }
+
+  /** The number of updates submitted so far. */
+  long getSubmitted() {
+    return submitted.get();
+  }
+
+  /** The number of updates applied, or skipped after a failure, so far. */
+  long getCompleted() {
+    return completed.get();
+  }
+
+  /**
+   * Waits for the pending updates, and finishes the processors of all the threads.
+   *
+   * @throws IOException the first failure to finish a processor, once all were finished
+   */
+  void finish() throws IOException {
+    awaitPending();
+    List<UpdateRequestProcessor> toFinish;
+    synchronized (processors) {
+      toFinish = new ArrayList<>(processors);
+    }
+    IOException finishFailure = null;
+    for (UpdateRequestProcessor proc : toFinish) {
+      try {
+        proc.finish();
+      } catch (IOException e) {
+        if (finishFailure == null) {
+          finishFailure = e;
+        } else {
+          finishFailure.addSuppressed(e);
+        }
+      }
+    }
+    if (finishFailure != null) {
+      throw finishFailure;
+    }
+  }
+
+  /** Closes the processors of all the threads, once the pending updates were applied. */
+  @Override
+  public void close() {
+    awaitPending();
+    synchronized (processors) {
+      for (UpdateRequestProcessor proc : processors) {
+        IOUtils.closeQuietly(proc);
+      }
+      processors.clear();
+    }
+  }
+}
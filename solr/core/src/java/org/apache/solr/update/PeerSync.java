@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.apache.http.NoHttpResponseException;
 import org.apache.http.conn.ConnectTimeoutException;
@@ -53,7 +54,6 @@ import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.request.LocalSolrQueryRequest;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
-import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessorChain;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -612,6 +612,9 @@ public class PeerSync implements SolrMetricProducer {
           return Long.compare(l1, l2);
         };
 
+    // how often to log the progress of applying updates
+    private static final long STATUS_NANOS = TimeUnit.SECONDS.toNanos(10);
+
     private String logPrefix;
     private SolrCore solrCore;
 
@@ -627,13 +630,33 @@ public class PeerSync implements SolrMetricProducer {
       SolrQueryRequest req = new LocalSolrQueryRequest(solrCore, params);
       SolrQueryResponse rsp = new SolrQueryResponse();
 
+      // the updates of different documents are applied in parallel, on as many threads as the
+      // number of updates is worth
       UpdateRequestProcessorChain processorChain = req.getCore().getUpdateProcessingChain(null);
-      UpdateRequestProcessor proc = processorChain.createProcessor(req, rsp);
+      int numThreads =
+          ParallelUpdateApplier.threadsFor(
+              updates.size(), solrCore.getCoreContainer().getConfig().getReplayUpdatesThreads());
+      ParallelUpdateApplier applier =
+          new ParallelUpdateApplier(
+              solrCore.getCoreContainer().getReplayUpdatesExecutor(),
+              numThreads,
+              () -> {
+                // SolrQueryRequest is not thread-safe, so use a copy when creating URPs
+                var localRequest = new LocalSolrQueryRequest(solrCore, params);
+                return processorChain.createProcessor(localRequest, rsp);
+              },
+              (cmd, e) -> {
+                log.error(
+                    "{} Error applying updates from {}, update={}", logPrefix, updateFrom, cmd, e);
+                return true;
+              });
 
       updates.sort(updateRecordComparator);
 
       Object o = null;
       long lastVersion = 0;
+      long startNanos = System.nanoTime();
+      long lastStatusNanos = startNanos;
       try {
         // Apply oldest updates first
         for (Object obj : updates) {
@@ -664,7 +687,7 @@ public class PeerSync implements SolrMetricProducer {
                 if (debug) {
                   log.debug("{} add {} id {}", logPrefix, cmd, sdoc.getField(ID));
                 }
-                proc.processAdd(cmd);
+                applier.submit(cmd);
                 break;
               }
             case UpdateLog.DELETE:
@@ -680,7 +703,7 @@ public class PeerSync implements SolrMetricProducer {
                         "{} delete {} {}", logPrefix, cmd, new BytesRef(idBytes).utf8ToString());
                   }
                 }
-                proc.processDelete(cmd);
+                applier.submit(cmd);
                 break;
               }
 
@@ -694,7 +717,8 @@ public class PeerSync implements SolrMetricProducer {
                 if (debug) {
                   log.debug("{} deleteByQuery {}", logPrefix, cmd);
                 }
-                proc.processDelete(cmd);
+                // applied once the updates before it are
+                applier.submit(cmd);
                 break;
               }
             case UpdateLog.UPDATE_INPLACE:
@@ -710,7 +734,7 @@ public class PeerSync implements SolrMetricProducer {
                       cmd.prevVersion,
                       cmd.solrDoc);
                 }
-                proc.processAdd(cmd);
+                applier.submit(cmd);
                 break;
               }
 
@@ -718,7 +742,21 @@ public class PeerSync implements SolrMetricProducer {
               throw new SolrException(
                   SolrException.ErrorCode.SERVER_ERROR, "Unknown Operation! " + oper);
           }
+
+          long now = System.nanoTime();
+          if (now - lastStatusNanos > STATUS_NANOS && log.isInfoEnabled()) {
+            lastStatusNanos = now;
+            log.info(
+                "{} applied {} of {} updates from {} on {} threads",
+                logPrefix,
+                applier.getCompleted(),
+                updates.size(),
+                updateFrom,
+                numThreads);
+          }
         }
+        applier.awaitPending();
+        applier.throwIfFailed();
 
       } catch (IOException e) {
         // TODO: should this be handled separately as a problem with us?
@@ -730,14 +768,24 @@ public class PeerSync implements SolrMetricProducer {
         throw e;
       } finally {
         try {
-          proc.finish();
+          applier.finish();
         } catch (Exception e) {
           log.error("{} Error applying updates from {}, finish()", logPrefix, updateFrom, e);
           throw e;
         } finally {
-          IOUtils.closeQuietly(proc);
+          applier.close();
         }
       }
+
+      if (log.isInfoEnabled()) {
+        log.info(
+            "{} applied {} updates from {} on {} threads in {} ms",
+            logPrefix,
+            applier.getCompleted(),
+            updateFrom,
+            numThreads,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      }
     }
   }
 
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks, for each replica this node forwards updates to, the updates not acknowledged yet and how
+ * long the replica took to acknowledge them, i.e. how far the replica lags behind this node.
+ *
+ * <p>Updates are forwarded in streams, which the replica acknowledges as a whole: the lag of a
+ * stream is the time from its first update being forwarded to its acknowledgement. The updates of
+ * a stream that failed, even partly, are counted as failed rather than acknowledged.
+ *
+ * <p>The maximum lag is the one of the last one to two windows, so that it recovers from a replica
+ * having been slow once. Replicas with no updates pending for long, such as those no longer hosted
+ * by live nodes, are forgotten.
+ */
+public class ReplicationLag {
+
+  /** The default window of the maximum lag. */
+  public static final long DEFAULT_MAX_LAG_WINDOW_MS = 60_000;
+
+  /** The default time after which a replica with no updates pending is forgotten. */
+  public static final long DEFAULT_IDLE_EXPIRY_MS = 600_000;
+
+  private static class ReplicaStats {
+    long pending;
+    long acknowledged;
+    long failed;
+    long lastLagNanos;
+    // the maximum lag of the current window, and of the one before
+    long maxLagNanos;
+    long previousMaxLagNanos;
+    long windowStartNanos;
+    long lastActiveNanos;
+
+    ReplicaStats(long now) {
+      windowStartNanos = now;
+      lastActiveNanos = now;
+    }
+
+    synchronized void forwarded(int count, long now) {
+      pending += count;
+      lastActiveNanos = now;
+    }
+
+    synchronized void completed(
+        int count, boolean failed, long lagNanos, long now, long windowNanos) {
+      pending -= count;
+      lastActiveNanos = now;
+      if (failed) {
+        this.failed += count;
+      } else {
+        acknowledged += count;
+        lastLagNanos = lagNanos;
+        roll(now, windowNanos);
+        maxLagNanos = Math.max(maxLagNanos, lagNanos);
+      }
+    }
+
+    private void roll(long now, long windowNanos) {
+      long elapsed = now - windowStartNanos;
+      if (elapsed >= windowNanos) {
+        previousMaxLagNanos = elapsed < 2 * windowNanos ? maxLagNanos : 0;
+        maxLagNanos = 0;
+        windowStartNanos += elapsed - elapsed % windowNanos;
+      }
+    }
+
+    synchronized boolean idle(long now, long expiryNanos) {
+      return pending <= 0 && now - lastActiveNanos > expiryNanos;
+    }
+
+    synchronized Map<String, Object> toMap(long now, long windowNanos) {
+      roll(now, windowNanos);
+      Map<String, Object> replica = new LinkedHashMap<>();
+      replica.put("pending", pending);
+      replica.put("acknowledged", acknowledged);
+      replica.put("failed", failed);
+      replica.put("lastLagMs", TimeUnit.NANOSECONDS.toMillis(lastLagNanos));
+      replica.put(
+          "maxLagMs", TimeUnit.NANOSECONDS.toMillis(Math.max(maxLagNanos, previousMaxLagNanos)));
+      return replica;
+    }
+  }
+
+  private final Map<String, ReplicaStats> replicas = new ConcurrentHashMap<>();
+  private final long maxLagWindowNanos;
+  private final long idleExpiryNanos;
+  private volatile long lastPruneNanos = System.nanoTime();
+
+  public ReplicationLag() {
+    this(DEFAULT_MAX_LAG_WINDOW_MS, DEFAULT_IDLE_EXPIRY_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param maxLagWindow the window of the maximum lag
+   * @param idleExpiry the time after which a replica with no updates pending is forgotten
+   * @param unit the unit of <code>maxLagWindow</code> and <code>idleExpiry</code>
+   */
+  public ReplicationLag(long maxLagWindow, long idleExpiry, TimeUnit unit) {
+    if (maxLagWindow <= 0) {
+      throw new IllegalArgumentException("maxLagWindow must be positive, got " + maxLagWindow);
+    }
+    this.maxLagWindowNanos = unit.toNanos(maxLagWindow);
+    this.idleExpiryNanos = unit.toNanos(idleExpiry);
+  }
+
+  /** Records updates forwarded to the replica, and not acknowledged yet. */
+  public void forwarded(String url, int count) {
+    long now = System.nanoTime();
+    // updated within compute so that prune() can't drop the replica meanwhile
+    replicas.compute(
+        url,
+        (u, s) -> {
+          if (s == null) {
+            s = new ReplicaStats(now);
+          }
+          s.forwarded(count, now);
+          return s;
+        });
+    maybePrune(now);
+  }
+
+  /**
+   * Records the response of the replica to updates.
+   *
+   * @param failed whether the replica failed any of the updates, which are then counted as failed
+   * @param lagNanos the time since the first of the updates was forwarded
+   */
+  public void completed(String url, int count, boolean failed, long lagNanos) {
+    long now = System.nanoTime();
+    replicas.computeIfPresent(
+        url,
+        (u, s) -> {
+          s.completed(count, failed, lagNanos, now, maxLagWindowNanos);
+          return s;
+        });
+  }
+
+  /** Returns the updates pending for the replica. */
+  public long getPending(String url) {
+    ReplicaStats s = replicas.get(url);
+    if (s == null) {
+      return 0;
+    }
+    synchronized (s) {
+      return s.pending;
+    }
+  }
+
+  /** Returns the stats of each replica, for metrics. */
+  public Map<String, Object> getStats() {
+    long now = System.nanoTime();
+    maybePrune(now);
+    Map<String, Object> stats = new TreeMap<>();
+    replicas.forEach((url, s) -> stats.put(url, s.toMap(now, maxLagWindowNanos)));
+    return stats;
+  }
+
+  /** Returns the number of replicas tracked. */
+  public int size() {
+    return replicas.size();
+  }
+
+  private void maybePrune(long now) {
+    if (now - lastPruneNanos > idleExpiryNanos / 4) {
+      lastPruneNanos = now;
+      for (String url : replicas.keySet()) {
+        replicas.computeIfPresent(url, (u, s) -> s.idle(now, idleExpiryNanos) ? null : s);
+      }
+    }
+  }
+}
@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.impl.ConcurrentUpdateHttp2SolrClient;
 import org.apache.solr.client.solrj.impl.Http2SolrClient;
@@ -46,14 +47,30 @@ public class StreamingSolrClients {
 
   private Http2SolrClient httpClient;
 
-  private Map<String, ConcurrentUpdateHttp2SolrClient> solrClients = new HashMap<>();
+  private Map<String, ErrorReportingConcurrentUpdateSolrClient> solrClients = new HashMap<>();
   private List<SolrError> errors = Collections.synchronizedList(new ArrayList<>());
 
   private ExecutorService updateExecutor;
 
+  private final ReplicationLag replicationLag;
+  // the updates forwarded to each url and not acknowledged yet
+  private final Map<String, Forwarded> forwarded = new HashMap<>();
+
+  private static class Forwarded {
+    final long sinceNanos = System.nanoTime();
+    // the errors of the client before the updates were forwarded
+    final int errorsBefore;
+    int count;
+
+    Forwarded(int errorsBefore) {
+      this.errorsBefore = errorsBefore;
+    }
+  }
+
   public StreamingSolrClients(UpdateShardHandler updateShardHandler) {
     this.updateExecutor = updateShardHandler.getUpdateExecutor();
     this.httpClient = updateShardHandler.getUpdateOnlyHttpClient();
+    this.replicationLag = updateShardHandler.getReplicationLag();
   }
 
   public List<SolrError> getErrors() {
@@ -66,7 +83,7 @@ public class StreamingSolrClients {
 
   public synchronized SolrClient getSolrClient(final SolrCmdDistributor.Req req) {
     String url = getFullUrl(req.node.getUrl());
-    ConcurrentUpdateHttp2SolrClient client = solrClients.get(url);
+    ErrorReportingConcurrentUpdateSolrClient client = solrClients.get(url);
     if (client == null) {
       // NOTE: increasing to more than 1 threadCount for the client could cause updates to be
       // reordered on a greater scale since the current behavior is to only increase the number of
@@ -88,18 +105,41 @@ public class StreamingSolrClients {
       solrClients.put(url, client);
     }
 
+    final int errorsBefore = client.errorCount.get();
+    forwarded.computeIfAbsent(url, u -> new Forwarded(errorsBefore)).count++;
+    replicationLag.forwarded(url, 1);
     return client;
   }
 
   public synchronized void blockUntilFinished() throws IOException {
-    for (ConcurrentUpdateHttp2SolrClient client : solrClients.values()) {
-      client.blockUntilFinished();
+    for (Map.Entry<String, ErrorReportingConcurrentUpdateSolrClient> entry :
+        solrClients.entrySet()) {
+      try {
+        entry.getValue().blockUntilFinished();
+      } finally {
+        acknowledged(entry.getKey(), entry.getValue());
+      }
     }
   }
 
   public synchronized void shutdown() {
-    for (ConcurrentUpdateHttp2SolrClient client : solrClients.values()) {
-      client.close();
+    for (Map.Entry<String, ErrorReportingConcurrentUpdateSolrClient> entry :
+        solrClients.entrySet()) {
+      entry.getValue().close();
+      acknowledged(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private void acknowledged(String url, ErrorReportingConcurrentUpdateSolrClient client) {
+    Forwarded f = forwarded.remove(url);
+    if (f != null) {
+      // the replicas are waited for in turn, so the time of their last response is used
+      long ackNanos = client.lastResponseNanos;
+      if (ackNanos - f.sinceNanos < 0) {
+        ackNanos = System.nanoTime();
+      }
+      boolean failed = client.errorCount.get() != f.errorsBefore;
+      replicationLag.completed(url, f.count, failed, ackNanos - f.sinceNanos);
     }
   }
 
@@ -126,6 +166,8 @@ class ErrorReportingConcurrentUpdateSolrClient extends ConcurrentUpdateHttp2Solr
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   private final SolrCmdDistributor.Req req;
   private final List<SolrError> errors;
+  volatile long lastResponseNanos;
+  final AtomicInteger errorCount = new AtomicInteger();
 
   public ErrorReportingConcurrentUpdateSolrClient(Builder builder) {
     super(builder);
@@ -135,6 +177,8 @@ class ErrorReportingConcurrentUpdateSolrClient extends ConcurrentUpdateHttp2Solr
 
   @Override
   public void handleError(Throwable ex) {
+    lastResponseNanos = System.nanoTime();
+    errorCount.incrementAndGet();
     log.error("Error when calling {} to {}", req, req.node.getUrl(), ex);
     SolrError error = new SolrError();
     error.e = (Exception) ex;
@@ -151,6 +195,7 @@ class ErrorReportingConcurrentUpdateSolrClient extends ConcurrentUpdateHttp2Solr
 
   @Override
   public void onSuccess(Response resp, InputStream respBody) {
+    lastResponseNanos = System.nanoTime();
     req.trackRequestResult(resp, respBody, true);
   }
 
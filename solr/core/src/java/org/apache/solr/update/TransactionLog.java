@@ -628,6 +628,14 @@ public class TransactionLog implements Closeable {
     }
   }
 
+  /**
+   * Forces the records flushed so far to storage, as {@link #finish(UpdateLog.SyncLevel)} does for
+   * {@link UpdateLog.SyncLevel#FSYNC}.
+   */
+  void force() throws IOException {
+    channel.force(true);
+  }
+
   @Override
   public void close() {
     try {
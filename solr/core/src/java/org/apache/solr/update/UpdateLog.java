@@ -50,10 +50,9 @@ import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
 import java.util.stream.Stream;
 import org.apache.commons.io.file.PathUtils;
 import org.apache.lucene.store.Directory;
@@ -68,10 +67,8 @@ import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.CollectionUtil;
 import org.apache.solr.common.util.EnvUtils;
 import org.apache.solr.common.util.ExecutorUtil;
-import org.apache.solr.common.util.IOUtils;
 import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.common.util.SuppressForbidden;
-import org.apache.solr.common.util.TimeSource;
 import org.apache.solr.core.DirectoryFactory;
 import org.apache.solr.core.PluginInfo;
 import org.apache.solr.core.SolrCore;
@@ -85,12 +82,9 @@ import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.update.processor.DistributedUpdateProcessor;
-import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessorChain;
-import org.apache.solr.util.OrderedExecutor;
 import org.apache.solr.util.RefCounted;
 import org.apache.solr.util.TestInjection;
-import org.apache.solr.util.TimeOut;
 import org.apache.solr.util.plugin.PluginInfoInitialized;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -204,7 +198,7 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   protected volatile State state = State.ACTIVE;
 
   protected TransactionLog bufferTlog;
-  protected TransactionLog tlog;
+  protected volatile TransactionLog tlog;
   protected TransactionLog prevTlog;
   protected TransactionLog prevTlogOnPrecommit;
   // list of recent logs, newest first
@@ -212,13 +206,20 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   protected Deque<TransactionLog> newestLogsOnStartup = new ArrayDeque<>();
   protected int numOldRecords; // number of records in the recent logs
 
-  protected Map<BytesRef, LogPtr> map = new HashMap<>();
-  protected Map<BytesRef, LogPtr> prevMap; // used while committing/reopening is happening
-  protected Map<BytesRef, LogPtr> prevMap2; // used while committing/reopening is happening
+  // The maps can be read concurrently so that lookups don't need the lock of this UpdateLog: they
+  // read them optimistically, validating with mapsLock that they weren't swapped in the meantime.
+  // The maps and tlog are only changed with the lock of this UpdateLog, and are only swapped with
+  // mapsLock. A LogPtrMap holds its entries in pages of bytes rather than as objects.
+  protected volatile Map<BytesRef, LogPtr> map = new LogPtrMap();
+  // used while committing/reopening is happening
+  protected volatile Map<BytesRef, LogPtr> prevMap;
+  // used while committing/reopening is happening
+  protected volatile Map<BytesRef, LogPtr> prevMap2;
   // the transaction log used to look up entries found in prevMap
-  protected TransactionLog prevMapLog;
+  protected volatile TransactionLog prevMapLog;
   // the transaction log used to look up entries found in prevMap2
-  protected TransactionLog prevMapLog2;
+  protected volatile TransactionLog prevMapLog2;
+  protected final StampedLock mapsLock = new StampedLock();
 
   protected final int numDeletesToKeep = 1000;
   protected final int numDeletesByQueryToKeep = 100;
@@ -258,6 +259,13 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
 
   protected SyncLevel defaultSyncLevel = SyncLevel.FLUSH;
 
+  // group commit of the fsyncs, see GroupCommitSyncer
+  protected boolean groupCommit;
+  protected int groupCommitMaxWaitMs;
+  protected int groupCommitMaxBatch;
+  // started on the first fsync, written under this, volatile for the metrics to read it lock-free
+  private volatile GroupCommitSyncer groupCommitSyncer;
+
   protected volatile UpdateHandler uhandler; // a core reload can change this reference!
   protected volatile boolean cancelApplyBufferUpdate;
   protected List<Long> startingVersions;
@@ -380,6 +388,10 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     dataDir = (String) info.initArgs.get("dir");
     defaultSyncLevel = SyncLevel.getSyncLevel((String) info.initArgs.get("syncLevel"));
 
+    groupCommit = Boolean.parseBoolean(String.valueOf(info.initArgs.get("groupCommit")));
+    groupCommitMaxWaitMs = objToInt(info.initArgs.get("groupCommitMaxWaitMs"), 0);
+    groupCommitMaxBatch = objToInt(info.initArgs.get("groupCommitMaxBatch"), 1000);
+
     numRecordsToKeep = objToInt(info.initArgs.get("numRecordsToKeep"), 100);
     maxNumLogsToKeep = objToInt(info.initArgs.get("maxNumLogsToKeep"), 10);
     if (info.initArgs.get("numVersionBuckets") != null) {
@@ -397,9 +409,10 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     updateLocks = new UpdateLocks(timeoutMs);
 
     log.info(
-        "Initializing UpdateLog: dataDir={} defaultSyncLevel={} numRecordsToKeep={} maxNumLogsToKeep={}",
+        "Initializing UpdateLog: dataDir={} defaultSyncLevel={} groupCommit={} numRecordsToKeep={} maxNumLogsToKeep={}",
         dataDir,
         defaultSyncLevel,
+        groupCommit,
         numRecordsToKeep,
         maxNumLogsToKeep);
   }
@@ -658,6 +671,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     replayOpsMeter = solrMetricsContext.meter("ops", scope, "replay");
     copyOverOldUpdatesMeter = solrMetricsContext.meter("ops", scope, "copyOverOldUpdates");
     solrMetricsContext.gauge(() -> state.getValue(), true, "state", scope);
+    solrMetricsContext.gauge(
+        () -> getGroupCommitFsyncCount(), true, "fsyncs", scope, "groupCommit");
   }
 
   @Override
@@ -980,18 +995,28 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   }
 
   protected void newMap() {
-    prevMap2 = prevMap;
-    prevMapLog2 = prevMapLog;
+    long stamp = mapsLock.writeLock();
+    try {
+      prevMap2 = prevMap;
+      prevMapLog2 = prevMapLog;
 
-    prevMap = map;
-    prevMapLog = tlog;
+      prevMap = map;
+      prevMapLog = tlog;
 
-    map = new HashMap<>();
+      map = new LogPtrMap();
+    } finally {
+      mapsLock.unlockWrite(stamp);
+    }
   }
 
   private void clearOldMaps() {
-    prevMap = null;
-    prevMap2 = null;
+    long stamp = mapsLock.writeLock();
+    try {
+      prevMap = null;
+      prevMap2 = null;
+    } finally {
+      mapsLock.unlockWrite(stamp);
+    }
   }
 
   public boolean hasUncommittedChanges() {
@@ -1029,7 +1054,12 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
         postCommit(cmd);
       }
       prevTlog = tlog;
-      tlog = null;
+      long stamp = mapsLock.writeLock();
+      try {
+        tlog = null;
+      } finally {
+        mapsLock.unlockWrite(stamp);
+      }
       id++;
     }
   }
@@ -1059,13 +1089,11 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
 
     synchronized (this) {
       if (!cmd.softCommit) return; // already handled this at the start of the hard commit
-      newMap();
-
       // start adding documents to a new map since we won't know if
       // any added documents will make it into this commit or not.
       // But we do know that any updates already added will definitely
       // show up in the latest reader after the commit succeeds.
-      map = new HashMap<>();
+      newMap();
 
       if (debug) {
         log.debug(
@@ -1236,43 +1264,80 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     return null;
   }
 
-  public Object lookup(BytesRef indexedId) {
-    LogPtr entry;
-    TransactionLog lookupLog;
+  /** An entry of the maps, along with the log it was written to. */
+  private static class MapEntry {
+    final LogPtr ptr;
+    final TransactionLog log;
+
+    MapEntry(LogPtr ptr, TransactionLog log) {
+      this.ptr = ptr;
+      this.log = log;
+    }
+  }
 
+  /**
+   * Finds the latest entry for the id in the maps. The maps are read without locking unless they
+   * are swapped concurrently, so that realtime gets don't wait for updates being logged.
+   */
+  private MapEntry findEntry(BytesRef indexedId) {
+    long stamp = mapsLock.tryOptimisticRead();
+    if (stamp != 0) {
+      MapEntry entry = findEntryInMaps(indexedId);
+      if (mapsLock.validate(stamp)) {
+        return entry;
+      }
+    }
     synchronized (this) {
-      entry = map.get(indexedId);
-      lookupLog = tlog; // something found in "map" will always be in "tlog"
-      // SolrCore.verbose("TLOG: lookup: for id ",indexedId.utf8ToString(),"in
-      // map",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
-      if (entry == null && prevMap != null) {
-        entry = prevMap.get(indexedId);
+      return findEntryInMaps(indexedId);
+    }
+  }
+
+  private MapEntry findEntryInMaps(BytesRef indexedId) {
+    LogPtr entry = map.get(indexedId);
+    // something found in "map" will always be in "tlog"
+    TransactionLog lookupLog = tlog;
+    if (entry == null) {
+      Map<BytesRef, LogPtr> currentMap = prevMap;
+      if (currentMap != null) {
+        entry = currentMap.get(indexedId);
         // something found in prevMap will always be found in prevMapLog (which could be tlog or
         // prevTlog)
         lookupLog = prevMapLog;
-        // SolrCore.verbose("TLOG: lookup: for id ",indexedId.utf8ToString(),"in
-        // prevMap",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
       }
-      if (entry == null && prevMap2 != null) {
-        entry = prevMap2.get(indexedId);
+    }
+    if (entry == null) {
+      Map<BytesRef, LogPtr> currentMap = prevMap2;
+      if (currentMap != null) {
+        entry = currentMap.get(indexedId);
         // something found in prevMap2 will always be found in prevMapLog2 (which could be tlog or
         // prevTlog)
         lookupLog = prevMapLog2;
-        // SolrCore.verbose("TLOG: lookup: for id ",indexedId.utf8ToString(),"in
-        // prevMap2",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
       }
+    }
+    return entry == null ? null : new MapEntry(entry, lookupLog);
+  }
 
-      if (entry == null) {
-        return null;
+  public Object lookup(BytesRef indexedId) {
+    MapEntry entry = findEntry(indexedId);
+    if (entry == null) {
+      return null;
+    }
+    if (!entry.log.try_incref()) {
+      // the log was closed since, so its entries are in the index now or were moved
+      synchronized (this) {
+        entry = findEntryInMaps(indexedId);
+        if (entry == null) {
+          return null;
+        }
+        entry.log.incref();
       }
-      lookupLog.incref();
     }
 
     try {
       // now do the lookup outside of the sync block for concurrency
-      return lookupLog.lookup(entry.pointer);
+      return entry.log.lookup(entry.ptr.pointer);
     } finally {
-      lookupLog.decref();
+      entry.log.decref();
     }
   }
 
@@ -1281,35 +1346,12 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   // that have already grabbed higher version numbers.  Higher level coordination or
   // synchronization is needed for stronger guarantees (as VersionUpdateProcessor does).
   public Long lookupVersion(BytesRef indexedId) {
-    LogPtr entry;
-    TransactionLog lookupLog;
-
-    synchronized (this) {
-      entry = map.get(indexedId);
-      lookupLog = tlog; // something found in "map" will always be in "tlog"
-      // SolrCore.verbose("TLOG: lookup ver: for id ",indexedId.utf8ToString(),"in
-      // map",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
-      if (entry == null && prevMap != null) {
-        entry = prevMap.get(indexedId);
-        // something found in prevMap will always be found in prevMapLog (which could be tlog or
-        // prevTlog)
-        lookupLog = prevMapLog;
-        // SolrCore.verbose("TLOG: lookup ver: for id ",indexedId.utf8ToString(),"in
-        // prevMap",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
-      }
-      if (entry == null && prevMap2 != null) {
-        entry = prevMap2.get(indexedId);
-        // something found in prevMap2 will always be found in prevMapLog2 (which could be tlog or
-        // prevTlog)
-        lookupLog = prevMapLog2;
-        // SolrCore.verbose("TLOG: lookup ver: for id ",indexedId.utf8ToString(),"in
-        // prevMap2",System.identityHashCode(map),"got",entry,"lookupLog=",lookupLog);
-      }
+    MapEntry mapEntry = findEntry(indexedId);
+    if (mapEntry != null) {
+      return mapEntry.ptr.version;
     }
 
-    if (entry != null) {
-      return entry.version;
-    }
+    LogPtr entry;
 
     // Now check real index
     Long version = versionInfo.getVersionFromIndex(indexedId);
@@ -1341,19 +1383,40 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     }
 
     TransactionLog currLog;
+    GroupCommitSyncer syncer = null;
     synchronized (this) {
       currLog = tlog;
       if (currLog == null) return;
       currLog.incref();
+      if (syncLevel == SyncLevel.FSYNC && groupCommit) {
+        if (groupCommitSyncer == null) {
+          groupCommitSyncer =
+              new GroupCommitSyncer(
+                  groupCommitMaxWaitMs, TimeUnit.MILLISECONDS, groupCommitMaxBatch);
+        }
+        syncer = groupCommitSyncer;
+      }
     }
 
     try {
-      currLog.finish(syncLevel);
+      if (syncer != null) {
+        currLog.finish(SyncLevel.FLUSH);
+        syncer.sync(currLog);
+      } else {
+        currLog.finish(syncLevel);
+      }
     } finally {
       currLog.decref();
     }
   }
 
+  /** Returns the number of fsyncs the group commit did, or -1 if it isn't used. */
+  long getGroupCommitFsyncCount() {
+    // no lock, so that the metrics never wait for an update holding it
+    final GroupCommitSyncer syncer = groupCommitSyncer;
+    return syncer == null ? -1 : syncer.getFsyncCount();
+  }
+
   public Future<RecoveryInfo> recoverFromLog() {
     recoveryInfo = new RecoveryInfo();
 
@@ -1560,7 +1623,12 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
       }
       // Prev tlog will be closed, so nullify prevMap
       if (prevTlog == oldTlog) {
-        prevMap = null;
+        long stamp = mapsLock.writeLock();
+        try {
+          prevMap = null;
+        } finally {
+          mapsLock.unlockWrite(stamp);
+        }
       }
     } catch (IOException e) {
       log.error("Exception reading versions from log", e);
@@ -1595,7 +1663,13 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   protected void ensureLog() {
     if (tlog == null) {
       String newLogName = String.format(Locale.ROOT, LOG_FILENAME_PATTERN, TLOG_NAME, id);
-      tlog = newTransactionLog(tlogDir.resolve(newLogName), globalStrings, false);
+      TransactionLog newLog = newTransactionLog(tlogDir.resolve(newLogName), globalStrings, false);
+      long stamp = mapsLock.writeLock();
+      try {
+        tlog = newLog;
+      } finally {
+        mapsLock.unlockWrite(stamp);
+      }
     }
   }
 
@@ -1628,6 +1702,11 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
       recoveryExecutor.shutdown(); // no new tasks
 
       synchronized (this) {
+        // let the pending requests sync before closing the logs
+        if (groupCommitSyncer != null) {
+          groupCommitSyncer.close();
+          groupCommitSyncer = null;
+        }
 
         // Don't delete the old tlogs, we want to be able to replay from them and retrieve old
         // versions
@@ -2102,25 +2181,19 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
         // NOTE: we don't currently handle a core reload during recovery.  This would cause the core
         // to change underneath us.
 
-        // Use a pool of URPs using a ThreadLocal to have them per-thread.  URPs aren't threadsafe.
+        // URPs aren't threadsafe, so the applier creates one per thread
         UpdateRequestProcessorChain processorChain = req.getCore().getUpdateProcessingChain(null);
-        Collection<UpdateRequestProcessor> procPool =
-            Collections.synchronizedList(new ArrayList<>());
-        ThreadLocal<UpdateRequestProcessor> procThreadLocal =
-            ThreadLocal.withInitial(
+        ParallelUpdateApplier applier =
+            new ParallelUpdateApplier(
+                inSortedOrder ? null : req.getCoreContainer().getReplayUpdatesExecutor(),
+                req.getCoreContainer().getConfig().getReplayUpdatesThreads(),
                 () -> {
                   // SolrQueryRequest is not thread-safe, so use a copy when creating URPs
                   final var localRequest =
                       new LocalSolrQueryRequest(uhandler.core, BASE_REPLAY_PARAMS);
-                  var proc = processorChain.createProcessor(localRequest, rsp);
-                  procPool.add(proc);
-                  return proc;
-                });
-
-        OrderedExecutor<BytesRef> executor =
-            inSortedOrder ? null : req.getCoreContainer().getReplayUpdatesExecutor();
-        AtomicInteger pendingTasks = new AtomicInteger(0);
-        AtomicReference<SolrException> exceptionOnExecuteUpdate = new AtomicReference<>();
+                  return processorChain.createProcessor(localRequest, rsp);
+                },
+                this::onReplayError);
 
         long commitVersion = 0;
         int operationAndFlags = 0;
@@ -2156,9 +2229,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
               if (!finishing) {
                 // about to block all the updates including the tasks in the executor
                 // therefore we must wait for them to be finished
-                waitForAllUpdatesGetExecuted(pendingTasks);
-                // from this point, remain updates will be executed in a single thread
-                executor = null;
+                // from this point, remaining updates are applied in this thread
+                applier.applyInCallingThread();
                 // block to prevent new adds, but don't immediately unlock since
                 // we could be starved from ever completing recovery.  Only unlock
                 // after we've finished this recovery.
@@ -2184,7 +2256,7 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
 
           if (o == null) break;
           // fail fast
-          if (exceptionOnExecuteUpdate.get() != null) throw exceptionOnExecuteUpdate.get();
+          applier.throwIfFailed();
 
           try {
 
@@ -2203,7 +2275,7 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                       convertTlogEntryToAddUpdateCommand(req, entry, oper, version);
                   cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                   if (debug) log.debug("{} {}", oper == ADD ? "add" : "update", cmd);
-                  execute(cmd, executor, pendingTasks, procThreadLocal, exceptionOnExecuteUpdate);
+                  applier.submit(cmd);
                   break;
                 }
               case UpdateLog.DELETE:
@@ -2215,7 +2287,7 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                   cmd.setVersion(version);
                   cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                   if (debug) log.debug("delete {}", cmd);
-                  execute(cmd, executor, pendingTasks, procThreadLocal, exceptionOnExecuteUpdate);
+                  applier.submit(cmd);
                   break;
                 }
 
@@ -2228,9 +2300,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                   cmd.setVersion(version);
                   cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                   if (debug) log.debug("deleteByQuery {}", cmd);
-                  waitForAllUpdatesGetExecuted(pendingTasks);
-                  // DBQ will be executed in the same thread
-                  execute(cmd, null, pendingTasks, procThreadLocal, exceptionOnExecuteUpdate);
+                  // applied in this thread, once the updates before it are
+                  applier.submit(cmd);
                   break;
                 }
               case UpdateLog.COMMIT:
@@ -2267,8 +2338,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
           assert TestInjection.injectUpdateLogReplayRandomPause();
         }
 
-        waitForAllUpdatesGetExecuted(pendingTasks);
-        if (exceptionOnExecuteUpdate.get() != null) throw exceptionOnExecuteUpdate.get();
+        applier.awaitPending();
+        applier.throwIfFailed();
 
         CommitUpdateCommand cmd = new CommitUpdateCommand(req, false);
         cmd.setVersion(commitVersion);
@@ -2291,15 +2362,13 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
           translog.writeCommit(cmd);
         }
 
-        for (UpdateRequestProcessor proc : procPool) {
-          try {
-            proc.finish();
-          } catch (IOException ex) {
-            recoveryInfo.errors.incrementAndGet();
-            loglog.error("Replay exception: finish()", ex);
-          } finally {
-            IOUtils.closeQuietly(proc);
-          }
+        try {
+          applier.finish();
+        } catch (IOException ex) {
+          recoveryInfo.errors.incrementAndGet();
+          loglog.error("Replay exception: finish()", ex);
+        } finally {
+          applier.close();
         }
 
       } finally {
@@ -2308,90 +2377,20 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
       }
     }
 
-    private void waitForAllUpdatesGetExecuted(AtomicInteger pendingTasks) {
-      TimeOut timeOut =
-          new TimeOut(Integer.MAX_VALUE, TimeUnit.MILLISECONDS, TimeSource.CURRENT_TIME);
-      try {
-        timeOut.waitFor(
-            "Timeout waiting for replay updates finish",
-            () -> {
-              // TODO handle the case when there are no progress after a long time
-              return pendingTasks.get() == 0;
-            });
-      } catch (TimeoutException e) {
-        throw new SolrException(ErrorCode.SERVER_ERROR, e);
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        throw new SolrException(ErrorCode.SERVER_ERROR, e);
-      }
-    }
-
-    private BytesRef getIndexedId(UpdateCommand cmd) {
-      if (cmd instanceof AddUpdateCommand) {
-        return ((AddUpdateCommand) cmd).getIndexedId();
-      }
-      if (cmd instanceof DeleteUpdateCommand) {
-        return ((DeleteUpdateCommand) cmd).getIndexedId();
+    /** Counts and logs the failure to replay an update; replay stops if the core is closing. */
+    private boolean onReplayError(UpdateCommand cmd, Exception e) {
+      if (e instanceof SolrException
+          && ((SolrException) e).code() == ErrorCode.SERVICE_UNAVAILABLE.code) {
+        return true;
       }
-      return null;
-    }
-
-    private void execute(
-        UpdateCommand cmd,
-        OrderedExecutor<BytesRef> executor,
-        AtomicInteger pendingTasks,
-        ThreadLocal<UpdateRequestProcessor> procTl,
-        AtomicReference<SolrException> exceptionHolder) {
-      assert cmd instanceof AddUpdateCommand || cmd instanceof DeleteUpdateCommand;
-
-      if (executor != null) {
-        executor.execute(
-            getIndexedId(cmd),
-            () -> {
-              try {
-                // fail fast
-                if (exceptionHolder.get() != null) return;
-                invokeCmdOnProc(cmd, procTl.get());
-              } catch (IOException e) {
-                recoveryInfo.errors.incrementAndGet();
-                loglog.warn("REPLAY_ERR: IOException reading log", e);
-                // could be caused by an incomplete flush if recovering from log
-              } catch (SolrException e) {
-                if (e.code() == ErrorCode.SERVICE_UNAVAILABLE.code) {
-                  exceptionHolder.compareAndSet(null, e);
-                  return;
-                }
-                recoveryInfo.errors.incrementAndGet();
-                loglog.warn("REPLAY_ERR: SolrException reading log", e);
-              } finally {
-                pendingTasks.decrementAndGet();
-              }
-            });
-        pendingTasks.incrementAndGet();
-      } else {
-        try {
-          invokeCmdOnProc(cmd, procTl.get());
-        } catch (IOException e) {
-          recoveryInfo.errors.incrementAndGet();
-          loglog.warn("REPLAY_ERR: IOException replaying log", e);
-          // could be caused by an incomplete flush if recovering from log
-        } catch (SolrException e) {
-          if (e.code() == ErrorCode.SERVICE_UNAVAILABLE.code) {
-            throw e;
-          }
-          recoveryInfo.errors.incrementAndGet();
-          loglog.warn("REPLAY_ERR: SolrException replaying log", e);
-        }
-      }
-    }
-
-    private void invokeCmdOnProc(UpdateCommand cmd, UpdateRequestProcessor proc)
-        throws IOException {
-      if (cmd instanceof AddUpdateCommand) {
-        proc.processAdd((AddUpdateCommand) cmd);
+      recoveryInfo.errors.incrementAndGet();
+      if (e instanceof IOException) {
+        // could be caused by an incomplete flush if recovering from log
+        loglog.warn("REPLAY_ERR: IOException replaying log", e);
       } else {
-        proc.processDelete((DeleteUpdateCommand) cmd);
+        loglog.warn("REPLAY_ERR: Exception replaying log", e);
       }
+      return false;
     }
   }
 
@@ -36,6 +36,7 @@ import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.IOUtils;
 import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.metrics.MetricsMap;
 import org.apache.solr.metrics.SolrMetricManager;
 import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.security.HttpClientBuilderPlugin;
@@ -85,6 +86,8 @@ public class UpdateShardHandler implements SolrInfoBean {
 
   private final InstrumentedHttpListenerFactory trackHttpSolrMetrics;
 
+  private final ReplicationLag replicationLag = new ReplicationLag();
+
   private SolrMetricsContext solrMetricsContext;
 
   private int socketTimeout = HttpClientUtil.DEFAULT_SO_TIMEOUT;
@@ -207,6 +210,8 @@ public class UpdateShardHandler implements SolrInfoBean {
     String expandedScope = SolrMetricManager.mkName(scope, getCategory().name());
     trackHttpSolrMetrics.initializeMetrics(solrMetricsContext, expandedScope);
     defaultConnectionManager.initializeMetrics(solrMetricsContext, expandedScope);
+    MetricsMap lag = new MetricsMap(ew -> replicationLag.getStats().forEach(ew::putNoEx));
+    solrMetricsContext.gauge(lag, true, "replicationLag", expandedScope);
     updateExecutor =
         MetricUtils.instrumentedExecutorService(
             updateExecutor,
@@ -236,6 +241,11 @@ public class UpdateShardHandler implements SolrInfoBean {
     return solrMetricsContext;
   }
 
+  /** Returns the lag of the replicas this node forwards updates to. */
+  public ReplicationLag getReplicationLag() {
+    return replicationLag;
+  }
+
   /**
    * Returns the default HTTP client for general-purpose usage.
    *
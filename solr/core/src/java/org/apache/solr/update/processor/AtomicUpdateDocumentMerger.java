@@ -394,8 +394,8 @@ public class AtomicUpdateDocumentMerger {
     updatedFields.add(
         CommonParams.VERSION_FIELD); // add the version field so that it is fetched too
     SolrInputDocument oldDocument =
-        RealTimeGetComponent.getInputDocument(
-            cmd.getReq().getCore(),
+        AtomicUpdatePrefetcher.getInputDocument(
+            cmd.getReq(),
             idBytes,
             rootIdBytes,
             null, // don't want the version to be returned
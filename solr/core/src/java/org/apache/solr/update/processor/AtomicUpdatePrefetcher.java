@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update.processor;
+
+import static org.apache.solr.common.params.CommonParams.VERSION_FIELD;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.EnvUtils;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.handler.component.RealTimeGetComponent;
+import org.apache.solr.handler.component.RealTimeGetComponent.Resolution;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.util.RefCounted;
+
+/**
+ * Resolves the documents that the atomic updates of a request apply to in bulk rather than one at
+ * a time. The loader of the request announces the ids of the atomic updates it is about to
+ * process; the first of them not found in the update log triggers a single lookup of all of them
+ * in the index, see {@link RealTimeGetComponent#getInputDocumentsFromIndex}. Nodes that only
+ * forward the updates thus never look them up.
+ *
+ * <p>A prefetched document is only used once, and only while the realtime searcher it was fetched
+ * from is current: updates of the document since are found in the update log first, as they are
+ * by {@link RealTimeGetComponent#getInputDocument}.
+ *
+ * @lucene.experimental
+ */
+public class AtomicUpdatePrefetcher {
+
+  /** The maximum number of atomic updates the loaders buffer to prefetch their documents. */
+  public static final int BATCH_SIZE =
+      EnvUtils.getPropertyAsInteger("solr.update.atomicUpdatePrefetchSize", 1000);
+
+  private static final String CONTEXT_KEY = AtomicUpdatePrefetcher.class.getName();
+
+  // ids announced and not looked up yet
+  private final Set<BytesRef> pending = new HashSet<>();
+  // ids looked up, and the documents found for them
+  private final Set<BytesRef> fetched = new HashSet<>();
+  private final Map<BytesRef, SolrInputDocument> docs = new HashMap<>();
+  // the searcher and the fields of the lookup, which the documents are only valid for
+  private SolrIndexSearcher fetchedFrom;
+  private Set<String> fetchedFields;
+
+  /**
+   * Announces the atomic updates among the given commands, which the request is about to process,
+   * so that their documents are looked up in bulk. Other commands are ignored. The documents of the
+   * updates announced before and not processed yet won't be prefetched anymore.
+   */
+  public static void announce(SolrQueryRequest req, Collection<AddUpdateCommand> cmds) {
+    Set<BytesRef> ids = new HashSet<>();
+    for (AddUpdateCommand cmd : cmds) {
+      if (!AtomicUpdateDocumentMerger.isAtomicUpdate(cmd)) continue;
+      BytesRef id;
+      try {
+        id = cmd.getIndexedId();
+      } catch (SolrException e) {
+        continue; // reported when the update is processed
+      }
+      if (id != null) {
+        ids.add(BytesRef.deepCopyOf(id));
+      }
+    }
+    AtomicUpdatePrefetcher prefetcher = (AtomicUpdatePrefetcher) req.getContext().get(CONTEXT_KEY);
+    if (prefetcher == null) {
+      // not worth it for a single update
+      if (ids.size() < 2) return;
+      prefetcher = new AtomicUpdatePrefetcher();
+      req.getContext().put(CONTEXT_KEY, prefetcher);
+    }
+    prefetcher.announce(ids);
+  }
+
+  private synchronized void announce(Set<BytesRef> ids) {
+    pending.clear();
+    pending.addAll(ids);
+    fetched.clear();
+    docs.clear();
+  }
+
+  /**
+   * Obtains the latest document for a given id, as {@link RealTimeGetComponent#getInputDocument}
+   * does, from the documents prefetched for the request if possible.
+   */
+  public static SolrInputDocument getInputDocument(
+      SolrQueryRequest req,
+      BytesRef idBytes,
+      BytesRef rootIdBytes,
+      AtomicLong versionReturned,
+      Set<String> onlyTheseFields,
+      Resolution resolveStrategy)
+      throws IOException {
+    SolrCore core = req.getCore();
+    AtomicUpdatePrefetcher prefetcher = (AtomicUpdatePrefetcher) req.getContext().get(CONTEXT_KEY);
+    // children and their root are looked up separately
+    if (prefetcher == null
+        || !idBytes.equals(rootIdBytes)
+        || (resolveStrategy != Resolution.DOC && core.getLatestSchema().isUsableForChildDocs())) {
+      return RealTimeGetComponent.getInputDocument(
+          core, idBytes, rootIdBytes, versionReturned, onlyTheseFields, resolveStrategy);
+    }
+    return prefetcher.getInputDocument(
+        core, idBytes, versionReturned, onlyTheseFields, resolveStrategy);
+  }
+
+  private synchronized SolrInputDocument getInputDocument(
+      SolrCore core,
+      BytesRef idBytes,
+      AtomicLong versionReturned,
+      Set<String> onlyTheseFields,
+      Resolution resolveStrategy)
+      throws IOException {
+    if (!pending.contains(idBytes) && !fetched.contains(idBytes)) {
+      return RealTimeGetComponent.getInputDocument(
+          core, idBytes, idBytes, versionReturned, onlyTheseFields, resolveStrategy);
+    }
+
+    SolrInputDocument sid =
+        RealTimeGetComponent.getInputDocumentFromTlog(
+            core, idBytes, versionReturned, onlyTheseFields, resolveStrategy);
+    if (sid != null) {
+      // updated since announced
+      pending.remove(idBytes);
+      fetched.remove(idBytes);
+      docs.remove(idBytes);
+      if (sid == RealTimeGetComponent.DELETED) {
+        return null;
+      }
+    } else {
+      sid = fetchFromIndex(core, idBytes, onlyTheseFields);
+      if (sid == null) {
+        return null;
+      }
+    }
+
+    if (versionReturned != null && sid.containsKey(VERSION_FIELD)) {
+      versionReturned.set((long) sid.getFieldValue(VERSION_FIELD));
+    }
+    return sid;
+  }
+
+  private SolrInputDocument fetchFromIndex(
+      SolrCore core, BytesRef idBytes, Set<String> onlyTheseFields) throws IOException {
+    RefCounted<SolrIndexSearcher> searcherHolder = core.getRealtimeSearcher();
+    try {
+      SolrIndexSearcher searcher = searcherHolder.get();
+      if (searcher != fetchedFrom) {
+        invalidate();
+        fetchedFrom = searcher;
+        fetchedFields = onlyTheseFields == null ? null : Set.copyOf(onlyTheseFields);
+      } else if (fetchedFields != null && !fetchedFields.equals(onlyTheseFields)) {
+        // fetch all the fields from now on, which suits any lookup
+        invalidate();
+        fetchedFields = null;
+      }
+      if (!fetched.contains(idBytes)) {
+        docs.putAll(
+            RealTimeGetComponent.getInputDocumentsFromIndex(
+                core, searcher, pending, fetchedFields));
+        fetched.addAll(pending);
+        pending.clear();
+      }
+      fetched.remove(idBytes);
+      return docs.remove(idBytes);
+    } finally {
+      searcherHolder.decref();
+    }
+  }
+
+  /** Discards the documents prefetched, to look them up again. */
+  private void invalidate() {
+    pending.addAll(fetched);
+    fetched.clear();
+    docs.clear();
+  }
+}
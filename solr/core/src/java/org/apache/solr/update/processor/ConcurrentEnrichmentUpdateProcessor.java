@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.util.EnvUtils;
+import org.apache.solr.update.AddUpdateCommand;
+import org.slf4j.MDC;
+
+/**
+ * Base class of the processors that enrich documents with data that takes I/O to obtain, e.g. from
+ * a remote service. The documents of a batch, see {@link #processAddBatch}, are enriched
+ * concurrently on virtual threads, so that their I/O overlaps, and then passed on to the next
+ * processor in their original order. Single adds are enriched in the calling thread.
+ *
+ * <p>The documents of a batch are enriched in groups of up to a maximum size, which {@link
+ * #enrich(List)} may enrich at once, e.g. with a single call to the service.
+ *
+ * <p>The enrich methods are thus called concurrently, on distinct commands; the processors after
+ * this one are not.
+ *
+ * @lucene.experimental
+ */
+public abstract class ConcurrentEnrichmentUpdateProcessor extends UpdateRequestProcessor {
+
+  /** The default maximum number of documents of a batch enriched concurrently. */
+  public static final int DEFAULT_MAX_CONCURRENCY =
+      EnvUtils.getPropertyAsInteger("solr.update.enrichment.maxConcurrency", 16);
+
+  private final int maxConcurrency;
+  private final int maxGroupSize;
+
+  public ConcurrentEnrichmentUpdateProcessor(UpdateRequestProcessor next) {
+    this(DEFAULT_MAX_CONCURRENCY, next);
+  }
+
+  public ConcurrentEnrichmentUpdateProcessor(int maxConcurrency, UpdateRequestProcessor next) {
+    this(maxConcurrency, 1, next);
+  }
+
+  /**
+   * @param maxConcurrency the maximum number of groups of documents enriched concurrently
+   * @param maxGroupSize the maximum number of documents passed to {@link #enrich(List)} at once
+   */
+  public ConcurrentEnrichmentUpdateProcessor(
+      int maxConcurrency, int maxGroupSize, UpdateRequestProcessor next) {
+    super(next);
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    this.maxGroupSize = Math.max(1, maxGroupSize);
+  }
+
+  /**
+   * Enriches the document of an add, before it is passed on to the next processor. This must be
+   * thread safe.
+   *
+   * @throws IOException If there is a low-level I/O error; the add fails
+   */
+  protected abstract void enrich(AddUpdateCommand cmd) throws IOException;
+
+  /**
+   * Enriches the documents of a group of adds of a batch. By default, they are enriched one at a
+   * time with {@link #enrich(AddUpdateCommand)}. This must be thread safe.
+   *
+   * @throws IOException If there is a low-level I/O error; the adds of the group fail
+   */
+  protected void enrich(List<AddUpdateCommand> cmds) throws IOException {
+    for (AddUpdateCommand cmd : cmds) {
+      enrich(cmd);
+    }
+  }
+
+  @Override
+  public void processAdd(AddUpdateCommand cmd) throws IOException {
+    enrich(cmd);
+    super.processAdd(cmd);
+  }
+
+  /**
+   * Enriches the documents concurrently, and then passes them on in order. If a group of documents
+   * fails to be enriched, the ones before it are passed on and its failure is thrown.
+   */
+  @Override
+  public void processAddBatch(List<AddUpdateCommand> cmds) throws IOException {
+    Semaphore permits = new Semaphore(maxConcurrency);
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    int numGroups = (cmds.size() + maxGroupSize - 1) / maxGroupSize;
+    List<Future<?>> enriched = new ArrayList<>(numGroups);
+    // closing the executor waits for the enrichments submitted
+    try (ExecutorService executor =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("enrichment-", 0).factory())) {
+      try {
+        for (int g = 0; g < numGroups; g++) {
+          List<AddUpdateCommand> group =
+              cmds.subList(g * maxGroupSize, Math.min(cmds.size(), (g + 1) * maxGroupSize));
+          permits.acquire();
+          enriched.add(executor.submit(() -> enrichInTask(group, mdc, permits)));
+        }
+        for (int g = 0; g < numGroups; g++) {
+          Throwable failure = failureOf(enriched.get(g));
+          if (failure != null) {
+            if (next != null) next.processAddBatch(cmds.subList(0, g * maxGroupSize));
+            rethrow(failure);
+          }
+        }
+      } catch (InterruptedException e) {
+        enriched.forEach(f -> f.cancel(true));
+        Thread.currentThread().interrupt();
+        throw new SolrException(ErrorCode.SERVER_ERROR, "Interrupted enriching documents", e);
+      }
+    }
+
+    if (next != null) next.processAddBatch(cmds);
+  }
+
+  private Void enrichInTask(
+      List<AddUpdateCommand> group, Map<String, String> mdc, Semaphore permits) throws IOException {
+    if (mdc != null) {
+      MDC.setContextMap(mdc);
+    }
+    try {
+      enrich(group);
+      return null;
+    } finally {
+      permits.release();
+    }
+  }
+
+  private static Throwable failureOf(Future<?> future) throws InterruptedException {
+    try {
+      future.get();
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+  }
+
+  private static void rethrow(Throwable failure) throws IOException {
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new IOException(failure);
+  }
+
+  @Override
+  public boolean acceptsAddBatches() {
+    return true;
+  }
+}
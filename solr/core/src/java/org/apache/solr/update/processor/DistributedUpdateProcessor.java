@@ -757,8 +757,8 @@ public class DistributedUpdateProcessor extends UpdateRequestProcessor {
     // full (non-inplace) atomic update
 
     final SolrInputDocument oldRootDocWithChildren =
-        RealTimeGetComponent.getInputDocument(
-            req.getCore(),
+        AtomicUpdatePrefetcher.getInputDocument(
+            req,
             rootIdBytes,
             rootIdBytes,
             null,
@@ -111,9 +111,10 @@ public class IgnoreLargeDocumentProcessorFactory extends UpdateRequestProcessorF
    *   <li>compute size of String based on its length
    *   <li>fast estimate size of a {@link java.util.Map} or a {@link java.util.Collection}
    * </ul>
+   *
+   * @lucene.internal
    */
-  // package private for testing
-  static class ObjectSizeEstimator {
+  public static class ObjectSizeEstimator {
     /** Sizes of primitive classes. */
     private static final IdentityHashMap<Class<?>, Integer> primitiveSizes =
         new IdentityHashMap<>();
@@ -137,7 +138,7 @@ public class IgnoreLargeDocumentProcessorFactory extends UpdateRequestProcessorF
       primitiveSizes.put(Long.class, Long.BYTES);
     }
 
-    static long estimate(SolrInputDocument doc) {
+    public static long estimate(SolrInputDocument doc) {
       if (doc == null) return 0L;
       long size = 0;
       for (SolrInputField inputField : doc.values()) {
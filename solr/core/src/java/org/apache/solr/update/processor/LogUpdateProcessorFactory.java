@@ -110,6 +110,31 @@ public class LogUpdateProcessorFactory extends UpdateRequestProcessorFactory
       // call delegate first so we can log things like the version that get set later
       if (next != null) next.processAdd(cmd);
 
+      logAdd(cmd);
+    }
+
+    @Override
+    public void processAddBatch(List<AddUpdateCommand> cmds) throws IOException {
+      if (logDebug) {
+        for (AddUpdateCommand cmd : cmds) {
+          log.debug("PRE_UPDATE {} {}", cmd, req);
+        }
+      }
+
+      // the batch is passed on as a whole, for the processors after this one to benefit from it
+      if (next != null) next.processAddBatch(cmds);
+
+      for (AddUpdateCommand cmd : cmds) {
+        logAdd(cmd);
+      }
+    }
+
+    @Override
+    public boolean acceptsAddBatches() {
+      return next != null && next.acceptsAddBatches();
+    }
+
+    private void logAdd(AddUpdateCommand cmd) {
       // Add a list of added id's to the response
       if (adds == null) {
         adds = new ArrayList<>();
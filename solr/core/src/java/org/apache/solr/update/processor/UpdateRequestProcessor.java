@@ -19,6 +19,7 @@ package org.apache.solr.update.processor;
 import java.io.Closeable;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.List;
 import net.jcip.annotations.NotThreadSafe;
 import org.apache.solr.update.AddUpdateCommand;
 import org.apache.solr.update.CommitUpdateCommand;
@@ -54,6 +55,35 @@ public abstract class UpdateRequestProcessor implements Closeable {
     if (next != null) next.processAdd(cmd);
   }
 
+  /**
+   * Processes a batch of adds, in order. Processors that would rather work on several documents at
+   * once, e.g. to overlap their I/O, override this; by default, the adds are processed one at a
+   * time with {@link #processAdd}. On failure, the adds before the one that failed were processed,
+   * and the ones after it were not.
+   *
+   * <p>Unlike {@link #processAdd}, the caller must use distinct commands, which it doesn't reuse
+   * before this returns.
+   *
+   * @see #acceptsAddBatches()
+   * @lucene.experimental
+   */
+  public void processAddBatch(List<AddUpdateCommand> cmds) throws IOException {
+    for (AddUpdateCommand cmd : cmds) {
+      processAdd(cmd);
+    }
+  }
+
+  /**
+   * Returns whether this processor benefits from processing adds in batches, see {@link
+   * #processAddBatch}, so that loaders know whether batching the documents of a request is worth
+   * it.
+   *
+   * @lucene.experimental
+   */
+  public boolean acceptsAddBatches() {
+    return false;
+  }
+
   public void processDelete(DeleteUpdateCommand cmd) throws IOException {
     if (next != null) next.processDelete(cmd);
   }
@@ -28,6 +28,7 @@ import org.apache.solr.common.SolrInputField;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.util.ContentStreamBase;
 import org.apache.solr.common.util.Utils;
+import org.apache.solr.handler.loader.ContentStreamLoader;
 import org.apache.solr.handler.loader.JsonLoader;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
@@ -188,6 +189,41 @@ public class JsonLoaderTest extends SolrTestCaseJ4 {
     assertTrue(ex.getMessage().contains("JSON"));
   }
 
+  @Test
+  public void testMaxDocBytes() throws Exception {
+    String str =
+        "{'add':{'doc':{'id':'1'}},'add':[{'id':'2'},{'id':'3','name':'TEXT'}]}"
+            .replace('\'', '"')
+            .replace("TEXT", "x".repeat(10000));
+    SolrQueryRequest req = req();
+    SolrQueryResponse rsp = new SolrQueryResponse();
+    BufferingRequestProcessor p = new BufferingRequestProcessor(null);
+    ContentStreamLoader loader =
+        new JsonLoader().init(params(ContentStreamLoader.MAX_DOC_BYTES, "1000"));
+
+    SolrException ex =
+        expectThrows(
+            SolrException.class,
+            () -> loader.load(req, rsp, new ContentStreamBase.StringStream(str), p));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, ex.code());
+    assertTrue(ex.getMessage(), ex.getMessage().startsWith("Document 3 takes about "));
+    assertEquals(2, p.addCommands.size());
+
+    // the same for the documents split from custom JSON
+    req.getContext().put("path", "/update/json/docs");
+    p.addCommands.clear();
+    String docs =
+        "{'id':'1'} {'id':'2','name':'TEXT'}".replace('\'', '"').replace("TEXT", "x".repeat(10000));
+    ex =
+        expectThrows(
+            SolrException.class,
+            () -> loader.load(req, rsp, new ContentStreamBase.StringStream(docs), p));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, ex.code());
+    assertEquals(1, p.addCommands.size());
+
+    req.close();
+  }
+
   public void testSimpleFormatInAdd() throws Exception {
     String str = "{'add':[{'id':'1'},{'id':'2'}]}".replace('\'', '"');
     SolrQueryRequest req = req();
@@ -24,8 +24,10 @@ import java.util.Queue;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamReader;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.util.ContentStreamBase;
+import org.apache.solr.handler.loader.ContentStreamLoader;
 import org.apache.solr.handler.loader.XMLLoader;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
@@ -103,6 +105,31 @@ public class XmlUpdateRequestHandlerTest extends SolrTestCaseJ4 {
     req.close();
   }
 
+  @Test
+  public void testMaxDocBytes() throws Exception {
+    String xml =
+        "<add>"
+            + "  <doc><field name=\"id\">1</field></doc>"
+            + "  <doc><field name=\"id\">2</field><field name=\"name\">"
+            + "x".repeat(10000)
+            + "</field></doc>"
+            + "</add>";
+
+    SolrQueryRequest req = req();
+    SolrQueryResponse rsp = new SolrQueryResponse();
+    BufferingRequestProcessor p = new BufferingRequestProcessor(null);
+
+    XMLLoader loader = new XMLLoader().init(params(ContentStreamLoader.MAX_DOC_BYTES, "1000"));
+    SolrException e =
+        expectThrows(
+            SolrException.class,
+            () -> loader.load(req, rsp, new ContentStreamBase.StringStream(xml), p));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    assertTrue(e.getMessage(), e.getMessage().startsWith("Document 2 takes about "));
+    assertEquals(1, p.addCommands.size());
+    req.close();
+  }
+
   @Test
   public void testExternalEntities() throws Exception {
     String file = getFile("mailing_lists.pdf").toUri().toASCIIString();
@@ -64,6 +64,8 @@ public class CloudReplicaSourceTest extends SolrTestCaseJ4 {
       assertEquals(
           "http://baseUrl2:8984/solr/slice2_replica2/",
           cloudReplicaSource.getReplicasBySlice(1).get(0));
+      assertEquals("collection1", cloudReplicaSource.getCollectionBySlice(0));
+      assertEquals("collection1", cloudReplicaSource.getCollectionBySlice(1));
     }
   }
 
@@ -151,6 +153,9 @@ public class CloudReplicaSourceTest extends SolrTestCaseJ4 {
       for (int i = 0; i < cloudReplicaSource.getSliceCount(); i++) {
         String sliceName = sliceNames.get(i);
         assertEquals(1, cloudReplicaSource.getReplicasBySlice(i).size());
+        assertEquals(
+            sliceName.substring(0, sliceName.indexOf('_')),
+            cloudReplicaSource.getCollectionBySlice(i));
 
         // need a switch here because unlike the testShards* tests which always returns slices in
         // the order they were specified, using the collection param can return slice names in any
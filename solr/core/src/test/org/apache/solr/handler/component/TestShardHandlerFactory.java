@@ -162,6 +162,32 @@ public class TestShardHandlerFactory extends SolrTestCaseJ4 {
     cc.shutdown();
   }
 
+  @Test
+  @SuppressWarnings("resource")
+  public void testHedgeDelay() {
+    HttpShardHandlerFactory factory = new HttpShardHandlerFactory();
+    factory.recordShardLatency("c1", 100);
+    assertEquals("hedging is disabled by default", -1, factory.getHedgeDelayMillis("c1"));
+
+    factory.hedgePercentile = 90f;
+    factory.hedgeMinDelay = 5;
+    assertEquals(-1, factory.getHedgeDelayMillis("c1"));
+    for (int i = 1; i < 128; i++) {
+      factory.recordShardLatency("c1", i % 100);
+      factory.recordShardLatency("c2", 1);
+    }
+    assertEquals("not enough latencies yet", -1, factory.getHedgeDelayMillis("c1"));
+    factory.recordShardLatency("c2", 1);
+    assertEquals("the minimum delay", 5, factory.getHedgeDelayMillis("c2"));
+    for (int i = 0; i < 1024; i++) {
+      factory.recordShardLatency("c1", i % 100);
+    }
+    long delay = factory.getHedgeDelayMillis("c1");
+    assertTrue(String.valueOf(delay), delay >= 85 && delay <= 95);
+    assertEquals(-1, factory.getHedgeDelayMillis("c3"));
+    assertEquals(-1, factory.getHedgeDelayMillis(null));
+  }
+
   /** Test {@link ShardHandler#setShardAttributesToParams} */
   @Test
   public void testSetShardAttributesToParams() {
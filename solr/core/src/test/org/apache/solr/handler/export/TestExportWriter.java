@@ -17,7 +17,10 @@
 package org.apache.solr.handler.export;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -30,11 +33,17 @@ import java.util.Set;
 import org.apache.lucene.tests.util.TestUtil;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.StreamParams;
+import org.apache.solr.common.util.ArrowStreamReader;
+import org.apache.solr.common.util.ArrowStreamWriter;
 import org.apache.solr.common.util.SuppressForbidden;
 import org.apache.solr.common.util.Utils;
 import org.apache.solr.index.LogDocMergePolicyFactory;
 import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.schema.SchemaField;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -1172,6 +1181,140 @@ public class TestExportWriter extends SolrTestCaseJ4 {
     validateSort(numDocs);
   }
 
+  @Test
+  public void testParallelSegments() throws Exception {
+    assertU(delQ("*:*"));
+    assertU(commit());
+
+    int numDocs = 1000;
+    String[] str_vals = new String[20];
+    for (int i = 0; i < str_vals.length; i++) {
+      str_vals[i] = TestUtil.randomSimpleString(random(), 10);
+    }
+    for (int i = 0; i < numDocs; i++) {
+      int number = TestUtil.nextInt(random(), 0, str_vals.length - 1);
+      assertU(
+          adoc(
+              "id",
+              String.valueOf(i),
+              "intdv",
+              String.valueOf(number),
+              "stringdv",
+              str_vals[number],
+              "longdv",
+              String.valueOf(random().nextLong())));
+      if (i % 100 == 99) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    // a small queue size forces many batches per segment
+    for (String sort : new String[] {"intdv asc", "stringdv desc,longdv asc", "longdv desc"}) {
+      String[] params = {"q", "*:*", "qt", "/export", "fl", "id,intdv", "sort", sort};
+      String expected = h.query(req(params, "queueSize", "60"));
+      String actual = h.query(req(params, "queueSize", "60", ExportWriter.THREADS_PARAM, "4"));
+      assertEquals(sort, expected, actual);
+      assertTrue(actual, actual.contains("\"numFound\":" + numDocs));
+    }
+  }
+
+  @Test
+  public void testArrowExport() throws Exception {
+    assertU(delQ("*:*"));
+    assertU(commit());
+    int numDocs = 25;
+    for (int i = 0; i < numDocs; i++) {
+      List<String> fields = new ArrayList<>();
+      fields.addAll(
+          List.of(
+              "id", String.valueOf(i),
+              "intdv", String.valueOf(i),
+              "longdv", String.valueOf(i * 10000000000L),
+              "doubledv", String.valueOf(i + 0.5d),
+              "datedv", "2024-01-01T00:00:" + String.format(Locale.ROOT, "%02d", i) + "Z",
+              "booleandv", String.valueOf(i % 2 == 0),
+              "intdv_m", String.valueOf(i),
+              "intdv_m", String.valueOf(i + 1)));
+      if (i % 3 != 0) {
+        fields.addAll(List.of("stringdv", "str" + i, "floatdv", String.valueOf(i + 0.25f)));
+      }
+      assertU(adoc(fields.toArray(new String[0])));
+      if (i % 10 == 9) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    ArrowStreamReader reader =
+        exportArrow(
+            "q", "*:*",
+            "fl", "id,intdv,longdv,floatdv,doubledv,datedv,stringdv,booleandv,intdv_m",
+            "sort", "intdv asc");
+    assertEquals(String.valueOf(numDocs), reader.getMetadata().get("numFound"));
+    Map<String, Integer> columns = new HashMap<>();
+    for (int c = 0; c < reader.getColumnCount(); c++) {
+      columns.put(reader.getColumnName(c), c);
+    }
+    // the columns are declared from the schema, even those with nulls in the first batch
+    assertEquals(ArrowStreamWriter.Type.INT, reader.getColumnType(columns.get("intdv")));
+    assertEquals(ArrowStreamWriter.Type.LONG, reader.getColumnType(columns.get("longdv")));
+    assertEquals(ArrowStreamWriter.Type.FLOAT, reader.getColumnType(columns.get("floatdv")));
+    assertEquals(ArrowStreamWriter.Type.DOUBLE, reader.getColumnType(columns.get("doubledv")));
+    assertEquals(ArrowStreamWriter.Type.TIMESTAMP, reader.getColumnType(columns.get("datedv")));
+    assertEquals(ArrowStreamWriter.Type.UTF8, reader.getColumnType(columns.get("stringdv")));
+    assertEquals(ArrowStreamWriter.Type.BOOLEAN, reader.getColumnType(columns.get("booleandv")));
+    assertEquals(ArrowStreamWriter.Type.INT, reader.getColumnType(columns.get("intdv_m")));
+    assertTrue(reader.isMultiValued(columns.get("intdv_m")));
+
+    int i = 0;
+    while (reader.nextBatch()) {
+      for (int row = 0; row < reader.getRowCount(); row++, i++) {
+        assertEquals(String.valueOf(i), reader.getValue(columns.get("id"), row));
+        assertEquals(i, reader.getLong(columns.get("intdv"), row));
+        assertEquals(i * 10000000000L, reader.getLong(columns.get("longdv"), row));
+        assertEquals(i + 0.5d, reader.getDouble(columns.get("doubledv"), row), 0d);
+        assertEquals(
+            Instant.parse("2024-01-01T00:00:00Z").plusSeconds(i).toEpochMilli(),
+            reader.getLong(columns.get("datedv"), row));
+        assertEquals(i % 2 == 0, reader.getValue(columns.get("booleandv"), row));
+        assertEquals(List.of(i, i + 1), reader.getValue(columns.get("intdv_m"), row));
+        if (i % 3 == 0) {
+          assertTrue(reader.isNull(columns.get("stringdv"), row));
+          assertTrue(reader.isNull(columns.get("floatdv"), row));
+        } else {
+          assertEquals("str" + i, reader.getValue(columns.get("stringdv"), row));
+          assertEquals(i + 0.25f, reader.getValue(columns.get("floatdv"), row));
+        }
+      }
+    }
+    assertEquals(numDocs, i);
+    assertNull(reader.getError());
+
+    reader = exportArrow("q", "*:*", "sort", "intdv asc");
+    assertFalse(reader.nextBatch());
+    assertTrue(
+        reader.getError(), reader.getError().contains("export field list (fl) must be specified"));
+  }
+
+  private ArrowStreamReader exportArrow(String... params) throws Exception {
+    SolrQueryRequest req = req(params);
+    ModifiableSolrParams exportParams = new ModifiableSolrParams(req.getParams());
+    exportParams.set(CommonParams.WT, CommonParams.ARROW);
+    req.setParams(exportParams);
+    SolrQueryResponse rsp = new SolrQueryResponse();
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try {
+      h.getCore().execute(h.getCore().getRequestHandler("/export"), req, rsp);
+      req.getResponseWriter().write(bos, req, rsp);
+    } finally {
+      req.close();
+      SolrRequestInfo.clearRequestInfo();
+    }
+    return new ArrowStreamReader(new ByteArrayInputStream(bos.toByteArray()));
+  }
+
   private void createLargeIndex() throws Exception {
     int BATCH_SIZE = 5000;
     int NUM_BATCHES = 20;
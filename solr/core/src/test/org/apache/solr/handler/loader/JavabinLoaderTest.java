@@ -24,12 +24,14 @@ import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
 import org.apache.solr.client.solrj.request.JavaBinUpdateRequestCodec;
 import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.util.ContentStreamBase;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.update.AddUpdateCommand;
 import org.apache.solr.update.processor.BufferingRequestProcessor;
+import org.apache.solr.update.processor.IgnoreLargeDocumentProcessorFactory.ObjectSizeEstimator;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -95,6 +97,113 @@ public class JavabinLoaderTest extends SolrTestCaseJ4 {
     assertTrue(mockUpdateProcessor.addCommands.get(batch.size() - 1).isLastDocInBatch);
   }
 
+  /** Verifies that buffered batches are passed on as soon as they reach the byte cap. */
+  @Test
+  public void testBatchesFlushedAtByteCap() throws Exception {
+    int numDocs = 10;
+    UpdateRequest updateRequest = new UpdateRequest();
+    for (int d = 0; d < numDocs; d++) {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.setField("id", String.valueOf(d));
+      doc.setField("text", "x".repeat(10000));
+      updateRequest.add(doc);
+    }
+    long docBytes = ObjectSizeEstimator.estimate(updateRequest.getDocuments().get(0));
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new JavaBinUpdateRequestCodec().marshal(updateRequest, os);
+
+    List<Integer> batchSizes = new ArrayList<>();
+    BufferingRequestProcessor mockUpdateProcessor =
+        new BufferingRequestProcessor(null) {
+          @Override
+          public boolean acceptsAddBatches() {
+            return true;
+          }
+
+          @Override
+          public void processAddBatch(List<AddUpdateCommand> cmds) {
+            batchSizes.add(cmds.size());
+            for (AddUpdateCommand cmd : cmds) {
+              addCommands.add((AddUpdateCommand) cmd.clone());
+            }
+          }
+        };
+
+    // the third document of a batch reaches the cap
+    SolrQueryRequest req = req();
+    new JavabinLoader(docBytes * 5 / 2)
+        .load(
+            req,
+            new SolrQueryResponse(),
+            new ContentStreamBase.ByteArrayStream(os.toByteArray(), "test"),
+            mockUpdateProcessor);
+    req.close();
+
+    assertEquals(List.of(3, 3, 3, 1), batchSizes);
+    assertEquals(numDocs, mockUpdateProcessor.addCommands.size());
+    for (int d = 0; d < numDocs; d++) {
+      assertEquals(
+          String.valueOf(d), mockUpdateProcessor.addCommands.get(d).solrDoc.getFieldValue("id"));
+    }
+  }
+
+  /**
+   * Verifies that the documents buffered stay under maxDocBytes, and that a larger document fails
+   * the request.
+   */
+  @Test
+  public void testMaxDocBytes() throws Exception {
+    UpdateRequest updateRequest = new UpdateRequest();
+    for (int d = 0; d < 7; d++) {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.setField("id", String.valueOf(d));
+      doc.setField("text", "x".repeat(d < 6 ? 10000 : 30000));
+      updateRequest.add(doc);
+    }
+    long docBytes = ObjectSizeEstimator.estimate(updateRequest.getDocuments().get(0));
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new JavaBinUpdateRequestCodec().marshal(updateRequest, os);
+
+    List<Integer> batchSizes = new ArrayList<>();
+    BufferingRequestProcessor mockUpdateProcessor =
+        new BufferingRequestProcessor(null) {
+          @Override
+          public boolean acceptsAddBatches() {
+            return true;
+          }
+
+          @Override
+          public void processAddBatch(List<AddUpdateCommand> cmds) {
+            batchSizes.add(cmds.size());
+            for (AddUpdateCommand cmd : cmds) {
+              addCommands.add((AddUpdateCommand) cmd.clone());
+            }
+          }
+        };
+
+    // a third document would take the buffer over the limit
+    ContentStreamLoader loader =
+        new JavabinLoader(Long.MAX_VALUE)
+            .init(params(ContentStreamLoader.MAX_DOC_BYTES, String.valueOf(docBytes * 5 / 2)));
+    SolrQueryRequest req = req();
+    SolrException e =
+        expectThrows(
+            SolrException.class,
+            () ->
+                loader.load(
+                    req,
+                    new SolrQueryResponse(),
+                    new ContentStreamBase.ByteArrayStream(os.toByteArray(), "test"),
+                    mockUpdateProcessor));
+    req.close();
+
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    assertTrue(e.getMessage(), e.getMessage().startsWith("Document 6 takes about "));
+    // the documents before the large one are still processed
+    assertEquals(List.of(2, 2, 2), batchSizes);
+    assertEquals(6, mockUpdateProcessor.addCommands.size());
+  }
+
   @Test
   public void javabinLoader_denseVector_shouldIndexCorrectly() throws Exception {
     SolrInputDocument doc1 = new SolrInputDocument();
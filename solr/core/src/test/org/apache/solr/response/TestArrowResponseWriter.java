@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.response;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.client.solrj.io.stream.ArrowTupleStreamParser;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.StreamParams;
+import org.apache.solr.common.util.ArrowStreamReader;
+import org.apache.solr.common.util.ArrowStreamWriter;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.Before;
+import org.junit.BeforeClass;
+
+public class TestArrowResponseWriter extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("enable.update.log", "false"); // schema12 doesn't support _version_
+    initCore("solrconfig.xml", "schema12.xml");
+  }
+
+  @Before
+  public void before() throws Exception {
+    clearIndex();
+    assertU(commit());
+  }
+
+  public void testDocuments() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      assertU(
+          adoc(
+              "id", String.valueOf(i),
+              "count_i", String.valueOf(i),
+              "weight", String.valueOf(i + 0.5f),
+              "bday", "2024-01-0" + (i + 1) + "T00:00:00Z",
+              "tags_ss", "a" + i,
+              "tags_ss", "b" + i));
+    }
+    assertU(commit());
+
+    byte[] bytes =
+        write(
+            req(
+                "q", "*:*",
+                "sort", "id asc",
+                "fl", "id,count_i,weight,bday,tags_ss",
+                ArrowResponseWriter.BATCH_SIZE_PARAM, "2"));
+
+    ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bytes));
+    assertEquals("5", reader.getMetadata().get(ArrowResponseWriter.NUM_FOUND_METADATA_KEY));
+    assertEquals("0", reader.getMetadata().get(ArrowResponseWriter.START_METADATA_KEY));
+    int batches = 0;
+    while (reader.nextBatch()) {
+      batches++;
+    }
+    assertEquals(3, batches);
+    assertNull(reader.getError());
+
+    List<Map<String, Object>> tuples = new ArrayList<>();
+    try (ArrowTupleStreamParser parser =
+        new ArrowTupleStreamParser(new ByteArrayInputStream(bytes))) {
+      Map<String, Object> tuple;
+      while ((tuple = parser.next()) != null) {
+        tuples.add(Map.copyOf(tuple));
+      }
+    }
+    assertEquals(5, tuples.size());
+    for (int i = 0; i < 5; i++) {
+      Map<String, Object> tuple = tuples.get(i);
+      assertEquals(String.valueOf(i), tuple.get("id"));
+      assertEquals((long) i, tuple.get("count_i"));
+      assertEquals(i + 0.5d, tuple.get("weight"));
+      assertEquals("2024-01-0" + (i + 1) + "T00:00:00Z", tuple.get("bday"));
+      assertEquals(List.of("a" + i, "b" + i), tuple.get("tags_ss"));
+    }
+  }
+
+  public void testFieldAfterFirstBatch() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      assertU(adoc("id", String.valueOf(i)));
+    }
+    // only in the last batch, and out of the range of an int
+    assertU(adoc("id", "5", "late_l", "5000000000"));
+    assertU(commit());
+
+    for (String fl : new String[] {"id,late_l", "id,late_*", "*"}) {
+      byte[] bytes =
+          write(
+              req(
+                  "q", "*:*",
+                  "sort", "id asc",
+                  "fl", fl,
+                  ArrowResponseWriter.BATCH_SIZE_PARAM, "2"));
+
+      ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bytes));
+      int column = -1;
+      for (int c = 0; c < reader.getColumnCount(); c++) {
+        if ("late_l".equals(reader.getColumnName(c))) {
+          column = c;
+        }
+      }
+      assertTrue(fl, column >= 0);
+      assertEquals(fl, ArrowStreamWriter.Type.LONG, reader.getColumnType(column));
+      int n = 0;
+      while (reader.nextBatch()) {
+        for (int row = 0; row < reader.getRowCount(); row++, n++) {
+          assertEquals(fl, n == 5 ? 5000000000L : null, reader.getValue(column, row));
+        }
+      }
+      assertEquals(fl, 6, n);
+      assertNull(fl, reader.getError());
+    }
+  }
+
+  public void testUnsupportedResponse() throws Exception {
+    SolrQueryRequest req = req(CommonParams.WT, CommonParams.ARROW);
+    SolrQueryResponse rsp = new SolrQueryResponse();
+    rsp.add("status", "OK");
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    h.getCore().getQueryResponseWriter(CommonParams.ARROW).write(bos, req, rsp);
+    req.close();
+
+    try (ArrowTupleStreamParser parser =
+        new ArrowTupleStreamParser(new ByteArrayInputStream(bos.toByteArray()))) {
+      Map<String, Object> tuple = parser.next();
+      assertTrue(
+          tuple.toString(),
+          tuple.get(StreamParams.EXCEPTION).toString().contains("only supports responses"));
+      assertNull(parser.next());
+    }
+  }
+
+  private byte[] write(SolrQueryRequest req) throws Exception {
+    SolrQueryResponse rsp = h.queryAndResponse(null, req);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    h.getCore().getQueryResponseWriter(CommonParams.ARROW).write(bos, req, rsp);
+    req.close();
+    return bos.toByteArray();
+  }
+}
@@ -18,6 +18,7 @@ package org.apache.solr.response;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
@@ -107,6 +108,48 @@ public class TestJavaBinResponseWriter extends SolrTestCaseJ4 {
     req.close();
   }
 
+  public void testDirectWrite() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      assertU(
+          adoc(
+              "id", String.valueOf(i),
+              "count_i", String.valueOf(i),
+              "weight", String.valueOf(i + 0.5f),
+              "bday", "2024-01-0" + (i % 9 + 1) + "T00:00:00Z",
+              "flag_b", String.valueOf(i % 2 == 0),
+              "tags_s", "a" + i,
+              "tags_s", "b" + i,
+              "code_sdv", "c" + i,
+              "flag_bdv", String.valueOf(i % 3 == 0),
+              "n_ii", String.valueOf(-i)));
+    }
+    // not supported by the direct path, so written from its SolrDocument
+    assertU(adoc("id", "10", "uuid", UUID.randomUUID().toString(), "code_sdv", "c10"));
+    assertU(commit());
+
+    String[] fls = {"*", "id,tags_s,code_sdv,flag_bdv,n_ii", "id,score", "*,[docid]"};
+    for (String fl : fls) {
+      byte[] direct = writeJavabin(fl, true);
+      byte[] fromSolrDocuments = writeJavabin(fl, false);
+      assertTrue(fl, Arrays.equals(fromSolrDocuments, direct));
+    }
+  }
+
+  private byte[] writeJavabin(String fl, boolean directWrite) throws Exception {
+    // the header is left out since it has the QTime
+    SolrQueryRequest req =
+        req("q", "*:*", "sort", "id asc", "rows", "20", "fl", fl, "omitHeader", "true");
+    SolrQueryResponse rsp = h.queryAndResponse(null, req);
+    JavaBinResponseWriter writer = new JavaBinResponseWriter();
+    writer.init(
+        new NamedList<>(
+            Map.of(JavaBinResponseWriter.DIRECT_WRITE, String.valueOf(directWrite))));
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    writer.write(baos, req, rsp);
+    req.close();
+    return baos.toByteArray();
+  }
+
   public void testResolverSolrDocumentPartialFields() throws Exception {
     LocalSolrQueryRequest req =
         lrf.makeRequest(
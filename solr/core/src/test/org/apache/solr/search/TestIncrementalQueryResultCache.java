@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Map;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.index.NoMergePolicyFactory;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Test for {@link IncrementalQueryResultCache}. */
+public class TestIncrementalQueryResultCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.queryResultCache.class", "solr.IncrementalQueryResultCache");
+    // the segments of the first commit must survive the later ones
+    systemSetPropertySolrTestsMergePolicyFactory(NoMergePolicyFactory.class.getName());
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.queryResultCache.class");
+    systemClearPropertySolrTestsMergePolicyFactory();
+  }
+
+  @Before
+  public void clearIndex() throws Exception {
+    assertU(delQ("*:*"));
+    assertU(commit());
+    // start from empty caches, rather than ones warmed from the previous tests
+    h.reload();
+  }
+
+  private static Map<String, Object> stats() {
+    MetricsMap metrics =
+        (MetricsMap)
+            ((SolrMetricManager.GaugeWrapper<?>)
+                    h.getCore()
+                        .getCoreMetricManager()
+                        .getRegistry()
+                        .getMetrics()
+                        .get("CACHE.searcher.queryResultCache"))
+                .getGauge();
+    return metrics.getValue();
+  }
+
+  @Test
+  public void testRevalidateSortedByField() {
+    // 15 even docs, more than the queryResultWindowSize of 10
+    for (int i = 0; i < 30; i++) {
+      assertU(
+          adoc("id", Integer.toString(i), "ts_l_dv", Integer.toString(i), "val_s", parity(i)));
+    }
+    assertU(commit());
+    assertQ(
+        req("q", "*:*", "fq", "val_s:even", "sort", "ts_l_dv desc", "rows", "3", "fl", "id"),
+        "//*[@numFound='15']",
+        "//result/doc[1]/str[@name='id'][.='28']");
+
+    // new docs in a new segment are merged with the cached ones
+    assertU(adoc("id", "100", "ts_l_dv", "100", "val_s", "even"));
+    assertU(adoc("id", "101", "ts_l_dv", "101", "val_s", "odd"));
+    assertU(adoc("id", "102", "ts_l_dv", "3", "val_s", "even"));
+    assertU(commit());
+    Map<String, Object> stats = stats();
+    assertEquals(1L, stats.get(IncrementalQueryResultCache.INCREMENTAL_MERGES_PARAM));
+    assertEquals(0L, stats.get(IncrementalQueryResultCache.INCREMENTAL_MISSES_PARAM));
+
+    assertQ(
+        req("q", "*:*", "fq", "val_s:even", "sort", "ts_l_dv desc", "rows", "3", "fl", "id"),
+        "//*[@numFound='17']",
+        "//result/doc[1]/str[@name='id'][.='100']",
+        "//result/doc[2]/str[@name='id'][.='28']",
+        "//result/doc[3]/str[@name='id'][.='26']");
+    assertEquals(1L, stats().get("hits"));
+
+    // deleting a cached doc and an uncached one only requires counting the deleted matches
+    assertU(delI("28"));
+    assertU(delI("2"));
+    assertU(commit());
+    stats = stats();
+    assertEquals(1L, stats.get(IncrementalQueryResultCache.INCREMENTAL_HITS_PARAM));
+    assertEquals(0L, stats.get(IncrementalQueryResultCache.INCREMENTAL_MISSES_PARAM));
+
+    assertQ(
+        req("q", "*:*", "fq", "val_s:even", "sort", "ts_l_dv desc", "rows", "3", "fl", "id"),
+        "//*[@numFound='15']",
+        "//result/doc[1]/str[@name='id'][.='100']",
+        "//result/doc[2]/str[@name='id'][.='26']",
+        "//result/doc[3]/str[@name='id'][.='24']");
+    assertEquals(1L, stats().get("hits"));
+  }
+
+  @Test
+  public void testShorterEntryServesNoStaleDocs() {
+    for (int i = 0; i < 30; i++) {
+      assertU(
+          adoc("id", Integer.toString(i), "ts_l_dv", Integer.toString(i), "val_s", parity(i)));
+    }
+    assertU(commit());
+    // caches the top 10 even docs, the queryResultWindowSize
+    assertQ(
+        req("q", "*:*", "fq", "val_s:even", "sort", "ts_l_dv desc", "rows", "3", "fl", "id"),
+        "//*[@numFound='15']");
+
+    // the entry only keeps the 9 surviving docs
+    assertU(delI("28"));
+    assertU(commit());
+    assertEquals(1L, stats().get(IncrementalQueryResultCache.INCREMENTAL_HITS_PARAM));
+
+    // more rows than the surviving docs must not be served from the entry
+    assertQ(
+        req("q", "*:*", "fq", "val_s:even", "sort", "ts_l_dv desc", "rows", "10", "fl", "id"),
+        "//*[@numFound='14']",
+        "count(//result/doc)=10",
+        "//result/doc[1]/str[@name='id'][.='26']",
+        "//result/doc[9]/str[@name='id'][.='10']",
+        "//result/doc[10]/str[@name='id'][.='8']");
+  }
+
+  @Test
+  public void testScoresAreRegenerated() {
+    for (int i = 0; i < 10; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_s", parity(i)));
+    }
+    assertU(commit());
+    assertQ(req("q", "val_s:even", "rows", "3"), "//*[@numFound='5']");
+
+    assertU(adoc("id", "10", "val_s", "even"));
+    assertU(commit());
+    Map<String, Object> stats = stats();
+    assertEquals(1L, stats.get(IncrementalQueryResultCache.INCREMENTAL_MISSES_PARAM));
+    assertEquals(0L, stats.get(IncrementalQueryResultCache.INCREMENTAL_MERGES_PARAM));
+    assertQ(req("q", "val_s:even", "rows", "3"), "//*[@numFound='6']");
+  }
+
+  private static String parity(int i) {
+    return i % 2 == 0 ? "even" : "odd";
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.tests.util.TestUtil;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricsContext;
+import org.junit.Test;
+
+/** Test for {@link OffHeapFilterCache} and {@link CompressedDocSet}. */
+public class TestOffHeapFilterCache extends SolrTestCase {
+
+  SolrMetricManager metricManager = new SolrMetricManager();
+  String registry = TestUtil.randomSimpleString(random(), 2, 10);
+  String scope = TestUtil.randomSimpleString(random(), 2, 10);
+
+  private static FixedBitSet randomBits(int maxDoc, double density) {
+    FixedBitSet bits = new FixedBitSet(maxDoc);
+    for (int i = 0; i < maxDoc; i++) {
+      if (random().nextDouble() < density) {
+        bits.set(i);
+      }
+    }
+    return bits;
+  }
+
+  private static void assertSameDocs(FixedBitSet expected, DocSet actual) {
+    assertEquals(expected.cardinality(), actual.size());
+    for (DocIterator it = actual.iterator(); it.hasNext(); ) {
+      assertTrue(expected.get(it.nextDoc()));
+    }
+  }
+
+  @Test
+  public void testEncodeDecode() {
+    OffHeapPagePool pool = new OffHeapPagePool();
+    for (int iter = 0; iter < 20; iter++) {
+      int maxDoc = TestUtil.nextInt(random(), 1, 300000);
+      double density = random().nextBoolean() ? random().nextDouble() : 0.001;
+      FixedBitSet bits = randomBits(maxDoc, density);
+      if (random().nextBoolean()) {
+        // a full block
+        bits.set(0, Math.min(maxDoc, CompressedDocSet.BLOCK_SIZE));
+      }
+
+      BitDocSet bitDocSet = new BitDocSet(bits);
+      DocSet decoded = CompressedDocSet.encode(bitDocSet, pool).decode();
+      if (bitDocSet.size() < DocSetUtil.smallSetSize(maxDoc)) {
+        // no need for a bitset of maxDoc bits
+        assertTrue(decoded instanceof SortedIntDocSet);
+        assertSameDocs(bits, decoded);
+      } else {
+        assertTrue(decoded instanceof BitDocSet);
+        assertEquals(bits, ((BitDocSet) decoded).getBits());
+      }
+      assertEquals(bitDocSet.size(), decoded.size());
+
+      int[] docs = new int[bitDocSet.size()];
+      int i = 0;
+      for (DocIterator it = bitDocSet.iterator(); it.hasNext(); ) {
+        docs[i++] = it.nextDoc();
+      }
+      SortedIntDocSet sortedIntDocSet = new SortedIntDocSet(docs);
+      CompressedDocSet compressed = CompressedDocSet.encode(sortedIntDocSet, pool);
+      assertEquals(docs.length, compressed.size());
+      decoded = compressed.decode();
+      assertTrue(decoded instanceof SortedIntDocSet);
+      assertArrayEquals(docs, ((SortedIntDocSet) decoded).getDocs());
+    }
+  }
+
+  @Test
+  public void testCompression() {
+    int maxDoc = 1 << 20;
+    FixedBitSet bits = new FixedBitSet(maxDoc);
+    for (int i = 0; i < maxDoc; i += 1000) {
+      bits.set(i);
+    }
+    // sparse sets use 2 bytes per doc, plus container headers
+    OffHeapPagePool pool = new OffHeapPagePool();
+    assertTrue(
+        CompressedDocSet.encode(new BitDocSet(bits), pool).offHeapBytesUsed() < maxDoc / 8 / 10);
+
+    bits.set(0, maxDoc);
+    // full blocks need no payload at all
+    assertTrue(CompressedDocSet.encode(new BitDocSet(bits), pool).offHeapBytesUsed() < 1024);
+  }
+
+  @Test
+  public void testPagesAreReleasedByLastReader() {
+    OffHeapPagePool pool = new OffHeapPagePool();
+    // dense sets of half a slab each
+    int maxDoc = 1 << 22;
+    FixedBitSet bits = randomBits(maxDoc, 0.3);
+    CompressedDocSet compressed = CompressedDocSet.encode(new BitDocSet(bits), pool);
+    long used = compressed.offHeapBytesUsed();
+    assertEquals(used, pool.bytesInUse());
+
+    // a reader takes a reference, then the cache evicts the entry and gives back its own
+    assertTrue(compressed.tryAcquire());
+    compressed.release();
+
+    // the pages are still held by the reader, so a new set can't reuse them
+    assertEquals(used, pool.bytesInUse());
+    CompressedDocSet other = CompressedDocSet.encode(new BitDocSet(randomBits(maxDoc, 0.3)), pool);
+    assertEquals(used + other.offHeapBytesUsed(), pool.bytesInUse());
+    assertTrue(pool.bytesAllocated() > OffHeapPagePool.SLAB_SIZE);
+    assertSameDocs(bits, compressed.decode());
+
+    // the last reader gives the pages back to the pool
+    compressed.release();
+    assertEquals(other.offHeapBytesUsed(), pool.bytesInUse());
+    assertFalse(compressed.tryAcquire());
+
+    // the freed pages are reused
+    long allocated = pool.bytesAllocated();
+    other.release();
+    assertEquals(0, pool.bytesInUse());
+    for (int i = 0; i < 10; i++) {
+      CompressedDocSet.encode(new BitDocSet(bits), pool).release();
+    }
+    assertEquals(allocated, pool.bytesAllocated());
+    assertEquals(0, pool.bytesInUse());
+  }
+
+  @Test
+  public void testSimple() throws Exception {
+    OffHeapFilterCache cache = new OffHeapFilterCache();
+    SolrMetricsContext solrMetricsContext = new SolrMetricsContext(metricManager, registry, "foo");
+    cache.initializeMetrics(solrMetricsContext, scope + "-1");
+
+    Map<String, String> params = new HashMap<>();
+    params.put("maxRamMB", "8");
+    params.put("autowarmCount", "100%");
+    Object initObj = cache.init(params, null, new NoOpRegenerator());
+    cache.setState(SolrCache.State.LIVE);
+
+    int maxDoc = 100000;
+    Map<Query, FixedBitSet> expected = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      Query q = new TermQuery(new Term("f", Integer.toString(i)));
+      FixedBitSet bits = randomBits(maxDoc, 0.05 * i);
+      expected.put(q, bits);
+      cache.put(q, new BitDocSet(bits));
+    }
+    for (Map.Entry<Query, FixedBitSet> entry : expected.entrySet()) {
+      assertSameDocs(entry.getValue(), cache.get(entry.getKey()));
+    }
+    assertNull(cache.get(new TermQuery(new Term("f", "missing"))));
+
+    Query computed = new TermQuery(new Term("f", "computed"));
+    DocSet computedSet =
+        cache.computeIfAbsent(computed, q -> new SortedIntDocSet(new int[] {3, 5}));
+    assertEquals(2, computedSet.size());
+    assertEquals(2, cache.computeIfAbsent(computed, q -> null).size());
+
+    Map<String, Object> nl = cache.getMetricsMap().getValue();
+    assertEquals(13L, nl.get("lookups"));
+    assertEquals(11L, nl.get("hits"));
+    assertEquals(11L, nl.get("inserts"));
+    assertEquals(11, nl.get("size"));
+    assertTrue((Long) nl.get(OffHeapFilterCache.OFF_HEAP_BYTES_USED_PARAM) > 0);
+
+    // autowarming into a new cache
+    OffHeapFilterCache newCache = new OffHeapFilterCache();
+    newCache.initializeMetrics(solrMetricsContext, scope + "-2");
+    newCache.init(params, initObj, new NoOpRegenerator());
+    newCache.warm(null, cache);
+    newCache.setState(SolrCache.State.LIVE);
+    assertEquals(11, newCache.size());
+    for (Map.Entry<Query, FixedBitSet> entry : expected.entrySet()) {
+      assertSameDocs(entry.getValue(), newCache.get(entry.getKey()));
+    }
+    nl = newCache.getMetricsMap().getValue();
+    assertEquals(10L, nl.get("lookups"));
+    assertEquals(23L, nl.get("cumulative_lookups"));
+
+    cache.clear();
+    assertEquals(0L, cache.offHeapBytesUsed());
+    newCache.close();
+    assertEquals(0L, newCache.offHeapBytesUsed());
+  }
+
+  @Test
+  public void testMaxRamEviction() {
+    OffHeapFilterCache cache = new OffHeapFilterCache();
+    Map<String, String> params = new HashMap<>();
+    params.put("maxRamMB", "1");
+    cache.init(params, null, new NoOpRegenerator());
+    cache.initializeMetrics(new SolrMetricsContext(metricManager, registry, "foo"), scope + "-e");
+
+    // each dense set needs 8KB per 65536 docs block
+    int maxDoc = 1 << 20;
+    for (int i = 0; i < 50; i++) {
+      cache.put(
+          new TermQuery(new Term("f", Integer.toString(i))),
+          new BitDocSet(randomBits(maxDoc, 0.5)));
+    }
+    assertTrue(cache.offHeapBytesUsed() <= 1024 * 1024);
+    assertTrue(cache.size() < 50);
+    assertTrue((Long) cache.getMetricsMap().getValue().get("evictions") > 0);
+  }
+
+  @Test
+  public void testOffHeapMemoryIsReused() throws Exception {
+    OffHeapFilterCache cache = new OffHeapFilterCache();
+    Map<String, String> params = new HashMap<>();
+    params.put("maxRamMB", "1");
+    Object initObj = cache.init(params, null, new NoOpRegenerator());
+
+    int maxDoc = 1 << 20;
+    FixedBitSet[] sets = new FixedBitSet[20];
+    for (int i = 0; i < sets.length; i++) {
+      sets[i] = randomBits(maxDoc, 0.5);
+    }
+    long allocated = -1;
+    for (int round = 0; round < 5; round++) {
+      // a new generation of the cache, sharing the pages of the previous ones
+      OffHeapFilterCache newCache = new OffHeapFilterCache();
+      newCache.init(params, initObj, new NoOpRegenerator());
+      for (int i = 0; i < sets.length; i++) {
+        newCache.put(new TermQuery(new Term("f", Integer.toString(i))), new BitDocSet(sets[i]));
+      }
+      cache.close();
+      cache = newCache;
+      // two full generations live at once from the second round on
+      if (round == 1) {
+        allocated = cache.offHeapBytesAllocated();
+      } else if (round > 1) {
+        // evictions and closed generations give their pages back for reuse
+        assertEquals(allocated, cache.offHeapBytesAllocated());
+      }
+      assertTrue(cache.offHeapBytesAllocated() <= 2 * (1024 * 1024 + OffHeapPagePool.SLAB_SIZE));
+    }
+    cache.close();
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Map;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.index.NoMergePolicyFactory;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Test for {@link SegmentFilterCache}. */
+public class TestSegmentFilterCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.filterCache.perSegment", "true");
+    // the segments of the first commit must survive the later ones
+    systemSetPropertySolrTestsMergePolicyFactory(NoMergePolicyFactory.class.getName());
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.filterCache.perSegment");
+    systemClearPropertySolrTestsMergePolicyFactory();
+  }
+
+  @Before
+  public void clearIndex() {
+    assertU(delQ("*:*"));
+    assertU(commit());
+    h.getCore().getSegmentFilterCache().clear();
+  }
+
+  private static Map<String, Object> stats() {
+    return h.getCore().getSegmentFilterCache().getMetricsMap().getValue();
+  }
+
+  @Test
+  public void testReuseAcrossCommits() {
+    for (int i = 0; i < 10; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_s", i % 2 == 0 ? "even" : "odd"));
+    }
+    assertU(commit());
+
+    long hits = (Long) stats().get("hits");
+    assertQ(req("q", "*:*", "fq", "val_s:even"), "//*[@numFound='5']");
+    assertEquals(1L, stats().get("size"));
+    assertEquals(hits, stats().get("hits"));
+
+    // a new segment plus a delete in the old one; autowarming the filterCache reuses the old
+    // segment's entry and only executes the filter against the new segment
+    assertU(adoc("id", "10", "val_s", "even"));
+    assertU(delI("0"));
+    assertU(commit());
+
+    assertEquals(hits + 1, stats().get("hits"));
+    assertEquals(2L, stats().get("size"));
+    assertQ(
+        req("q", "*:*", "fq", "val_s:even", "sort", "id asc", "fl", "id"),
+        "//*[@numFound='5']",
+        "//result/doc[1]/str[@name='id'][.='10']",
+        "//result/doc[2]/str[@name='id'][.='2']");
+  }
+
+  @Test
+  public void testTopLevelQueriesBypassSegmentCache() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_s", i % 2 == 0 ? "even" : "odd"));
+    }
+    assertU(commit());
+
+    try (SolrQueryRequest req = req()) {
+      // join queries depend on the whole index, so they are never cached per segment
+      assertFalse(
+          SegmentFilterCache.isPerSegmentQuery(
+              QParser.getParser("{!join from=id to=id}val_s:odd", req).getQuery()));
+      assertTrue(
+          SegmentFilterCache.isPerSegmentQuery(QParser.getParser("val_s:odd", req).getQuery()));
+    }
+    assertQ(req("q", "*:*", "fq", "{!join from=id to=id}val_s:odd"), "//*[@numFound='5']");
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.Utils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestFacetRollups extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-facet-rollups.xml", "schema_latest.xml");
+  }
+
+  private static void indexDocs(int numDocs) {
+    for (int i = 0; i < numDocs; i++) {
+      SolrInputDocument doc =
+          sdoc("id", i, "price_dd", random().nextInt(1000), "qty_id", random().nextInt(10));
+      if (random().nextInt(10) != 0) {
+        doc.setField("cat_sd", "cat" + random().nextInt(8));
+      }
+      for (int t = random().nextInt(4); t > 0; t--) {
+        doc.addField("tags_sds", "tag" + random().nextInt(6));
+      }
+      assertU(adoc(doc));
+      if (random().nextInt(20) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> facets(String jsonFacet) throws Exception {
+    String response =
+        h.query(
+            req("q", "*:*", "rows", "0", "wt", "json", "debug", "true", "json.facet", jsonFacet));
+    return (Map<String, Object>) Utils.fromJSONString(response);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object path(Map<String, Object> map, String... keys) {
+    Object value = map;
+    for (String key : keys) {
+      value =
+          value instanceof List
+              ? ((List<Object>) value).get(Integer.parseInt(key))
+              : ((Map<String, Object>) value).get(key);
+    }
+    return value;
+  }
+
+  /**
+   * Asserts that the facet answered from the rollups has the same buckets as the same facet with a
+   * domain filter matching all the documents, which is collected from the documents.
+   */
+  private static void assertRollupMatchesScan(String facet) throws Exception {
+    String scan = facet.substring(0, facet.length() - 1) + ", domain:{filter:'*:*'}}";
+    Map<String, Object> response = facets("{rollup:" + facet + ", scan:" + scan + "}");
+    assertEquals(
+        FacetFieldProcessorByRollup.class.getSimpleName(),
+        path(response, "debug", "facet-trace", "sub-facet", "0", "processor"));
+    assertEquals(
+        FacetFieldProcessorByArrayDV.class.getSimpleName(),
+        path(response, "debug", "facet-trace", "sub-facet", "1", "processor"));
+    assertEquals(path(response, "facets", "scan"), path(response, "facets", "rollup"));
+  }
+
+  @Test
+  public void testRollups() throws Exception {
+    clearIndex();
+    indexDocs(atLeast(200));
+    // deleted documents must not be rolled up
+    for (int i = 0; i < 20; i++) {
+      assertU(delI(Integer.toString(random().nextInt(200))));
+    }
+    assertU(commit());
+
+    assertRollupMatchesScan("{type:terms, field:cat_sd, limit:-1}");
+    assertRollupMatchesScan(
+        "{type:terms, field:cat_sd, limit:3, sort:'p desc',"
+            + " facet:{p:'sum(price_dd)', q:'sum(qty_id)'}}");
+    assertRollupMatchesScan(
+        "{type:terms, field:cat_sd, limit:5, offset:1, missing:true, numBuckets:true,"
+            + " facet:{q:'sum(qty_id)'}}");
+    assertRollupMatchesScan(
+        "{type:terms, field:tags_sds, limit:-1, mincount:0, facet:{p:'sum(price_dd)'}}");
+
+    // not answered from the rollups
+    Map<String, Object> response =
+        facets("{f:{type:terms, field:cat_sd, facet:{p:'avg(price_dd)'}}}");
+    assertEquals(
+        FacetFieldProcessorByArrayDV.class.getSimpleName(),
+        path(response, "debug", "facet-trace", "sub-facet", "0", "processor"));
+    response = facets("{f:{type:terms, field:tags_sds, facet:{q:'sum(qty_id)'}}}");
+    assertEquals(
+        FacetFieldProcessorByArrayDV.class.getSimpleName(),
+        path(response, "debug", "facet-trace", "sub-facet", "0", "processor"));
+  }
+
+  @Test
+  public void testNonIntegralSums() throws Exception {
+    clearIndex();
+    int numDocs = atLeast(200);
+    double[] sums = new double[3];
+    for (int i = 0; i < numDocs; i++) {
+      double price = random().nextDouble() * 100;
+      sums[i % 3] += price;
+      assertU(adoc(sdoc("id", i, "cat_sd", "cat" + (i % 3), "price_dd", price)));
+      if (random().nextInt(20) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    // the sums are added per segment, rather than document by document, so they may drift in the
+    // last bits from the sums collected from the documents
+    String facet =
+        "{type:terms, field:cat_sd, limit:-1, sort:'index asc', facet:{p:'sum(price_dd)'}}";
+    String scan = facet.substring(0, facet.length() - 1) + ", domain:{filter:'*:*'}}";
+    Map<String, Object> response = facets("{rollup:" + facet + ", scan:" + scan + "}");
+    assertEquals(
+        FacetFieldProcessorByRollup.class.getSimpleName(),
+        path(response, "debug", "facet-trace", "sub-facet", "0", "processor"));
+    for (int i = 0; i < 3; i++) {
+      String bucket = Integer.toString(i);
+      assertEquals("cat" + i, path(response, "facets", "rollup", "buckets", bucket, "val"));
+      assertEquals(
+          path(response, "facets", "scan", "buckets", bucket, "count"),
+          path(response, "facets", "rollup", "buckets", bucket, "count"));
+      double rollup = (Double) path(response, "facets", "rollup", "buckets", bucket, "p");
+      double scan = (Double) path(response, "facets", "scan", "buckets", bucket, "p");
+      assertEquals(sums[i], rollup, Math.ulp(sums[i]) * numDocs);
+      assertEquals(scan, rollup, Math.ulp(scan) * numDocs);
+    }
+  }
+
+  @Test
+  public void testMaxBytes() throws Exception {
+    clearIndex();
+    // 2 regions take up to 12 bytes * 2 regions * 20 segments, under the 1000 bytes of the rollup
+    for (int i = 0; i < 20; i++) {
+      assertU(adoc(sdoc("id", i, "region_sd", "region" + (i % 2), "price_dd", i)));
+    }
+    assertU(commit());
+    String facet = "{type:terms, field:region_sd, limit:-1, facet:{p:'sum(price_dd)'}}";
+    assertRollupMatchesScan(facet);
+
+    // 200 regions take at least 2400 bytes
+    for (int i = 0; i < 200; i++) {
+      assertU(adoc(sdoc("id", 20 + i, "region_sd", "region" + i, "price_dd", i)));
+    }
+    assertU(commit());
+    Map<String, Object> response = facets("{f:" + facet + "}");
+    assertEquals(
+        FacetFieldProcessorByArrayDV.class.getSimpleName(),
+        path(response, "debug", "facet-trace", "sub-facet", "0", "processor"));
+    assertEquals("region0", path(response, "facets", "f", "buckets", "0", "val"));
+    assertEquals(11L, path(response, "facets", "f", "buckets", "0", "count"));
+  }
+}
@@ -125,9 +125,19 @@ public class TestJsonFacetRefinement extends SolrTestCaseHS {
   }
 
   void doTestRefine(String facet, String... responsesAndTests) throws Exception {
+    int nShards = responsesAndTests.length / 2;
+    Object[] responses = new Object[nShards];
+    for (int i = 0; i < nShards; i++) {
+      responses[i] = fromJSON(responsesAndTests[i]);
+    }
+    doTestRefine(facet, responses, Arrays.copyOfRange(responsesAndTests, nShards, 2 * nShards));
+  }
+
+  /** Returns the merged result, without refinement. */
+  Object doTestRefine(String facet, Object[] responses, String... tests) throws Exception {
     SolrQueryRequest req = req();
     try {
-      int nShards = responsesAndTests.length / 2;
+      int nShards = responses.length;
       Object jsonFacet = Utils.fromJSONString(facet);
       FacetParser<FacetQuery> parser = new FacetParser.FacetTopParser(req);
       FacetRequest facetRequest = parser.parse(jsonFacet);
@@ -135,7 +145,7 @@ public class TestJsonFacetRefinement extends SolrTestCaseHS {
       FacetMerger merger = null;
       FacetMerger.Context ctx = new FacetMerger.Context(nShards);
       for (int i = 0; i < nShards; i++) {
-        Object response = fromJSON(responsesAndTests[i]);
+        Object response = responses[i];
         if (i == 0) {
           merger = facetRequest.createFacetMerger(response);
         }
@@ -146,15 +156,36 @@ public class TestJsonFacetRefinement extends SolrTestCaseHS {
       for (int i = 0; i < nShards; i++) {
         ctx.setShard("s" + i);
         Object refinement = merger.getRefinement(ctx);
-        String tests = responsesAndTests[nShards + i];
-        match(refinement, 1e-5, tests);
+        match(refinement, 1e-5, tests[i]);
       }
+      return merger.getMergedResult();
 
     } finally {
       req.close();
     }
   }
 
+  /**
+   * Parses the response of a shard, and adds the sketch of the counts of the buckets it didn't
+   * return to its facet "x".
+   */
+  @SuppressWarnings("unchecked")
+  static Object withSketch(String response, Object... valsAndCounts) throws IOException {
+    SimpleOrderedMap<Object> res = (SimpleOrderedMap<Object>) fromJSON(response);
+    CountMinSketch sketch = new CountMinSketch(CountMinSketch.MAX_WIDTH);
+    long bound = 0;
+    for (int i = 0; i < valsAndCounts.length; i += 2) {
+      long count = ((Number) valsAndCounts[i + 1]).longValue();
+      sketch.add(valsAndCounts[i], count);
+      bound = Math.max(bound, count);
+    }
+    SimpleOrderedMap<Object> sketchRes = new SimpleOrderedMap<>();
+    sketchRes.add("bound", bound);
+    sketchRes.add("counts", sketch.toBytes());
+    ((SimpleOrderedMap<Object>) res.get("x")).add("sketch", sketchRes);
+    return res;
+  }
+
   @Test
   public void testMerge() throws Exception {
 
@@ -459,6 +490,140 @@ public class TestJsonFacetRefinement extends SolrTestCaseHS {
             + "    } }");
   }
 
+  @Test
+  public void testCountMinSketch() throws Exception {
+    CountMinSketch sketch = CountMinSketch.forCardinality(100);
+    for (int i = 0; i < 100; i++) {
+      sketch.add("v" + i, i + 1);
+    }
+    sketch.add(7, 3);
+    sketch.add(2.5d, 4);
+    CountMinSketch read = CountMinSketch.fromBytes(sketch.toBytes());
+    for (int i = 0; i < 100; i++) {
+      assertTrue(sketch.estimate("v" + i) >= i + 1);
+      assertEquals(sketch.estimate("v" + i), read.estimate("v" + i));
+    }
+    // values are hashed the same whatever numeric type they are read back as
+    assertTrue(read.estimate(7L) >= 3);
+    assertTrue(read.estimate(2.5f) >= 4);
+  }
+
+  @Test
+  public void testMergeWithSketches() throws Exception {
+    String facet = "{x : {type:terms, field:X, limit:2, refine:sketch} }";
+    String shard0 = "{x: {buckets:[{val:A, count:6}, {val:B, count:5}], more:true } }";
+    String shard1 = "{x: {buckets:[{val:A, count:6}, {val:D, count:1}], more:true } }";
+    String shard2 = "{x: {buckets:[{val:A, count:6}, {val:F, count:1}], more:true } }";
+
+    // every shard returned A, B has a count of 0 on the shards that didn't return it, and the
+    // buckets no shard returned can't have a count above 3, so no refinement is needed
+    Object merged =
+        doTestRefine(
+            facet,
+            new Object[] {
+              withSketch(shard0, "C", 1), withSketch(shard1, "E", 1), withSketch(shard2, "G", 1)
+            },
+            null,
+            null,
+            null);
+    match(merged, 1e-5, "x=={buckets:[{val:A, count:18}, {val:B, count:5}]}");
+
+    // the same with the "simple" refinement method
+    doTestRefine(
+        "{x : {type:terms, field:X, limit:2, refine:simple} }",
+        new Object[] {fromJSON(shard0), fromJSON(shard1), fromJSON(shard2)},
+        null,
+        "=={x:{_l:[B]}}",
+        "=={x:{_l:[B]}}");
+
+    // B may have a count on shard1
+    doTestRefine(
+        facet,
+        new Object[] {
+          withSketch(shard0, "C", 1), withSketch(shard1, "B", 1), withSketch(shard2, "G", 1)
+        },
+        null,
+        "=={x:{_l:[B]}}",
+        "=={x:{_l:[B]}}");
+
+    // C, returned by no shard, may have a count of 4 + 1 + 1, above the count of B
+    doTestRefine(
+        facet,
+        new Object[] {
+          withSketch(shard0, "C", 4), withSketch(shard1, "E", 1), withSketch(shard2, "G", 1)
+        },
+        null,
+        "=={x:{_l:[B]}}",
+        "=={x:{_l:[B]}}");
+
+    // a shard that didn't send a sketch
+    doTestRefine(
+        facet,
+        new Object[] {withSketch(shard0, "C", 1), fromJSON(shard1), withSketch(shard2, "G", 1)},
+        null,
+        "=={x:{_l:[B]}}",
+        "=={x:{_l:[B]}}");
+
+    // no top buckets, so nothing to refine
+    merged =
+        doTestRefine(
+            "{x : {type:terms, field:X, limit:0, refine:sketch} }",
+            new Object[] {
+              withSketch(shard0, "C", 1), withSketch(shard1, "E", 1), withSketch(shard2, "G", 1)
+            },
+            null,
+            null,
+            null);
+    match(merged, 1e-5, "x=={buckets:[]}");
+  }
+
+  @Test
+  public void testSketchRefinement() throws Exception {
+    initServers();
+    Client client = servers.getClient(random().nextInt());
+    client.queryDefaults().set("shards", servers.getShards());
+    List<SolrClient> clients = client.getClientProvider().all();
+    assertTrue(clients.size() >= 3);
+
+    client.deleteByQuery("*:*", null);
+    int id = 0;
+    for (int i = 0; i < 6; i++) {
+      clients.get(0).add(sdoc("id", id++, "cat_s", "A"));
+      clients.get(1).add(sdoc("id", id++, "cat_s", "A"));
+      clients.get(2).add(sdoc("id", id++, "cat_s", "A"));
+    }
+    for (int i = 0; i < 5; i++) {
+      clients.get(0).add(sdoc("id", id++, "cat_s", "B"));
+    }
+    clients.get(0).add(sdoc("id", id++, "cat_s", "C"));
+    clients.get(1).add(sdoc("id", id++, "cat_s", "D"));
+    clients.get(1).add(sdoc("id", id++, "cat_s", "E"));
+    clients.get(2).add(sdoc("id", id++, "cat_s", "F"));
+    clients.get(2).add(sdoc("id", id++, "cat_s", "G"));
+    client.commit();
+
+    String expected =
+        "facets=={ count:" + id + ", x:{ buckets:[{val:A, count:18}, {val:B, count:5}] } }";
+    for (String refine : Arrays.asList("sketch", "simple")) {
+      String facet = "{x:{type:terms, field:cat_s, limit:2, overrequest:0, refine:" + refine + "}}";
+      client.testJQ(params("q", "*:*", "rows", "0", "json.facet", facet), expected);
+    }
+    // no top buckets, while the shards still have more buckets
+    String noTop = "{x:{type:terms, field:cat_s, limit:0, refine:sketch}}";
+    client.testJQ(
+        params("q", "*:*", "rows", "0", "json.facet", noTop),
+        "facets=={ count:" + id + ", x:{ buckets:[] } }");
+
+    // C may now be among the top buckets, so B is refined
+    for (int i = 0; i < 3; i++) {
+      clients.get(0).add(sdoc("id", id++, "cat_s", "C"));
+    }
+    client.commit();
+    expected = "facets=={ count:" + id + ", x:{ buckets:[{val:A, count:18}, {val:B, count:5}] } }";
+    String facet = "{x:{type:terms, field:cat_s, limit:2, overrequest:0, refine:sketch}}";
+    client.testJQ(params("q", "*:*", "rows", "0", "json.facet", facet), expected);
+  }
+
   /**
    * When <code>prelim_sort</code> is used, all 'top bucket' choices for refinement should still be
    * based on it, not the <code>sort</code> param, so this test is just some sanity checks that the
@@ -2345,6 +2345,18 @@ public class TestJsonFacets extends SolrTestCaseHS {
             + "  f1:{  'buckets':[{ val:'A', count:2, n1:[4.0,2.0,4.0] }, { val:'B', count:3, n1:[-5.0,-9.0,11.0] }]}"
             + ", f2:{  'buckets':[{ val:'B', count:3, n1:[-5.0,-9.0,11.0]}, { val:'A', count:2, n1:[4.0,2.0,4.0] }]} }");
 
+    // test the merging digest, whose extreme percentiles are exact
+    client.testJQ(
+        params(
+            p,
+            "q",
+            "*:*",
+            "json.facet",
+            "{f1:{terms:{${terms} field:${cat_s}, sort:'n1 desc',"
+                + " facet:{n1:{type:func, func:'percentile(${num_d},100,0)', digest:merging}}  }} }"),
+        "facets=={ 'count':6, "
+            + "  f1:{  'buckets':[{ val:'B', count:3, n1:[11.0,-9.0] }, { val:'A', count:2, n1:[4.0,2.0] }]} }");
+
     // test sorting by count/index order
     client.testJQ(
         params(
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.cloud.MiniSolrCloudCluster;
+import org.apache.solr.cloud.SolrCloudTestCase;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.embedded.JettySolrRunner;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compares the JSON facets of multi-threaded requests with single-threaded ones, on an index with
+ * enough segments for the searcher to split it in several slices.
+ */
+public class TestJsonFacetsMultiThreaded extends SolrCloudTestCase {
+
+  private static final String COLLECTION = "test";
+
+  /** Lucene puts at most 5 segments in a slice, and the default merge policy merges from 10. */
+  private static final int NUM_SEGMENTS = 8;
+
+  @BeforeClass
+  public static void setupCluster() throws Exception {
+    configureCluster(1)
+        .withSolrXml(
+            MiniSolrCloudCluster.DEFAULT_CLOUD_SOLR_XML.replace(
+                "</solr>", "  <int name=\"indexSearcherExecutorThreads\">4</int>\n</solr>"))
+        .addConfig("conf", configset("cloud-dynamic"))
+        .configure();
+    SolrClient client = cluster.getSolrClient();
+    CollectionAdminRequest.createCollection(COLLECTION, "conf", 1, 1).process(client);
+    cluster.waitForActiveCollection(COLLECTION, 1, 1);
+
+    int id = 0;
+    for (int seg = 0; seg < NUM_SEGMENTS; seg++) {
+      for (int i = 0; i < 20; i++) {
+        SolrInputDocument doc =
+            sdoc(
+                "id",
+                String.valueOf(id++),
+                "where_s1",
+                "w" + random().nextInt(5),
+                "num_d",
+                random().nextInt(100) - 50);
+        for (int c = random().nextInt(3); c > 0; c--) {
+          doc.addField("cat_s", "c" + random().nextInt(20));
+        }
+        client.add(COLLECTION, doc);
+      }
+      client.commit(COLLECTION); // each commit flushes a new segment
+    }
+  }
+
+  @Test
+  public void testSeveralSlices() throws Exception {
+    for (JettySolrRunner jetty : cluster.getJettySolrRunners()) {
+      for (SolrCore core : jetty.getCoreContainer().getCores()) {
+        int slices = core.withSearcher(searcher -> searcher.getSlices().length);
+        assertTrue("Expected several slices, got " + slices, slices > 1);
+      }
+    }
+  }
+
+  @Test
+  public void testSameFacetsAsSingleThreaded() throws Exception {
+    String[] facets = {
+      "{cats:{type:terms, field:cat_s, method:dv, limit:-1}}",
+      "{cats:{type:terms, field:cat_s, method:dv, limit:-1, perSeg:true}}",
+      "{wheres:{type:terms, field:where_s1, method:dv, limit:-1, sort:'index asc'}}",
+      "{wheres:{type:terms, field:where_s1, method:dv, limit:-1, perSeg:true}}",
+      // more ranges than are intersected at once
+      "{nums:{type:range, field:num_d, start:-50, end:50, gap:5, other:all}}",
+      "{nums:{type:range, field:num_d, start:-50, end:50, gap:10"
+          + ", facet:{cats:{type:terms, field:cat_s, method:dv}}}}"
+    };
+    for (String q : new String[] {"*:*", "num_d:[0 TO *]"}) {
+      for (String facet : facets) {
+        Object expected = facets(q, facet, false);
+        assertNotNull(expected);
+        assertEquals(q + " " + facet, expected, facets(q, facet, true));
+      }
+    }
+  }
+
+  private Object facets(String q, String facet, boolean multiThreaded) throws Exception {
+    return cluster
+        .getSolrClient()
+        .query(
+            COLLECTION,
+            params(
+                "q",
+                q,
+                "rows",
+                "0",
+                "multiThreaded",
+                String.valueOf(multiThreaded),
+                "json.facet",
+                facet))
+        .getResponse()
+        .get("facets");
+  }
+}
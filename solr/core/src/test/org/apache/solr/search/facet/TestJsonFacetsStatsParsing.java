@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.Map;
 import org.apache.lucene.queries.function.valuesource.IntFieldSource;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.Utils;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.function.FieldNameValueSource;
@@ -140,4 +141,46 @@ public class TestJsonFacetsStatsParsing extends SolrTestCaseJ4 {
       assertNull(x.localParams.get("yaz"));
     }
   }
+
+  @SuppressWarnings({"unchecked"})
+  public void testPercentileOptions() throws IOException {
+    try (SolrQueryRequest req = req()) {
+      final FacetRequest fr =
+          FacetRequest.parse(
+              req,
+              (Map<String, Object>)
+                  ObjectBuilder.fromJSON(
+                      "{ p1:'percentile(foo_i,50)',"
+                          + "  p2:{type:func, func:'percentile(foo_i,50)', digest:avl},"
+                          + "  p3:{type:func, func:'percentile(foo_i,50)', digest:MERGING},"
+                          + "  p4:{type:func, func:'percentile(foo_i,50)', digest:merging,"
+                          + " compression:200} }"));
+
+      final Map<String, AggValueSource> stats = fr.getFacetStats();
+      PercentileAgg p1 = (PercentileAgg) stats.get("p1");
+      assertEquals(PercentileAgg.DigestType.AVL, p1.digestType);
+      assertEquals(PercentileAgg.DEFAULT_COMPRESSION, p1.compression, 0.0);
+      assertEquals(p1, stats.get("p2"));
+      PercentileAgg p3 = (PercentileAgg) stats.get("p3");
+      assertEquals(PercentileAgg.DigestType.MERGING, p3.digestType);
+      assertNotEquals(p1, p3);
+      PercentileAgg p4 = (PercentileAgg) stats.get("p4");
+      assertEquals(200, p4.compression, 0.0);
+      assertNotEquals(p3, p4);
+    }
+
+    for (String json :
+        new String[] {
+          "{ p:{type:func, func:'percentile(foo_i,50)', digest:kll} }",
+          "{ p:{type:func, func:'percentile(foo_i,50)', compression:0} }"
+        }) {
+      try (SolrQueryRequest req = req()) {
+        SolrException e =
+            expectThrows(
+                SolrException.class,
+                () -> FacetRequest.parse(req, (Map<String, Object>) ObjectBuilder.fromJSON(json)));
+        assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+      }
+    }
+  }
 }
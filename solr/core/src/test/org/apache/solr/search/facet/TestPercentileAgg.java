@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import com.tdunning.math.stats.AVLTreeDigest;
+import com.tdunning.math.stats.TDigest;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.search.facet.PercentileAgg.DigestType;
+import org.apache.solr.search.facet.PercentileAgg.SlotDigests;
+import org.junit.Test;
+
+public class TestPercentileAgg extends SolrTestCase {
+
+  private static final double[] QUANTILES = {0, 0.1, 0.5, 0.9, 0.99, 1};
+
+  @Test
+  public void testSlotDigests() {
+    for (DigestType type : DigestType.values()) {
+      // one slot without values, and slots with fewer and more values than a block
+      int[] numValues = {
+        0, 1, SlotDigests.BLOCK_SIZE - 1, SlotDigests.BLOCK_SIZE, 5 * SlotDigests.BLOCK_SIZE, 10000
+      };
+      SlotDigests digests = new SlotDigests(type, 100, numValues.length);
+      double[][] values = new double[numValues.length][];
+      for (int slot = 0; slot < numValues.length; slot++) {
+        values[slot] = new double[numValues[slot]];
+      }
+      // interleave the values of the slots, so that their blocks are reused
+      int[] added = new int[numValues.length];
+      for (int remaining = Arrays.stream(numValues).sum(); remaining > 0; ) {
+        int slot = random().nextInt(numValues.length);
+        if (added[slot] < numValues[slot]) {
+          double val = random().nextGaussian() * 1000;
+          values[slot][added[slot]++] = val;
+          digests.add(slot, val);
+          remaining--;
+        }
+      }
+
+      assertFalse(digests.exists(0));
+      assertNull(digests.get(0));
+      assertNull(digests.toBytes(0));
+      for (int slot = 1; slot < numValues.length; slot++) {
+        assertTrue(digests.exists(slot));
+        double[] sorted = values[slot].clone();
+        Arrays.sort(sorted);
+        TDigest digest = digests.get(slot);
+        assertEquals(numValues[slot], digest.size());
+        assertEquals(sorted[0], digest.quantile(0), 0.0);
+        assertEquals(sorted[sorted.length - 1], digest.quantile(1), 0.0);
+        if (sorted.length >= 1000) {
+          // the estimates must be within 1% of the rank of the percentiles
+          for (double q : QUANTILES) {
+            int rank = Arrays.binarySearch(sorted, digest.quantile(q));
+            rank = rank < 0 ? -rank - 1 : rank;
+            assertEquals(type + " q=" + q, q, rank / (double) sorted.length, 0.01);
+          }
+        }
+
+        TDigest read = type.fromBytes(ByteBuffer.wrap(digests.toBytes(slot)));
+        assertEquals(digest.size(), read.size());
+        for (double q : QUANTILES) {
+          // the centroids are written as floats
+          assertEquals(digest.quantile(q), read.quantile(q), 0.01);
+        }
+      }
+
+      digests.reset();
+      for (int slot = 0; slot < numValues.length; slot++) {
+        assertFalse(digests.exists(slot));
+      }
+    }
+  }
+
+  @Test
+  public void testResizeFreesBlocks() {
+    int numSlots = 64;
+    SlotDigests digests = new SlotDigests(DigestType.AVL, 100, numSlots);
+    for (int slot = 0; slot < numSlots; slot++) {
+      digests.add(slot, slot);
+    }
+    assertEquals(numSlots, digests.numBlocks());
+
+    // keep every other slot, as the first half of the slots
+    digests.resize(
+        new SlotAcc.Resizer() {
+          @Override
+          public int getNewSize() {
+            return numSlots;
+          }
+
+          @Override
+          public int getNewSlot(int oldSlot) {
+            return oldSlot % 2 == 0 ? oldSlot / 2 : -1;
+          }
+        });
+    for (int slot = 0; slot < numSlots / 2; slot++) {
+      assertEquals(2 * slot, digests.get(slot).quantile(0.5), 0.0);
+    }
+
+    // the second half reuses the blocks of the slots dropped
+    for (int slot = numSlots / 2; slot < numSlots; slot++) {
+      assertFalse(digests.exists(slot));
+      digests.add(slot, -slot);
+    }
+    assertEquals(numSlots, digests.numBlocks());
+    for (int slot = 0; slot < numSlots; slot++) {
+      assertEquals(slot < numSlots / 2 ? 2 * slot : -slot, digests.get(slot).quantile(0.5), 0.0);
+    }
+  }
+
+  @Test
+  public void testSameAsAVLTreeDigest() {
+    SlotDigests digests = new SlotDigests(DigestType.AVL, 100, 1);
+    AVLTreeDigest expected = new AVLTreeDigest(100);
+    for (int i = atLeast(100); i > 0; i--) {
+      double val = random().nextDouble();
+      digests.add(0, val);
+      expected.add(val);
+    }
+    for (double q : QUANTILES) {
+      assertEquals(expected.quantile(q), digests.get(0).quantile(q), 0.0);
+    }
+  }
+}
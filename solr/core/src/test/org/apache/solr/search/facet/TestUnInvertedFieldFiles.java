@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.LogListener;
+import org.apache.solr.util.RefCounted;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestUnInvertedFieldFiles extends SolrTestCaseJ4 {
+
+  private static final String FACETS =
+      "{f:{type:terms, field:many_ws, method:uif, limit:-1, sort:'index asc'}}";
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    useFactory(null); // the files are only persisted in FS based directories
+    initCore("solrconfig.xml", "schema11.xml");
+  }
+
+  @After
+  public void after() {
+    System.clearProperty(UnInvertedFieldFiles.PERSIST_PROP);
+  }
+
+  private static void indexDocs(int numDocs) {
+    for (int i = 0; i < numDocs; i++) {
+      StringBuilder text = new StringBuilder();
+      int numTerms = random().nextInt(20);
+      for (int t = 0; t < numTerms; t++) {
+        text.append(random().nextInt(200)).append(' ');
+      }
+      // frequent enough to be a big term
+      text.append("common");
+      assertU(adoc("id", Integer.toString(i), "many_ws", text.toString()));
+      if (random().nextInt(50) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+  }
+
+  private static String facets() throws Exception {
+    SolrQueryRequest req = req("q", "*:*", "rows", "0", "json.facet", FACETS);
+    try {
+      return h.queryAndResponse("", req).getValues().get("facets").toString();
+    } finally {
+      req.close();
+    }
+  }
+
+  /** The uninverted field files and temporary files of the core. */
+  private static List<String> files() throws IOException {
+    Path dir = Path.of(h.getCore().getDataDir(), UnInvertedFieldFiles.DIR_NAME);
+    if (!Files.exists(dir)) {
+      return List.of();
+    }
+    try (Stream<Path> files = Files.list(dir)) {
+      return files
+          .map(file -> file.getFileName().toString())
+          .filter(file -> file.startsWith("uif_"))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static String fileName() {
+    RefCounted<SolrIndexSearcher> ref = h.getCore().getSearcher();
+    try {
+      return UnInvertedFieldFiles.fileName(
+          "many_ws", UnInvertedFieldFiles.segmentsKey("many_ws", ref.get()));
+    } finally {
+      ref.decref();
+    }
+  }
+
+  private static byte[] bytes(UnInvertedField uif) throws Exception {
+    ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+    uif.write(out);
+    return out.toArrayCopy();
+  }
+
+  @Test
+  public void testWriteRead() throws Exception {
+    clearIndex();
+    indexDocs(atLeast(100));
+
+    RefCounted<SolrIndexSearcher> ref = h.getCore().getSearcher();
+    try {
+      SolrIndexSearcher searcher = ref.get();
+      UnInvertedField uif = new UnInvertedField("many_ws", searcher);
+      byte[] bytes = bytes(uif);
+      ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+      out.writeBytes(bytes);
+
+      UnInvertedField read = UnInvertedField.read("many_ws", searcher, out.toDataInput());
+      assertEquals(uif.getNumTerms(), read.getNumTerms());
+      assertEquals(uif.memSize(), read.memSize());
+      assertEquals(uif.toString(), read.toString());
+      assertArrayEquals(bytes, bytes(read));
+      assertFalse(read.bigTerms.isEmpty());
+      assertEquals(uif.bigTerms.keySet(), read.bigTerms.keySet());
+    } finally {
+      ref.decref();
+    }
+  }
+
+  @Test
+  public void testSegmentsKey() throws Exception {
+    clearIndex();
+    indexDocs(atLeast(20));
+
+    String key;
+    RefCounted<SolrIndexSearcher> ref = h.getCore().getSearcher();
+    try {
+      key = UnInvertedFieldFiles.segmentsKey("many_ws", ref.get());
+      assertNotNull(key);
+      assertEquals(key, UnInvertedFieldFiles.segmentsKey("many_ws", ref.get()));
+      assertNotEquals(key, UnInvertedFieldFiles.segmentsKey("other_ws", ref.get()));
+      assertNotEquals(
+          UnInvertedFieldFiles.fileName("many_ws", key),
+          UnInvertedFieldFiles.fileName("other_ws", key));
+    } finally {
+      ref.decref();
+    }
+
+    // deletions change the key
+    assertU(delI("0"));
+    assertU(commit());
+    ref = h.getCore().getSearcher();
+    try {
+      assertNotEquals(key, UnInvertedFieldFiles.segmentsKey("many_ws", ref.get()));
+    } finally {
+      ref.decref();
+    }
+  }
+
+  @Test
+  public void testReadAfterReload() throws Exception {
+    clearIndex();
+    indexDocs(atLeast(100));
+    String expected = facets();
+
+    System.setProperty(UnInvertedFieldFiles.PERSIST_PROP, "true");
+    try (LogListener log = LogListener.debug(UnInvertedFieldFiles.class)) {
+      // the field is uninverted and written by the first facet request of a core
+      h.reload();
+      assertEquals(expected, facets());
+      assertTrue(log.pollMessage().startsWith("Wrote uninverted field many_ws"));
+      assertNull(log.pollMessage());
+      String fileName = fileName();
+      assertEquals(List.of(fileName), files());
+
+      // and read back after a reload, with the same counts
+      h.reload();
+      assertEquals(expected, facets());
+      assertTrue(log.pollMessage().startsWith("Read uninverted field many_ws"));
+      assertNull(log.pollMessage());
+      assertEquals(List.of(fileName), files());
+    }
+
+    // once disabled, the field is uninverted again
+    System.clearProperty(UnInvertedFieldFiles.PERSIST_PROP);
+    try (LogListener log = LogListener.debug(UnInvertedFieldFiles.class)) {
+      h.reload();
+      assertEquals(expected, facets());
+      assertEquals(0, log.getCount());
+    }
+  }
+
+  @Test
+  public void testDeleteOthers() throws Exception {
+    clearIndex();
+    indexDocs(atLeast(50));
+    System.setProperty(UnInvertedFieldFiles.PERSIST_PROP, "true");
+    h.reload();
+    facets();
+    assertEquals(List.of(fileName()), files());
+
+    // the file of the previous segments can't be read anymore
+    assertU(adoc("id", "new", "many_ws", "common new"));
+    assertU(commit());
+    String fileName = fileName();
+    assertTrue(facets().contains("new"));
+    assertEquals(List.of(fileName), files());
+  }
+
+  @Test
+  public void testConcurrentWrites() throws Exception {
+    clearIndex();
+    indexDocs(atLeast(100));
+    System.setProperty(UnInvertedFieldFiles.PERSIST_PROP, "true");
+
+    RefCounted<SolrIndexSearcher> ref = h.getCore().getSearcher();
+    ExecutorService executor =
+        ExecutorUtil.newMDCAwareFixedThreadPool(4, new SolrNamedThreadFactory("uif"));
+    try {
+      SolrIndexSearcher searcher = ref.get();
+      UnInvertedField expected = new UnInvertedField("many_ws", searcher);
+      List<Future<UnInvertedField>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(
+            executor.submit(() -> UnInvertedFieldFiles.getUnInvertedField("many_ws", searcher)));
+      }
+      for (Future<UnInvertedField> future : futures) {
+        UnInvertedField uif = future.get();
+        assertEquals(expected.getNumTerms(), uif.getNumTerms());
+        assertEquals(expected.memSize(), uif.memSize());
+        assertEquals(expected.bigTerms.keySet(), uif.bigTerms.keySet());
+      }
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+      ref.decref();
+    }
+    // a single complete file, and no temporary files left behind
+    assertEquals(List.of(fileName()), files());
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.tests.util.TestUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.update.UpdateLog.LogPtr;
+import org.junit.Test;
+
+public class LogPtrMapTest extends SolrTestCase {
+
+  @Test
+  public void testRandomOperations() {
+    LogPtrMap map = new LogPtrMap();
+    Map<BytesRef, LogPtr> expected = new HashMap<>();
+    BytesRef[] ids = new BytesRef[atLeast(500)];
+    for (int i = 0; i < ids.length; i++) {
+      // some keys don't fit in a page, and some don't start at the beginning of their array
+      int length = rarely() ? TestUtil.nextInt(random(), 70_000, 100_000) : random().nextInt(20);
+      int offset = random().nextInt(4);
+      byte[] bytes = new byte[offset + length];
+      random().nextBytes(bytes);
+      ids[i] = new BytesRef(bytes, offset, length);
+    }
+
+    int numOps = atLeast(5000);
+    for (int op = 0; op < numOps; op++) {
+      if (random().nextInt(1000) == 0) {
+        map.clear();
+        expected.clear();
+      }
+      BytesRef id = ids[random().nextInt(ids.length)];
+      if (random().nextBoolean()) {
+        LogPtr ptr = new LogPtr(random().nextLong(), random().nextLong(), random().nextLong());
+        assertLogPtrEquals(expected.put(BytesRef.deepCopyOf(id), ptr), map.put(id, ptr));
+      } else {
+        assertLogPtrEquals(expected.get(id), map.get(BytesRef.deepCopyOf(id)));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+
+    assertEquals(expected.keySet(), map.keySet());
+    for (Map.Entry<BytesRef, LogPtr> entry : map.entrySet()) {
+      assertLogPtrEquals(expected.get(entry.getKey()), entry.getValue());
+    }
+    assertNull(map.get("not a BytesRef"));
+
+    if (!expected.isEmpty()) {
+      // removals would be silently lost, the entries being a snapshot
+      BytesRef id = expected.keySet().iterator().next();
+      expectThrows(UnsupportedOperationException.class, () -> map.remove(id));
+      expectThrows(UnsupportedOperationException.class, () -> map.keySet().remove(id));
+      expectThrows(
+          UnsupportedOperationException.class,
+          () -> {
+            Iterator<Map.Entry<BytesRef, LogPtr>> it = map.entrySet().iterator();
+            it.next();
+            it.remove();
+          });
+      expectThrows(UnsupportedOperationException.class, () -> map.entrySet().clear());
+      assertEquals(expected.size(), map.size());
+    }
+  }
+
+  @Test
+  public void testConcurrentReads() throws Exception {
+    final int numIds = 20_000;
+    final int numReaders = 4;
+    final LogPtrMap map = new LogPtrMap();
+    final AtomicInteger added = new AtomicInteger();
+    final AtomicBoolean done = new AtomicBoolean();
+    ExecutorService executor =
+        ExecutorUtil.newMDCAwareFixedThreadPool(
+            numReaders, new SolrNamedThreadFactory("testConcurrentReads"));
+    try {
+      Future<?>[] readers = new Future<?>[numReaders];
+      for (int r = 0; r < numReaders; r++) {
+        readers[r] =
+            executor.submit(
+                () -> {
+                  while (!done.get()) {
+                    int count = added.get();
+                    for (int i = Math.max(0, count - 100); i < count; i++) {
+                      // the entries added are visible, even while the table is resized
+                      LogPtr ptr = map.get(new BytesRef(Integer.toString(i)));
+                      assertNotNull(ptr);
+                      assertTrue(ptr.version >= i);
+                      assertEquals(ptr.version, ptr.pointer);
+                    }
+                  }
+                  return null;
+                });
+      }
+      for (int i = 0; i < numIds; i++) {
+        map.put(new BytesRef(Integer.toString(i)), new LogPtr(i, i));
+        added.incrementAndGet();
+        // updates of existing keys
+        int j = random().nextInt(i + 1);
+        long version = numIds + i;
+        map.put(new BytesRef(Integer.toString(j)), new LogPtr(version, version));
+      }
+      done.set(true);
+      for (Future<?> reader : readers) {
+        reader.get(1, TimeUnit.MINUTES);
+      }
+      assertEquals(numIds, map.size());
+    } finally {
+      done.set(true);
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+  }
+
+  private static void assertLogPtrEquals(LogPtr expected, LogPtr actual) {
+    if (expected == null) {
+      assertNull(actual);
+      return;
+    }
+    assertNotNull(actual);
+    assertEquals(expected.pointer, actual.pointer);
+    assertEquals(expected.version, actual.version);
+    assertEquals(expected.previousPointer, actual.previousPointer);
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.util.OrderedExecutor;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelUpdateApplierTest extends SolrTestCase {
+  private static final int NUM_THREADS = 4;
+
+  private static OrderedExecutor<BytesRef> executor;
+
+  @BeforeClass
+  public static void beforeClass() {
+    // initialized as done in CoreContainer
+    executor =
+        new OrderedExecutor<>(
+            NUM_THREADS,
+            ExecutorUtil.newMDCAwareCachedThreadPool(
+                NUM_THREADS, NUM_THREADS, new SolrNamedThreadFactory("testParallelApply")));
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    executor.shutdownAndAwaitTermination();
+    executor = null;
+  }
+
+  /** Records the versions applied for each id, and the deletes by query. */
+  private static class RecordingProcessor extends UpdateRequestProcessor {
+    final Map<BytesRef, List<Long>> applied;
+    final AtomicInteger pending;
+    final AtomicInteger finished;
+
+    RecordingProcessor(
+        Map<BytesRef, List<Long>> applied, AtomicInteger pending, AtomicInteger finished) {
+      super(null);
+      this.applied = applied;
+      this.pending = pending;
+      this.finished = finished;
+    }
+
+    @Override
+    public void processAdd(AddUpdateCommand cmd) throws IOException {
+      if (cmd.getVersion() < 0) {
+        throw new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "failure");
+      }
+      applied.computeIfAbsent(cmd.getIndexedId(), id -> new ArrayList<>()).add(cmd.getVersion());
+      pending.decrementAndGet();
+    }
+
+    @Override
+    public void processDelete(DeleteUpdateCommand cmd) throws IOException {
+      // all the updates submitted before a delete by query were applied
+      assertEquals(0, pending.get());
+      BytesRef query = new BytesRef(cmd.query);
+      applied.computeIfAbsent(query, q -> new ArrayList<>()).add(cmd.getVersion());
+    }
+
+    @Override
+    public void finish() throws IOException {
+      finished.incrementAndGet();
+    }
+  }
+
+  private static AddUpdateCommand add(String id, long version) {
+    AddUpdateCommand cmd = new AddUpdateCommand(null);
+    cmd.setIndexedId(new BytesRef(id));
+    cmd.setVersion(version);
+    return cmd;
+  }
+
+  @Test
+  public void testOrderedPerDocument() throws Exception {
+    Map<BytesRef, List<Long>> applied = new ConcurrentHashMap<>();
+    AtomicInteger pending = new AtomicInteger();
+    AtomicInteger finished = new AtomicInteger();
+    int numThreads = random().nextBoolean() ? 1 : NUM_THREADS;
+    int numIds = atLeast(10);
+    int numUpdates = atLeast(2000);
+    try (ParallelUpdateApplier applier =
+        new ParallelUpdateApplier(
+            executor,
+            numThreads,
+            () -> new RecordingProcessor(applied, pending, finished),
+            (cmd, e) -> {
+              throw new AssertionError(e);
+            })) {
+      for (long version = 1; version <= numUpdates; version++) {
+        if (random().nextInt(500) == 0) {
+          DeleteUpdateCommand dbq = new DeleteUpdateCommand(null);
+          dbq.query = "*:*";
+          dbq.setVersion(-version);
+          applier.submit(dbq);
+        } else {
+          pending.incrementAndGet();
+          applier.submit(add(Integer.toString(random().nextInt(numIds)), version));
+        }
+      }
+      applier.finish();
+      assertEquals(numUpdates, applier.getSubmitted());
+      assertEquals(numUpdates, applier.getCompleted());
+    }
+
+    assertEquals(0, pending.get());
+    assertTrue(finished.get() >= 1 && finished.get() <= numThreads + 1);
+    for (List<Long> versions : applied.values()) {
+      for (int i = 1; i < versions.size(); i++) {
+        assertTrue(Math.abs(versions.get(i - 1)) < Math.abs(versions.get(i)));
+      }
+    }
+  }
+
+  @Test
+  public void testStopsOnFailure() {
+    AtomicInteger errors = new AtomicInteger();
+    try (ParallelUpdateApplier applier =
+        new ParallelUpdateApplier(
+            executor,
+            NUM_THREADS,
+            () ->
+                new RecordingProcessor(
+                    new ConcurrentHashMap<>(), new AtomicInteger(), new AtomicInteger()),
+            (cmd, e) -> {
+              errors.incrementAndGet();
+              return e instanceof SolrException
+                  && ((SolrException) e).code() == SolrException.ErrorCode.SERVICE_UNAVAILABLE.code;
+            })) {
+      applier.submit(add("1", 1));
+      applier.submit(add("2", -2));
+      SolrException e =
+          expectThrows(
+              SolrException.class,
+              () -> {
+                // fails once the failure is seen
+                for (int i = 3; i < 1000; i++) {
+                  applier.submit(add(Integer.toString(i), i));
+                  applier.awaitPending();
+                }
+              });
+      assertEquals(SolrException.ErrorCode.SERVICE_UNAVAILABLE.code, e.code());
+      assertSame(e, applier.getFailure());
+    }
+    assertEquals(1, errors.get());
+  }
+
+  @Test
+  public void testThreadsFor() {
+    int min = ParallelUpdateApplier.MIN_UPDATES_PER_THREAD;
+    assertEquals(1, ParallelUpdateApplier.threadsFor(0, 8));
+    assertEquals(1, ParallelUpdateApplier.threadsFor(min, 8));
+    assertEquals(2, ParallelUpdateApplier.threadsFor(min + 1, 8));
+    assertEquals(8, ParallelUpdateApplier.threadsFor(100L * min, 8));
+  }
+}
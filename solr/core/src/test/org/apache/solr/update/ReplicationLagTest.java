@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.update;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.SolrTestCase;
+import org.junit.Test;
+
+public class ReplicationLagTest extends SolrTestCase {
+
+  private static final String REPLICA = "http://replica1:8983/solr/collection1_shard1_replica_n1/";
+  private static final String GONE = "http://replica2:8983/solr/collection1_shard1_replica_n2/";
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> stats(ReplicationLag lag, String url) {
+    return (Map<String, Object>) lag.getStats().get(url);
+  }
+
+  @Test
+  public void testFailuresCountedSeparately() {
+    ReplicationLag lag = new ReplicationLag();
+    lag.forwarded(REPLICA, 3);
+    assertEquals(3, lag.getPending(REPLICA));
+    lag.completed(REPLICA, 3, false, TimeUnit.MILLISECONDS.toNanos(20));
+    lag.forwarded(REPLICA, 2);
+    lag.completed(REPLICA, 2, true, TimeUnit.MILLISECONDS.toNanos(500));
+
+    Map<String, Object> stats = stats(lag, REPLICA);
+    assertEquals(0L, stats.get("pending"));
+    assertEquals(3L, stats.get("acknowledged"));
+    assertEquals(2L, stats.get("failed"));
+    // the lag of failed updates isn't known
+    assertEquals(20L, stats.get("lastLagMs"));
+    assertEquals(20L, stats.get("maxLagMs"));
+  }
+
+  @Test
+  public void testMaxLagWindow() throws Exception {
+    ReplicationLag lag =
+        new ReplicationLag(100, TimeUnit.HOURS.toMillis(1), TimeUnit.MILLISECONDS);
+    lag.forwarded(REPLICA, 1);
+    lag.completed(REPLICA, 1, false, TimeUnit.SECONDS.toNanos(30));
+    lag.forwarded(REPLICA, 1);
+    lag.completed(REPLICA, 1, false, TimeUnit.MILLISECONDS.toNanos(10));
+    Map<String, Object> stats = stats(lag, REPLICA);
+    assertEquals(10L, stats.get("lastLagMs"));
+    assertEquals(30_000L, stats.get("maxLagMs"));
+
+    // no longer reported after two windows
+    Thread.sleep(250);
+    lag.forwarded(REPLICA, 1);
+    lag.completed(REPLICA, 1, false, TimeUnit.MILLISECONDS.toNanos(10));
+    assertEquals(10L, stats(lag, REPLICA).get("maxLagMs"));
+  }
+
+  @Test
+  public void testIdleReplicasForgotten() throws Exception {
+    ReplicationLag lag = new ReplicationLag(1, 20, TimeUnit.MILLISECONDS);
+    lag.forwarded(GONE, 1);
+    lag.completed(GONE, 1, false, TimeUnit.MILLISECONDS.toNanos(10));
+    lag.forwarded(REPLICA, 1);
+    Thread.sleep(100);
+    // the replica with an update pending is kept
+    assertEquals(Set.of(REPLICA), lag.getStats().keySet());
+    assertEquals(1, lag.size());
+    assertEquals(1, lag.getPending(REPLICA));
+  }
+}
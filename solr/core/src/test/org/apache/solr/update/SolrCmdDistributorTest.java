@@ -23,6 +23,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -190,6 +191,14 @@ public class SolrCmdDistributorTest extends BaseDistributedSearchTestCase {
       numFound = controlClient.query(new SolrQuery("*:*")).getResults().getNumFound();
       assertEquals(1, numFound);
 
+      // the add and the commit were acknowledged
+      String controlUrl = nodes.get(0).getUrl();
+      ReplicationLag replicationLag = updateShardHandler.getReplicationLag();
+      assertEquals(0, replicationLag.getPending(controlUrl));
+      Map<String, Object> lag = (Map<String, Object>) replicationLag.getStats().get(controlUrl);
+      assertNotNull(replicationLag.getStats().toString(), lag);
+      assertTrue(lag.toString(), (Long) lag.get("acknowledged") >= 2);
+
       client = (HttpSolrClient) clients.get(0);
       nodeProps =
           new ZkNodeProps(
@@ -19,11 +19,18 @@ package org.apache.solr.update;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.apache.solr.SolrTestCase;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.update.TransactionLog.LogReader;
 import org.junit.Test;
 
@@ -71,4 +78,47 @@ public class TransactionLogTest extends SolrTestCase {
       assertEquals(uuid, (UUID) doc.getFieldValue("uuid"));
     }
   }
+
+  @Test
+  public void testGroupCommit() throws Exception {
+    String tlogFileName =
+        String.format(
+            Locale.ROOT, UpdateLog.LOG_FILENAME_PATTERN, UpdateLog.TLOG_NAME, Long.MAX_VALUE);
+    Path logFile = createTempDir().resolve(tlogFileName);
+    final int numThreads = 8;
+    ExecutorService executor =
+        ExecutorUtil.newMDCAwareFixedThreadPool(
+            numThreads, new SolrNamedThreadFactory("testGroupCommit"));
+    try (TransactionLog tlog = new TransactionLog(logFile, null)) {
+      // the batch is complete once all the threads are waiting, well before maxWait
+      GroupCommitSyncer syncer = new GroupCommitSyncer(10, TimeUnit.SECONDS, numThreads);
+      CyclicBarrier barrier = new CyclicBarrier(numThreads);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        final String id = String.valueOf(i);
+        futures.add(
+            executor.submit(
+                () -> {
+                  AddUpdateCommand cmd = new AddUpdateCommand(null);
+                  cmd.solrDoc = new SolrInputDocument("id", id);
+                  tlog.write(cmd);
+                  tlog.finish(UpdateLog.SyncLevel.FLUSH);
+                  barrier.await();
+                  syncer.sync(tlog);
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get(1, TimeUnit.MINUTES);
+      }
+      assertEquals(1, syncer.getFsyncCount());
+
+      syncer.close();
+      // once closed, requests sync by themselves
+      syncer.sync(tlog);
+      assertEquals(1, syncer.getFsyncCount());
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+  }
 }
@@ -19,13 +19,22 @@ package org.apache.solr.update;
 import static org.apache.solr.common.params.CommonParams.VERSION_FIELD;
 import static org.hamcrest.core.StringContains.containsString;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.util.BytesRef;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.handler.component.RealTimeGetComponent;
 import org.apache.solr.request.SolrQueryRequest;
 import org.junit.AfterClass;
@@ -218,6 +227,68 @@ public class UpdateLogTest extends SolrTestCaseJ4 {
     }
   }
 
+  @Test
+  public void testConcurrentLookupsDuringCommits() throws Exception {
+    final int numDocs = 2000;
+    final int numReaders = 4;
+    final long baseVersion = 1_000_000L;
+    final AtomicInteger added = new AtomicInteger();
+    final AtomicBoolean done = new AtomicBoolean();
+    ExecutorService executor =
+        ExecutorUtil.newMDCAwareFixedThreadPool(
+            numReaders, new SolrNamedThreadFactory("testConcurrentLookups"));
+    try {
+      List<Future<?>> readers = new ArrayList<>();
+      for (int r = 0; r < numReaders; r++) {
+        final Random random = new Random(random().nextLong());
+        readers.add(
+            executor.submit(
+                () -> {
+                  while (!done.get()) {
+                    int count = added.get();
+                    if (count == 0) {
+                      continue;
+                    }
+                    int i = random.nextInt(count);
+                    BytesRef indexedId = new BytesRef("lookup" + i);
+                    // whichever map the entry is found in, it must be read from the right log
+                    List<?> entry = (List<?>) ulog.lookup(indexedId);
+                    if (entry != null) {
+                      assertEquals(baseVersion + i, entry.get(UpdateLog.VERSION_IDX));
+                    }
+                    Long version = ulog.lookupVersion(indexedId);
+                    if (version != null) {
+                      assertEquals(baseVersion + i, version.longValue());
+                    }
+                  }
+                  return null;
+                }));
+      }
+
+      for (int i = 0; i < numDocs; i++) {
+        String version = String.valueOf(baseVersion + i);
+        ulogAdd(ulog, null, sdoc("id", "lookup" + i, "_version_", version));
+        added.incrementAndGet();
+        if (i % 50 == 49) {
+          ulogCommit(ulog);
+        }
+      }
+      done.set(true);
+      for (Future<?> reader : readers) {
+        reader.get(1, TimeUnit.MINUTES);
+      }
+
+      // the docs added since the last commits are still in the maps
+      for (int i = numDocs - 50; i < numDocs; i++) {
+        assertEquals(
+            Long.valueOf(baseVersion + i), ulog.lookupVersion(new BytesRef("lookup" + i)));
+      }
+    } finally {
+      done.set(true);
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+  }
+
   /** Simulate a commit on a given updateLog */
   private static void ulogCommit(UpdateLog ulog) {
     try (SolrQueryRequest req = req()) {
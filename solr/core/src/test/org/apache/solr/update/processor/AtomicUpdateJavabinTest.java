@@ -393,6 +393,24 @@ public class AtomicUpdateJavabinTest extends SolrCloudTestCase {
     ensureFieldHasValues(UNCOMMITTED_DOC_STR_VALUES_ID, "timestamps_mdt", DATE_1, DATE_2);
   }
 
+  @Test
+  public void testAtomicUpdatesOfSeveralDocsInOneRequest() throws Exception {
+    // the documents these updates apply to are looked up together
+    final UpdateRequest request =
+        new UpdateRequest()
+            .add(sdoc("id", COMMITTED_DOC_ID, "title_s", Map.of("add-distinct", "title_3")))
+            .add(sdoc("id", COMMITTED_DOC_STR_VALUES_ID, "count_is", Map.of("remove", "1")))
+            .add(sdoc("id", UNCOMMITTED_DOC_ID, "title_s", Map.of("remove", "title_2")))
+            .add(sdoc("id", COMMITTED_DOC_ID, "title_s", Map.of("remove", "title_1")))
+            .add(sdoc("id", "3", "title_s", Map.of("set", "title_1")));
+    request.process(cluster.getSolrClient(), COLLECTION);
+
+    ensureFieldHasValues(COMMITTED_DOC_ID, "title_s", "title_2", "title_3");
+    ensureFieldHasValues(COMMITTED_DOC_STR_VALUES_ID, "count_is", 2);
+    ensureFieldHasValues(UNCOMMITTED_DOC_ID, "title_s", "title_1");
+    ensureFieldHasValues("3", "title_s", "title_1");
+  }
+
   private void atomicRemoveValueFromField(String docId, String fieldName, Object value)
       throws Exception {
     final SolrInputDocument doc = new SolrInputDocument();
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.update.AddUpdateCommand;
+import org.junit.Test;
+
+public class ConcurrentEnrichmentUpdateProcessorTest extends SolrTestCase {
+
+  /** Records the documents passed on, and the batches they were passed on in. */
+  private static class RecordingProcessor extends UpdateRequestProcessor {
+    final List<Integer> added = new ArrayList<>();
+    int batches;
+
+    RecordingProcessor() {
+      super(null);
+    }
+
+    @Override
+    public void processAdd(AddUpdateCommand cmd) throws IOException {
+      // enriched before being passed on
+      assertEquals(cmd.solrDoc.getFieldValue("id"), cmd.solrDoc.getFieldValue("enriched"));
+      added.add((Integer) cmd.solrDoc.getFieldValue("id"));
+    }
+
+    @Override
+    public void processAddBatch(List<AddUpdateCommand> cmds) throws IOException {
+      batches++;
+      super.processAddBatch(cmds);
+    }
+  }
+
+  /** Enriches the documents, taking more or less time, and fails on negative ids. */
+  private static class EnrichingProcessor extends ConcurrentEnrichmentUpdateProcessor {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final List<Integer> groupSizes = Collections.synchronizedList(new ArrayList<>());
+
+    EnrichingProcessor(int maxConcurrency, UpdateRequestProcessor next) {
+      super(maxConcurrency, next);
+    }
+
+    EnrichingProcessor(int maxConcurrency, int maxGroupSize, UpdateRequestProcessor next) {
+      super(maxConcurrency, maxGroupSize, next);
+    }
+
+    @Override
+    protected void enrich(List<AddUpdateCommand> cmds) throws IOException {
+      groupSizes.add(cmds.size());
+      super.enrich(cmds);
+    }
+
+    @Override
+    protected void enrich(AddUpdateCommand cmd) throws IOException {
+      Integer id = (Integer) cmd.solrDoc.getFieldValue("id");
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(Math.abs(id) % 3);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } finally {
+        running.decrementAndGet();
+      }
+      if (id < 0) {
+        throw new IOException("failure of " + id);
+      }
+      cmd.solrDoc.setField("enriched", id);
+    }
+  }
+
+  private static List<AddUpdateCommand> adds(int... ids) {
+    List<AddUpdateCommand> cmds = new ArrayList<>();
+    for (int id : ids) {
+      AddUpdateCommand cmd = new AddUpdateCommand(null);
+      cmd.solrDoc = new SolrInputDocument();
+      cmd.solrDoc.setField("id", id);
+      cmds.add(cmd);
+    }
+    return cmds;
+  }
+
+  @Test
+  public void testBatchPassedOnInOrder() throws Exception {
+    RecordingProcessor recorder = new RecordingProcessor();
+    int maxConcurrency = random().nextInt(8) + 1;
+    EnrichingProcessor processor = new EnrichingProcessor(maxConcurrency, recorder);
+    assertTrue(processor.acceptsAddBatches());
+
+    int[] ids = new int[atLeast(200)];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = i;
+    }
+    processor.processAddBatch(adds(ids));
+    processor.processAdd(adds(ids.length).get(0));
+
+    assertEquals(ids.length + 1, recorder.added.size());
+    for (int i = 0; i < recorder.added.size(); i++) {
+      assertEquals(i, (int) recorder.added.get(i));
+    }
+    assertEquals(1, recorder.batches);
+    assertTrue(processor.maxRunning.get() <= maxConcurrency);
+  }
+
+  @Test
+  public void testFailurePassesOnPrecedingDocuments() {
+    RecordingProcessor recorder = new RecordingProcessor();
+    EnrichingProcessor processor = new EnrichingProcessor(4, recorder);
+
+    IOException e =
+        expectThrows(
+            IOException.class, () -> processor.processAddBatch(adds(0, 1, 2, -3, 4, -5, 6)));
+    assertEquals("failure of -3", e.getMessage());
+    assertEquals(List.of(0, 1, 2), recorder.added);
+  }
+
+  @Test
+  public void testGroups() throws Exception {
+    RecordingProcessor recorder = new RecordingProcessor();
+    EnrichingProcessor processor = new EnrichingProcessor(2, 3, recorder);
+
+    processor.processAddBatch(adds(0, 1, 2, 3, 4, 5, 6));
+    assertEquals(List.of(0, 1, 2, 3, 4, 5, 6), recorder.added);
+    Collections.sort(processor.groupSizes);
+    assertEquals(List.of(1, 3, 3), processor.groupSizes);
+
+    // the failing group isn't passed on
+    recorder.added.clear();
+    expectThrows(IOException.class, () -> processor.processAddBatch(adds(0, 1, 2, 3, -4, 5, 6)));
+    assertEquals(List.of(0, 1, 2), recorder.added);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.llm.textvectorisation.model;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.solr.common.util.Cache;
+import org.apache.solr.common.util.Hash;
+import org.apache.solr.util.ConcurrentLRUCache;
+
+/**
+ * Caches the vectors a model encoded texts to, so that the same texts, e.g. those of documents
+ * reindexed unchanged, aren't vectorised again. The vectors are cached by a 128 bits hash of their
+ * text, rather than by the text itself. A cache is only valid for the model it was created for.
+ */
+public class TextToVectorCache {
+
+  private final SolrTextToVectorModel model;
+  private final Cache<TextHash, float[]> vectors;
+
+  /**
+   * @param size the maximum number of vectors cached
+   */
+  public TextToVectorCache(SolrTextToVectorModel model, int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("size must be > 0");
+    }
+    this.model = model;
+    this.vectors = new ConcurrentLRUCache<>(size, size * 9 / 10);
+  }
+
+  /** Returns the model the vectors cached were encoded with. */
+  public SolrTextToVectorModel getModel() {
+    return model;
+  }
+
+  /** Returns the vector cached for the text, or null. */
+  public float[] get(String text) {
+    return vectors.get(new TextHash(text));
+  }
+
+  public void put(String text, float[] vector) {
+    vectors.put(new TextHash(text), vector);
+  }
+
+  /** Returns the vector cached for the text, vectorising it with the model if there is none. */
+  public float[] vectorise(String text) {
+    TextHash key = new TextHash(text);
+    float[] vector = vectors.get(key);
+    if (vector == null) {
+      vector = model.vectorise(text);
+      vectors.put(key, vector);
+    }
+    return vector;
+  }
+
+  private static final class TextHash {
+    private final long hash1;
+    private final long hash2;
+
+    TextHash(String text) {
+      byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+      Hash.LongPair hash = new Hash.LongPair();
+      Hash.murmurhash3_x64_128(bytes, 0, bytes.length, 0, hash);
+      this.hash1 = hash.val1;
+      this.hash2 = hash.val2;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof TextHash)) return false;
+      TextHash other = (TextHash) obj;
+      return hash1 == other.hash1 && hash2 == other.hash2;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) hash1;
+    }
+  }
+}
@@ -16,18 +16,32 @@
  */
 package org.apache.solr.llm.textvectorisation.search;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import org.apache.lucene.index.VectorEncoding;
 import org.apache.lucene.search.KnnFloatVectorQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.ResourceLoader;
 import org.apache.lucene.util.ResourceLoaderAware;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.Cache;
+import org.apache.solr.common.util.Hash;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.StrUtils;
+import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.SolrResourceLoader;
 import org.apache.solr.llm.textvectorisation.model.SolrTextToVectorModel;
 import org.apache.solr.llm.textvectorisation.store.rest.ManagedTextToVectorModelStore;
+import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.rest.ManagedResource;
 import org.apache.solr.rest.ManagedResourceObserver;
@@ -37,16 +51,59 @@ import org.apache.solr.search.QParser;
 import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.SyntaxError;
 import org.apache.solr.search.neural.KnnQParser;
+import org.apache.solr.util.ConcurrentLRUCache;
 
 /**
  * A neural query parser that encode the query to a vector and then run K-nearest neighbors search
  * on Dense Vector fields. See Wiki page
  * https://solr.apache.org/guide/solr/latest/query-guide/dense-vector-search.html
+ *
+ * <p>The vectors of the latest queries are cached by the node, for all its cores, up to <code>
+ * vectorCacheMaxRamMB</code> (16 by default, 0 to disable the cache). The node coordinating a
+ * distributed request sends the vectors of its queries to the shards, so that each query is
+ * vectorised once.
  */
 public class TextToVectorQParserPlugin extends QParserPlugin
     implements ResourceLoaderAware, ManagedResourceObserver {
   public static final String EMBEDDING_MODEL_PARAM = "model";
+
+  /** The prefix of the request params the coordinator sends the vectors of its queries in. */
+  public static final String VECTOR_PARAM_PREFIX = "textToVector.vector.";
+
+  private static final String VECTOR_CACHE_MAX_RAM_MB_PARAM = "vectorCacheMaxRamMB";
+  private static final long DEFAULT_VECTOR_CACHE_MAX_RAM_MB = 16;
+  private static final String VECTOR_CACHE_KEY = TextToVectorQParserPlugin.class.getName();
+
   private ManagedTextToVectorModelStore modelStore = null;
+  private long vectorCacheMaxRamBytes = DEFAULT_VECTOR_CACHE_MAX_RAM_MB * 1024 * 1024;
+  private Cache<QueryVectorKey, float[]> vectorCache;
+
+  private SolrMetricsContext solrMetricsContext;
+  private Counter vectorCacheHits = new Counter();
+  private Counter vectorCacheMisses = new Counter();
+  private Timer vectoriseTimes = new Timer();
+
+  @Override
+  public void init(NamedList<?> args) {
+    Object maxRamMB = args.get(VECTOR_CACHE_MAX_RAM_MB_PARAM);
+    if (maxRamMB != null) {
+      vectorCacheMaxRamBytes = Long.parseLong(maxRamMB.toString()) * 1024 * 1024;
+    }
+  }
+
+  @Override
+  public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+    solrMetricsContext = parentContext.getChildContext(this);
+    String category = getCategory().toString();
+    vectorCacheHits = solrMetricsContext.counter("vectorCacheHits", category, scope);
+    vectorCacheMisses = solrMetricsContext.counter("vectorCacheMisses", category, scope);
+    vectoriseTimes = solrMetricsContext.timer("vectoriseTimes", category, scope);
+  }
+
+  @Override
+  public SolrMetricsContext getSolrMetricsContext() {
+    return solrMetricsContext;
+  }
 
   @Override
   public QParser createParser(
@@ -55,9 +112,23 @@ public class TextToVectorQParserPlugin extends QParserPlugin
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public void inform(ResourceLoader loader) throws IOException {
     final SolrResourceLoader solrResourceLoader = (SolrResourceLoader) loader;
     ManagedTextToVectorModelStore.registerManagedTextToVectorModelStore(solrResourceLoader, this);
+    CoreContainer coreContainer = solrResourceLoader.getCoreContainer();
+    if (vectorCacheMaxRamBytes > 0 && coreContainer != null) {
+      // shared by the cores of the node, and sized by the first of them
+      vectorCache =
+          coreContainer
+              .getObjectCache()
+              .computeIfAbsent(
+                  VECTOR_CACHE_KEY,
+                  Cache.class,
+                  k ->
+                      new ConcurrentLRUCache<QueryVectorKey, float[]>(
+                          vectorCacheMaxRamBytes * 9 / 10, vectorCacheMaxRamBytes, false, null));
+    }
   }
 
   @Override
@@ -95,7 +166,7 @@ public class TextToVectorQParserPlugin extends QParserPlugin
         switch (vectorEncoding) {
           case FLOAT32:
             {
-              float[] vectorToSearch = textToVector.vectorise(qstr);
+              float[] vectorToSearch = getVector(textToVector);
               checkVectorDimension(vectorToSearch.length, fieldDimensions);
               return new KnnFloatVectorQuery(
                   schemaField.getName(), vectorToSearch, topK, getFilterQuery());
@@ -114,6 +185,125 @@ public class TextToVectorQParserPlugin extends QParserPlugin
                 + ManagedTextToVectorModelStore.REST_END_POINT);
       }
     }
+
+    /**
+     * Returns the vector of the query string: the one sent by the coordinator, if any, else the one
+     * cached, else the one the model encodes it to. The coordinator of a distributed request then
+     * sends it to the shards.
+     */
+    private float[] getVector(SolrTextToVectorModel textToVector) throws SyntaxError {
+      String vectorParam = vectorParamName(textToVector.getName(), qstr);
+      String sentVector = req.getParams().get(vectorParam);
+      if (sentVector != null) {
+        return parseVector(sentVector);
+      }
+
+      QueryVectorKey key = vectorCache == null ? null : new QueryVectorKey(textToVector, qstr);
+      float[] vector = key == null ? null : vectorCache.get(key);
+      if (vector != null) {
+        vectorCacheHits.inc();
+      } else {
+        vectorCacheMisses.inc();
+        try (Timer.Context timer = vectoriseTimes.time()) {
+          vector = textToVector.vectorise(qstr);
+        }
+        if (key != null) {
+          vectorCache.put(key, vector);
+        }
+      }
+
+      if (isDistributedCoordinator(req)) {
+        ModifiableSolrParams params = new ModifiableSolrParams(req.getParams());
+        params.set(vectorParam, formatVector(vector));
+        req.setParams(params);
+      }
+      return vector;
+    }
+  }
+
+  private static boolean isDistributedCoordinator(SolrQueryRequest req) {
+    SolrParams params = req.getParams();
+    if (params.getBool(ShardParams.IS_SHARD, false)
+        || !params.getBool(CommonParams.DISTRIB, true)) {
+      return false;
+    }
+    CoreContainer coreContainer = req.getCoreContainer();
+    return params.get(ShardParams.SHARDS) != null
+        || (coreContainer != null && coreContainer.isZooKeeperAware());
+  }
+
+  /** Returns the name of the request param the vector of a query string is sent in. */
+  static String vectorParamName(String modelName, String queryString) {
+    byte[] bytes = queryString.getBytes(StandardCharsets.UTF_8);
+    Hash.LongPair hash = new Hash.LongPair();
+    Hash.murmurhash3_x64_128(bytes, 0, bytes.length, 0, hash);
+    return VECTOR_PARAM_PREFIX
+        + modelName
+        + '.'
+        + Long.toHexString(hash.val1)
+        + Long.toHexString(hash.val2);
+  }
+
+  private static String formatVector(float[] vector) {
+    StringBuilder sb = new StringBuilder(vector.length * 12);
+    for (int i = 0; i < vector.length; i++) {
+      if (i > 0) sb.append(',');
+      sb.append(vector[i]);
+    }
+    return sb.toString();
+  }
+
+  private static float[] parseVector(String value) throws SyntaxError {
+    List<String> components = StrUtils.splitSmart(value, ',');
+    float[] vector = new float[components.size()];
+    try {
+      for (int i = 0; i < vector.length; i++) {
+        vector[i] = Float.parseFloat(components.get(i));
+      }
+    } catch (NumberFormatException e) {
+      throw new SyntaxError("Invalid vector sent by the coordinator: " + value, e);
+    }
+    return vector;
+  }
+
+  /**
+   * The key of a cached vector: the query string, and the configuration of the model, which may be
+   * loaded by several cores of the node.
+   */
+  private static final class QueryVectorKey implements Accountable {
+    private static final long BASE_RAM_BYTES =
+        RamUsageEstimator.shallowSizeOfInstance(QueryVectorKey.class);
+
+    private final String model;
+    private final String text;
+
+    QueryVectorKey(SolrTextToVectorModel textToVector, String text) {
+      this.model =
+          textToVector.getName()
+              + '/'
+              + textToVector.getEmbeddingModelClassName()
+              + '/'
+              + textToVector.getParams();
+      this.text = text;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof QueryVectorKey)) return false;
+      QueryVectorKey other = (QueryVectorKey) obj;
+      return model.equals(other.model) && text.equals(other.text);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * model.hashCode() + text.hashCode();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES + RamUsageEstimator.sizeOf(model) + RamUsageEstimator.sizeOf(text);
+    }
   }
 
   private void checkVectorDimension(int inputVectorDimension, int fieldVectorDimension) {
@@ -24,33 +24,50 @@ import java.util.List;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
 import org.apache.solr.llm.textvectorisation.model.SolrTextToVectorModel;
+import org.apache.solr.llm.textvectorisation.model.TextToVectorCache;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.ConcurrentEnrichmentUpdateProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class TextToVectorUpdateProcessor extends UpdateRequestProcessor {
+/**
+ * Vectorises the text of a field into another field. The documents of a batch are vectorised
+ * concurrently, in groups vectorised with a single call to the model. Texts whose vector is cached
+ * aren't vectorised again.
+ */
+class TextToVectorUpdateProcessor extends ConcurrentEnrichmentUpdateProcessor {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private IndexSchema schema;
   private final String inputField;
   private final String outputField;
   private SolrTextToVectorModel textToVector;
+  private final TextToVectorCache vectorCache;
 
+  /**
+   * @param vectorCache the cache of the vectors of the model, or null
+   * @param maxConcurrency the maximum number of concurrent calls to the model
+   * @param maxBatchSize the maximum number of texts vectorised with a single call to the model
+   */
   public TextToVectorUpdateProcessor(
       String inputField,
       String outputField,
       SolrTextToVectorModel textToVector,
+      TextToVectorCache vectorCache,
+      int maxConcurrency,
+      int maxBatchSize,
       SolrQueryRequest req,
       UpdateRequestProcessor next) {
-    super(next);
+    super(maxConcurrency, maxBatchSize, next);
     this.schema = req.getSchema();
     this.inputField = inputField;
     this.outputField = outputField;
     this.textToVector = textToVector;
+    this.vectorCache = vectorCache;
   }
 
   /**
@@ -58,32 +75,89 @@ class TextToVectorUpdateProcessor extends UpdateRequestProcessor {
    * @throws IOException If there is a low-level I/O error
    */
   @Override
-  public void processAdd(AddUpdateCommand cmd) throws IOException {
+  protected void enrich(AddUpdateCommand cmd) throws IOException {
     SolrInputDocument doc = cmd.getSolrInputDocument();
     SolrInputField inputFieldContent = doc.get(inputField);
     if (!isNullOrEmpty(inputFieldContent)) {
       try {
         String textToVectorise = inputFieldContent.getValue().toString();
-        float[] vector = textToVector.vectorise(textToVectorise);
-        List<Float> vectorAsList = new ArrayList<Float>(vector.length);
-        for (float f : vector) {
-          vectorAsList.add(f);
-        }
-        doc.addField(outputField, vectorAsList);
+        float[] vector =
+            vectorCache != null
+                ? vectorCache.vectorise(textToVectorise)
+                : textToVector.vectorise(textToVectorise);
+        addVector(doc, vector);
       } catch (RuntimeException vectorisationFailure) {
-        if (log.isErrorEnabled()) {
-          SchemaField uniqueKeyField = schema.getUniqueKeyField();
-          String uniqueKeyFieldName = uniqueKeyField.getName();
-          log.error(
-              "Could not vectorise: {} for the document with {}: {}",
-              inputField,
-              uniqueKeyFieldName,
-              doc.getFieldValue(uniqueKeyFieldName),
-              vectorisationFailure);
-        }
+        logFailure(doc, vectorisationFailure);
+      }
+    }
+  }
+
+  /**
+   * Vectorises the texts of the documents with a single call to the model, except for the ones
+   * whose vector is cached.
+   */
+  @Override
+  protected void enrich(List<AddUpdateCommand> cmds) throws IOException {
+    List<SolrInputDocument> toVectorise = new ArrayList<>(cmds.size());
+    List<String> texts = new ArrayList<>(cmds.size());
+    for (AddUpdateCommand cmd : cmds) {
+      SolrInputDocument doc = cmd.getSolrInputDocument();
+      SolrInputField inputFieldContent = doc.get(inputField);
+      if (isNullOrEmpty(inputFieldContent)) {
+        continue;
+      }
+      String textToVectorise = inputFieldContent.getValue().toString();
+      float[] cached = vectorCache != null ? vectorCache.get(textToVectorise) : null;
+      if (cached != null) {
+        addVector(doc, cached);
+      } else {
+        toVectorise.add(doc);
+        texts.add(textToVectorise);
       }
     }
-    super.processAdd(cmd);
+    if (texts.isEmpty()) {
+      return;
+    }
+
+    List<float[]> vectors;
+    try {
+      vectors =
+          texts.size() == 1
+              ? List.of(textToVector.vectorise(texts.get(0)))
+              : textToVector.vectoriseAll(texts);
+    } catch (RuntimeException vectorisationFailure) {
+      for (SolrInputDocument doc : toVectorise) {
+        logFailure(doc, vectorisationFailure);
+      }
+      return;
+    }
+    for (int i = 0; i < vectors.size(); i++) {
+      if (vectorCache != null) {
+        vectorCache.put(texts.get(i), vectors.get(i));
+      }
+      addVector(toVectorise.get(i), vectors.get(i));
+    }
+  }
+
+  private void addVector(SolrInputDocument doc, float[] vector) {
+    List<Float> vectorAsList = new ArrayList<Float>(vector.length);
+    for (float f : vector) {
+      vectorAsList.add(f);
+    }
+    doc.addField(outputField, vectorAsList);
+  }
+
+  private void logFailure(SolrInputDocument doc, RuntimeException vectorisationFailure) {
+    if (log.isErrorEnabled()) {
+      SchemaField uniqueKeyField = schema.getUniqueKeyField();
+      String uniqueKeyFieldName = uniqueKeyField.getName();
+      log.error(
+          "Could not vectorise: {} for the document with {}: {}",
+          inputField,
+          uniqueKeyFieldName,
+          doc.getFieldValue(uniqueKeyFieldName),
+          vectorisationFailure);
+    }
   }
 
   protected boolean isNullOrEmpty(SolrInputField inputFieldContent) {
@@ -22,6 +22,7 @@ import org.apache.solr.common.params.RequiredSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.llm.textvectorisation.model.SolrTextToVectorModel;
+import org.apache.solr.llm.textvectorisation.model.TextToVectorCache;
 import org.apache.solr.llm.textvectorisation.store.rest.ManagedTextToVectorModelStore;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
@@ -29,6 +30,7 @@ import org.apache.solr.schema.DenseVectorField;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.update.processor.ConcurrentEnrichmentUpdateProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
 
@@ -42,20 +44,36 @@ import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
  *   &lt;str name=&quot;inputField&quot;&gt;textualField&lt;/str&gt;
  *   &lt;str name=&quot;outputField&quot;&gt;vectorField&lt;/str&gt;
  *   &lt;str name=&quot;model&quot;&gt;textToVectorModel&lt;/str&gt;
+ *   &lt;int name=&quot;maxBatchSize&quot;&gt;16&lt;/int&gt;
+ *   &lt;int name=&quot;maxConcurrency&quot;&gt;16&lt;/int&gt;
+ *   &lt;int name=&quot;vectorCacheSize&quot;&gt;10000&lt;/int&gt;
  * &lt;/processor&gt;
  * </pre>
  *
- * *
+ * <p>The documents of the requests whose loader passes them on in batches, e.g. javabin, are
+ * vectorised with one call to the model per <code>maxBatchSize</code> documents (16 by default),
+ * up to <code>maxConcurrency</code> calls at a time. With a <code>vectorCacheSize</code> (none by
+ * default), the vectors of the latest texts are cached, so that the texts of the documents
+ * reindexed unchanged aren't vectorised again.
  */
 public class TextToVectorUpdateProcessorFactory extends UpdateRequestProcessorFactory {
   private static final String INPUT_FIELD_PARAM = "inputField";
   private static final String OUTPUT_FIELD_PARAM = "outputField";
   private static final String MODEL_NAME = "model";
+  private static final String MAX_BATCH_SIZE_PARAM = "maxBatchSize";
+  private static final String MAX_CONCURRENCY_PARAM = "maxConcurrency";
+  private static final String VECTOR_CACHE_SIZE_PARAM = "vectorCacheSize";
+  private static final int DEFAULT_MAX_BATCH_SIZE = 16;
 
   private String inputField;
   private String outputField;
   private String modelName;
+  private int maxBatchSize;
+  private int maxConcurrency;
+  private int vectorCacheSize;
   private SolrParams params;
+  // the cache of the vectors of the model, recreated when the model is replaced in the store
+  private volatile TextToVectorCache vectorCache;
 
   @Override
   public void init(final NamedList<?> args) {
@@ -64,6 +82,11 @@ public class TextToVectorUpdateProcessorFactory extends UpdateRequestProcessorFa
     inputField = required.get(INPUT_FIELD_PARAM);
     outputField = required.get(OUTPUT_FIELD_PARAM);
     modelName = required.get(MODEL_NAME);
+    maxBatchSize = params.getInt(MAX_BATCH_SIZE_PARAM, DEFAULT_MAX_BATCH_SIZE);
+    maxConcurrency =
+        params.getInt(
+            MAX_CONCURRENCY_PARAM, ConcurrentEnrichmentUpdateProcessor.DEFAULT_MAX_CONCURRENCY);
+    vectorCacheSize = params.getInt(VECTOR_CACHE_SIZE_PARAM, 0);
   }
 
   @Override
@@ -94,7 +117,27 @@ public class TextToVectorUpdateProcessorFactory extends UpdateRequestProcessorFa
               + ManagedTextToVectorModelStore.REST_END_POINT);
     }
 
-    return new TextToVectorUpdateProcessor(inputField, outputField, textToVector, req, next);
+    return new TextToVectorUpdateProcessor(
+        inputField,
+        outputField,
+        textToVector,
+        getVectorCache(textToVector),
+        maxConcurrency,
+        maxBatchSize,
+        req,
+        next);
+  }
+
+  private TextToVectorCache getVectorCache(SolrTextToVectorModel textToVector) {
+    if (vectorCacheSize <= 0) {
+      return null;
+    }
+    TextToVectorCache cache = vectorCache;
+    if (cache == null || cache.getModel() != textToVector) {
+      cache = new TextToVectorCache(textToVector, vectorCacheSize);
+      vectorCache = cache;
+    }
+    return cache;
   }
 
   protected void assertIsDenseVectorField(SchemaField schemaField) {
@@ -22,8 +22,12 @@ import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.output.Response;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DummyEmbeddingModel implements EmbeddingModel {
+  /** The number of texts embedded one at a time, by all the instances. */
+  public static final AtomicInteger EMBED_CALLS = new AtomicInteger();
+
   final float[] embedding;
 
   public DummyEmbeddingModel(float[] embedding) {
@@ -32,19 +36,25 @@ public class DummyEmbeddingModel implements EmbeddingModel {
 
   @Override
   public Response<Embedding> embed(String text) {
+    EMBED_CALLS.incrementAndGet();
     Embedding dummy = new Embedding(embedding);
     return new Response<Embedding>(dummy);
   }
 
   @Override
   public Response<Embedding> embed(TextSegment textSegment) {
+    EMBED_CALLS.incrementAndGet();
     Embedding dummy = new Embedding(embedding);
     return new Response<Embedding>(dummy);
   }
 
   @Override
   public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
-    return null;
+    List<Embedding> dummies = new ArrayList<>(textSegments.size());
+    for (int i = 0; i < textSegments.size(); i++) {
+      dummies.add(new Embedding(embedding));
+    }
+    return new Response<List<Embedding>>(dummies);
   }
 
   @Override
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.llm.textvectorisation.model;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.output.Response;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.solr.SolrTestCase;
+import org.junit.Test;
+
+public class TextToVectorCacheTest extends SolrTestCase {
+
+  @Test
+  public void vectorise_sameText_shouldCallTheModelOnce() {
+    AtomicInteger calls = new AtomicInteger();
+    DummyEmbeddingModel embeddingModel =
+        new DummyEmbeddingModel(new float[] {1, 2, 3, 4}) {
+          @Override
+          public Response<Embedding> embed(String text) {
+            calls.incrementAndGet();
+            return super.embed(text);
+          }
+        };
+    SolrTextToVectorModel model = new SolrTextToVectorModel("dummy", embeddingModel, null);
+    TextToVectorCache cache = new TextToVectorCache(model, 10);
+
+    assertNull(cache.get("hello"));
+    assertArrayEquals(new float[] {1, 2, 3, 4}, cache.vectorise("hello"), 0f);
+    assertArrayEquals(new float[] {1, 2, 3, 4}, cache.vectorise("hello"), 0f);
+    assertEquals(1, calls.get());
+    assertNotNull(cache.get("hello"));
+
+    cache.vectorise("world");
+    assertEquals(2, calls.get());
+
+    cache.put("answer", new float[] {0, 0, 4, 2});
+    assertArrayEquals(new float[] {0, 0, 4, 2}, cache.vectorise("answer"), 0f);
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void vectoriseAll_shouldReturnAVectorPerText() {
+    SolrTextToVectorModel model =
+        new SolrTextToVectorModel("dummy", new DummyEmbeddingModel(new float[] {8, 7, 6, 5}), null);
+
+    List<float[]> vectors = model.vectoriseAll(List.of("hello", "world", "answer"));
+    assertEquals(3, vectors.size());
+    for (float[] vector : vectors) {
+      assertArrayEquals(new float[] {8, 7, 6, 5}, vector, 0f);
+    }
+  }
+}
@@ -16,9 +16,20 @@
  */
 package org.apache.solr.llm.textvectorisation.search;
 
+import com.codahale.metrics.Counting;
 import java.util.Arrays;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrInfoBean;
 import org.apache.solr.llm.TestLlmBase;
+import org.apache.solr.llm.textvectorisation.model.DummyEmbeddingModel;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.QParser;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -127,6 +138,97 @@ public class TextToVectorQParserTest extends TestLlmBase {
         "/error/code==400");
   }
 
+  @Test
+  public void vectorSentByTheCoordinator_shouldBeSearched() throws Exception {
+    final String solrQuery = "{!knn_text_to_vector model=dummy-1 f=vector topK=5}hello world";
+    final SolrQuery query = new SolrQuery();
+    query.setQuery(solrQuery);
+    query.add("fl", "id");
+    query.add(TextToVectorQParserPlugin.vectorParamName("dummy-1", "hello world"), "1.5,2.5");
+
+    // the vector sent is searched rather than the one of the model, of a different dimension
+    assertJQ(
+        "/query" + query.toQueryString(),
+        "/error/msg=='incorrect vector dimension. The vector value has size 2 while it is expected a vector with size 4'",
+        "/error/code==400");
+  }
+
+  @Test
+  public void repeatedQuery_shouldBeVectorisedOnce() throws Exception {
+    // query strings of their own, as the vectors are cached by the node for all the tests
+    final SolrQuery query = new SolrQuery();
+    query.setQuery("{!knn_text_to_vector model=dummy-1 f=vector topK=5}repeated query");
+    query.add("fl", "id");
+
+    final int callsBefore = DummyEmbeddingModel.EMBED_CALLS.get();
+    final long hitsBefore = metricCount("vectorCacheHits");
+    final long missesBefore = metricCount("vectorCacheMisses");
+    final long vectorisedBefore = metricCount("vectoriseTimes");
+    for (int i = 0; i < 3; i++) {
+      assertJQ(
+          "/query" + query.toQueryString(), "/response/numFound==5]", "/response/docs/[0]/id=='1'");
+    }
+    assertEquals(1, DummyEmbeddingModel.EMBED_CALLS.get() - callsBefore);
+    assertEquals(2, metricCount("vectorCacheHits") - hitsBefore);
+    assertEquals(1, metricCount("vectorCacheMisses") - missesBefore);
+    assertEquals(1, metricCount("vectoriseTimes") - vectorisedBefore);
+
+    query.setQuery("{!knn_text_to_vector model=dummy-1 f=vector topK=5}another repeated query");
+    assertJQ("/query" + query.toQueryString(), "/response/numFound==5]");
+    assertEquals(2, DummyEmbeddingModel.EMBED_CALLS.get() - callsBefore);
+    assertEquals(2, metricCount("vectorCacheHits") - hitsBefore);
+    assertEquals(2, metricCount("vectorCacheMisses") - missesBefore);
+  }
+
+  @Test
+  public void distributedQuery_shouldSendTheVectorToTheShards() throws Exception {
+    final String queryString = "distributed query";
+    final String vectorParam = TextToVectorQParserPlugin.vectorParamName("dummy-1", queryString);
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set(CommonParams.Q, "{!knn_text_to_vector model=dummy-1 f=vector topK=5}" + queryString);
+    params.set(ShardParams.SHARDS, "shard1,shard2");
+
+    try (SolrCore core = getJetty().getCoreContainer().getCore(COLLECTION)) {
+      final int callsBefore = DummyEmbeddingModel.EMBED_CALLS.get();
+      final ModifiableSolrParams shardParams;
+      try (SolrQueryRequest req = new LocalSolrQueryRequest(core, params)) {
+        QParser.getParser(req.getParams().get(CommonParams.Q), req).getQuery();
+        // the coordinator adds the vector to the params of the request, sent to the shards
+        assertEquals("1.0,2.0,3.0,4.0", req.getParams().get(vectorParam));
+        shardParams = new ModifiableSolrParams(req.getParams());
+      }
+      assertEquals(1, DummyEmbeddingModel.EMBED_CALLS.get() - callsBefore);
+
+      shardParams.remove(ShardParams.SHARDS);
+      shardParams.set(ShardParams.IS_SHARD, true);
+      final long hitsBefore = metricCount("vectorCacheHits");
+      final long missesBefore = metricCount("vectorCacheMisses");
+      try (SolrQueryRequest req = new LocalSolrQueryRequest(core, shardParams)) {
+        QParser.getParser(req.getParams().get(CommonParams.Q), req).getQuery();
+      }
+      // the shards search the vector sent, without even looking it up in the cache
+      assertEquals(1, DummyEmbeddingModel.EMBED_CALLS.get() - callsBefore);
+      assertEquals(hitsBefore, metricCount("vectorCacheHits"));
+      assertEquals(missesBefore, metricCount("vectorCacheMisses"));
+    }
+  }
+
+  @Test
+  public void nonDistributedQuery_shouldNotAddTheVectorParam() throws Exception {
+    final String queryString = "non distributed query";
+    final ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set(CommonParams.Q, "{!knn_text_to_vector model=dummy-1 f=vector topK=5}" + queryString);
+    params.set(ShardParams.SHARDS, "shard1,shard2");
+    params.set(CommonParams.DISTRIB, false);
+
+    try (SolrCore core = getJetty().getCoreContainer().getCore(COLLECTION);
+        SolrQueryRequest req = new LocalSolrQueryRequest(core, params)) {
+      QParser.getParser(req.getParams().get(CommonParams.Q), req).getQuery();
+      assertNull(
+          req.getParams().get(TextToVectorQParserPlugin.vectorParamName("dummy-1", queryString)));
+    }
+  }
+
   @Test
   public void incorrectVectorToSearchDimension_shouldThrowException() throws Exception {
     final String solrQuery =
@@ -389,4 +491,17 @@ public class TextToVectorQParserTest extends TestLlmBase {
         "/response/docs/[2]/id=='3'",
         "/response/docs/[3]/id=='9'");
   }
+
+  private static long metricCount(String name) {
+    final String metricName =
+        SolrMetricManager.mkName(
+            name,
+            SolrInfoBean.Category.QUERY.toString(),
+            TextToVectorQParserPlugin.class.getName());
+    try (SolrCore core = getJetty().getCoreContainer().getCore(COLLECTION)) {
+      return ((Counting)
+              core.getSolrMetricsContext().getMetricRegistry().getMetrics().get(metricName))
+          .getCount();
+    }
+  }
 }
@@ -66,6 +66,39 @@ public class TextToVectorUpdateProcessorTest extends TestLlmBase {
     restTestHarness.delete(ManagedTextToVectorModelStore.REST_END_POINT + "/dummy-1"); // clean up
   }
 
+  @Test
+  public void processAddBatch_severalDocuments_shouldVectoriseEachInputField() throws Exception {
+    loadModel("dummy-model.json"); // preparation
+
+    UpdateRequest req = new UpdateRequest();
+    req.add(sdoc("id", "99", "_text_", "Vegeta is the saiyan prince."));
+    req.add(sdoc("id", "98", "_text_", ""));
+    req.add(sdoc("id", "97", "_text_", "Kakaroth is a saiyan grown up on planet Earth."));
+    req.add(sdoc("id", "96", "_text_", "Vegeta is the saiyan prince."));
+    req.add(sdoc("id", "95", "_text_", "Gohan is the son of Kakaroth."));
+    req.setParam("update.chain", "textToVector");
+    solrClientTestRule.getSolrClient("collection1").request(req);
+    assertU(commit());
+
+    final SolrQuery query = new SolrQuery();
+    query.setQuery("*:*");
+    query.add("fl", "id,vector");
+    query.add("sort", "id desc");
+
+    assertJQ(
+        "/query" + query.toQueryString(),
+        "/response/numFound==5]",
+        "/response/docs/[0]/vector==[1.0, 2.0, 3.0, 4.0]",
+        "!/response/docs/[1]/vector==", // no vector field for the document 98
+        "/response/docs/[2]/vector==[1.0, 2.0, 3.0, 4.0]",
+        "/response/docs/[3]/vector==[1.0, 2.0, 3.0, 4.0]",
+        "/response/docs/[4]/vector==[1.0, 2.0, 3.0, 4.0]");
+
+    assertU(delQ("id:(95 96 97)")); // clean up
+    assertU(commit());
+    restTestHarness.delete(ManagedTextToVectorModelStore.REST_END_POINT + "/dummy-1");
+  }
+
   /*
   This test looks for the 'dummy-1' model, but such model is not loaded, the model store is empty, so the update fails
    */
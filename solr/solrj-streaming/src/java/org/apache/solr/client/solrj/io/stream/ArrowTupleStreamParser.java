@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.common.params.StreamParams;
+import org.apache.solr.common.util.ArrowStreamReader;
+
+/**
+ * Parses the tuples of a <code>wt=arrow</code> response, one row of the Arrow stream at a time.
+ * Values have the types of the JSON parser: integers are Longs, floating point numbers are Doubles
+ * and dates are ISO-8601 strings.
+ *
+ * <p>The map returned by {@link #next()} is reused by the following call, the {@link
+ * org.apache.solr.client.solrj.io.Tuple} created from it copies its entries.
+ */
+public class ArrowTupleStreamParser implements TupleStreamParser {
+  private final ArrowStreamReader reader;
+  private final Map<String, Object> row = new HashMap<>();
+  private int rowCount;
+  private int current;
+  private boolean errorReported;
+
+  public ArrowTupleStreamParser(InputStream is) {
+    this.reader = new ArrowStreamReader(is);
+  }
+
+  @Override
+  public Map<String, Object> next() throws IOException {
+    while (current >= rowCount) {
+      if (!reader.nextBatch()) {
+        if (reader.getError() != null && !errorReported) {
+          errorReported = true;
+          row.clear();
+          row.put(StreamParams.EXCEPTION, reader.getError());
+          return row;
+        }
+        return null;
+      }
+      rowCount = reader.getRowCount();
+      current = 0;
+    }
+
+    row.clear();
+    for (int column = 0; column < reader.getColumnCount(); column++) {
+      if (reader.isNull(column, current)) {
+        continue;
+      }
+      String name = reader.getColumnName(column);
+      if (reader.isMultiValued(column)) {
+        List<?> values = (List<?>) reader.getValue(column, current);
+        List<Object> converted = new ArrayList<>(values.size());
+        for (Object value : values) {
+          converted.add(toJsonType(value));
+        }
+        row.put(name, converted);
+      } else {
+        switch (reader.getColumnType(column)) {
+          case INT:
+          case LONG:
+            row.put(name, reader.getLong(column, current));
+            break;
+          case FLOAT:
+          case DOUBLE:
+            row.put(name, reader.getDouble(column, current));
+            break;
+          case TIMESTAMP:
+            row.put(name, Instant.ofEpochMilli(reader.getLong(column, current)).toString());
+            break;
+          default:
+            row.put(name, reader.getValue(column, current));
+        }
+      }
+    }
+    current++;
+    return row;
+  }
+
+  private static Object toJsonType(Object value) {
+    if (value instanceof Integer) {
+      return ((Integer) value).longValue();
+    } else if (value instanceof Float) {
+      return ((Float) value).doubleValue();
+    } else if (value instanceof Date) {
+      return ((Date) value).toInstant().toString();
+    }
+    return value;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
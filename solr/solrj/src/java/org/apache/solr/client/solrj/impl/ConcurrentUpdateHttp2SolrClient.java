@@ -246,11 +246,16 @@ public class ConcurrentUpdateHttp2SolrClient extends SolrClient {
                   queue.add(upd);
                   break;
                 }
-                client.send(out, upd.getRequest(), upd.getCollection());
-                out.flush();
-
-                notifyQueueAndRunnersIfEmptyQueue();
-                upd = queue.poll(pollQueueTimeMillis, TimeUnit.MILLISECONDS);
+                client.write(out, upd.getRequest(), upd.getCollection());
+
+                // the updates queued already are packed with this one, the stream is only flushed
+                // once they are all sent rather than after each update
+                upd = queue.isEmpty() ? null : queue.poll(0, TimeUnit.MILLISECONDS);
+                if (upd == null) {
+                  out.flush();
+                  notifyQueueAndRunnersIfEmptyQueue();
+                  upd = queue.poll(pollQueueTimeMillis, TimeUnit.MILLISECONDS);
+                }
               }
               responseListener = out.getResponseListener();
             }
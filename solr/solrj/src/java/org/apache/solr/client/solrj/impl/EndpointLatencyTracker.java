@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.impl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an exponentially weighted moving average (EWMA) of the response times of the endpoints an
+ * {@link LBHttp2SolrClient} sends requests to, and the number of requests outstanding to each of
+ * them. From those it scores the expected latency of a new request to an endpoint, which {@link
+ * org.apache.solr.client.solrj.routing.AdaptiveReplicaListTransformer} uses to pick replicas.
+ *
+ * <p>Endpoints are identified by their URL, including the core if any, as returned by {@link
+ * LBSolrClient.Endpoint#getUrl()}. A trailing slash is ignored, so that the core URLs of replicas
+ * identify the same endpoints.
+ */
+public class EndpointLatencyTracker {
+
+  /** The default weight of a new response time in the moving average. */
+  public static final double DEFAULT_ALPHA = 0.3;
+
+  /** The default time after which the response time of an idle endpoint has half its weight. */
+  public static final long DEFAULT_DECAY_HALF_LIFE_MS = 10_000;
+
+  /**
+   * The time after which an endpoint without requests is forgotten, in half-lives of its response
+   * time, when its score is practically 0 anyway.
+   */
+  private static final int IDLE_EXPIRY_HALF_LIVES = 64;
+
+  private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+  private final double alpha;
+  private final long decayHalfLifeNanos;
+  private final long idleExpiryNanos;
+  private volatile long lastPruneNanos = System.nanoTime();
+
+  public EndpointLatencyTracker() {
+    this(DEFAULT_ALPHA, DEFAULT_DECAY_HALF_LIFE_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param alpha the weight of a new response time in the moving average, between 0 and 1
+   * @param decayHalfLife the time after which the response time of an idle endpoint has half its
+   *     weight, so that an endpoint that was once slow gets requests again. Endpoints idle for 64
+   *     times as long, or for an hour if this is 0, are forgotten, such as those no longer live.
+   * @param unit the unit of <code>decayHalfLife</code>
+   */
+  public EndpointLatencyTracker(double alpha, long decayHalfLife, TimeUnit unit) {
+    if (alpha <= 0 || alpha > 1) {
+      throw new IllegalArgumentException("alpha must be in (0, 1], got " + alpha);
+    }
+    this.alpha = alpha;
+    this.decayHalfLifeNanos = unit.toNanos(decayHalfLife);
+    this.idleExpiryNanos =
+        decayHalfLifeNanos > 0
+            ? IDLE_EXPIRY_HALF_LIVES * decayHalfLifeNanos
+            : TimeUnit.HOURS.toNanos(1);
+  }
+
+  private static class Stats {
+    int outstanding;
+    double ewmaNanos = -1;
+    long lastUpdateNanos;
+    // when the endpoint last went from no request outstanding to one
+    long busySinceNanos;
+    long lastActiveNanos;
+
+    synchronized void started(long now) {
+      if (outstanding++ <= 0) {
+        busySinceNanos = now;
+      }
+      lastActiveNanos = now;
+    }
+
+    synchronized void completed(double sampleNanos, double alpha, long now) {
+      outstanding--;
+      ewmaNanos = ewmaNanos < 0 ? sampleNanos : alpha * sampleNanos + (1 - alpha) * ewmaNanos;
+      lastUpdateNanos = now;
+      lastActiveNanos = now;
+    }
+
+    synchronized void abandoned(long now) {
+      outstanding--;
+      lastActiveNanos = now;
+    }
+
+    synchronized boolean idle(long now, long expiryNanos) {
+      return outstanding <= 0 && now - lastActiveNanos > expiryNanos;
+    }
+  }
+
+  /** Records the start of a request to the endpoint. */
+  public void requestStarted(String url) {
+    long now = System.nanoTime();
+    // updated within compute so that prune() can't drop the endpoint meanwhile
+    stats.compute(
+        LBSolrClient.normalize(url),
+        (u, s) -> {
+          if (s == null) {
+            s = new Stats();
+          }
+          s.started(now);
+          return s;
+        });
+    if (now - lastPruneNanos > idleExpiryNanos / 4) {
+      lastPruneNanos = now;
+      prune(now);
+    }
+  }
+
+  /**
+   * Records the completion of a request to the endpoint.
+   *
+   * @param elapsedNanos the response time
+   * @param failed whether the request failed, a failure counting as twice the response time
+   */
+  public void requestCompleted(String url, long elapsedNanos, boolean failed) {
+    double sample = failed ? 2d * elapsedNanos : elapsedNanos;
+    long now = System.nanoTime();
+    stats.computeIfPresent(
+        LBSolrClient.normalize(url),
+        (u, s) -> {
+          s.completed(sample, alpha, now);
+          return s;
+        });
+  }
+
+  /** Records a request to the endpoint whose outcome doesn't tell its latency, e.g. cancelled. */
+  public void requestAbandoned(String url) {
+    long now = System.nanoTime();
+    stats.computeIfPresent(
+        LBSolrClient.normalize(url),
+        (u, s) -> {
+          s.abandoned(now);
+          return s;
+        });
+  }
+
+  /**
+   * Scores the expected latency in nanoseconds of a new request to the endpoint, times the number
+   * of requests it would have outstanding. The expected latency is its average response time,
+   * decayed while the endpoint is idle. While requests are outstanding it doesn't decay, and it is
+   * at least the time the oldest of them has been waiting, so that an endpoint that stopped
+   * responding doesn't attract requests. An endpoint that received no request yet scores 0, so
+   * that it is tried.
+   */
+  public double score(String url) {
+    Stats s = stats.get(LBSolrClient.normalize(url));
+    if (s == null) {
+      return 0;
+    }
+    double ewma;
+    long lastUpdate;
+    long busySince;
+    int outstanding;
+    synchronized (s) {
+      ewma = s.ewmaNanos;
+      lastUpdate = s.lastUpdateNanos;
+      busySince = s.busySinceNanos;
+      outstanding = s.outstanding;
+    }
+    long now = System.nanoTime();
+    if (outstanding > 0) {
+      // the oldest request outstanding started when the endpoint got busy or before it responded
+      long oldestStart = ewma < 0 ? busySince : Math.max(busySince, lastUpdate);
+      return Math.max(ewma, now - oldestStart) * (1 + outstanding);
+    }
+    if (ewma < 0) {
+      return 0;
+    }
+    long age = now - lastUpdate;
+    if (age > 0 && decayHalfLifeNanos > 0) {
+      ewma *= Math.pow(0.5, (double) age / decayHalfLifeNanos);
+    }
+    return ewma;
+  }
+
+  /** Forgets the endpoints idle for long, such as those no longer live. */
+  private void prune(long now) {
+    for (String url : stats.keySet()) {
+      stats.computeIfPresent(url, (u, s) -> s.idle(now, idleExpiryNanos) ? null : s);
+    }
+  }
+
+  /** Returns the number of endpoints tracked. */
+  public int size() {
+    return stats.size();
+  }
+
+  /** Returns the number of requests outstanding to the endpoint. */
+  public int getOutstanding(String url) {
+    Stats s = stats.get(LBSolrClient.normalize(url));
+    if (s == null) {
+      return 0;
+    }
+    synchronized (s) {
+      return Math.max(0, s.outstanding);
+    }
+  }
+
+  /** Returns the score of each endpoint requests were sent to, in milliseconds. */
+  public Map<String, Double> getScores() {
+    Map<String, Double> scores = new TreeMap<>();
+    for (String url : stats.keySet()) {
+      scores.put(url, score(url) / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    return scores;
+  }
+}
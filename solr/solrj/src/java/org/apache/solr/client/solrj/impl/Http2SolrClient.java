@@ -16,10 +16,12 @@
  */
 package org.apache.solr.client.solrj.impl;
 
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.InvocationTargetException;
 import java.net.ConnectException;
@@ -329,10 +331,17 @@ public class Http2SolrClient extends HttpSolrClientBase {
     this.authenticationStore.updateAuthenticationStore(authenticationStore);
   }
 
+  /**
+   * The body of a streamed update request. What is written is buffered, so that several requests
+   * can be sent in one chunk, until it is flushed or the buffer is full.
+   */
   public static class OutStream implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private final String origCollection;
     private final SolrParams origParams;
     private final OutputStreamRequestContent content;
+    private final OutputStream out;
     private final InputStreamResponseListener responseListener;
     private final boolean isXml;
 
@@ -345,6 +354,7 @@ public class Http2SolrClient extends HttpSolrClientBase {
       this.origCollection = origCollection;
       this.origParams = origParams;
       this.content = content;
+      this.out = new BufferedOutputStream(content.getOutputStream(), BUFFER_SIZE);
       this.responseListener = responseListener;
       this.isXml = isXml;
     }
@@ -355,11 +365,11 @@ public class Http2SolrClient extends HttpSolrClientBase {
     }
 
     public void write(byte[] b) throws IOException {
-      this.content.getOutputStream().write(b);
+      this.out.write(b);
     }
 
     public void flush() throws IOException {
-      this.content.getOutputStream().flush();
+      this.out.flush();
     }
 
     @Override
@@ -367,7 +377,7 @@ public class Http2SolrClient extends HttpSolrClientBase {
       if (isXml) {
         write("</stream>".getBytes(FALLBACK_CHARSET));
       }
-      this.content.getOutputStream().close();
+      this.out.close();
     }
 
     // TODO this class should be hidden
@@ -406,8 +416,18 @@ public class Http2SolrClient extends HttpSolrClientBase {
   }
 
   public void send(OutStream outStream, SolrRequest<?> req, String collection) throws IOException {
+    write(outStream, req, collection);
+    outStream.flush();
+  }
+
+  /**
+   * Writes the request to the stream like {@link #send(OutStream, SolrRequest, String)}, without
+   * flushing it, so that requests sent in a row can be packed together: call {@link
+   * OutStream#flush()} once the requests available are written.
+   */
+  void write(OutStream outStream, SolrRequest<?> req, String collection) throws IOException {
     assert outStream.belongToThisStream(req, collection);
-    this.requestWriter.write(req, outStream.content.getOutputStream());
+    this.requestWriter.write(req, outStream.out);
     if (outStream.isXml) {
       // check for commit or optimize
       SolrParams params = req.getParams();
@@ -428,7 +448,6 @@ public class Http2SolrClient extends HttpSolrClientBase {
         }
       }
     }
-    outStream.flush();
   }
 
   @Override
@@ -802,6 +821,11 @@ public class Http2SolrClient extends HttpSolrClientBase {
     return httpClient.isFollowRedirects();
   }
 
+  @Override
+  protected ExecutorService getExecutor() {
+    return executor;
+  }
+
   @Override
   protected boolean processorAcceptsMimeType(
       Collection<String> processorSupportedContentTypes, String mimeType) {
@@ -138,8 +138,17 @@ public class HttpJdkSolrClient extends HttpSolrClientBase {
   @Override
   public CompletableFuture<NamedList<Object>> requestAsync(
       final SolrRequest<?> solrRequest, String collection) {
+    return requestAsyncWithBaseUrl(null, solrRequest, collection);
+  }
+
+  /**
+   * Execute an asynchronous request like {@link #requestAsync(SolrRequest, String)}, to the given
+   * base URL rather than the one of this client.
+   */
+  protected CompletableFuture<NamedList<Object>> requestAsyncWithBaseUrl(
+      String baseUrl, final SolrRequest<?> solrRequest, String collection) {
     try {
-      PreparedRequest pReq = prepareRequest(solrRequest, collection, null);
+      PreparedRequest pReq = prepareRequest(solrRequest, collection, baseUrl);
       return httpClient
           .sendAsync(pReq.reqb.build(), HttpResponse.BodyHandlers.ofInputStream())
           .thenApply(
@@ -505,6 +514,11 @@ public class HttpJdkSolrClient extends HttpSolrClientBase {
     return httpClient.followRedirects() != HttpClient.Redirect.NEVER;
   }
 
+  @Override
+  protected ExecutorService getExecutor() {
+    return executor;
+  }
+
   @Override
   protected boolean processorAcceptsMimeType(
       Collection<String> processorSupportedContentTypes, String mimeType) {
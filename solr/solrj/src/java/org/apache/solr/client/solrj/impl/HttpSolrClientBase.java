@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import org.apache.solr.client.solrj.ResponseParser;
@@ -358,6 +359,9 @@ public abstract class HttpSolrClientBase extends SolrClient {
 
   protected abstract void updateDefaultMimeTypeForParser();
 
+  /** The executor that processes the responses of the asynchronous requests. */
+  protected abstract ExecutorService getExecutor();
+
   /**
    * Execute an asynchronous request against a Solr server for a given collection.
    *
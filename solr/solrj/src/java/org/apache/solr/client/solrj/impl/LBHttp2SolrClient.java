@@ -20,10 +20,14 @@ import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.solr.client.solrj.ResponseParser;
 import org.apache.solr.client.solrj.SolrClient;
@@ -95,6 +99,7 @@ import org.slf4j.MDC;
 public class LBHttp2SolrClient<C extends HttpSolrClientBase> extends LBSolrClient {
 
   protected final C solrClient;
+  private final EndpointLatencyTracker latencyTracker;
 
   @SuppressWarnings("unchecked")
   private LBHttp2SolrClient(Builder<?> builder) {
@@ -102,6 +107,12 @@ public class LBHttp2SolrClient<C extends HttpSolrClientBase> extends LBSolrClien
     this.solrClient = (C) builder.solrClient;
     this.aliveCheckIntervalMillis = builder.aliveCheckIntervalMillis;
     this.defaultCollection = builder.defaultCollection;
+    this.latencyTracker = builder.latencyTracker;
+  }
+
+  /** Returns the tracker of the latencies of the endpoints, or null if they aren't tracked. */
+  public EndpointLatencyTracker getLatencyTracker() {
+    return latencyTracker;
   }
 
   @Override
@@ -194,6 +205,97 @@ public class LBHttp2SolrClient<C extends HttpSolrClientBase> extends LBSolrClien
     return apiFuture;
   }
 
+  /**
+   * Execute an asynchronous request like {@link #requestAsync(Req)}, hedging against a slow
+   * endpoint: if the request hasn't completed after <code>hedgeDelay</code>, the same request is
+   * sent to the next endpoint of the list too. The first successful response is used, and the
+   * other request is cancelled. The returned future only fails if both requests fail.
+   *
+   * <p>Only query requests to more than one endpoint are hedged, since the request may be
+   * processed twice.
+   *
+   * @param req the wrapped request to perform
+   * @param hedgeDelay how long to wait for a response before sending the hedged request; zero or
+   *     less disables hedging
+   * @param unit the unit of <code>hedgeDelay</code>
+   * @return a {@link CompletableFuture} that tracks the progress of the async requests.
+   */
+  public CompletableFuture<Rsp> requestAsync(Req req, long hedgeDelay, TimeUnit unit) {
+    List<Endpoint> endpoints = req.getEndpoints();
+    if (hedgeDelay <= 0
+        || endpoints.size() < 2
+        || req.request.getRequestType() != SolrRequestType.QUERY) {
+      return requestAsync(req);
+    }
+
+    CompletableFuture<Rsp> apiFuture = new CompletableFuture<>();
+    // the number of requests that haven't failed yet, the hedged request not being sent once
+    // both failed
+    AtomicInteger outstanding = new AtomicInteger(1);
+    AtomicReference<CompletableFuture<Rsp>> hedgedFuture = new AtomicReference<>();
+    CompletableFuture<Rsp> primaryFuture = requestAsync(req);
+    primaryFuture.whenComplete((rsp, t) -> onHedgedResponse(apiFuture, outstanding, rsp, t));
+
+    // sent from the executor of the HTTP client rather than the common pool, with the MDC of the
+    // caller; the task does nothing if there is an outcome by then
+    Map<String, String> submitterContext = MDC.getCopyOfContextMap();
+    CompletableFuture.delayedExecutor(hedgeDelay, unit, solrClient.getExecutor())
+        .execute(
+            () -> {
+              if (apiFuture.isDone() || outstanding.getAndUpdate(n -> n == 0 ? 0 : n + 1) == 0) {
+                return;
+              }
+              Map<String, String> threadContext = MDC.getCopyOfContextMap();
+              setContextMap(submitterContext);
+              try {
+                // start with the next endpoint, the first one being the slow one
+                List<Endpoint> hedgedEndpoints = new ArrayList<>(endpoints.size());
+                hedgedEndpoints.addAll(endpoints.subList(1, endpoints.size()));
+                hedgedEndpoints.add(endpoints.get(0));
+                Req hedgedReq = new Req(req.request, hedgedEndpoints, req.getNumServersToTry());
+                hedgedReq.setNumDeadServersToTry(req.getNumDeadServersToTry());
+                CompletableFuture<Rsp> future = requestAsync(hedgedReq);
+                hedgedFuture.set(future);
+                future.whenComplete((rsp, t) -> onHedgedResponse(apiFuture, outstanding, rsp, t));
+                if (apiFuture.isDone()) {
+                  // completed while we were sending the hedged request
+                  future.cancel(true);
+                }
+              } finally {
+                setContextMap(threadContext);
+              }
+            });
+
+    // once there is an outcome, including the cancellation by the caller, the requests still in
+    // flight are of no use
+    apiFuture.whenComplete(
+        (rsp, t) -> {
+          primaryFuture.cancel(true);
+          CompletableFuture<Rsp> future = hedgedFuture.get();
+          if (future != null) {
+            future.cancel(true);
+          }
+        });
+    return apiFuture;
+  }
+
+  private static void onHedgedResponse(
+      CompletableFuture<Rsp> apiFuture, AtomicInteger outstanding, Rsp rsp, Throwable t) {
+    if (t == null) {
+      apiFuture.complete(rsp);
+    } else if (outstanding.decrementAndGet() == 0) {
+      apiFuture.completeExceptionally(t);
+    }
+  }
+
+  private static void setContextMap(Map<String, String> context) {
+    if (context != null && !context.isEmpty()) {
+      MDC.setContextMap(context);
+    } else {
+      MDC.clear();
+    }
+  }
+
   private interface RetryListener {
     void onSuccess(Rsp rsp);
 
@@ -209,12 +311,32 @@ public class LBHttp2SolrClient<C extends HttpSolrClientBase> extends LBSolrClien
       RetryListener listener) {
     String baseUrl = endpoint.toString();
     rsp.server = baseUrl;
-    final var client = (Http2SolrClient) getClient(endpoint);
+    final var client = getClient(endpoint);
+    final long startNanos = System.nanoTime();
+    if (latencyTracker != null) {
+      latencyTracker.requestStarted(baseUrl);
+    }
     try {
       CompletableFuture<NamedList<Object>> future =
-          client.requestWithBaseUrl(baseUrl, (c) -> c.requestAsync(req.getRequest()));
+          client instanceof HttpJdkSolrClient
+              ? ((HttpJdkSolrClient) client)
+                  .requestAsyncWithBaseUrl(baseUrl, req.getRequest(), null)
+              : ((Http2SolrClient) client)
+                  .requestWithBaseUrl(baseUrl, (c) -> c.requestAsync(req.getRequest()));
       future.whenComplete(
           (result, throwable) -> {
+            if (latencyTracker != null) {
+              if (future.isCancelled()) {
+                latencyTracker.requestAbandoned(baseUrl);
+              } else {
+                // an invalid request doesn't tell anything about the endpoint
+                boolean failed =
+                    throwable != null
+                        && !(throwable instanceof SolrException
+                            && ((SolrException) throwable).code() < 500);
+                latencyTracker.requestCompleted(baseUrl, System.nanoTime() - startNanos, failed);
+              }
+            }
             if (!future.isCompletedExceptionally()) {
               onSuccessfulRequest(result, endpoint, rsp, isZombie, listener);
             } else if (!future.isCancelled()) {
@@ -296,6 +418,7 @@ public class LBHttp2SolrClient<C extends HttpSolrClientBase> extends LBSolrClien
     private long aliveCheckIntervalMillis =
         TimeUnit.MILLISECONDS.convert(60, TimeUnit.SECONDS); // 1 minute between checks
     protected String defaultCollection;
+    private EndpointLatencyTracker latencyTracker;
 
     public Builder(C solrClient, Endpoint... endpoints) {
       this.solrClient = solrClient;
@@ -323,6 +446,15 @@ public class LBHttp2SolrClient<C extends HttpSolrClientBase> extends LBSolrClien
       return this;
     }
 
+    /**
+     * Tracks the response times and outstanding requests of the endpoints of the async requests,
+     * for adaptive replica selection.
+     */
+    public Builder<C> withLatencyTracker(EndpointLatencyTracker latencyTracker) {
+      this.latencyTracker = latencyTracker;
+      return this;
+    }
+
     public LBHttp2SolrClient<C> build() {
       return new LBHttp2SolrClient<C>(this);
     }
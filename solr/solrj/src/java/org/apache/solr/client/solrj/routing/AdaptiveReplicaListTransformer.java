@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.apache.solr.client.solrj.impl.EndpointLatencyTracker;
+import org.apache.solr.common.cloud.Replica;
+
+/**
+ * Orders replicas by their expected latency, as scored by an {@link EndpointLatencyTracker} from
+ * their recent response times and outstanding requests.
+ *
+ * <p>The first replica is the better of two replicas picked at random ("power of two choices"),
+ * rather than the best one, so that the replicas that look the fastest aren't all sent the requests
+ * at once. The other replicas follow in the order of their scores, for failover.
+ */
+public class AdaptiveReplicaListTransformer implements ReplicaListTransformer {
+
+  private final EndpointLatencyTracker latencyTracker;
+  private final Random r;
+
+  public AdaptiveReplicaListTransformer(EndpointLatencyTracker latencyTracker, Random r) {
+    this.latencyTracker = latencyTracker;
+    this.r = r;
+  }
+
+  @Override
+  public <T> void transform(List<T> choices) {
+    int size = choices.size();
+    if (size < 2) {
+      return;
+    }
+    double[] scores = new double[size];
+    for (int i = 0; i < size; i++) {
+      scores[i] = latencyTracker.score(getUrl(choices.get(i)));
+    }
+
+    int a = r.nextInt(size);
+    int b = r.nextInt(size - 1);
+    if (b >= a) {
+      b++;
+    }
+    final int first = scores[b] < scores[a] ? b : a;
+
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(
+        order,
+        Comparator.<Integer>comparingInt(i -> i == first ? 0 : 1)
+            .thenComparingDouble(i -> scores[i]));
+    List<T> copy = new ArrayList<>(choices);
+    for (int i = 0; i < size; i++) {
+      choices.set(i, copy.get(order[i]));
+    }
+  }
+
+  private static String getUrl(Object choice) {
+    if (choice instanceof Replica) {
+      return ((Replica) choice).getCoreUrl();
+    } else if (choice instanceof String) {
+      return (String) choice;
+    }
+    throw new IllegalArgumentException("can't handle type " + choice.getClass());
+  }
+}
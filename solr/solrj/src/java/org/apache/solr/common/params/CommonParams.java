@@ -329,6 +329,8 @@ public interface CommonParams {
 
   String JSON = "json";
 
+  String ARROW = "arrow";
+
   String PATH = "path";
 
   String NAME = "name";
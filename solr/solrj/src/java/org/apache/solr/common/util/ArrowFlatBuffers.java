@@ -0,0 +1,386 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The subset of the <a href="https://flatbuffers.dev/">FlatBuffers</a> encoding needed for the
+ * metadata of Arrow IPC messages, shared by {@link ArrowStreamWriter} and {@link
+ * ArrowStreamReader}. Field ids and enum values are the ones of Arrow's <code>Schema.fbs</code> and
+ * <code>Message.fbs</code>.
+ */
+final class ArrowFlatBuffers {
+
+  /** Marks the start of an encapsulated message. */
+  static final int CONTINUATION = 0xFFFFFFFF;
+
+  static final short METADATA_V5 = 4;
+
+  // MessageHeader union
+  static final byte HEADER_SCHEMA = 1;
+  static final byte HEADER_DICTIONARY_BATCH = 2;
+  static final byte HEADER_RECORD_BATCH = 3;
+
+  // Type union
+  static final byte TYPE_INT = 2;
+  static final byte TYPE_FLOATING_POINT = 3;
+  static final byte TYPE_UTF8 = 5;
+  static final byte TYPE_BOOL = 6;
+  static final byte TYPE_TIMESTAMP = 10;
+  static final byte TYPE_LIST = 12;
+
+  static final short PRECISION_SINGLE = 1;
+  static final short PRECISION_DOUBLE = 2;
+
+  static final short TIME_UNIT_SECOND = 0;
+  static final short TIME_UNIT_MILLISECOND = 1;
+  static final short TIME_UNIT_MICROSECOND = 2;
+  static final short TIME_UNIT_NANOSECOND = 3;
+
+  // Message table
+  static final int MESSAGE_VERSION = 0;
+  static final int MESSAGE_HEADER_TYPE = 1;
+  static final int MESSAGE_HEADER = 2;
+  static final int MESSAGE_BODY_LENGTH = 3;
+  static final int MESSAGE_CUSTOM_METADATA = 4;
+
+  // Schema table
+  static final int SCHEMA_FIELDS = 1;
+  static final int SCHEMA_CUSTOM_METADATA = 2;
+
+  // Field table
+  static final int FIELD_NAME = 0;
+  static final int FIELD_NULLABLE = 1;
+  static final int FIELD_TYPE_TYPE = 2;
+  static final int FIELD_TYPE = 3;
+  static final int FIELD_DICTIONARY = 4;
+  static final int FIELD_CHILDREN = 5;
+
+  // RecordBatch table
+  static final int BATCH_LENGTH = 0;
+  static final int BATCH_NODES = 1;
+  static final int BATCH_BUFFERS = 2;
+  static final int BATCH_COMPRESSION = 3;
+
+  /** Size of the FieldNode and Buffer structs of record batches. */
+  static final int STRUCT_SIZE = 16;
+
+  static final VarHandle SHORT =
+      MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+  static final VarHandle INT =
+      MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+  static final VarHandle LONG =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  static final VarHandle FLOAT =
+      MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.LITTLE_ENDIAN);
+  static final VarHandle DOUBLE =
+      MethodHandles.byteArrayViewVarHandle(double[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private ArrowFlatBuffers() {}
+
+  /** Rounds up to a multiple of 8, the alignment of Arrow messages and buffers. */
+  static int align8(int size) {
+    return (size + 7) & ~7;
+  }
+
+  static long align8(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  /** A table to serialize; references are to strings, tables, or vectors of those. */
+  static final class Table {
+    private final List<Field> fields = new ArrayList<>();
+
+    Table addByte(int id, byte value) {
+      fields.add(new Field(id, 1, value, null));
+      return this;
+    }
+
+    Table addBool(int id, boolean value) {
+      return addByte(id, value ? (byte) 1 : (byte) 0);
+    }
+
+    Table addShort(int id, short value) {
+      fields.add(new Field(id, 2, value, null));
+      return this;
+    }
+
+    Table addInt(int id, int value) {
+      fields.add(new Field(id, 4, value, null));
+      return this;
+    }
+
+    Table addLong(int id, long value) {
+      fields.add(new Field(id, 8, value, null));
+      return this;
+    }
+
+    /**
+     * @param ref a String, a Table, a List of Tables or a {@link StructVector}
+     */
+    Table addRef(int id, Object ref) {
+      fields.add(new Field(id, 4, 0, ref));
+      return this;
+    }
+
+    /** A vector of KeyValue tables. */
+    Table addMetadata(int id, Map<String, String> metadata) {
+      List<Table> entries = new ArrayList<>(metadata.size());
+      for (Map.Entry<String, String> entry : metadata.entrySet()) {
+        entries.add(new Table().addRef(0, entry.getKey()).addRef(1, entry.getValue()));
+      }
+      return addRef(id, entries);
+    }
+  }
+
+  private static final class Field {
+    final int id;
+    final int size;
+    final long value;
+    final Object ref;
+
+    Field(int id, int size, long value, Object ref) {
+      this.id = id;
+      this.size = size;
+      this.value = value;
+      this.ref = ref;
+    }
+  }
+
+  /** A vector of structs aligned on 8 bytes, already laid out in little endian. */
+  static final class StructVector {
+    final byte[] bytes;
+    final int count;
+
+    StructVector(byte[] bytes, int count) {
+      this.bytes = bytes;
+      this.count = count;
+    }
+  }
+
+  /**
+   * Serializes tables front to back: a table is written after its vtable and before the objects it
+   * references, so that all references are forward offsets as FlatBuffers requires. Everything is
+   * aligned relative to the start of the buffer.
+   */
+  static final class Builder {
+    private byte[] buf = new byte[1024];
+    private int pos;
+
+    /**
+     * Serializes the root table, reusing the internal buffer.
+     *
+     * @return the size of the serialized buffer, see {@link #bytes()}
+     */
+    int finish(Table root) {
+      Arrays.fill(buf, 0, pos, (byte) 0);
+      pos = 4;
+      int table = writeTable(root);
+      INT.set(buf, 0, table);
+      return pos;
+    }
+
+    byte[] bytes() {
+      return buf;
+    }
+
+    private void ensure(int extra) {
+      if (pos + extra > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+      }
+    }
+
+    private void align(int alignment) {
+      int padding = (alignment - (pos & (alignment - 1))) & (alignment - 1);
+      ensure(padding);
+      pos += padding;
+    }
+
+    private int writeTable(Table table) {
+      int numFields = 0;
+      for (Field field : table.fields) {
+        numFields = Math.max(numFields, field.id + 1);
+      }
+      align(2);
+      int vtable = pos;
+      int vtableSize = 4 + 2 * numFields;
+      ensure(vtableSize);
+      pos += vtableSize;
+
+      align(4);
+      int start = pos;
+      ensure(4);
+      pos += 4;
+      // larger fields first, to limit the padding
+      List<Field> fields = new ArrayList<>(table.fields);
+      fields.sort(Comparator.comparingInt((Field f) -> f.size).reversed());
+      int[] refSlots = new int[fields.size()];
+      for (int i = 0; i < fields.size(); i++) {
+        Field field = fields.get(i);
+        align(field.size);
+        ensure(field.size);
+        SHORT.set(buf, vtable + 4 + 2 * field.id, (short) (pos - start));
+        if (field.ref != null) {
+          refSlots[i] = pos;
+        } else if (field.size == 1) {
+          buf[pos] = (byte) field.value;
+        } else if (field.size == 2) {
+          SHORT.set(buf, pos, (short) field.value);
+        } else if (field.size == 4) {
+          INT.set(buf, pos, (int) field.value);
+        } else {
+          LONG.set(buf, pos, field.value);
+        }
+        pos += field.size;
+      }
+      SHORT.set(buf, vtable, (short) vtableSize);
+      SHORT.set(buf, vtable + 2, (short) (pos - start));
+      // the vtable precedes the table
+      INT.set(buf, start, start - vtable);
+
+      for (int i = 0; i < fields.size(); i++) {
+        Field field = fields.get(i);
+        if (field.ref != null) {
+          int target = writeRef(field.ref);
+          INT.set(buf, refSlots[i], target - refSlots[i]);
+        }
+      }
+      return start;
+    }
+
+    private int writeRef(Object value) {
+      if (value instanceof Table) {
+        return writeTable((Table) value);
+      } else if (value instanceof String) {
+        byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+        align(4);
+        int start = pos;
+        ensure(4 + bytes.length + 1);
+        INT.set(buf, pos, bytes.length);
+        System.arraycopy(bytes, 0, buf, pos + 4, bytes.length);
+        // followed by a null terminator
+        pos += 4 + bytes.length + 1;
+        return start;
+      } else if (value instanceof StructVector) {
+        StructVector vector = (StructVector) value;
+        // the structs themselves, after the length, must be aligned on 8 bytes
+        align(8);
+        ensure(4);
+        pos += 4;
+        int start = pos;
+        ensure(4 + vector.bytes.length);
+        INT.set(buf, pos, vector.count);
+        System.arraycopy(vector.bytes, 0, buf, pos + 4, vector.bytes.length);
+        pos += 4 + vector.bytes.length;
+        return start;
+      } else {
+        @SuppressWarnings("unchecked")
+        List<Table> tables = (List<Table>) value;
+        align(4);
+        int start = pos;
+        ensure(4 + 4 * tables.size());
+        INT.set(buf, pos, tables.size());
+        pos += 4 + 4 * tables.size();
+        for (int i = 0; i < tables.size(); i++) {
+          int slot = start + 4 + 4 * i;
+          int target = writeTable(tables.get(i));
+          INT.set(buf, slot, target - slot);
+        }
+        return start;
+      }
+    }
+  }
+
+  /** Position of the root table of a buffer. */
+  static int root(byte[] buf) {
+    return (int) INT.get(buf, 0);
+  }
+
+  /**
+   * @return the position of the field within the table, or 0 if absent
+   */
+  static int field(byte[] buf, int table, int id) {
+    int vtable = table - (int) INT.get(buf, table);
+    int vtableSize = Short.toUnsignedInt((short) SHORT.get(buf, vtable));
+    int entry = 4 + 2 * id;
+    if (entry >= vtableSize) {
+      return 0;
+    }
+    int offset = Short.toUnsignedInt((short) SHORT.get(buf, vtable + entry));
+    return offset == 0 ? 0 : table + offset;
+  }
+
+  static byte getByte(byte[] buf, int table, int id, byte defaultValue) {
+    int pos = field(buf, table, id);
+    return pos == 0 ? defaultValue : buf[pos];
+  }
+
+  static short getShort(byte[] buf, int table, int id, short defaultValue) {
+    int pos = field(buf, table, id);
+    return pos == 0 ? defaultValue : (short) SHORT.get(buf, pos);
+  }
+
+  static int getInt(byte[] buf, int table, int id, int defaultValue) {
+    int pos = field(buf, table, id);
+    return pos == 0 ? defaultValue : (int) INT.get(buf, pos);
+  }
+
+  static long getLong(byte[] buf, int table, int id, long defaultValue) {
+    int pos = field(buf, table, id);
+    return pos == 0 ? defaultValue : (long) LONG.get(buf, pos);
+  }
+
+  /**
+   * @return the position of the referenced table, string or vector, or 0 if absent
+   */
+  static int getRef(byte[] buf, int table, int id) {
+    int pos = field(buf, table, id);
+    return pos == 0 ? 0 : pos + (int) INT.get(buf, pos);
+  }
+
+  static String getString(byte[] buf, int table, int id) {
+    int pos = getRef(buf, table, id);
+    if (pos == 0) {
+      return null;
+    }
+    return new String(buf, pos + 4, (int) INT.get(buf, pos), StandardCharsets.UTF_8);
+  }
+
+  static int vectorLength(byte[] buf, int vector) {
+    return vector == 0 ? 0 : (int) INT.get(buf, vector);
+  }
+
+  /** Position of the i-th table of a vector of tables. */
+  static int vectorTable(byte[] buf, int vector, int i) {
+    int slot = vector + 4 + 4 * i;
+    return slot + (int) INT.get(buf, slot);
+  }
+
+  /** Position of the i-th struct of a vector of structs. */
+  static int vectorStruct(int vector, int i, int structSize) {
+    return vector + 4 + structSize * i;
+  }
+}
@@ -0,0 +1,452 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.common.util.ArrowStreamWriter.Type;
+
+/**
+ * Reads the <a
+ * href="https://arrow.apache.org/docs/format/Columnar.html#ipc-streaming-format">Apache Arrow IPC
+ * streaming format</a>, one record batch at a time. Values are decoded on access from the body of
+ * the current batch, whose buffer is reused across batches.
+ *
+ * <p>Supports the types written by {@link ArrowStreamWriter}, as well as 8 and 16 bit integers and
+ * timestamps in any unit, which are read as milliseconds. Dictionary encoded and compressed
+ * batches are not supported. A failure reported by the writer ends the stream, see {@link
+ * #getError()}.
+ */
+public class ArrowStreamReader implements Closeable {
+
+  private final InputStream in;
+  private final byte[] scratch = new byte[8];
+  private byte[] meta = new byte[1024];
+  private byte[] body = new byte[1024];
+  // position of the Message table of the current message in meta
+  private int message;
+  private List<Column> columns;
+  private Map<String, String> metadata;
+  private int rowCount;
+  private boolean ended;
+  private String error;
+
+  public ArrowStreamReader(InputStream in) {
+    this.in = in;
+  }
+
+  /** The custom metadata of the schema. */
+  public Map<String, String> getMetadata() throws IOException {
+    readSchema();
+    return metadata;
+  }
+
+  public int getColumnCount() throws IOException {
+    readSchema();
+    return columns.size();
+  }
+
+  public String getColumnName(int column) throws IOException {
+    readSchema();
+    return columns.get(column).name;
+  }
+
+  /** The type of the values of a column, or of the items of its lists. */
+  public Type getColumnType(int column) throws IOException {
+    readSchema();
+    Column c = columns.get(column);
+    return c.item == null ? c.type : c.item.type;
+  }
+
+  public boolean isMultiValued(int column) throws IOException {
+    readSchema();
+    return columns.get(column).item != null;
+  }
+
+  /**
+   * Reads the next record batch.
+   *
+   * @return false at the end of the stream, or if the writer reported a failure
+   */
+  public boolean nextBatch() throws IOException {
+    readSchema();
+    rowCount = 0;
+    while (!ended) {
+      byte headerType = readMessage();
+      if (headerType == ArrowFlatBuffers.HEADER_RECORD_BATCH) {
+        Map<String, String> messageMetadata =
+            readMetadata(message, ArrowFlatBuffers.MESSAGE_CUSTOM_METADATA);
+        error = messageMetadata.get(ArrowStreamWriter.ERROR_METADATA_KEY);
+        if (error != null) {
+          ended = true;
+          return false;
+        }
+        loadBatch(ArrowFlatBuffers.getRef(meta, message, ArrowFlatBuffers.MESSAGE_HEADER));
+        return true;
+      } else if (headerType == ArrowFlatBuffers.HEADER_DICTIONARY_BATCH) {
+        throw new IOException("Dictionary batches are not supported");
+      } else if (headerType != 0) {
+        throw new IOException("Unexpected message type: " + headerType);
+      }
+    }
+    return false;
+  }
+
+  /** The failure that ended the stream, as reported by the writer, or null. */
+  public String getError() {
+    return error;
+  }
+
+  /** Number of rows of the current batch. */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  public boolean isNull(int column, int row) {
+    return columns.get(column).isNull(row);
+  }
+
+  /**
+   * Returns a value of an {@link Type#INT}, {@link Type#LONG} or {@link Type#TIMESTAMP} column of
+   * the current batch, as milliseconds for timestamps, without boxing it. The value of null rows
+   * is undefined.
+   */
+  public long getLong(int column, int row) {
+    return columns.get(column).getLong(row);
+  }
+
+  /**
+   * Returns a value of a {@link Type#FLOAT} or {@link Type#DOUBLE} column of the current batch
+   * without boxing it. The value of null rows is undefined.
+   */
+  public double getDouble(int column, int row) {
+    return columns.get(column).getDouble(row);
+  }
+
+  /**
+   * Returns a value of the current batch as an Integer, Long, Float, Double, Boolean, String or
+   * Date, or a List of those for multi-valued columns.
+   */
+  public Object getValue(int column, int row) {
+    return columns.get(column).getValue(row);
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private void readSchema() throws IOException {
+    if (columns != null) {
+      return;
+    }
+    byte headerType = readMessage();
+    if (headerType != ArrowFlatBuffers.HEADER_SCHEMA) {
+      throw new IOException("The stream does not start with a schema: " + headerType);
+    }
+    int schema = ArrowFlatBuffers.getRef(meta, message, ArrowFlatBuffers.MESSAGE_HEADER);
+    if (ArrowFlatBuffers.getShort(meta, schema, 0, (short) 0) != 0) {
+      throw new IOException("Big endian streams are not supported");
+    }
+    int fields = ArrowFlatBuffers.getRef(meta, schema, ArrowFlatBuffers.SCHEMA_FIELDS);
+    List<Column> columns = new ArrayList<>();
+    for (int i = 0; i < ArrowFlatBuffers.vectorLength(meta, fields); i++) {
+      columns.add(readField(ArrowFlatBuffers.vectorTable(meta, fields, i)));
+    }
+    this.metadata = readMetadata(schema, ArrowFlatBuffers.SCHEMA_CUSTOM_METADATA);
+    this.columns = columns;
+  }
+
+  private Column readField(int field) throws IOException {
+    String name = ArrowFlatBuffers.getString(meta, field, ArrowFlatBuffers.FIELD_NAME);
+    if (ArrowFlatBuffers.getRef(meta, field, ArrowFlatBuffers.FIELD_DICTIONARY) != 0) {
+      throw new IOException("Dictionary encoded fields are not supported: " + name);
+    }
+    byte typeType =
+        ArrowFlatBuffers.getByte(meta, field, ArrowFlatBuffers.FIELD_TYPE_TYPE, (byte) 0);
+    int type = ArrowFlatBuffers.getRef(meta, field, ArrowFlatBuffers.FIELD_TYPE);
+    switch (typeType) {
+      case ArrowFlatBuffers.TYPE_INT:
+        {
+          // bitWidth
+          int bitWidth = ArrowFlatBuffers.getInt(meta, type, 0, 0);
+          if (bitWidth != 8 && bitWidth != 16 && bitWidth != 32 && bitWidth != 64) {
+            throw new IOException("Unsupported integer width " + bitWidth + " of " + name);
+          }
+          return new Column(name, bitWidth == 64 ? Type.LONG : Type.INT, bitWidth / 8, 1, null);
+        }
+      case ArrowFlatBuffers.TYPE_FLOATING_POINT:
+        {
+          short precision = ArrowFlatBuffers.getShort(meta, type, 0, (short) 0);
+          if (precision == ArrowFlatBuffers.PRECISION_SINGLE) {
+            return new Column(name, Type.FLOAT, 4, 1, null);
+          } else if (precision == ArrowFlatBuffers.PRECISION_DOUBLE) {
+            return new Column(name, Type.DOUBLE, 8, 1, null);
+          }
+          throw new IOException("Unsupported floating point precision of " + name);
+        }
+      case ArrowFlatBuffers.TYPE_BOOL:
+        return new Column(name, Type.BOOLEAN, 0, 1, null);
+      case ArrowFlatBuffers.TYPE_UTF8:
+        return new Column(name, Type.UTF8, 0, 1, null);
+      case ArrowFlatBuffers.TYPE_TIMESTAMP:
+        {
+          short unit = ArrowFlatBuffers.getShort(meta, type, 0, (short) 0);
+          long unitsPerMilli;
+          if (unit == ArrowFlatBuffers.TIME_UNIT_SECOND) {
+            // negative for a multiplier
+            unitsPerMilli = -1000;
+          } else if (unit == ArrowFlatBuffers.TIME_UNIT_MILLISECOND) {
+            unitsPerMilli = 1;
+          } else if (unit == ArrowFlatBuffers.TIME_UNIT_MICROSECOND) {
+            unitsPerMilli = 1000;
+          } else {
+            unitsPerMilli = 1000_000;
+          }
+          return new Column(name, Type.TIMESTAMP, 8, unitsPerMilli, null);
+        }
+      case ArrowFlatBuffers.TYPE_LIST:
+        {
+          int children = ArrowFlatBuffers.getRef(meta, field, ArrowFlatBuffers.FIELD_CHILDREN);
+          if (ArrowFlatBuffers.vectorLength(meta, children) != 1) {
+            throw new IOException("Invalid list field " + name);
+          }
+          Column item = readField(ArrowFlatBuffers.vectorTable(meta, children, 0));
+          if (item.item != null) {
+            throw new IOException("Nested lists are not supported: " + name);
+          }
+          return new Column(name, null, 0, 1, item);
+        }
+      default:
+        throw new IOException("Unsupported type " + typeType + " of " + name);
+    }
+  }
+
+  private Map<String, String> readMetadata(int table, int id) {
+    int vector = ArrowFlatBuffers.getRef(meta, table, id);
+    int length = ArrowFlatBuffers.vectorLength(meta, vector);
+    if (length == 0) {
+      return Collections.emptyMap();
+    }
+    Map<String, String> metadata = new LinkedHashMap<>();
+    for (int i = 0; i < length; i++) {
+      int keyValue = ArrowFlatBuffers.vectorTable(meta, vector, i);
+      metadata.put(
+          ArrowFlatBuffers.getString(meta, keyValue, 0),
+          ArrowFlatBuffers.getString(meta, keyValue, 1));
+    }
+    return metadata;
+  }
+
+  private void loadBatch(int batch) throws IOException {
+    if (ArrowFlatBuffers.getRef(meta, batch, ArrowFlatBuffers.BATCH_COMPRESSION) != 0) {
+      throw new IOException("Compressed record batches are not supported");
+    }
+    long length = ArrowFlatBuffers.getLong(meta, batch, ArrowFlatBuffers.BATCH_LENGTH, 0);
+    int nodes = ArrowFlatBuffers.getRef(meta, batch, ArrowFlatBuffers.BATCH_NODES);
+    int buffers = ArrowFlatBuffers.getRef(meta, batch, ArrowFlatBuffers.BATCH_BUFFERS);
+    int[] cursor = new int[2];
+    for (Column column : columns) {
+      column.load(nodes, buffers, cursor);
+    }
+    if (cursor[0] > ArrowFlatBuffers.vectorLength(meta, nodes)
+        || cursor[1] > ArrowFlatBuffers.vectorLength(meta, buffers)) {
+      throw new IOException("The record batch does not match the schema");
+    }
+    rowCount = (int) length;
+  }
+
+  /**
+   * Reads the metadata and the body of the next message.
+   *
+   * @return the type of the header of the message, or 0 at the end of the stream
+   */
+  private byte readMessage() throws IOException {
+    if (!readInt(true)) {
+      ended = true;
+      return 0;
+    }
+    int length = (int) ArrowFlatBuffers.INT.get(scratch, 0);
+    if (length == ArrowFlatBuffers.CONTINUATION) {
+      readInt(false);
+      length = (int) ArrowFlatBuffers.INT.get(scratch, 0);
+    }
+    if (length == 0) {
+      ended = true;
+      return 0;
+    }
+    if (meta.length < length) {
+      meta = new byte[Math.max(length, meta.length * 2)];
+    }
+    readFully(meta, length);
+    message = ArrowFlatBuffers.root(meta);
+    long bodyLength =
+        ArrowFlatBuffers.getLong(meta, message, ArrowFlatBuffers.MESSAGE_BODY_LENGTH, 0);
+    if (bodyLength > Integer.MAX_VALUE - 8) {
+      throw new IOException("Message body too large: " + bodyLength);
+    }
+    if (body.length < bodyLength) {
+      body = new byte[(int) Math.max(bodyLength, body.length * 2L)];
+    }
+    readFully(body, (int) bodyLength);
+    return ArrowFlatBuffers.getByte(meta, message, ArrowFlatBuffers.MESSAGE_HEADER_TYPE, (byte) 0);
+  }
+
+  /**
+   * Reads a little endian int into the scratch buffer.
+   *
+   * @return false if the stream ended before it, when allowed
+   */
+  private boolean readInt(boolean eofAllowed) throws IOException {
+    int n = in.readNBytes(scratch, 0, 4);
+    if (n == 0 && eofAllowed) {
+      return false;
+    } else if (n < 4) {
+      throw new EOFException("Truncated Arrow stream");
+    }
+    return true;
+  }
+
+  private void readFully(byte[] buf, int length) throws IOException {
+    if (in.readNBytes(buf, 0, length) < length) {
+      throw new EOFException("Truncated Arrow stream");
+    }
+  }
+
+  /** The buffers of a column in the current batch. */
+  private final class Column {
+    final String name;
+    // null for lists
+    final Type type;
+    final int width;
+    // timestamps only, negative for seconds
+    final long unitsPerMilli;
+    final Column item;
+    long nullCount;
+    int validity;
+    int offsets;
+    int data;
+
+    Column(String name, Type type, int width, long unitsPerMilli, Column item) {
+      this.name = name;
+      this.type = type;
+      this.width = width;
+      this.unitsPerMilli = unitsPerMilli;
+      this.item = item;
+    }
+
+    /** Locates the buffers of the column, the cursor being the indexes of the next node/buffer. */
+    void load(int nodes, int buffers, int[] cursor) throws IOException {
+      if (cursor[0] >= ArrowFlatBuffers.vectorLength(meta, nodes)) {
+        throw new IOException("The record batch does not match the schema");
+      }
+      int node = ArrowFlatBuffers.vectorStruct(nodes, cursor[0]++, ArrowFlatBuffers.STRUCT_SIZE);
+      nullCount = (long) ArrowFlatBuffers.LONG.get(meta, node + 8);
+      validity = nextBuffer(buffers, cursor);
+      if (item != null || type == Type.UTF8) {
+        offsets = nextBuffer(buffers, cursor);
+      }
+      if (item != null) {
+        item.load(nodes, buffers, cursor);
+      } else {
+        data = nextBuffer(buffers, cursor);
+      }
+    }
+
+    private int nextBuffer(int buffers, int[] cursor) throws IOException {
+      if (cursor[1] >= ArrowFlatBuffers.vectorLength(meta, buffers)) {
+        throw new IOException("The record batch does not match the schema");
+      }
+      int buffer =
+          ArrowFlatBuffers.vectorStruct(buffers, cursor[1]++, ArrowFlatBuffers.STRUCT_SIZE);
+      return (int) (long) ArrowFlatBuffers.LONG.get(meta, buffer);
+    }
+
+    boolean isNull(int row) {
+      return nullCount != 0 && (body[validity + (row >>> 3)] & (1 << (row & 7))) == 0;
+    }
+
+    long getLong(int row) {
+      switch (width) {
+        case 1:
+          return body[data + row];
+        case 2:
+          return (short) ArrowFlatBuffers.SHORT.get(body, data + 2 * row);
+        case 4:
+          return (int) ArrowFlatBuffers.INT.get(body, data + 4 * row);
+        default:
+          long v = (long) ArrowFlatBuffers.LONG.get(body, data + 8 * row);
+          if (type != Type.TIMESTAMP || unitsPerMilli == 1) {
+            return v;
+          }
+          return unitsPerMilli < 0 ? v * -unitsPerMilli : Math.floorDiv(v, unitsPerMilli);
+      }
+    }
+
+    double getDouble(int row) {
+      if (width == 4) {
+        return (float) ArrowFlatBuffers.FLOAT.get(body, data + 4 * row);
+      }
+      return (double) ArrowFlatBuffers.DOUBLE.get(body, data + 8 * row);
+    }
+
+    private int offset(int i) {
+      return (int) ArrowFlatBuffers.INT.get(body, offsets + 4 * i);
+    }
+
+    Object getValue(int row) {
+      if (isNull(row)) {
+        return null;
+      }
+      if (item != null) {
+        int start = offset(row);
+        int end = offset(row + 1);
+        List<Object> items = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+          items.add(item.getValue(i));
+        }
+        return items;
+      }
+      switch (type) {
+        case INT:
+          return (int) getLong(row);
+        case LONG:
+          return getLong(row);
+        case FLOAT:
+          return (float) getDouble(row);
+        case DOUBLE:
+          return getDouble(row);
+        case BOOLEAN:
+          return (body[data + (row >>> 3)] & (1 << (row & 7))) != 0;
+        case TIMESTAMP:
+          return new Date(getLong(row));
+        default:
+          int start = offset(row);
+          return new String(body, data + start, offset(row + 1) - start, StandardCharsets.UTF_8);
+      }
+    }
+  }
+}
@@ -0,0 +1,999 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import static org.apache.solr.common.util.ArrowFlatBuffers.align8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.common.IteratorWriter;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.common.params.StreamParams;
+import org.apache.solr.common.util.ArrowFlatBuffers.StructVector;
+import org.apache.solr.common.util.ArrowFlatBuffers.Table;
+
+/**
+ * Writes rows in the <a
+ * href="https://arrow.apache.org/docs/format/Columnar.html#ipc-streaming-format">Apache Arrow IPC
+ * streaming format</a>. The values of the rows are appended to columnar buffers, primitive values
+ * without boxing, and written as a record batch every <code>batchSize</code> rows.
+ *
+ * <p>The supported types are those of Solr's docValues: 32 and 64 bit integers, single and double
+ * precision floats, booleans, UTF-8 strings, millisecond timestamps, and lists of those for
+ * multi-valued fields. Other values are written as strings, base64 encoded for binary values.
+ * Since the schema precedes the first record batch, columns must either be declared with {@link
+ * #addColumn(String, Type, boolean)}, or appear in the first batch, which infers their type from
+ * their first value. Until then, empty lists are written as nulls.
+ *
+ * <p>Arrow streams can't report errors, so a failure is written as an empty record batch with an
+ * {@link #ERROR_METADATA_KEY} entry in its custom metadata, as {@link ArrowStreamReader} expects.
+ * That batch has no field nodes, so that other Arrow readers fail on it rather than returning
+ * partial results. A row with a {@link StreamParams#EXCEPTION} value, as streaming expressions
+ * produce on failure, ends the stream that way, and so does a row with a value that doesn't fit
+ * the schema: a field without a column, a value of another type than its column, or a long out of
+ * the range of an INT column. That row is left out, and the stream is finished by {@link
+ * #endRow()}, rather than the writer throwing while the response is half written.
+ *
+ * <p>This class is not thread safe.
+ */
+public class ArrowStreamWriter implements Closeable {
+
+  public static final String CONTENT_TYPE = "application/vnd.apache.arrow.stream";
+
+  /** Key of the custom metadata of the record batch reporting a failure. */
+  public static final String ERROR_METADATA_KEY = "error";
+
+  public static final int DEFAULT_BATCH_SIZE = 8192;
+
+  /** Types of the values of a column. */
+  public enum Type {
+    INT(4),
+    LONG(8),
+    FLOAT(4),
+    DOUBLE(8),
+    BOOLEAN(0),
+    UTF8(0),
+    /** Milliseconds since the epoch, in UTC. */
+    TIMESTAMP(8);
+
+    /** Size of the values in bytes, or 0 if not fixed. */
+    final int width;
+
+    Type(int width) {
+      this.width = width;
+    }
+  }
+
+  private final OutputStream out;
+  private final int batchSize;
+  private final Map<String, Column> columns = new LinkedHashMap<>();
+  private final Map<String, String> metadata = new LinkedHashMap<>();
+  private final RowWriter rowWriter = new RowWriter();
+  private final ArrowFlatBuffers.Builder builder = new ArrowFlatBuffers.Builder();
+  private final byte[] scratch = new byte[8];
+  // number of complete rows in the current batch
+  private int rows;
+  private boolean schemaWritten;
+  private boolean finished;
+  private String error;
+
+  public ArrowStreamWriter(OutputStream out) {
+    this(out, DEFAULT_BATCH_SIZE);
+  }
+
+  public ArrowStreamWriter(OutputStream out, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+    }
+    this.out = out;
+    this.batchSize = batchSize;
+  }
+
+  /** Adds an entry to the custom metadata of the schema, before the first batch is written. */
+  public ArrowStreamWriter putMetadata(String key, String value) {
+    checkSchemaNotWritten();
+    metadata.put(key, value);
+    return this;
+  }
+
+  /** Declares a column, before the first batch is written. */
+  public ArrowStreamWriter addColumn(String name, Type type, boolean multiValued) {
+    checkSchemaNotWritten();
+    Column column = columns.computeIfAbsent(name, n -> new Column(n, rows));
+    if (column.type == null) {
+      column.setType(type, multiValued);
+    } else if (column.type != type || column.multiValued != multiValued) {
+      throw new IllegalArgumentException("Column " + name + " was already added as " + column);
+    }
+    return this;
+  }
+
+  private void checkSchemaNotWritten() {
+    if (schemaWritten) {
+      throw new IllegalStateException("The schema was already written");
+    }
+  }
+
+  /**
+   * Starts a row, whose values are put with the returned writer until {@link #endRow()}. Values
+   * that are {@link IteratorWriter}s, collections or arrays are written as lists.
+   */
+  public RowWriter startRow() {
+    if (finished) {
+      throw new IllegalStateException("The stream is finished");
+    }
+    return rowWriter;
+  }
+
+  public void endRow() throws IOException {
+    if (error != null) {
+      // the partially written row is left out of the batch
+      finishWithError(error);
+      return;
+    }
+    for (Column column : columns.values()) {
+      column.endRow(rows);
+    }
+    if (++rows == batchSize) {
+      flush();
+    }
+  }
+
+  public void writeRow(MapWriter row) throws IOException {
+    row.writeMap(startRow());
+    endRow();
+  }
+
+  public boolean isFinished() {
+    return finished;
+  }
+
+  /** Writes the pending rows as a record batch, and the schema if not written yet. */
+  public void flush() throws IOException {
+    if (!schemaWritten) {
+      writeSchema();
+    }
+    if (rows > 0) {
+      writeBatch();
+      rows = 0;
+      for (Column column : columns.values()) {
+        column.reset();
+      }
+    }
+  }
+
+  /** Writes the pending rows and the end of the stream. */
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    flush();
+    writeEndOfStream();
+  }
+
+  /**
+   * Writes the pending rows, then ends the stream with a failure. The rows written so far stay
+   * readable.
+   */
+  public void finishWithError(String message) throws IOException {
+    if (finished) {
+      return;
+    }
+    flush();
+    Table batch =
+        new Table()
+            .addLong(ArrowFlatBuffers.BATCH_LENGTH, 0)
+            .addRef(ArrowFlatBuffers.BATCH_NODES, new StructVector(new byte[0], 0))
+            .addRef(ArrowFlatBuffers.BATCH_BUFFERS, new StructVector(new byte[0], 0));
+    writeMessage(
+        message(ArrowFlatBuffers.HEADER_RECORD_BATCH, batch, 0)
+            .addMetadata(
+                ArrowFlatBuffers.MESSAGE_CUSTOM_METADATA,
+                Map.of(ERROR_METADATA_KEY, String.valueOf(message))));
+    writeEndOfStream();
+  }
+
+  private void writeEndOfStream() throws IOException {
+    writeInt(ArrowFlatBuffers.CONTINUATION);
+    writeInt(0);
+    out.flush();
+    finished = true;
+  }
+
+  /** Finishes the stream if needed; the underlying stream is left open. */
+  @Override
+  public void close() throws IOException {
+    finish();
+  }
+
+  private Column column(CharSequence key) {
+    String name = key.toString();
+    Column column = columns.get(name);
+    if (column == null) {
+      if (schemaWritten) {
+        throw new IllegalArgumentException(
+            "Field "
+                + name
+                + " is not part of the schema, neither declared nor in the first record batch");
+      }
+      column = new Column(name, rows);
+      columns.put(name, column);
+    }
+    return column;
+  }
+
+  private void writeSchema() throws IOException {
+    schemaWritten = true;
+    List<Table> fields = new ArrayList<>(columns.size());
+    for (Column column : columns.values()) {
+      if (column.type == null) {
+        // only nulls so far
+        column.setType(Type.UTF8, false);
+      }
+      fields.add(field(column.name, column.type, column.multiValued));
+    }
+    Table schema = new Table().addRef(ArrowFlatBuffers.SCHEMA_FIELDS, fields);
+    if (!metadata.isEmpty()) {
+      schema.addMetadata(ArrowFlatBuffers.SCHEMA_CUSTOM_METADATA, metadata);
+    }
+    writeMessage(message(ArrowFlatBuffers.HEADER_SCHEMA, schema, 0));
+  }
+
+  private static Table field(String name, Type type, boolean multiValued) {
+    Table field =
+        new Table()
+            .addRef(ArrowFlatBuffers.FIELD_NAME, name)
+            .addBool(ArrowFlatBuffers.FIELD_NULLABLE, true);
+    if (multiValued) {
+      return field
+          .addByte(ArrowFlatBuffers.FIELD_TYPE_TYPE, ArrowFlatBuffers.TYPE_LIST)
+          .addRef(ArrowFlatBuffers.FIELD_TYPE, new Table())
+          .addRef(ArrowFlatBuffers.FIELD_CHILDREN, List.of(field("item", type, false)));
+    }
+    Table arrowType = new Table();
+    byte typeId;
+    switch (type) {
+      case INT:
+      case LONG:
+        typeId = ArrowFlatBuffers.TYPE_INT;
+        // bitWidth, is_signed
+        arrowType.addInt(0, type.width * 8).addBool(1, true);
+        break;
+      case FLOAT:
+        typeId = ArrowFlatBuffers.TYPE_FLOATING_POINT;
+        arrowType.addShort(0, ArrowFlatBuffers.PRECISION_SINGLE);
+        break;
+      case DOUBLE:
+        typeId = ArrowFlatBuffers.TYPE_FLOATING_POINT;
+        arrowType.addShort(0, ArrowFlatBuffers.PRECISION_DOUBLE);
+        break;
+      case BOOLEAN:
+        typeId = ArrowFlatBuffers.TYPE_BOOL;
+        break;
+      case TIMESTAMP:
+        typeId = ArrowFlatBuffers.TYPE_TIMESTAMP;
+        // unit, timezone
+        arrowType.addShort(0, ArrowFlatBuffers.TIME_UNIT_MILLISECOND).addRef(1, "UTC");
+        break;
+      default:
+        typeId = ArrowFlatBuffers.TYPE_UTF8;
+    }
+    return field
+        .addByte(ArrowFlatBuffers.FIELD_TYPE_TYPE, typeId)
+        .addRef(ArrowFlatBuffers.FIELD_TYPE, arrowType)
+        .addRef(ArrowFlatBuffers.FIELD_CHILDREN, List.of());
+  }
+
+  private static Table message(byte headerType, Table header, long bodyLength) {
+    return new Table()
+        .addShort(ArrowFlatBuffers.MESSAGE_VERSION, ArrowFlatBuffers.METADATA_V5)
+        .addByte(ArrowFlatBuffers.MESSAGE_HEADER_TYPE, headerType)
+        .addRef(ArrowFlatBuffers.MESSAGE_HEADER, header)
+        .addLong(ArrowFlatBuffers.MESSAGE_BODY_LENGTH, bodyLength);
+  }
+
+  /** Writes the metadata of an encapsulated message, padded so that its body is aligned. */
+  private void writeMessage(Table message) throws IOException {
+    int size = builder.finish(message);
+    int paddedSize = align8(size);
+    writeInt(ArrowFlatBuffers.CONTINUATION);
+    writeInt(paddedSize);
+    out.write(builder.bytes(), 0, size);
+    writePadding(paddedSize - size);
+  }
+
+  private void writeBatch() throws IOException {
+    List<DataBuffer> bodyBuffers = new ArrayList<>();
+    List<Integer> bodyLengths = new ArrayList<>();
+    DataBuffer nodes = new DataBuffer();
+    for (Column column : columns.values()) {
+      column.addBuffers(rows, nodes, bodyBuffers, bodyLengths);
+    }
+
+    DataBuffer buffers = new DataBuffer();
+    long offset = 0;
+    for (int length : bodyLengths) {
+      buffers.putLong(offset);
+      buffers.putLong(length);
+      offset += align8(length);
+    }
+    Table batch =
+        new Table()
+            .addLong(ArrowFlatBuffers.BATCH_LENGTH, rows)
+            .addRef(
+                ArrowFlatBuffers.BATCH_NODES,
+                new StructVector(
+                    Arrays.copyOf(nodes.bytes, nodes.size),
+                    nodes.size / ArrowFlatBuffers.STRUCT_SIZE))
+            .addRef(
+                ArrowFlatBuffers.BATCH_BUFFERS,
+                new StructVector(Arrays.copyOf(buffers.bytes, buffers.size), bodyLengths.size()));
+    writeMessage(message(ArrowFlatBuffers.HEADER_RECORD_BATCH, batch, offset));
+
+    for (int i = 0; i < bodyBuffers.size(); i++) {
+      int length = bodyLengths.get(i);
+      if (length > 0) {
+        out.write(bodyBuffers.get(i).bytes, 0, length);
+      }
+      writePadding(align8(length) - length);
+    }
+  }
+
+  private void writeInt(int v) throws IOException {
+    ArrowFlatBuffers.INT.set(scratch, 0, v);
+    out.write(scratch, 0, 4);
+  }
+
+  private void writePadding(int length) throws IOException {
+    Arrays.fill(scratch, (byte) 0);
+    out.write(scratch, 0, length);
+  }
+
+  /** The values of a column in the current batch. */
+  private static final class Column {
+    final String name;
+    Type type;
+    boolean multiValued;
+    // rows of the batch with a value or a null, may include the current row
+    int length;
+    int nullCount;
+    final DataBuffer validity = new DataBuffer();
+    // the values, or the items of the lists when multi-valued
+    Values values;
+    // multi-valued only: where the items of each row start
+    DataBuffer listOffsets;
+    // whether the items of a list are being written to this column
+    boolean inList;
+
+    Column(String name, int rows) {
+      this.name = name;
+      // null in the previous rows of the batch
+      for (int i = 0; i < rows; i++) {
+        validity.setBit(i, false);
+      }
+      length = rows;
+      nullCount = rows;
+    }
+
+    void setType(Type type, boolean multiValued) {
+      this.type = type;
+      this.multiValued = multiValued;
+      values = new Values(type);
+      if (multiValued) {
+        listOffsets = new DataBuffer();
+        for (int i = 0; i <= length; i++) {
+          listOffsets.putInt(0);
+        }
+      } else {
+        for (int i = 0; i < length; i++) {
+          values.addNull();
+        }
+      }
+    }
+
+    /** Prepares for a value of the current row, given the type inferred from that value. */
+    private Values startValue(int rows, Type inferred) {
+      if (type == null) {
+        setType(inferred, inList);
+      }
+      if (length == rows) {
+        // first value of the row
+        validity.setBit(length++, true);
+      } else if (!multiValued) {
+        throw new IllegalArgumentException("Multiple values for single-valued field " + name);
+      }
+      return values;
+    }
+
+    void addInt(int rows, int v) {
+      Values values = startValue(rows, Type.INT);
+      switch (values.type) {
+        case INT:
+          values.data.putInt(v);
+          break;
+        case LONG:
+        case TIMESTAMP:
+          values.data.putLong(v);
+          break;
+        case FLOAT:
+          values.data.putFloat(v);
+          break;
+        case DOUBLE:
+          values.data.putDouble(v);
+          break;
+        case UTF8:
+          values.putString(Integer.toString(v));
+          return;
+        default:
+          throw mismatch(Type.INT);
+      }
+      values.count++;
+    }
+
+    void addLong(int rows, long v) {
+      Values values = startValue(rows, Type.LONG);
+      switch (values.type) {
+        case INT:
+          if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "Value " + v + " is out of the range of the INT column " + name);
+          }
+          values.data.putInt((int) v);
+          break;
+        case LONG:
+        case TIMESTAMP:
+          values.data.putLong(v);
+          break;
+        case FLOAT:
+          values.data.putFloat(v);
+          break;
+        case DOUBLE:
+          values.data.putDouble(v);
+          break;
+        case UTF8:
+          values.putString(Long.toString(v));
+          return;
+        default:
+          throw mismatch(Type.LONG);
+      }
+      values.count++;
+    }
+
+    void addFloat(int rows, float v) {
+      Values values = startValue(rows, Type.FLOAT);
+      switch (values.type) {
+        case FLOAT:
+          values.data.putFloat(v);
+          break;
+        case DOUBLE:
+          values.data.putDouble(v);
+          break;
+        case UTF8:
+          values.putString(Float.toString(v));
+          return;
+        default:
+          throw mismatch(Type.FLOAT);
+      }
+      values.count++;
+    }
+
+    void addDouble(int rows, double v) {
+      Values values = startValue(rows, Type.DOUBLE);
+      switch (values.type) {
+        case FLOAT:
+          values.data.putFloat((float) v);
+          break;
+        case DOUBLE:
+          values.data.putDouble(v);
+          break;
+        case UTF8:
+          values.putString(Double.toString(v));
+          return;
+        default:
+          throw mismatch(Type.DOUBLE);
+      }
+      values.count++;
+    }
+
+    void addBoolean(int rows, boolean v) {
+      Values values = startValue(rows, Type.BOOLEAN);
+      switch (values.type) {
+        case BOOLEAN:
+          values.data.setBit(values.count, v);
+          break;
+        case UTF8:
+          values.putString(Boolean.toString(v));
+          return;
+        default:
+          throw mismatch(Type.BOOLEAN);
+      }
+      values.count++;
+    }
+
+    void addDate(int rows, Date v) {
+      Values values = startValue(rows, Type.TIMESTAMP);
+      switch (values.type) {
+        case LONG:
+        case TIMESTAMP:
+          values.data.putLong(v.getTime());
+          break;
+        case UTF8:
+          values.putString(v.toInstant().toString());
+          return;
+        default:
+          throw mismatch(Type.TIMESTAMP);
+      }
+      values.count++;
+    }
+
+    void addString(int rows, CharSequence v) {
+      Values values = startValue(rows, Type.UTF8);
+      if (values.type != Type.UTF8) {
+        throw mismatch(Type.UTF8);
+      }
+      values.putString(v);
+    }
+
+    void startList(int rows) {
+      inList = true;
+      if (multiValued && length == rows) {
+        // an empty list is not null, lists with items are started by their first item
+        validity.setBit(length++, true);
+      }
+    }
+
+    void endList() {
+      inList = false;
+    }
+
+    private IllegalArgumentException mismatch(Type actual) {
+      return new IllegalArgumentException(
+          "Can't write a " + actual + " value to " + this + " column " + name);
+    }
+
+    void endRow(int rows) {
+      if (length == rows) {
+        validity.setBit(length++, false);
+        nullCount++;
+        if (values != null && !multiValued) {
+          values.addNull();
+        }
+      }
+      if (multiValued) {
+        listOffsets.putInt(values.count);
+      }
+    }
+
+    void reset() {
+      length = 0;
+      nullCount = 0;
+      validity.clear();
+      values.reset();
+      if (multiValued) {
+        listOffsets.clear();
+        listOffsets.putInt(0);
+      }
+    }
+
+    /** Adds the field nodes and buffers of the first rows, in the order of the Arrow layout. */
+    void addBuffers(int rows, DataBuffer nodes, List<DataBuffer> buffers, List<Integer> lengths) {
+      nodes.putLong(rows);
+      nodes.putLong(nullCount);
+      buffers.add(validity);
+      lengths.add(nullCount == 0 ? 0 : (rows + 7) >>> 3);
+      int count = rows;
+      if (multiValued) {
+        buffers.add(listOffsets);
+        lengths.add((rows + 1) * 4);
+        count = listOffsets.getInt(rows * 4);
+        // the items are never null
+        nodes.putLong(count);
+        nodes.putLong(0);
+        buffers.add(null);
+        lengths.add(0);
+      }
+      values.addBuffers(count, buffers, lengths);
+    }
+
+    @Override
+    public String toString() {
+      return multiValued ? "List<" + type + ">" : String.valueOf(type);
+    }
+  }
+
+  /** Typed values, including placeholders for nulls. */
+  private static final class Values {
+    final Type type;
+    final DataBuffer data = new DataBuffer();
+    // UTF8 only: where each value starts
+    final DataBuffer offsets;
+    int count;
+
+    Values(Type type) {
+      this.type = type;
+      offsets = type == Type.UTF8 ? new DataBuffer() : null;
+      reset();
+    }
+
+    void reset() {
+      count = 0;
+      data.clear();
+      if (offsets != null) {
+        offsets.clear();
+        offsets.putInt(0);
+      }
+    }
+
+    void addNull() {
+      if (type == Type.UTF8) {
+        offsets.putInt(data.size);
+      } else if (type == Type.BOOLEAN) {
+        data.setBit(count, false);
+      } else {
+        data.putZeros(type.width);
+      }
+      count++;
+    }
+
+    void putString(CharSequence v) {
+      if (v instanceof Utf8CharSequence) {
+        Utf8CharSequence utf8 = (Utf8CharSequence) v;
+        int size = utf8.size();
+        data.ensure(size);
+        for (int written = 0; written < size; ) {
+          written += utf8.write(written, data.bytes, data.size + written);
+        }
+        data.size += size;
+      } else {
+        data.ensure(v.length() * ByteUtils.MAX_UTF8_BYTES_PER_CHAR);
+        data.size += ByteUtils.UTF16toUTF8(v, 0, v.length(), data.bytes, data.size);
+      }
+      offsets.putInt(data.size);
+      count++;
+    }
+
+    void addBuffers(int count, List<DataBuffer> buffers, List<Integer> lengths) {
+      if (type == Type.UTF8) {
+        buffers.add(offsets);
+        lengths.add((count + 1) * 4);
+        buffers.add(data);
+        lengths.add(offsets.getInt(count * 4));
+      } else if (type == Type.BOOLEAN) {
+        buffers.add(data);
+        lengths.add((count + 7) >>> 3);
+      } else {
+        buffers.add(data);
+        lengths.add(count * type.width);
+      }
+    }
+  }
+
+  /** A growable little endian buffer. */
+  static final class DataBuffer {
+    byte[] bytes = new byte[64];
+    int size;
+
+    void clear() {
+      size = 0;
+    }
+
+    void ensure(int extra) {
+      if (size + extra > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+      }
+    }
+
+    void putZeros(int length) {
+      ensure(length);
+      Arrays.fill(bytes, size, size + length, (byte) 0);
+      size += length;
+    }
+
+    void putInt(int v) {
+      ensure(4);
+      ArrowFlatBuffers.INT.set(bytes, size, v);
+      size += 4;
+    }
+
+    void putLong(long v) {
+      ensure(8);
+      ArrowFlatBuffers.LONG.set(bytes, size, v);
+      size += 8;
+    }
+
+    void putFloat(float v) {
+      ensure(4);
+      ArrowFlatBuffers.FLOAT.set(bytes, size, v);
+      size += 4;
+    }
+
+    void putDouble(double v) {
+      ensure(8);
+      ArrowFlatBuffers.DOUBLE.set(bytes, size, v);
+      size += 8;
+    }
+
+    int getInt(int pos) {
+      return (int) ArrowFlatBuffers.INT.get(bytes, pos);
+    }
+
+    /** Sets a bit of a bitmap, growing it with unset bits as needed. */
+    void setBit(int index, boolean value) {
+      int i = index >>> 3;
+      if (i >= size) {
+        putZeros(i + 1 - size);
+      }
+      if (value) {
+        bytes[i] |= (byte) (1 << (index & 7));
+      } else {
+        bytes[i] &= (byte) ~(1 << (index & 7));
+      }
+    }
+  }
+
+  /**
+   * Appends the values put to the current row. {@link Utf8CharSequence} values are copied as is,
+   * without being decoded.
+   */
+  public final class RowWriter implements MapWriter.EntryWriter, IteratorWriter.ItemWriter {
+    // the column of the list being written, if any
+    private Column list;
+
+    private RowWriter() {}
+
+    @Override
+    public MapWriter.EntryWriter put(CharSequence k, Object v) throws IOException {
+      if (v == null || error != null || isError(k, v)) {
+        return this;
+      }
+      try {
+        Column column = column(k);
+        if (v instanceof IteratorWriter) {
+          startList(column);
+          ((IteratorWriter) v).writeIter(this);
+          endList(column);
+        } else if (v instanceof Collection) {
+          startList(column);
+          for (Object item : (Collection<?>) v) {
+            add(item);
+          }
+          endList(column);
+        } else if (v.getClass().isArray() && !(v instanceof byte[])) {
+          startList(column);
+          for (int i = 0, n = Array.getLength(v); i < n; i++) {
+            add(Array.get(v, i));
+          }
+          endList(column);
+        } else {
+          addValue(column, v);
+        }
+      } catch (IllegalArgumentException e) {
+        fail(e);
+      }
+      return this;
+    }
+
+    private boolean isError(CharSequence k, Object v) {
+      if (StreamParams.EXCEPTION.contentEquals(k)) {
+        error = v.toString();
+        return true;
+      }
+      return false;
+    }
+
+    /** Records a value that doesn't fit the schema, the stream then ends at {@link #endRow()}. */
+    private void fail(IllegalArgumentException e) {
+      if (error == null) {
+        error = e.getMessage();
+      }
+    }
+
+    private void startList(Column column) {
+      if (list != null) {
+        throw new IllegalArgumentException("Nested lists are not supported: " + column.name);
+      }
+      list = column;
+      column.startList(rows);
+    }
+
+    private void endList(Column column) {
+      column.endList();
+      list = null;
+    }
+
+    private void addValue(Column column, Object v) {
+      if (v instanceof Integer || v instanceof Short || v instanceof Byte) {
+        column.addInt(rows, ((Number) v).intValue());
+      } else if (v instanceof Long) {
+        column.addLong(rows, (Long) v);
+      } else if (v instanceof Float) {
+        column.addFloat(rows, (Float) v);
+      } else if (v instanceof Double) {
+        column.addDouble(rows, (Double) v);
+      } else if (v instanceof Boolean) {
+        column.addBoolean(rows, (Boolean) v);
+      } else if (v instanceof Date) {
+        column.addDate(rows, (Date) v);
+      } else if (v instanceof CharSequence) {
+        column.addString(rows, (CharSequence) v);
+      } else if (v instanceof byte[]) {
+        column.addString(rows, Base64.getEncoder().encodeToString((byte[]) v));
+      } else {
+        column.addString(rows, v.toString());
+      }
+    }
+
+    @Override
+    public MapWriter.EntryWriter put(CharSequence k, int v) {
+      if (error == null) {
+        try {
+          column(k).addInt(rows, v);
+        } catch (IllegalArgumentException e) {
+          fail(e);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public MapWriter.EntryWriter put(CharSequence k, long v) {
+      if (error == null) {
+        try {
+          column(k).addLong(rows, v);
+        } catch (IllegalArgumentException e) {
+          fail(e);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public MapWriter.EntryWriter put(CharSequence k, float v) {
+      if (error == null) {
+        try {
+          column(k).addFloat(rows, v);
+        } catch (IllegalArgumentException e) {
+          fail(e);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public MapWriter.EntryWriter put(CharSequence k, double v) {
+      if (error == null) {
+        try {
+          column(k).addDouble(rows, v);
+        } catch (IllegalArgumentException e) {
+          fail(e);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public MapWriter.EntryWriter put(CharSequence k, boolean v) {
+      if (error == null) {
+        try {
+          column(k).addBoolean(rows, v);
+        } catch (IllegalArgumentException e) {
+          fail(e);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public MapWriter.EntryWriter put(CharSequence k, CharSequence v) {
+      if (v != null && error == null && !isError(k, v)) {
+        try {
+          column(k).addString(rows, v);
+        } catch (IllegalArgumentException e) {
+          fail(e);
+        }
+      }
+      return this;
+    }
+
+    /** Adds an item to the list being written. */
+    @Override
+    public IteratorWriter.ItemWriter add(Object o) {
+      if (o == null || error != null) {
+        return this;
+      }
+      try {
+        if (o instanceof IteratorWriter || o instanceof Collection) {
+          throw new IllegalArgumentException("Nested lists are not supported: " + list.name);
+        }
+        addValue(list, o);
+      } catch (IllegalArgumentException e) {
+        fail(e);
+      }
+      return this;
+    }
+
+    @Override
+    public IteratorWriter.ItemWriter add(int v) {
+      if (error == null) {
+        try {
+          list.addInt(rows, v);
+        } catch (IllegalArgumentException e) {
+          fail(e);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public IteratorWriter.ItemWriter add(long v) {
+      if (error == null) {
+        try {
+          list.addLong(rows, v);
+        } catch (IllegalArgumentException e) {
+          fail(e);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public IteratorWriter.ItemWriter add(float v) {
+      if (error == null) {
+        try {
+          list.addFloat(rows, v);
+        } catch (IllegalArgumentException e) {
+          fail(e);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public IteratorWriter.ItemWriter add(double v) {
+      if (error == null) {
+        try {
+          list.addDouble(rows, v);
+        } catch (IllegalArgumentException e) {
+          fail(e);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    public IteratorWriter.ItemWriter add(boolean v) {
+      if (error == null) {
+        try {
+          list.addBoolean(rows, v);
+        } catch (IllegalArgumentException e) {
+          fail(e);
+        }
+      }
+      return this;
+    }
+  }
+}
@@ -1255,16 +1255,22 @@ public class JavaBinCodec implements PushWriter {
     return false;
   }
 
-  protected void writeBoolean(boolean val) throws IOException {
+  public void writeBoolean(boolean val) throws IOException {
     if (val) daos.writeByte(BOOL_TRUE);
     else daos.writeByte(BOOL_FALSE);
   }
 
-  protected void writeDouble(double val) throws IOException {
+  public void writeDouble(double val) throws IOException {
     daos.writeByte(DOUBLE);
     daos.writeDouble(val);
   }
 
+  /** Writes a date given as milliseconds since the epoch, without creating a {@link Date}. */
+  public void writeDate(long epochMillis) throws IOException {
+    daos.writeByte(DATE);
+    daos.writeLong(epochMillis);
+  }
+
   public void writeMap(Map<?, ?> val) throws IOException {
     writeTag(MAP, val.size());
     if (val instanceof MapWriter) {
@@ -1374,6 +1380,12 @@ public class JavaBinCodec implements PushWriter {
     daos.writeUtf8CharSeq(utf8);
   }
 
+  /** Writes a string given as UTF-8 bytes. */
+  public void writeUTF8Str(byte[] utf8, int offset, int len) throws IOException {
+    writeTag(STR, len);
+    daos.write(utf8, offset, len);
+  }
+
   public long getTotalBytesWritten() {
     if (daos != null) {
       return daos.written;
@@ -23,12 +23,15 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.solr.SolrJettyTestBase;
+import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.embedded.JettyConfig;
+import org.eclipse.jetty.client.InputStreamResponseListener;
 import org.eclipse.jetty.client.Response;
 import org.eclipse.jetty.ee10.servlet.ServletHolder;
 import org.junit.BeforeClass;
@@ -216,6 +219,43 @@ public class ConcurrentUpdateHttp2SolrClientTest extends SolrJettyTestBase {
     }
   }
 
+  @Test
+  public void testStreamFlushing() throws Exception {
+    try (Http2SolrClient client = new Http2SolrClient.Builder(getBaseUrl()).build()) {
+      UpdateRequest first = new UpdateRequest().add(sdoc("id", "sent"));
+      InputStreamResponseListener responseListener;
+      try (Http2SolrClient.OutStream out =
+          client.initOutStream(getBaseUrl(), first, "collection1")) {
+        // sent requests are flushed, so the update is processed while the stream is still open
+        client.send(out, first, "collection1");
+        assertTrue(waitForRealTimeGet(client, "sent"));
+
+        // written requests are buffered until the stream is flushed
+        client.write(out, new UpdateRequest().add(sdoc("id", "written")), "collection1");
+        Thread.sleep(500);
+        assertNull(client.getById("collection1", "written"));
+        out.flush();
+        assertTrue(waitForRealTimeGet(client, "written"));
+        responseListener = out.getResponseListener();
+      }
+      assertEquals(200, responseListener.get(30, TimeUnit.SECONDS).getStatus());
+      try (InputStream in = responseListener.getInputStream()) {
+        in.readAllBytes();
+      }
+    }
+  }
+
+  private static boolean waitForRealTimeGet(SolrClient client, String id) throws Exception {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (System.nanoTime() < deadline) {
+      if (client.getById("collection1", id) != null) {
+        return true;
+      }
+      Thread.sleep(50);
+    }
+    return false;
+  }
+
   static class OutcomeCountingConcurrentUpdateSolrClient extends ConcurrentUpdateHttp2SolrClient {
     private final AtomicInteger successCounter;
     private final AtomicInteger failureCounter;
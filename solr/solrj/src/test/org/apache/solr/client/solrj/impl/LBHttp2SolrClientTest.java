@@ -36,6 +36,7 @@ import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.MapSolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.junit.Test;
+import org.slf4j.MDC;
 
 /** Test the LBHttp2SolrClient. */
 public class LBHttp2SolrClientTest extends SolrTestCase {
@@ -286,6 +287,129 @@ public class LBHttp2SolrClientTest extends SolrTestCase {
     }
   }
 
+  @Test
+  public void testAsyncHedged() throws Exception {
+    LBSolrClient.Endpoint ep1 = new LBSolrClient.Endpoint("http://endpoint.one");
+    LBSolrClient.Endpoint ep2 = new LBSolrClient.Endpoint("http://endpoint.two");
+    List<LBSolrClient.Endpoint> endpointList = List.of(ep1, ep2);
+
+    Http2SolrClient.Builder b =
+        new Http2SolrClient.Builder("http://base.url").withConnectionTimeout(10, TimeUnit.SECONDS);
+    try (MockHttpSolrClient client = new MockHttpSolrClient("http://base.url", b);
+        LBHttp2SolrClient<MockHttpSolrClient> testClient =
+            new LBHttp2SolrClient.Builder<>(client, ep1, ep2).build()) {
+
+      // a fast endpoint is not hedged
+      QueryRequest queryRequest = new QueryRequest(new MapSolrParams(Map.of("q", "fast")));
+      LBSolrClient.Rsp rsp =
+          testClient
+              .requestAsync(
+                  new LBSolrClient.Req(queryRequest, endpointList), 10, TimeUnit.MILLISECONDS)
+              .get(1, TimeUnit.MINUTES);
+      assertEquals("fast", rsp.getResponse().get("response"));
+      assertEquals(ep1.toString(), rsp.getServer());
+      Thread.sleep(50);
+      assertEquals(List.of(ep1.toString()), client.lastBasePaths);
+
+      // a slow endpoint is, the response of the other one being used
+      client.lastBasePaths.clear();
+      client.basePathToHang = ep1.getBaseUrl();
+      queryRequest = new QueryRequest(new MapSolrParams(Map.of("q", "slow")));
+      rsp =
+          testClient
+              .requestAsync(
+                  new LBSolrClient.Req(queryRequest, endpointList), 10, TimeUnit.MILLISECONDS)
+              .get(1, TimeUnit.MINUTES);
+      assertEquals("slow", rsp.getResponse().get("response"));
+      assertEquals(ep2.toString(), rsp.getServer());
+      assertEquals(List.of(ep1.toString(), ep2.toString()), client.lastBasePaths);
+      assertEquals(1, client.hungFutures.size());
+      // the slow request is cancelled once the response is there
+      CompletableFuture<NamedList<Object>> hung = client.hungFutures.get(0);
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (!hung.isCancelled() && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(hung.isCancelled());
+    }
+  }
+
+  @Test
+  public void testAsyncHedgedWithJdkClient() throws Exception {
+    LBSolrClient.Endpoint ep1 = new LBSolrClient.Endpoint("http://endpoint.one");
+    LBSolrClient.Endpoint ep2 = new LBSolrClient.Endpoint("http://endpoint.two");
+    List<LBSolrClient.Endpoint> endpointList = List.of(ep1, ep2);
+
+    HttpJdkSolrClient.Builder b =
+        new HttpJdkSolrClient.Builder("http://base.url")
+            .withConnectionTimeout(10, TimeUnit.SECONDS);
+    try (MockHttpJdkSolrClient client = new MockHttpJdkSolrClient("http://base.url", b);
+        LBHttp2SolrClient<MockHttpJdkSolrClient> testClient =
+            new LBHttp2SolrClient.Builder<>(client, ep1, ep2).build()) {
+
+      client.basePathToHang = ep1.getBaseUrl();
+      QueryRequest queryRequest = new QueryRequest(new MapSolrParams(Map.of("q", "slow")));
+      CompletableFuture<LBSolrClient.Rsp> future;
+      MDC.put("hedgeTest", "caller");
+      try {
+        future =
+            testClient.requestAsync(
+                new LBSolrClient.Req(queryRequest, endpointList), 10, TimeUnit.MILLISECONDS);
+      } finally {
+        MDC.remove("hedgeTest");
+      }
+      LBSolrClient.Rsp rsp = future.get(1, TimeUnit.MINUTES);
+      assertEquals("slow", rsp.getResponse().get("response"));
+      assertEquals(ep2.toString(), rsp.getServer());
+      assertEquals(List.of(ep1.toString(), ep2.toString()), client.lastBasePaths);
+      // the hedged request is sent from the executor of the client, with the MDC of the caller
+      assertEquals(List.of("caller", "caller"), client.lastContexts);
+      assertTrue(client.lastThreads.get(1), client.lastThreads.get(1).startsWith("MockHttpJdk"));
+      assertEquals(1, client.hungFutures.size());
+      CompletableFuture<NamedList<Object>> hung = client.hungFutures.get(0);
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (!hung.isCancelled() && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(hung.isCancelled());
+    }
+  }
+
+  public static class MockHttpJdkSolrClient extends HttpJdkSolrClient {
+
+    public List<String> lastBasePaths = Collections.synchronizedList(new ArrayList<>());
+
+    public List<String> lastContexts = Collections.synchronizedList(new ArrayList<>());
+
+    public List<String> lastThreads = Collections.synchronizedList(new ArrayList<>());
+
+    public String basePathToHang = null;
+
+    public List<CompletableFuture<NamedList<Object>>> hungFutures =
+        Collections.synchronizedList(new ArrayList<>());
+
+    protected MockHttpJdkSolrClient(String serverBaseUrl, Builder builder) {
+      super(serverBaseUrl, builder);
+    }
+
+    @Override
+    protected CompletableFuture<NamedList<Object>> requestAsyncWithBaseUrl(
+        String baseUrl, SolrRequest<?> solrRequest, String collection) {
+      CompletableFuture<NamedList<Object>> cf = new CompletableFuture<>();
+      lastBasePaths.add(baseUrl);
+      lastContexts.add(MDC.get("hedgeTest"));
+      lastThreads.add(Thread.currentThread().getName());
+      if (baseUrl.equals(basePathToHang)) {
+        hungFutures.add(cf);
+      } else {
+        cf.complete(
+            new NamedList<>(
+                Collections.singletonMap("response", solrRequest.getParams().get("q"))));
+      }
+      return cf;
+    }
+  }
+
   public static class MockHttpSolrClient extends Http2SolrClient {
 
     public List<SolrRequest<?>> lastSolrRequests = new ArrayList<>();
@@ -296,6 +420,10 @@ public class LBHttp2SolrClientTest extends SolrTestCase {
 
     public String basePathToFail = null;
 
+    public String basePathToHang = null;
+
+    public List<CompletableFuture<NamedList<Object>>> hungFutures = new ArrayList<>();
+
     public String tmpBaseUrl = null;
 
     protected MockHttpSolrClient(String serverBaseUrl, Builder builder) {
@@ -341,6 +469,8 @@ public class LBHttp2SolrClientTest extends SolrTestCase {
       if (tmpBaseUrl != null && tmpBaseUrl.equals(basePathToFail)) {
         cf.completeExceptionally(
             new SolrException(SolrException.ErrorCode.SERVER_ERROR, "We should retry this."));
+      } else if (tmpBaseUrl != null && tmpBaseUrl.equals(basePathToHang)) {
+        hungFutures.add(cf);
       } else {
         cf.complete(generateResponse(solrRequest));
       }
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.routing;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.client.solrj.impl.EndpointLatencyTracker;
+import org.apache.solr.client.solrj.impl.LBSolrClient;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.util.Utils;
+import org.junit.Test;
+
+@SolrTestCaseJ4.SuppressSSL // not useful / needed for this test
+public class AdaptiveReplicaListTransformerTest extends SolrTestCase {
+
+  private static final String FAST = "http://fast:8983/solr/c1_s1_r1";
+  private static final String SLOW = "http://slow:8983/solr/c1_s1_r2";
+  private static final String BUSY = "http://busy:8983/solr/c1_s1_r3";
+
+  @Test
+  public void testScores() {
+    EndpointLatencyTracker tracker = new EndpointLatencyTracker(0.5, 1, TimeUnit.HOURS);
+    assertEquals(0, tracker.score(FAST), 0);
+
+    tracker.requestStarted(FAST);
+    assertEquals(1, tracker.getOutstanding(FAST));
+    tracker.requestCompleted(FAST, ms(100), false);
+    tracker.requestStarted(FAST);
+    tracker.requestCompleted(FAST, ms(200), false);
+    assertEquals(0, tracker.getOutstanding(FAST));
+    assertEquals(ms(150), tracker.score(FAST), ms(1));
+
+    // a failure counts twice, and the outstanding requests multiply the score
+    tracker.requestStarted(SLOW);
+    tracker.requestCompleted(SLOW, ms(100), true);
+    tracker.requestStarted(SLOW);
+    assertEquals(ms(400), tracker.score(SLOW), ms(1));
+    tracker.requestAbandoned(SLOW);
+    assertEquals(ms(200), tracker.score(SLOW), ms(1));
+
+    assertEquals(new HashSet<>(List.of(FAST, SLOW)), tracker.getScores().keySet());
+  }
+
+  @Test
+  public void testDecay() throws Exception {
+    EndpointLatencyTracker tracker = new EndpointLatencyTracker(1, 10, TimeUnit.MILLISECONDS);
+    tracker.requestStarted(SLOW);
+    tracker.requestCompleted(SLOW, TimeUnit.SECONDS.toNanos(1), false);
+    Thread.sleep(100);
+    assertTrue(tracker.score(SLOW) < TimeUnit.SECONDS.toNanos(1) / 512);
+  }
+
+  @Test
+  public void testNoDecayWhileOutstanding() throws Exception {
+    EndpointLatencyTracker tracker = new EndpointLatencyTracker(1, 10, TimeUnit.MILLISECONDS);
+    record(tracker, SLOW, 1000);
+    record(tracker, FAST, 1);
+    // neither endpoint responds anymore
+    tracker.requestStarted(SLOW);
+    tracker.requestStarted(FAST);
+    Thread.sleep(100);
+    assertTrue(tracker.score(SLOW) >= ms(2000));
+    // the time the request has been waiting counts as latency
+    assertTrue(tracker.score(FAST) >= ms(200));
+  }
+
+  @Test
+  public void testIdleEndpointsForgotten() throws Exception {
+    // forgotten after 64 half-lives
+    EndpointLatencyTracker tracker = new EndpointLatencyTracker(1, 1, TimeUnit.MILLISECONDS);
+    record(tracker, SLOW, 10);
+    tracker.requestStarted(BUSY);
+    Thread.sleep(100);
+    tracker.requestStarted(FAST);
+    assertEquals(Set.of(BUSY, FAST), tracker.getScores().keySet());
+    assertEquals(2, tracker.size());
+  }
+
+  @Test
+  public void testTransform() {
+    EndpointLatencyTracker tracker = new EndpointLatencyTracker();
+    record(tracker, FAST, 1);
+    record(tracker, SLOW, 100);
+    record(tracker, BUSY, 10);
+    for (int i = 0; i < 10; i++) {
+      tracker.requestStarted(BUSY);
+    }
+    ReplicaListTransformer transformer = new AdaptiveReplicaListTransformer(tracker, random());
+
+    int fastFirst = 0;
+    for (int i = 0; i < 100; i++) {
+      List<String> urls = new ArrayList<>(List.of(SLOW, BUSY, FAST));
+      transformer.transform(urls);
+      // the better of two random replicas comes first, so never the slowest one
+      assertNotEquals(urls.toString(), BUSY, urls.get(0));
+      if (urls.get(0).equals(FAST)) {
+        fastFirst++;
+        assertEquals(List.of(FAST, SLOW, BUSY), urls);
+      } else {
+        assertEquals(List.of(SLOW, FAST, BUSY), urls);
+      }
+    }
+    // FAST is picked unless the two random replicas are SLOW and BUSY
+    assertTrue(String.valueOf(fastFirst), fastFirst > 40);
+
+    List<String> single = new ArrayList<>(List.of(SLOW));
+    transformer.transform(single);
+    assertEquals(List.of(SLOW), single);
+  }
+
+  @Test
+  public void testTransformReplicas() {
+    Replica fast = replica("fast", "c1_s1_r1");
+    Replica slow = replica("slow", "c1_s1_r2");
+    // the latencies are recorded by LBHttp2SolrClient under the URLs of the endpoints
+    EndpointLatencyTracker tracker = new EndpointLatencyTracker();
+    record(tracker, new LBSolrClient.Endpoint(fast.getBaseUrl(), fast.getCoreName()).getUrl(), 1);
+    record(tracker, new LBSolrClient.Endpoint(slow.getBaseUrl(), slow.getCoreName()).getUrl(), 100);
+    assertTrue(tracker.score(slow.getCoreUrl()) > tracker.score(fast.getCoreUrl()));
+
+    ReplicaListTransformer transformer = new AdaptiveReplicaListTransformer(tracker, random());
+    for (int i = 0; i < 10; i++) {
+      List<Replica> replicas = new ArrayList<>(List.of(slow, fast));
+      transformer.transform(replicas);
+      assertEquals(List.of(fast, slow), replicas);
+    }
+  }
+
+  private static Replica replica(String host, String core) {
+    String nodeName = host + ":8983_solr";
+    return new Replica(
+        core,
+        Map.of(
+            ZkStateReader.NODE_NAME_PROP, nodeName,
+            ZkStateReader.BASE_URL_PROP, Utils.getBaseUrlForNodeName(nodeName, "http"),
+            ZkStateReader.CORE_NAME_PROP, core,
+            ZkStateReader.REPLICA_TYPE, "NRT"),
+        "c1",
+        "s1");
+  }
+
+  private static void record(EndpointLatencyTracker tracker, String url, long millis) {
+    tracker.requestStarted(url);
+    tracker.requestCompleted(url, ms(millis), false);
+  }
+
+  private static long ms(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+}
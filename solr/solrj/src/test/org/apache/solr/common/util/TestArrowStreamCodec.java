@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.IteratorWriter;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.common.params.StreamParams;
+import org.junit.Test;
+
+public class TestArrowStreamCodec extends SolrTestCase {
+
+  /**
+   * Written by the ArrowStreamWriter of Arrow Java 15.0.2, from the values asserted by {@link
+   * #testReadReferenceStream()}: 8 to 64 bit integers, floats, doubles, booleans, timestamps in
+   * milliseconds with a time zone and in microseconds without, lists of longs and strings, with
+   * null rows and lists, in batches of 3 and 2 rows. Both streams are regenerated by <code>
+   * dev-tools/scripts/arrow-fixtures/generate.sh</code>.
+   */
+  private static final String REFERENCE_STREAM = "/solrj/arrow_reference.arrows";
+
+  /**
+   * Written by {@link #writeValidatedStream}, then validated with <code>
+   * ValueVectorUtility.validateFull</code> and decoded by the ArrowStreamReader of Arrow Java
+   * 15.0.2. Any change to the bytes written must be checked against Arrow Java again, with that
+   * script, before updating this file.
+   */
+  private static final String VALIDATED_STREAM = "/solrj/arrow_validated.arrows";
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ArrowStreamWriter writer = new ArrowStreamWriter(bos, 3);
+    writer.putMetadata("numFound", "7");
+    writer.addColumn("declared_i", ArrowStreamWriter.Type.INT, false);
+    for (int i = 0; i < 7; i++) {
+      final int n = i;
+      writer.writeRow(
+          ew -> {
+            if (n != 1) {
+              ew.put("declared_i", n);
+            }
+            ew.put("l", n * 1000000000000L);
+            if (n % 2 == 0) {
+              ew.put("s", "héllo" + n);
+            }
+            ew.put("f", n + 0.5f);
+            ew.put("d", n + 0.25d);
+            ew.put("b", n % 3 == 0);
+            ew.put("dt", new Date(1000L * n));
+            ew.put(
+                "ml",
+                (IteratorWriter)
+                    iw -> {
+                      for (int j = 0; j < n % 3; j++) {
+                        iw.add((long) j);
+                      }
+                    });
+            ew.put("ms", List.of("a" + n, "b"));
+          });
+    }
+    writer.finish();
+
+    ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bos.toByteArray()));
+    assertEquals(Map.of("numFound", "7"), reader.getMetadata());
+    String[] names = {"declared_i", "l", "s", "f", "d", "b", "dt", "ml", "ms"};
+    ArrowStreamWriter.Type[] types = {
+      ArrowStreamWriter.Type.INT,
+      ArrowStreamWriter.Type.LONG,
+      ArrowStreamWriter.Type.UTF8,
+      ArrowStreamWriter.Type.FLOAT,
+      ArrowStreamWriter.Type.DOUBLE,
+      ArrowStreamWriter.Type.BOOLEAN,
+      ArrowStreamWriter.Type.TIMESTAMP,
+      ArrowStreamWriter.Type.LONG,
+      ArrowStreamWriter.Type.UTF8
+    };
+    assertEquals(names.length, reader.getColumnCount());
+    for (int c = 0; c < names.length; c++) {
+      int column = indexOf(reader, names[c]);
+      assertEquals(names[c], types[c], reader.getColumnType(column));
+      assertEquals(names[c], names[c].startsWith("m"), reader.isMultiValued(column));
+    }
+
+    int n = 0;
+    int batches = 0;
+    while (reader.nextBatch()) {
+      batches++;
+      assertTrue(reader.getRowCount() <= 3);
+      for (int row = 0; row < reader.getRowCount(); row++, n++) {
+        int declared = indexOf(reader, "declared_i");
+        if (n == 1) {
+          assertTrue(reader.isNull(declared, row));
+        } else {
+          assertEquals(n, reader.getLong(declared, row));
+        }
+        assertEquals(n * 1000000000000L, reader.getValue(indexOf(reader, "l"), row));
+        assertEquals(n % 2 == 0 ? "héllo" + n : null, reader.getValue(indexOf(reader, "s"), row));
+        assertEquals(n + 0.5f, reader.getValue(indexOf(reader, "f"), row));
+        assertEquals(n + 0.25d, reader.getDouble(indexOf(reader, "d"), row), 0d);
+        assertEquals(n % 3 == 0, reader.getValue(indexOf(reader, "b"), row));
+        assertEquals(new Date(1000L * n), reader.getValue(indexOf(reader, "dt"), row));
+        List<Object> expected = new ArrayList<>();
+        for (long j = 0; j < n % 3; j++) {
+          expected.add(j);
+        }
+        // the empty list of the first row precedes the type of the column
+        assertEquals(n == 0 ? null : expected, reader.getValue(indexOf(reader, "ml"), row));
+        assertEquals(List.of("a" + n, "b"), reader.getValue(indexOf(reader, "ms"), row));
+      }
+    }
+    assertEquals(7, n);
+    assertEquals(3, batches);
+    assertNull(reader.getError());
+  }
+
+  @Test
+  public void testEmptyStream() throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ArrowStreamWriter writer = new ArrowStreamWriter(bos);
+    writer.addColumn("id", ArrowStreamWriter.Type.UTF8, false);
+    writer.finish();
+
+    ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bos.toByteArray()));
+    assertEquals(1, reader.getColumnCount());
+    assertEquals("id", reader.getColumnName(0));
+    assertFalse(reader.nextBatch());
+    assertNull(reader.getError());
+  }
+
+  @Test
+  public void testError() throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ArrowStreamWriter writer = new ArrowStreamWriter(bos);
+    writer.writeRow(ew -> ew.put("x", 1));
+    writer.writeRow(ew -> ew.put("x", 2).put(StreamParams.EXCEPTION, "boom"));
+    assertTrue(writer.isFinished());
+    expectThrows(IllegalStateException.class, writer::startRow);
+
+    ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bos.toByteArray()));
+    assertTrue(reader.nextBatch());
+    assertEquals(1, reader.getRowCount());
+    assertEquals(1, reader.getValue(0, 0));
+    assertFalse(reader.nextBatch());
+    assertEquals("boom", reader.getError());
+  }
+
+  @Test
+  public void testColumnAfterSchema() throws IOException {
+    assertEndsWithError(ew -> ew.put("y", 3), "Field y is not part of the schema");
+  }
+
+  @Test
+  public void testIntOverflow() throws IOException {
+    assertEndsWithError(
+        ew -> ew.put("x", 1L + Integer.MAX_VALUE), "out of the range of the INT column x");
+  }
+
+  @Test
+  public void testTypeMismatch() throws IOException {
+    assertEndsWithError(ew -> ew.put("x", "three"), "Can't write a UTF8 value to INT column x");
+    assertEndsWithError(
+        ew -> ew.put("x", List.of(3, 4)), "Multiple values for single-valued field x");
+  }
+
+  /**
+   * Writes two batches of one row, then a row that doesn't fit the schema inferred from the first
+   * one, which must end the stream with an error rather than throw.
+   */
+  private static void assertEndsWithError(MapWriter badRow, String expectedError)
+      throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ArrowStreamWriter writer = new ArrowStreamWriter(bos, 1);
+    writer.writeRow(ew -> ew.put("x", 1));
+    writer.writeRow(ew -> ew.put("x", 2));
+    writer.writeRow(badRow);
+    assertTrue(writer.isFinished());
+
+    ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bos.toByteArray()));
+    for (int x = 1; x <= 2; x++) {
+      assertTrue(reader.nextBatch());
+      assertEquals(1, reader.getRowCount());
+      assertEquals(x, reader.getValue(0, 0));
+    }
+    assertFalse(reader.nextBatch());
+    assertTrue(reader.getError(), reader.getError().contains(expectedError));
+  }
+
+  @Test
+  public void testReadReferenceStream() throws IOException {
+    try (InputStream is = getClass().getResourceAsStream(REFERENCE_STREAM);
+        ArrowStreamReader reader = new ArrowStreamReader(is)) {
+      assertEquals(Map.of("numFound", "5"), reader.getMetadata());
+      String[] names = {"id", "i8", "i16", "i32", "i64", "f32", "f64", "b", "ts_ms", "ts_us"};
+      ArrowStreamWriter.Type[] types = {
+        ArrowStreamWriter.Type.UTF8,
+        ArrowStreamWriter.Type.INT,
+        ArrowStreamWriter.Type.INT,
+        ArrowStreamWriter.Type.INT,
+        ArrowStreamWriter.Type.LONG,
+        ArrowStreamWriter.Type.FLOAT,
+        ArrowStreamWriter.Type.DOUBLE,
+        ArrowStreamWriter.Type.BOOLEAN,
+        ArrowStreamWriter.Type.TIMESTAMP,
+        ArrowStreamWriter.Type.TIMESTAMP
+      };
+      assertEquals(names.length + 2, reader.getColumnCount());
+      for (int c = 0; c < names.length; c++) {
+        assertEquals(names[c], reader.getColumnName(c));
+        assertEquals(names[c], types[c], reader.getColumnType(c));
+        assertFalse(names[c], reader.isMultiValued(c));
+      }
+      assertEquals("ml", reader.getColumnName(10));
+      assertEquals(ArrowStreamWriter.Type.LONG, reader.getColumnType(10));
+      assertTrue(reader.isMultiValued(10));
+      assertEquals("ms", reader.getColumnName(11));
+      assertEquals(ArrowStreamWriter.Type.UTF8, reader.getColumnType(11));
+      assertTrue(reader.isMultiValued(11));
+
+      int n = 0;
+      List<Integer> batchSizes = new ArrayList<>();
+      while (reader.nextBatch()) {
+        batchSizes.add(reader.getRowCount());
+        for (int row = 0; row < reader.getRowCount(); row++, n++) {
+          assertEquals("doc" + n, reader.getValue(0, row));
+          if (n == 1) {
+            for (int c = 1; c < names.length; c++) {
+              assertTrue(names[c], reader.isNull(c, row));
+              assertNull(names[c], reader.getValue(c, row));
+            }
+          } else {
+            assertEquals(n - 2, reader.getValue(1, row));
+            assertEquals(n * -1000, reader.getValue(2, row));
+            assertEquals(n * 100000, reader.getValue(3, row));
+            assertEquals(n * 1000000000000L, reader.getValue(4, row));
+            assertEquals(n + 0.5f, reader.getValue(5, row));
+            assertEquals(n - 0.25d, reader.getDouble(6, row), 0d);
+            assertEquals(n % 2 == 1, reader.getValue(7, row));
+            assertEquals(new Date(1700000000000L + n), reader.getValue(8, row));
+            // microseconds, truncated to milliseconds
+            assertEquals(new Date(1700000000000L + n * 1001L / 1000), reader.getValue(9, row));
+          }
+          List<Long> expected = new ArrayList<>();
+          for (long j = 0; j < n % 3; j++) {
+            expected.add(j * 7);
+          }
+          assertEquals(n == 3 ? null : expected, reader.getValue(10, row));
+          assertEquals(List.of("é" + n, "", "x"), reader.getValue(11, row));
+        }
+      }
+      assertEquals(List.of(3, 2), batchSizes);
+      assertEquals(5, n);
+      assertNull(reader.getError());
+    }
+  }
+
+  @Test
+  public void testWriteValidatedStream() throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    writeValidatedStream(bos);
+    try (InputStream is = getClass().getResourceAsStream(VALIDATED_STREAM)) {
+      assertArrayEquals(is.readAllBytes(), bos.toByteArray());
+    }
+  }
+
+  /**
+   * The same rows as the reference stream, as far as the writer supports their types. Keep in sync
+   * with <code>ArrowFixtures.writeValidated</code>.
+   */
+  private static void writeValidatedStream(ByteArrayOutputStream bos) throws IOException {
+    ArrowStreamWriter writer = new ArrowStreamWriter(bos, 3);
+    writer.putMetadata("numFound", "5");
+    writer.addColumn("i", ArrowStreamWriter.Type.INT, false);
+    writer.addColumn("ml", ArrowStreamWriter.Type.LONG, true);
+    for (int i = 0; i < 5; i++) {
+      final int n = i;
+      writer.writeRow(
+          ew -> {
+            ew.put("id", "doc" + n);
+            if (n != 1) {
+              ew.put("i", n * 100000);
+              ew.put("l", n * 1000000000000L);
+              ew.put("f", n + 0.5f);
+              ew.put("d", n - 0.25d);
+              ew.put("b", n % 2 == 1);
+              ew.put("dt", new Date(1700000000000L + n));
+            }
+            if (n != 3) {
+              ew.put(
+                  "ml",
+                  (IteratorWriter)
+                      iw -> {
+                        for (int j = 0; j < n % 3; j++) {
+                          iw.add(j * 7L);
+                        }
+                      });
+            }
+            ew.put("ms", List.of("é" + n, "", "x"));
+          });
+    }
+    writer.finish();
+  }
+
+  private static int indexOf(ArrowStreamReader reader, String name) throws IOException {
+    for (int c = 0; c < reader.getColumnCount(); c++) {
+      if (name.equals(reader.getColumnName(c))) {
+        return c;
+      }
+    }
+    throw new AssertionError("no column " + name);
+  }
+}